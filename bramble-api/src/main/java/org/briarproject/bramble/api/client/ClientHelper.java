@@ -89,6 +89,15 @@ public interface ClientHelper {
 			Transaction txn, GroupId g, BdfDictionary query) throws DbException,
 			FormatException;
 
+	/**
+	 * Returns the metadata for any delivered messages in the given group that
+	 * were received at or after the given time and have metadata that matches
+	 * all entries in the given query.
+	 */
+	Map<MessageId, BdfDictionary> getMessageMetadataAsDictionary(
+			Transaction txn, GroupId g, BdfDictionary query,
+			long minTimeReceived) throws DbException, FormatException;
+
 	void mergeGroupMetadata(GroupId g, BdfDictionary metadata)
 			throws DbException, FormatException;
 
@@ -150,6 +150,28 @@ public interface CryptoComponent {
 	 */
 	byte[] mac(String label, SecretKey macKey, byte[]... inputs);
 
+	/**
+	 * Returns a {@link Hasher} that computes hashes in the same way as
+	 * {@link #hash(String, byte[]...)}, with the inputs supplied one at a
+	 * time.
+	 *
+	 * @param label A namespaced label indicating the purpose of this hash, to
+	 * prevent it from being repurposed or colliding with a hash created for
+	 * another purpose
+	 */
+	Hasher createHasher(String label);
+
+	/**
+	 * Returns a {@link Hasher} that computes message authentication codes in
+	 * the same way as {@link #mac(String, SecretKey, byte[]...)}, with the
+	 * inputs supplied one at a time.
+	 *
+	 * @param label A namespaced label indicating the purpose of this MAC, to
+	 * prevent it from being repurposed or colliding with a MAC created for
+	 * another purpose
+	 */
+	Hasher createMac(String label, SecretKey macKey);
+
 	/**
 	 * Verifies that the given message authentication code is valid for the
 	 * given secret key and inputs.
@@ -189,6 +211,23 @@ public interface CryptoComponent {
 			@Nullable KeyStrengthener keyStrengthener)
 			throws DecryptionException;
 
+	/**
+	 * Encrypts and authenticates the given plaintext with the given key so it
+	 * can be written to storage. A random IV is used, so the same key can be
+	 * used to encrypt many plaintexts.
+	 */
+	byte[] encryptWithKey(byte[] plaintext, SecretKey key);
+
+	/**
+	 * Decrypts and authenticates the given ciphertext that was encrypted with
+	 * {@link #encryptWithKey(byte[], SecretKey)}.
+	 *
+	 * @throws DecryptionException If the ciphertext cannot be decrypted and
+	 * authenticated (for example, if it has been truncated).
+	 */
+	byte[] decryptWithKey(byte[] ciphertext, SecretKey key)
+			throws DecryptionException;
+
 	/**
 	 * Returns true if the given ciphertext was encrypted using a strengthened
 	 * key. The validity of the ciphertext is not checked.
@@ -0,0 +1,45 @@
+package org.briarproject.bramble.api.crypto;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Computes a hash or message authentication code over a sequence of inputs
+ * that are supplied one at a time. Each input is prefixed with its length,
+ * so the result is the same as passing the inputs to
+ * {@link CryptoComponent#hash(String, byte[]...)} or
+ * {@link CryptoComponent#mac(String, SecretKey, byte[]...)}, but the inputs
+ * can be slices of larger arrays or buffers.
+ * <p>
+ * After {@link #getHash()} is called the hasher can be used again with the
+ * same label and key.
+ */
+@NotThreadSafe
+@NotNullByDefault
+public interface Hasher {
+
+	/**
+	 * Adds the given input.
+	 */
+	void update(byte[] input);
+
+	/**
+	 * Adds the given slice of an array as a single input.
+	 */
+	void update(byte[] input, int off, int len);
+
+	/**
+	 * Adds the remaining bytes of the given buffer as a single input. The
+	 * buffer's position is advanced to its limit.
+	 */
+	void update(ByteBuffer input);
+
+	/**
+	 * Returns the hash or MAC of the inputs added since the hasher was
+	 * created or this method was last called.
+	 */
+	byte[] getHash();
+}
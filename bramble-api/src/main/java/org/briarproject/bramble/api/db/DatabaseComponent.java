@@ -22,6 +22,8 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.validation.MessageState;
 import org.briarproject.bramble.api.transport.KeySetId;
 import org.briarproject.bramble.api.transport.TransportKeySet;
@@ -226,6 +228,16 @@ public interface DatabaseComponent extends TransactionManager {
 	Offer generateOffer(Transaction txn, ContactId c, int maxMessages,
 			long maxLatency) throws DbException;
 
+	/**
+	 * Returns a summary of the messages in a group that are waiting to be
+	 * offered to the given contact, for transmission over a transport with
+	 * the given maximum latency, or null if no group has enough messages
+	 * waiting to be worth summarising.
+	 */
+	@Nullable
+	Summary generateSummary(Transaction txn, ContactId c, long maxLatency)
+			throws DbException;
+
 	/**
 	 * Returns a request for the given contact, or null if there are no
 	 * messages to request.
@@ -355,6 +367,20 @@ public interface DatabaseComponent extends TransactionManager {
 	Collection<MessageId> getMessageIds(Transaction txn, GroupId g,
 			Metadata query) throws DbException;
 
+	/**
+	 * Returns the IDs of up to the given number of delivered messages in the
+	 * given group with sort keys, in ascending order of sort key. Sort keys
+	 * are compared as unsigned byte strings, with a key that's a prefix of
+	 * another key sorting first.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @param after the sort key after which to start, or null to start from
+	 * the lowest sort key
+	 */
+	List<MessageId> getMessageIdsInSortOrder(Transaction txn, GroupId g,
+			@Nullable byte[] after, int limit) throws DbException;
+
 	/**
 	 * Returns the IDs of all messages received from the given contact that
 	 * need to be acknowledged.
@@ -432,6 +458,31 @@ public interface DatabaseComponent extends TransactionManager {
 	Map<MessageId, Metadata> getMessageMetadata(Transaction txn, GroupId g,
 			Metadata query) throws DbException;
 
+	/**
+	 * Returns the metadata for any delivered messages in the given group that
+	 * were received at or after the given time and have metadata that matches
+	 * all entries in the given query. If the query is empty, the metadata for
+	 * all delivered messages received in the time range is returned.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @see #getMessageTimesReceived
+	 */
+	Map<MessageId, Metadata> getMessageMetadata(Transaction txn, GroupId g,
+			Metadata query, long minTimeReceived) throws DbException;
+
+	/**
+	 * Returns the times at which any delivered messages in the given group
+	 * were received, for the messages received at or after the given time.
+	 * A message is received when it's delivered to its client, or when it's
+	 * added if it's a local message, so the order in which messages are
+	 * received doesn't depend on their timestamps.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Long> getMessageTimesReceived(Transaction txn, GroupId g,
+			long minTimeReceived) throws DbException;
+
 	/**
 	 * Returns the metadata for the given delivered message.
 	 * <p/>
@@ -478,6 +529,15 @@ public interface DatabaseComponent extends TransactionManager {
 	Map<MessageId, MessageState> getMessageDependents(Transaction txn,
 			MessageId m) throws DbException;
 
+	/**
+	 * Returns the sort key of the given message, or null if no sort key has
+	 * been set.
+	 * <p/>
+	 * Read-only.
+	 */
+	@Nullable
+	byte[] getMessageSortKey(Transaction txn, MessageId m) throws DbException;
+
 	/**
 	 * Gets the validation and delivery state of the given message.
 	 * <p/>
@@ -611,12 +671,6 @@ public interface DatabaseComponent extends TransactionManager {
 	Map<ContactId, Collection<TransportId>> getTransportsWithKeys(
 			Transaction txn) throws DbException;
 
-	/**
-	 * Increments the outgoing stream counter for the given transport keys.
-	 */
-	void incrementStreamCounter(Transaction txn, TransportId t, KeySetId k)
-			throws DbException;
-
 	/**
 	 * Merges the given metadata with the existing metadata for the given
 	 * group.
@@ -660,6 +714,20 @@ public interface DatabaseComponent extends TransactionManager {
 	void receiveRequest(Transaction txn, ContactId c, Request r)
 			throws DbException;
 
+	/**
+	 * Processes a summary from the given contact and returns the ack, which
+	 * must be sent to the contact over the connection that received the
+	 * summary.
+	 */
+	SummaryAck receiveSummary(Transaction txn, ContactId c, Summary s)
+			throws DbException;
+
+	/**
+	 * Processes a summary ack from the given contact.
+	 */
+	void receiveSummaryAck(Transaction txn, ContactId c, SummaryAck a)
+			throws DbException;
+
 	/**
 	 * Removes a contact (and all associated state) from the database.
 	 */
@@ -750,6 +818,14 @@ public interface DatabaseComponent extends TransactionManager {
 	 */
 	void setMessageShared(Transaction txn, MessageId m) throws DbException;
 
+	/**
+	 * Sets the sort key of the given message, which determines the message's
+	 * position in {@link #getMessageIdsInSortOrder(Transaction, GroupId,
+	 * byte[], int)}.
+	 */
+	void setMessageSortKey(Transaction txn, MessageId m, byte[] sortKey)
+			throws DbException;
+
 	/**
 	 * Sets the validation and delivery state of the given message.
 	 */
@@ -775,13 +851,6 @@ public interface DatabaseComponent extends TransactionManager {
 	void setHandshakeKeyPair(Transaction txn, AuthorId local,
 			PublicKey publicKey, PrivateKey privateKey) throws DbException;
 
-	/**
-	 * Sets the reordering window for the given transport keys in the given
-	 * time period.
-	 */
-	void setReorderingWindow(Transaction txn, KeySetId k, TransportId t,
-			long timePeriod, long base, byte[] bitmap) throws DbException;
-
 	/**
 	 * Sets the versions of the sync protocol supported by the given contact.
 	 */
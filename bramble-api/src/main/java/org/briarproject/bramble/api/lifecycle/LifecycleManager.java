@@ -8,6 +8,8 @@ import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.system.Wakeful;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -61,9 +63,22 @@ public interface LifecycleManager {
 	/**
 	 * Registers a {@link Service} to be started and stopped. This method
 	 * should be called before {@link #startServices(SecretKey)}.
+	 * <p>
+	 * The service will be started after all services registered before it
+	 * have started.
 	 */
 	void registerService(Service s);
 
+	/**
+	 * Registers a {@link Service} to be started and stopped. This method
+	 * should be called before {@link #startServices(SecretKey)}.
+	 * <p>
+	 * The service will be started after the given services, which must
+	 * already be registered, have started. It may be started concurrently
+	 * with any other services.
+	 */
+	void registerService(Service s, Collection<Service> dependencies);
+
 	/**
 	 * Registers an {@link ExecutorService} to be shut down. This method
 	 * should be called before {@link #startServices(SecretKey)}.
@@ -112,6 +127,12 @@ public interface LifecycleManager {
 	 */
 	LifecycleState getLifecycleState();
 
+	/**
+	 * Returns the steps that have been taken to start the app, sorted by
+	 * start time.
+	 */
+	List<StartupStep> getStartupTimeline();
+
 	interface OpenDatabaseHook {
 		/**
 		 * Called when the database is being opened, before
@@ -0,0 +1,60 @@
+package org.briarproject.bramble.api.lifecycle;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A step taken by the {@link LifecycleManager} while starting the app, such
+ * as opening the database, calling an
+ * {@link LifecycleManager.OpenDatabaseHook OpenDatabaseHook} or starting a
+ * {@link Service}.
+ */
+@Immutable
+@NotNullByDefault
+public class StartupStep {
+
+	public enum Type {
+		OPEN_DATABASE,
+		OPEN_DATABASE_HOOK,
+		SERVICE
+	}
+
+	private final Type type;
+	private final String name;
+	private final long start, duration;
+
+	public StartupStep(Type type, String name, long start, long duration) {
+		this.type = type;
+		this.name = name;
+		this.start = start;
+		this.duration = duration;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the name of the step, which is the simple class name of the
+	 * database component, hook or service.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the time in milliseconds when the step started, relative to
+	 * the start of {@link LifecycleManager#startServices}.
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the duration of the step in milliseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+}
@@ -0,0 +1,31 @@
+package org.briarproject.bramble.api.lifecycle.event;
+
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.bramble.api.lifecycle.StartupStep;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An event that is broadcast when all services have started, containing
+ * the steps that were taken to start the app.
+ */
+@Immutable
+@NotNullByDefault
+public class StartupTimelineEvent extends Event {
+
+	private final List<StartupStep> timeline;
+
+	public StartupTimelineEvent(List<StartupStep> timeline) {
+		this.timeline = timeline;
+	}
+
+	/**
+	 * Returns the startup steps, sorted by start time.
+	 */
+	public List<StartupStep> getTimeline() {
+		return timeline;
+	}
+}
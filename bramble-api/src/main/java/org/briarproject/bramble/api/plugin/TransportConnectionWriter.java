@@ -22,6 +22,13 @@ public interface TransportConnectionWriter {
 	 */
 	int getMaxIdleTime();
 
+	/**
+	 * Returns the maximum time in milliseconds for which data may be held
+	 * back before flushing, so that more data can be packed into the same
+	 * frames. Zero means data should be flushed as soon as possible.
+	 */
+	int getMaxFlushDelay();
+
 	/**
 	 * Returns true if the transport is lossy and cheap.
 	 */
@@ -37,6 +37,15 @@ public abstract class AbstractDuplexTransportConnection
 	protected abstract void closeConnection(boolean exception)
 			throws IOException;
 
+	/**
+	 * Returns the maximum time in milliseconds for which data may be held
+	 * back before flushing. Subclasses may override this method for
+	 * transports where filling frames is more important than latency.
+	 */
+	protected int getMaxFlushDelay() {
+		return 0;
+	}
+
 	@Override
 	public TransportConnectionReader getReader() {
 		return reader;
@@ -79,6 +88,11 @@ public abstract class AbstractDuplexTransportConnection
 			return plugin.getMaxIdleTime();
 		}
 
+		@Override
+		public int getMaxFlushDelay() {
+			return AbstractDuplexTransportConnection.this.getMaxFlushDelay();
+		}
+
 		@Override
 		public boolean isLossyAndCheap() {
 			return false;
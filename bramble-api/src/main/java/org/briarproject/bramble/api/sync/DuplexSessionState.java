@@ -0,0 +1,15 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+/**
+ * State shared by the incoming and outgoing sessions of a duplex connection,
+ * such as the short IDs given to the messages offered or sent in each
+ * direction, and replies to records received by the incoming session that
+ * must be sent by the outgoing session. The state is opaque to callers: it's
+ * created by {@link SyncSessionFactory#createDuplexSessionState()} and passed
+ * to the connection's sessions.
+ */
+@NotNullByDefault
+public interface DuplexSessionState {
+}
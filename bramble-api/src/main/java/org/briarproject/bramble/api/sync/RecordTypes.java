@@ -11,4 +11,33 @@ public interface RecordTypes {
 	byte REQUEST = 3;
 	byte VERSIONS = 4;
 	byte PRIORITY = 5;
+
+	/**
+	 * A message record with a compressed payload. Only sent to peers that
+	 * support {@link SyncConstants#COMPRESSION_VERSION}.
+	 */
+	byte COMPRESSED_MESSAGE = 6;
+
+	/**
+	 * A {@link Summary}. Only sent to peers that support
+	 * {@link SyncConstants#SUMMARY_VERSION}.
+	 */
+	byte SUMMARY = 7;
+
+	/**
+	 * A {@link SummaryAck}, sent in reply to a summary.
+	 */
+	byte SUMMARY_ACK = 8;
+
+	/**
+	 * An ack record that may refer to messages by their short IDs. Only sent
+	 * to peers that support {@link SyncConstants#SHORT_ID_VERSION}.
+	 */
+	byte COMPACT_ACK = 9;
+
+	/**
+	 * A request record that may refer to messages by their short IDs. Only
+	 * sent to peers that support {@link SyncConstants#SHORT_ID_VERSION}.
+	 */
+	byte COMPACT_REQUEST = 10;
 }
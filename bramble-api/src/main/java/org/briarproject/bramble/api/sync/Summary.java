@@ -0,0 +1,54 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A record summarising the {@link Message Messages} in a group that the
+ * sender would otherwise offer to the recipient.
+ * <p>
+ * The summary is a Bloom filter containing the IDs of the messages. The
+ * recipient replies with a {@link SummaryAck} describing which of its own
+ * messages in the group match the filter, divided into buckets by the
+ * leading bits of the message IDs.
+ */
+@Immutable
+@NotNullByDefault
+public class Summary {
+
+	private final GroupId groupId;
+	private final int bucketBits, hashes;
+	private final byte[] filter;
+
+	public Summary(GroupId groupId, int bucketBits, int hashes,
+			byte[] filter) {
+		this.groupId = groupId;
+		this.bucketBits = bucketBits;
+		this.hashes = hashes;
+		this.filter = filter;
+	}
+
+	public GroupId getGroupId() {
+		return groupId;
+	}
+
+	/**
+	 * Returns the number of leading bits of each message ID that select the
+	 * bucket the message belongs to.
+	 */
+	public int getBucketBits() {
+		return bucketBits;
+	}
+
+	/**
+	 * Returns the number of bits of the filter that are set for each message.
+	 */
+	public int getHashes() {
+		return hashes;
+	}
+
+	public byte[] getFilter() {
+		return filter;
+	}
+}
@@ -0,0 +1,42 @@
+package org.briarproject.bramble.api.sync;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A record replying to a {@link Summary}. For each bucket of the summary, it
+ * contains a digest of the recipient's messages in the bucket that match the
+ * summary's filter. If a digest matches the sender's digest of the messages
+ * it summarised, the recipient has all of the messages in that bucket.
+ */
+@Immutable
+@NotNullByDefault
+public class SummaryAck {
+
+	private final GroupId groupId;
+	private final int bucketBits;
+	private final byte[] digests;
+
+	public SummaryAck(GroupId groupId, int bucketBits, byte[] digests) {
+		this.groupId = groupId;
+		this.bucketBits = bucketBits;
+		this.digests = digests;
+	}
+
+	public GroupId getGroupId() {
+		return groupId;
+	}
+
+	public int getBucketBits() {
+		return bucketBits;
+	}
+
+	/**
+	 * Returns the digests of the buckets, each
+	 * {@link SyncConstants#SUMMARY_DIGEST_BYTES} long, in bucket order.
+	 */
+	public byte[] getDigests() {
+		return digests;
+	}
+}
@@ -4,7 +4,7 @@ import org.briarproject.bramble.api.UniqueId;
 
 import java.util.List;
 
-import static java.util.Collections.singletonList;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static org.briarproject.bramble.api.record.Record.MAX_RECORD_PAYLOAD_BYTES;
 
@@ -15,10 +15,37 @@ public interface SyncConstants {
 	 */
 	byte PROTOCOL_VERSION = 0;
 
+	/**
+	 * The version of the sync protocol that adds compressed message records.
+	 * Records still carry {@link #PROTOCOL_VERSION} in their headers, but a
+	 * peer that supports this version can read compressed message records,
+	 * so they may be sent to it.
+	 */
+	byte COMPRESSION_VERSION = 1;
+
+	/**
+	 * The version of the sync protocol that adds summary and summary ack
+	 * records. A peer that supports this version can reply to summaries, so
+	 * they may be sent to it.
+	 */
+	byte SUMMARY_VERSION = 2;
+
+	/**
+	 * The version of the sync protocol that adds compact ack and request
+	 * records, which may refer to messages by short IDs. Each peer gives the
+	 * messages it offers or sends over a duplex connection short IDs in the
+	 * order they're written to the connection. A peer that supports this
+	 * version can read compact records, so they may be sent to it over duplex
+	 * connections.
+	 */
+	byte SHORT_ID_VERSION = 3;
+
 	/**
 	 * The versions of the sync protocol this peer supports.
 	 */
-	List<Byte> SUPPORTED_VERSIONS = singletonList(PROTOCOL_VERSION);
+	List<Byte> SUPPORTED_VERSIONS =
+			asList(PROTOCOL_VERSION, COMPRESSION_VERSION, SUMMARY_VERSION,
+					SHORT_ID_VERSION);
 
 	/**
 	 * The maximum length of a group descriptor in bytes.
@@ -45,6 +72,41 @@ public interface SyncConstants {
 	 */
 	int MAX_MESSAGE_IDS = MAX_RECORD_PAYLOAD_BYTES / UniqueId.LENGTH;
 
+	/**
+	 * The minimum number of messages in a group that must be waiting to be
+	 * offered to a contact before they're summarised instead. Smaller
+	 * numbers of messages are cheap enough to offer individually.
+	 */
+	int MIN_SUMMARY_IDS = 256;
+
+	/**
+	 * The maximum number of messages in a summary. Larger numbers of
+	 * messages are offered individually.
+	 */
+	int MAX_SUMMARY_IDS = 32 * 1024;
+
+	/**
+	 * The maximum number of bits of each message ID used for choosing the
+	 * message's bucket in a summary.
+	 */
+	int MAX_SUMMARY_BUCKET_BITS = 12;
+
+	/**
+	 * The maximum number of bits set in a summary's filter for each message.
+	 */
+	int MAX_SUMMARY_HASHES = 7;
+
+	/**
+	 * The length of the digest of each bucket in a summary ack, in bytes.
+	 */
+	int SUMMARY_DIGEST_BYTES = 8;
+
+	/**
+	 * The maximum number of message IDs given short IDs in each direction
+	 * over a duplex connection.
+	 */
+	int MAX_SHORT_IDS = 8 * 1024;
+
 	/**
 	 * The maximum number of versions of the sync protocol a peer may support
 	 * simultaneously.
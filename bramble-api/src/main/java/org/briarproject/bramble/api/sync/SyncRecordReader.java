@@ -32,4 +32,18 @@ public interface SyncRecordReader {
 	boolean hasPriority() throws IOException;
 
 	Priority readPriority() throws IOException;
+
+	boolean hasSummary() throws IOException;
+
+	Summary readSummary() throws IOException;
+
+	boolean hasSummaryAck() throws IOException;
+
+	SummaryAck readSummaryAck() throws IOException;
+
+	/**
+	 * Releases any resources held by the reader for decompressing messages.
+	 * This doesn't close the underlying stream.
+	 */
+	void release();
 }
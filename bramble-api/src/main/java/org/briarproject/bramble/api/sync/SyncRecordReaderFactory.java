@@ -8,4 +8,13 @@ import java.io.InputStream;
 public interface SyncRecordReaderFactory {
 
 	SyncRecordReader createRecordReader(InputStream in);
+
+	/**
+	 * Creates a reader for the incoming side of a duplex connection, which
+	 * numbers the messages offered or sent by the peer and resolves the
+	 * short IDs of messages offered or sent to the peer, using the given
+	 * state shared with the connection's writer.
+	 */
+	SyncRecordReader createRecordReader(InputStream in,
+			DuplexSessionState state);
 }
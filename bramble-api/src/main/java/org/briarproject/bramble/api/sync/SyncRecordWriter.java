@@ -19,7 +19,33 @@ public interface SyncRecordWriter {
 
 	void writePriority(Priority p) throws IOException;
 
+	void writeSummary(Summary s) throws IOException;
+
+	void writeSummaryAck(SummaryAck a) throws IOException;
+
+	/**
+	 * Sets whether messages may be compressed. Compression must only be
+	 * enabled if the recipient supports
+	 * {@link SyncConstants#COMPRESSION_VERSION}. It's disabled by default.
+	 */
+	void setCompressionEnabled(boolean enabled);
+
+	/**
+	 * Sets whether acks and requests may refer to messages by their short
+	 * IDs. Short IDs must only be enabled if the recipient supports
+	 * {@link SyncConstants#SHORT_ID_VERSION}. They're disabled by default,
+	 * and have no effect unless the writer was created with a
+	 * {@link DuplexSessionState}.
+	 */
+	void setShortIdsEnabled(boolean enabled);
+
 	void flush() throws IOException;
 
 	long getBytesWritten();
+
+	/**
+	 * Releases any resources held by the writer for compressing messages.
+	 * This doesn't flush or close the underlying stream.
+	 */
+	void release();
 }
@@ -8,4 +8,13 @@ import java.io.OutputStream;
 public interface SyncRecordWriterFactory {
 
 	SyncRecordWriter createRecordWriter(OutputStream out);
+
+	/**
+	 * Creates a writer for the outgoing side of a duplex connection, which
+	 * numbers the messages offered or sent to the peer and finds the short
+	 * IDs of messages offered or sent by the peer, using the given state
+	 * shared with the connection's reader.
+	 */
+	SyncRecordWriter createRecordWriter(OutputStream out,
+			DuplexSessionState state);
 }
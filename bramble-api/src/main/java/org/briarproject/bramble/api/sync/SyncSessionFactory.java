@@ -18,6 +18,20 @@ public interface SyncSessionFactory {
 	SyncSession createIncomingSession(ContactId c, InputStream in,
 			PriorityHandler handler);
 
+	/**
+	 * Creates the state to be shared by the incoming and outgoing sessions
+	 * of a duplex connection.
+	 */
+	DuplexSessionState createDuplexSessionState();
+
+	/**
+	 * Creates a session for receiving data from a contact over a duplex
+	 * transport. The given {@link DuplexSessionState} must be shared with
+	 * the outgoing session for the same connection.
+	 */
+	SyncSession createIncomingSession(ContactId c, InputStream in,
+			PriorityHandler handler, DuplexSessionState state);
+
 	/**
 	 * Creates a session for sending data to a contact over a simplex transport.
 	 *
@@ -36,7 +50,16 @@ public interface SyncSessionFactory {
 			long maxLatency, StreamWriter streamWriter,
 			OutgoingSessionRecord sessionRecord);
 
+	/**
+	 * Creates a session for sending data to a contact over a duplex
+	 * transport. While messages are being sent in bulk, the session may hold
+	 * back data for up to {@code maxFlushDelay} milliseconds before flushing
+	 * the stream, so that more data can be packed into each frame. The given
+	 * {@link DuplexSessionState} must be shared with the incoming session
+	 * for the same connection.
+	 */
 	SyncSession createDuplexOutgoingSession(ContactId c, TransportId t,
-			long maxLatency, int maxIdleTime, StreamWriter streamWriter,
-			@Nullable Priority priority);
+			long maxLatency, int maxIdleTime, int maxFlushDelay,
+			StreamWriter streamWriter, @Nullable Priority priority,
+			DuplexSessionState state);
 }
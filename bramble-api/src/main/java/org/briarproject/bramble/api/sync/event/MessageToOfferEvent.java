@@ -0,0 +1,26 @@
+package org.briarproject.bramble.api.sync.event;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An event that is broadcast when one or more messages that were summarised
+ * for a contact need to be offered to the contact individually.
+ */
+@Immutable
+@NotNullByDefault
+public class MessageToOfferEvent extends Event {
+
+	private final ContactId contactId;
+
+	public MessageToOfferEvent(ContactId contactId) {
+		this.contactId = contactId;
+	}
+
+	public ContactId getContactId() {
+		return contactId;
+	}
+}
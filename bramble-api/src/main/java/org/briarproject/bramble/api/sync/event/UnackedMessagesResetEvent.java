@@ -0,0 +1,27 @@
+package org.briarproject.bramble.api.sync.event;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.event.Event;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An event that is broadcast when the transmission data of all the messages
+ * waiting to be acked by a contact is reset, so the messages may be sent to
+ * the contact again.
+ */
+@Immutable
+@NotNullByDefault
+public class UnackedMessagesResetEvent extends Event {
+
+	private final ContactId contactId;
+
+	public UnackedMessagesResetEvent(ContactId contactId) {
+		this.contactId = contactId;
+	}
+
+	public ContactId getContactId() {
+		return contactId;
+	}
+}
@@ -10,6 +10,8 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.emptyList;
+
 @Module
 public class CleanupModule {
 
@@ -22,7 +24,8 @@ public class CleanupModule {
 	@Singleton
 	CleanupManager provideCleanupManager(LifecycleManager lifecycleManager,
 			EventBus eventBus, CleanupManagerImpl cleanupManager) {
-		lifecycleManager.registerService(cleanupManager);
+		// The service only schedules work, so it has no dependencies
+		lifecycleManager.registerService(cleanupManager, emptyList());
 		eventBus.addListener(cleanupManager);
 		return cleanupManager;
 	}
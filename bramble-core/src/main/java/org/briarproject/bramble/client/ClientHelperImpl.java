@@ -235,6 +235,19 @@ class ClientHelperImpl implements ClientHelper {
 		return parsed;
 	}
 
+	@Override
+	public Map<MessageId, BdfDictionary> getMessageMetadataAsDictionary(
+			Transaction txn, GroupId g, BdfDictionary query,
+			long minTimeReceived) throws DbException, FormatException {
+		Metadata metadata = metadataEncoder.encode(query);
+		Map<MessageId, Metadata> raw =
+				db.getMessageMetadata(txn, g, metadata, minTimeReceived);
+		Map<MessageId, BdfDictionary> parsed = new HashMap<>(raw.size());
+		for (Entry<MessageId, Metadata> e : raw.entrySet())
+			parsed.put(e.getKey(), metadataParser.parse(e.getValue()));
+		return parsed;
+	}
+
 	@Override
 	public void mergeGroupMetadata(GroupId g, BdfDictionary metadata)
 			throws DbException, FormatException {
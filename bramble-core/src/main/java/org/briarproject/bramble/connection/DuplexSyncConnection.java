@@ -9,7 +9,9 @@ import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.plugin.duplex.DuplexTransportConnection;
 import org.briarproject.bramble.api.properties.TransportProperties;
 import org.briarproject.bramble.api.properties.TransportPropertyManager;
+import org.briarproject.bramble.api.sync.DuplexSessionState;
 import org.briarproject.bramble.api.sync.Priority;
+import org.briarproject.bramble.api.sync.PriorityHandler;
 import org.briarproject.bramble.api.sync.SyncSession;
 import org.briarproject.bramble.api.sync.SyncSessionFactory;
 import org.briarproject.bramble.api.transport.KeyManager;
@@ -20,6 +22,7 @@ import org.briarproject.bramble.api.transport.StreamWriterFactory;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
@@ -37,6 +40,7 @@ abstract class DuplexSyncConnection extends SyncConnection
 	final TransportConnectionWriter writer;
 	final TransportProperties remote;
 
+	private final DuplexSessionState sessionState;
 	private final Object interruptLock = new Object();
 
 	@GuardedBy("interruptLock")
@@ -83,6 +87,7 @@ abstract class DuplexSyncConnection extends SyncConnection
 		reader = connection.getReader();
 		writer = connection.getWriter();
 		remote = connection.getRemoteProperties();
+		sessionState = syncSessionFactory.createDuplexSessionState();
 	}
 
 	void onReadError(boolean recognised) {
@@ -96,6 +101,17 @@ abstract class DuplexSyncConnection extends SyncConnection
 		disposeOnError(writer);
 	}
 
+	@Override
+	SyncSession createIncomingSession(StreamContext ctx,
+			TransportConnectionReader r, PriorityHandler handler)
+			throws IOException {
+		InputStream streamReader = streamReaderFactory.createStreamReader(
+				r.getInputStream(), ctx);
+		ContactId c = requireNonNull(ctx.getContactId());
+		return syncSessionFactory.createIncomingSession(c, streamReader,
+				handler, sessionState);
+	}
+
 	SyncSession createDuplexOutgoingSession(StreamContext ctx,
 			TransportConnectionWriter w, @Nullable Priority priority)
 			throws IOException {
@@ -104,6 +120,6 @@ abstract class DuplexSyncConnection extends SyncConnection
 		ContactId c = requireNonNull(ctx.getContactId());
 		return syncSessionFactory.createDuplexOutgoingSession(c,
 				ctx.getTransportId(), w.getMaxLatency(), w.getMaxIdleTime(),
-				streamWriter, priority);
+				w.getMaxFlushDelay(), streamWriter, priority, sessionState);
 	}
 }
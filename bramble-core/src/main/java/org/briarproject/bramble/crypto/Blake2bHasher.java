@@ -0,0 +1,99 @@
+package org.briarproject.bramble.crypto;
+
+import org.bouncycastle.crypto.Digest;
+import org.briarproject.bramble.api.crypto.Hasher;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.lang.Math.min;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.writeUint32;
+import static org.briarproject.bramble.util.StringUtils.toUtf8;
+
+/**
+ * A {@link Hasher} that prefixes the label and each input with its length
+ * and feeds them to a BLAKE2b digest.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class Blake2bHasher implements Hasher {
+
+	private static final int CHUNK_LENGTH = 1024;
+
+	private final Digest digest;
+	private final byte[] labelBytes;
+	private final byte[] length = new byte[INT_32_BYTES];
+
+	@Nullable
+	private byte[] chunk = null; // Used for buffers without backing arrays
+	private boolean started = false;
+
+	/**
+	 * @param digest a digest that has been reset and is not shared with any
+	 * other object
+	 */
+	Blake2bHasher(Digest digest, String label) {
+		this.digest = digest;
+		labelBytes = toUtf8(label);
+	}
+
+	@Override
+	public void update(byte[] input) {
+		update(input, 0, input.length);
+	}
+
+	@Override
+	public void update(byte[] input, int off, int len) {
+		if (off < 0 || len < 0 || off + len > input.length)
+			throw new IllegalArgumentException();
+		start();
+		updateLength(len);
+		digest.update(input, off, len);
+	}
+
+	@Override
+	public void update(ByteBuffer input) {
+		start();
+		int remaining = input.remaining();
+		updateLength(remaining);
+		if (input.hasArray()) {
+			int off = input.arrayOffset() + input.position();
+			digest.update(input.array(), off, remaining);
+			input.position(input.limit());
+		} else {
+			if (chunk == null) chunk = new byte[CHUNK_LENGTH];
+			while (input.hasRemaining()) {
+				int len = min(chunk.length, input.remaining());
+				input.get(chunk, 0, len);
+				digest.update(chunk, 0, len);
+			}
+		}
+	}
+
+	@Override
+	public byte[] getHash() {
+		start();
+		byte[] output = new byte[digest.getDigestSize()];
+		// Finishing the digest also resets it
+		digest.doFinal(output, 0);
+		started = false;
+		return output;
+	}
+
+	private void start() {
+		if (!started) {
+			updateLength(labelBytes.length);
+			digest.update(labelBytes, 0, labelBytes.length);
+			started = true;
+		}
+	}
+
+	private void updateLength(int len) {
+		writeUint32(len, length, 0);
+		digest.update(length, 0, length.length);
+	}
+}
@@ -0,0 +1,62 @@
+package org.briarproject.bramble.crypto;
+
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.ChaCha20Poly1305;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.security.GeneralSecurityException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
+
+/**
+ * An authenticated cipher that uses BouncyCastle's implementation of
+ * ChaCha20-Poly1305 as specified in RFC 8439, with a 96-bit IV. The MAC is
+ * appended to the ciphertext.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class ChaCha20Poly1305AuthenticatedCipher implements AuthenticatedCipher {
+
+	private final ChaCha20Poly1305 cipher = new ChaCha20Poly1305();
+
+	private boolean encrypting;
+
+	@Override
+	public void init(boolean encrypt, SecretKey key, byte[] iv)
+			throws GeneralSecurityException {
+		encrypting = encrypt;
+		KeyParameter k = new KeyParameter(key.getBytes());
+		try {
+			cipher.init(encrypt, new AEADParameters(k, MAC_LENGTH * 8, iv));
+		} catch (IllegalArgumentException e) {
+			throw new GeneralSecurityException(e.getMessage());
+		}
+	}
+
+	@Override
+	public int process(byte[] input, int inputOff, int len, byte[] output,
+			int outputOff) throws GeneralSecurityException {
+		if (!encrypting && len < MAC_LENGTH)
+			throw new GeneralSecurityException("Invalid MAC");
+		try {
+			int processed = cipher.processBytes(input, inputOff, len, output,
+					outputOff);
+			return processed + cipher.doFinal(output, outputOff + processed);
+		} catch (InvalidCipherTextException e) {
+			throw new GeneralSecurityException("Invalid MAC");
+		} catch (DataLengthException | IllegalStateException e) {
+			throw new GeneralSecurityException(e.getMessage());
+		}
+	}
+
+	@Override
+	public int getMacBytes() {
+		return MAC_LENGTH;
+	}
+}
@@ -0,0 +1,102 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
+
+/**
+ * Creates ChaCha20-Poly1305 ciphers. If the platform provides an
+ * implementation that produces the same output as BouncyCastle's, the
+ * platform's implementation is used, as it may be hardware-accelerated.
+ * Otherwise BouncyCastle's implementation is used.
+ */
+@ThreadSafe
+@NotNullByDefault
+class ChaCha20Poly1305CipherFactory {
+
+	private static final Logger LOG =
+			getLogger(ChaCha20Poly1305CipherFactory.class.getName());
+
+	/**
+	 * The length of a ChaCha20-Poly1305 IV in bytes.
+	 */
+	static final int IV_BYTES = 12;
+
+	/**
+	 * Names of the transformation on the JVM and Android respectively.
+	 */
+	private static final String[] TRANSFORMATIONS =
+			{"ChaCha20-Poly1305", "ChaCha20/Poly1305/NoPadding"};
+
+	@Nullable
+	private static final String JDK_TRANSFORMATION = findJdkTransformation();
+
+	private ChaCha20Poly1305CipherFactory() {
+	}
+
+	static AuthenticatedCipher createCipher() {
+		if (JDK_TRANSFORMATION != null) {
+			try {
+				return new JdkChaCha20Poly1305AuthenticatedCipher(
+						JDK_TRANSFORMATION);
+			} catch (GeneralSecurityException e) {
+				// Fall through
+			}
+		}
+		return new ChaCha20Poly1305AuthenticatedCipher();
+	}
+
+	/**
+	 * Returns true if {@link #createCipher()} returns the platform's
+	 * implementation.
+	 */
+	static boolean isJdkCipherAvailable() {
+		return JDK_TRANSFORMATION != null;
+	}
+
+	@Nullable
+	private static String findJdkTransformation() {
+		for (String transformation : TRANSFORMATIONS) {
+			try {
+				AuthenticatedCipher jdk =
+						new JdkChaCha20Poly1305AuthenticatedCipher(
+								transformation);
+				if (producesSameOutput(jdk,
+						new ChaCha20Poly1305AuthenticatedCipher())) {
+					if (LOG.isLoggable(INFO))
+						LOG.info("Using platform cipher " + transformation);
+					return transformation;
+				}
+			} catch (GeneralSecurityException e) {
+				// Not supported, try the next name
+			}
+		}
+		LOG.info("Using BouncyCastle ChaCha20-Poly1305");
+		return null;
+	}
+
+	private static boolean producesSameOutput(AuthenticatedCipher a,
+			AuthenticatedCipher b) throws GeneralSecurityException {
+		SecretKey key = new SecretKey(new byte[SecretKey.LENGTH]);
+		byte[] iv = new byte[IV_BYTES];
+		byte[] input = new byte[100];
+		for (int i = 0; i < input.length; i++) input[i] = (byte) i;
+		byte[] outputA = new byte[input.length + MAC_LENGTH];
+		byte[] outputB = new byte[input.length + MAC_LENGTH];
+		a.init(true, key, iv);
+		a.process(input, 0, input.length, outputA, 0);
+		b.init(true, key, iv);
+		b.process(input, 0, input.length, outputB, 0);
+		return Arrays.equals(outputA, outputB);
+	}
+}
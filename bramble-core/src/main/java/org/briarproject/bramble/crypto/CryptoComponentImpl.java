@@ -6,13 +6,13 @@ import net.i2p.crypto.eddsa.KeyPairGenerator;
 
 import org.bouncycastle.crypto.CryptoException;
 import org.bouncycastle.crypto.Digest;
-import org.bouncycastle.crypto.digests.Blake2bDigest;
 import org.bouncycastle.crypto.digests.SHA3Digest;
 import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.crypto.AgreementPrivateKey;
 import org.briarproject.bramble.api.crypto.AgreementPublicKey;
 import org.briarproject.bramble.api.crypto.CryptoComponent;
 import org.briarproject.bramble.api.crypto.DecryptionException;
+import org.briarproject.bramble.api.crypto.Hasher;
 import org.briarproject.bramble.api.crypto.KeyPair;
 import org.briarproject.bramble.api.crypto.KeyParser;
 import org.briarproject.bramble.api.crypto.KeyStrengthener;
@@ -67,12 +67,23 @@ class CryptoComponentImpl implements CryptoComponent {
 	private static final byte ONION_HS_PROTOCOL_VERSION = 3;
 	private static final int ONION_CHECKSUM_BYTES = 2;
 
+	/**
+	 * The maximum number of decoded public keys to keep for verifying
+	 * signatures. Each key takes a few kilobytes including its
+	 * precomputed tables.
+	 */
+	private static final int MAX_CACHED_VERIFICATION_KEYS = 256;
+
 	private final SecureRandom secureRandom;
 	private final PasswordBasedKdf passwordBasedKdf;
 	private final Curve25519 curve25519;
 	private final KeyPairGenerator signatureKeyPairGenerator;
 	private final KeyParser agreementKeyParser, signatureKeyParser;
 	private final MessageEncrypter messageEncrypter;
+	private final ReusableDigests reusableDigests = new ReusableDigests();
+	private final VerificationKeyCache verificationKeys =
+			new VerificationKeyCache(EdSignature.CURVE_SPEC,
+					MAX_CACHED_VERIFICATION_KEYS);
 
 	@Inject
 	CryptoComponentImpl(SecureRandomProvider secureRandomProvider,
@@ -296,7 +307,7 @@ class CryptoComponentImpl implements CryptoComponent {
 			throws GeneralSecurityException {
 		if (!publicKey.getKeyType().equals(KEY_TYPE_SIGNATURE))
 			throw new IllegalArgumentException();
-		Signature sig = new EdSignature();
+		Signature sig = new EdSignature(verificationKeys);
 		sig.initVerify(publicKey);
 		updateSignature(sig, label, signed);
 		return sig.verify(signature);
@@ -316,8 +327,16 @@ class CryptoComponentImpl implements CryptoComponent {
 
 	@Override
 	public byte[] hash(String label, byte[]... inputs) {
+		return digest(reusableDigests.getDigest(), label, inputs);
+	}
+
+	@Override
+	public byte[] mac(String label, SecretKey macKey, byte[]... inputs) {
+		return digest(reusableDigests.getKeyedDigest(macKey), label, inputs);
+	}
+
+	private byte[] digest(Digest digest, String label, byte[]... inputs) {
 		byte[] labelBytes = StringUtils.toUtf8(label);
-		Digest digest = new Blake2bDigest(256);
 		byte[] length = new byte[INT_32_BYTES];
 		ByteUtils.writeUint32(labelBytes.length, length, 0);
 		digest.update(length, 0, length.length);
@@ -333,21 +352,14 @@ class CryptoComponentImpl implements CryptoComponent {
 	}
 
 	@Override
-	public byte[] mac(String label, SecretKey macKey, byte[]... inputs) {
-		byte[] labelBytes = StringUtils.toUtf8(label);
-		Digest mac = new Blake2bDigest(macKey.getBytes(), 32, null, null);
-		byte[] length = new byte[INT_32_BYTES];
-		ByteUtils.writeUint32(labelBytes.length, length, 0);
-		mac.update(length, 0, length.length);
-		mac.update(labelBytes, 0, labelBytes.length);
-		for (byte[] input : inputs) {
-			ByteUtils.writeUint32(input.length, length, 0);
-			mac.update(length, 0, length.length);
-			mac.update(input, 0, input.length);
-		}
-		byte[] output = new byte[mac.getDigestSize()];
-		mac.doFinal(output, 0);
-		return output;
+	public Hasher createHasher(String label) {
+		return new Blake2bHasher(ReusableDigests.createDigest(), label);
+	}
+
+	@Override
+	public Hasher createMac(String label, SecretKey macKey) {
+		return new Blake2bHasher(ReusableDigests.createKeyedDigest(macKey),
+				label);
 	}
 
 	@Override
@@ -411,10 +423,10 @@ class CryptoComponentImpl implements CryptoComponent {
 	public byte[] decryptWithPassword(byte[] input, String password,
 			@Nullable KeyStrengthener keyStrengthener)
 			throws DecryptionException {
-		AuthenticatedCipher cipher = new XSalsa20Poly1305AuthenticatedCipher();
-		int macBytes = cipher.getMacBytes();
 		// The input contains the format version, salt, cost parameter, IV,
 		// ciphertext and MAC
+		AuthenticatedCipher cipher = new XSalsa20Poly1305AuthenticatedCipher();
+		int macBytes = cipher.getMacBytes();
 		if (input.length < 1 + PBKDF_SALT_BYTES + INT_32_BYTES
 				+ STORAGE_IV_BYTES + macBytes) {
 			throw new DecryptionException(INVALID_CIPHERTEXT);
@@ -468,6 +480,55 @@ class CryptoComponentImpl implements CryptoComponent {
 		}
 	}
 
+	@Override
+	public byte[] encryptWithKey(byte[] input, SecretKey key) {
+		// The IV is chosen at random, which is safe for ChaCha20-Poly1305
+		// until about 2^32 plaintexts have been encrypted with the same key.
+		// The transport key journal writes one record per stream with each
+		// key, far fewer than that
+		AuthenticatedCipher cipher =
+				ChaCha20Poly1305CipherFactory.createCipher();
+		byte[] iv = new byte[ChaCha20Poly1305CipherFactory.IV_BYTES];
+		secureRandom.nextBytes(iv);
+		// The output contains the IV, ciphertext and MAC
+		byte[] output =
+				new byte[iv.length + input.length + cipher.getMacBytes()];
+		arraycopy(iv, 0, output, 0, iv.length);
+		try {
+			cipher.init(true, key, iv);
+			cipher.process(input, 0, input.length, output, iv.length);
+			return output;
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public byte[] decryptWithKey(byte[] input, SecretKey key)
+			throws DecryptionException {
+		AuthenticatedCipher cipher =
+				ChaCha20Poly1305CipherFactory.createCipher();
+		int macBytes = cipher.getMacBytes();
+		int ivBytes = ChaCha20Poly1305CipherFactory.IV_BYTES;
+		if (input.length < ivBytes + macBytes)
+			throw new DecryptionException(INVALID_CIPHERTEXT);
+		byte[] iv = new byte[ivBytes];
+		arraycopy(input, 0, iv, 0, iv.length);
+		try {
+			cipher.init(false, key, iv);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			int inputLen = input.length - iv.length;
+			byte[] output = new byte[inputLen - macBytes];
+			cipher.process(input, iv.length, inputLen, output, 0);
+			return output;
+		} catch (GeneralSecurityException e) {
+			throw new DecryptionException(INVALID_CIPHERTEXT);
+		}
+	}
+
 	@Override
 	public boolean isEncryptedWithStrengthenedKey(byte[] ciphertext) {
 		return ciphertext.length > 0 &&
@@ -16,6 +16,8 @@ import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
 
+import javax.annotation.Nullable;
+
 import static net.i2p.crypto.eddsa.EdDSAEngine.SIGNATURE_ALGORITHM;
 import static org.briarproject.bramble.api.crypto.CryptoConstants.KEY_TYPE_SIGNATURE;
 
@@ -24,12 +26,24 @@ class EdSignature implements Signature {
 
 	private static final Provider PROVIDER = new EdDSASecurityProvider();
 
-	private static final EdDSANamedCurveSpec CURVE_SPEC =
+	static final EdDSANamedCurveSpec CURVE_SPEC =
 			EdDSANamedCurveTable.getByName("Ed25519");
 
 	private final java.security.Signature signature;
+	@Nullable
+	private final VerificationKeyCache keyCache;
 
 	EdSignature() {
+		this(null);
+	}
+
+	/**
+	 * @param keyCache a cache of decoded public keys to use for verifying
+	 * signatures, or null if public keys should be decoded for each
+	 * signature
+	 */
+	EdSignature(@Nullable VerificationKeyCache keyCache) {
+		this.keyCache = keyCache;
 		try {
 			signature = java.security.Signature
 					.getInstance(SIGNATURE_ALGORITHM, PROVIDER);
@@ -51,8 +65,13 @@ class EdSignature implements Signature {
 	public void initVerify(PublicKey k) throws GeneralSecurityException {
 		if (!k.getKeyType().equals(KEY_TYPE_SIGNATURE))
 			throw new IllegalArgumentException();
-		EdDSAPublicKey publicKey = new EdDSAPublicKey(
-				new EdDSAPublicKeySpec(k.getEncoded(), CURVE_SPEC));
+		EdDSAPublicKey publicKey;
+		if (keyCache == null) {
+			publicKey = new EdDSAPublicKey(
+					new EdDSAPublicKeySpec(k.getEncoded(), CURVE_SPEC));
+		} else {
+			publicKey = keyCache.getPublicKey(k);
+		}
 		signature.initVerify(publicKey);
 	}
 
@@ -0,0 +1,64 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.security.GeneralSecurityException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
+
+/**
+ * An authenticated cipher that uses the platform's implementation of
+ * ChaCha20-Poly1305, which may use hardware acceleration. The output is the
+ * same as {@link ChaCha20Poly1305AuthenticatedCipher}.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class JdkChaCha20Poly1305AuthenticatedCipher implements AuthenticatedCipher {
+
+	private static final String KEY_ALGORITHM = "ChaCha20";
+
+	private final Cipher cipher;
+
+	private boolean encrypting;
+
+	/**
+	 * @param transformation the name of the transformation, which differs
+	 * between platforms
+	 * @throws GeneralSecurityException if the platform does not support the
+	 * transformation
+	 */
+	JdkChaCha20Poly1305AuthenticatedCipher(String transformation)
+			throws GeneralSecurityException {
+		cipher = Cipher.getInstance(transformation);
+	}
+
+	@Override
+	public void init(boolean encrypt, SecretKey key, byte[] iv)
+			throws GeneralSecurityException {
+		encrypting = encrypt;
+		SecretKeySpec k = new SecretKeySpec(key.getBytes(), KEY_ALGORITHM);
+		cipher.init(encrypt ? ENCRYPT_MODE : DECRYPT_MODE, k,
+				new IvParameterSpec(iv));
+	}
+
+	@Override
+	public int process(byte[] input, int inputOff, int len, byte[] output,
+			int outputOff) throws GeneralSecurityException {
+		if (!encrypting && len < MAC_LENGTH)
+			throw new GeneralSecurityException("Invalid MAC");
+		return cipher.doFinal(input, inputOff, len, output, outputOff);
+	}
+
+	@Override
+	public int getMacBytes() {
+		return MAC_LENGTH;
+	}
+}
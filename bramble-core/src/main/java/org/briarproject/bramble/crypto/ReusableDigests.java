@@ -0,0 +1,90 @@
+package org.briarproject.bramble.crypto;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Arrays;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Provides BLAKE2b digests that are reused by the calling thread, to avoid
+ * allocating a new digest for every hash or MAC.
+ * <p>
+ * Each thread has one unkeyed digest and one keyed digest. A digest returned
+ * by this class must be finished before the same thread asks for another
+ * digest of the same kind. The keyed digest is reused for as long as the
+ * thread keeps using the same key, which is the common case when encoding
+ * the tags of a reordering window or verifying a series of MACs.
+ */
+@ThreadSafe
+@NotNullByDefault
+class ReusableDigests {
+
+	/**
+	 * The length of the digests' output in bytes.
+	 */
+	static final int DIGEST_LENGTH = 32;
+
+	private final ThreadLocal<Digest> digests = new ThreadLocal<Digest>() {
+		@Override
+		protected Digest initialValue() {
+			return createDigest();
+		}
+	};
+
+	private final ThreadLocal<KeyedDigest> keyedDigests = new ThreadLocal<>();
+
+	/**
+	 * Returns the calling thread's unkeyed digest, which has been reset.
+	 */
+	Digest getDigest() {
+		Digest digest = digests.get();
+		digest.reset();
+		return digest;
+	}
+
+	/**
+	 * Returns the calling thread's digest for the given key, which has been
+	 * reset.
+	 */
+	Digest getKeyedDigest(SecretKey key) {
+		byte[] keyBytes = key.getBytes();
+		KeyedDigest keyed = keyedDigests.get();
+		if (keyed == null || !Arrays.equals(keyed.key, keyBytes)) {
+			keyed = new KeyedDigest(keyBytes);
+			keyedDigests.set(keyed);
+		} else {
+			// Resetting a keyed digest reloads the key
+			keyed.digest.reset();
+		}
+		return keyed.digest;
+	}
+
+	/**
+	 * Returns a new unkeyed digest that is not shared with any thread.
+	 */
+	static Digest createDigest() {
+		return new Blake2bDigest(DIGEST_LENGTH * 8);
+	}
+
+	/**
+	 * Returns a new keyed digest that is not shared with any thread.
+	 */
+	static Digest createKeyedDigest(SecretKey key) {
+		return new Blake2bDigest(key.getBytes(), DIGEST_LENGTH, null, null);
+	}
+
+	private static class KeyedDigest {
+
+		private final byte[] key;
+		private final Digest digest;
+
+		private KeyedDigest(byte[] key) {
+			this.key = key.clone();
+			digest = new Blake2bDigest(key, DIGEST_LENGTH, null, null);
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package org.briarproject.bramble.crypto;
 
 import org.bouncycastle.crypto.Digest;
-import org.bouncycastle.crypto.digests.Blake2bDigest;
 import org.briarproject.bramble.api.crypto.CryptoComponent;
 import org.briarproject.bramble.api.crypto.KeyPair;
 import org.briarproject.bramble.api.crypto.PublicKey;
@@ -42,6 +41,7 @@ import static org.briarproject.bramble.util.StringUtils.toUtf8;
 class TransportCryptoImpl implements TransportCrypto {
 
 	private final CryptoComponent crypto;
+	private final ReusableDigests reusableDigests = new ReusableDigests();
 
 	@Inject
 	TransportCryptoImpl(CryptoComponent crypto) {
@@ -258,8 +258,8 @@ class TransportCryptoImpl implements TransportCrypto {
 			throw new IllegalArgumentException();
 		if (streamNumber < 0 || streamNumber > MAX_32_BIT_UNSIGNED)
 			throw new IllegalArgumentException();
-		// Initialise the PRF
-		Digest prf = new Blake2bDigest(tagKey.getBytes(), 32, null, null);
+		// Initialise the PRF, reusing this thread's digest if it has the key
+		Digest prf = reusableDigests.getKeyedDigest(tagKey);
 		// The output of the PRF must be long enough to use as a tag
 		int macLength = prf.getDigestSize();
 		if (macLength < TAG_LENGTH) throw new IllegalStateException();
@@ -0,0 +1,124 @@
+package org.briarproject.bramble.crypto;
+
+import net.i2p.crypto.eddsa.EdDSAPublicKey;
+import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
+import net.i2p.crypto.eddsa.spec.EdDSAPublicKeySpec;
+
+import org.briarproject.bramble.api.Bytes;
+import org.briarproject.bramble.api.crypto.PublicKey;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.crypto.CryptoConstants.KEY_TYPE_SIGNATURE;
+
+/**
+ * A bounded cache of decoded Ed25519 public keys, keyed by their encoded
+ * form.
+ * <p>
+ * Decoding a public key decompresses the curve point and precomputes the
+ * tables used for verification, which costs more than verifying a short
+ * signature. Forums and blogs tend to have a few authors who sign many
+ * messages, so keeping the decoded keys of recently seen authors lets bulk
+ * validation skip the decoding. The least recently used key is evicted when
+ * the cache is full.
+ */
+@ThreadSafe
+@NotNullByDefault
+class VerificationKeyCache {
+
+	private static final Logger LOG =
+			getLogger(VerificationKeyCache.class.getName());
+
+	/**
+	 * The number of lookups between log messages reporting the hit rate.
+	 */
+	private static final int LOG_INTERVAL = 10_000;
+
+	private final EdDSAParameterSpec curveSpec;
+	private final int maxSize;
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	private final Map<Bytes, EdDSAPublicKey> keys;
+	@GuardedBy("lock")
+	private long hits = 0, misses = 0;
+
+	VerificationKeyCache(EdDSAParameterSpec curveSpec, int maxSize) {
+		if (maxSize < 1) throw new IllegalArgumentException();
+		this.curveSpec = curveSpec;
+		this.maxSize = maxSize;
+		// Iterate in access order so the eldest entry is the least recently
+		// used
+		keys = new LinkedHashMap<Bytes, EdDSAPublicKey>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Bytes, EdDSAPublicKey> eldest) {
+				return size() > VerificationKeyCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the decoded form of the given public key, decoding it if it's
+	 * not in the cache.
+	 */
+	EdDSAPublicKey getPublicKey(PublicKey k) {
+		if (!k.getKeyType().equals(KEY_TYPE_SIGNATURE))
+			throw new IllegalArgumentException();
+		Bytes encoded = new Bytes(k.getEncoded());
+		synchronized (lock) {
+			EdDSAPublicKey key = keys.get(encoded);
+			if (key != null) {
+				hits++;
+				logHitRate();
+				return key;
+			}
+		}
+		// Decode the key without holding the lock. If two threads decode the
+		// same key at once, both results are equivalent
+		EdDSAPublicKey key = new EdDSAPublicKey(
+				new EdDSAPublicKeySpec(k.getEncoded(), curveSpec));
+		synchronized (lock) {
+			misses++;
+			logHitRate();
+			// Copy the encoded key in case the caller modifies it
+			keys.put(new Bytes(k.getEncoded().clone()), key);
+		}
+		return key;
+	}
+
+	long getHitCount() {
+		synchronized (lock) {
+			return hits;
+		}
+	}
+
+	long getMissCount() {
+		synchronized (lock) {
+			return misses;
+		}
+	}
+
+	int getSize() {
+		synchronized (lock) {
+			return keys.size();
+		}
+	}
+
+	@GuardedBy("lock")
+	private void logHitRate() {
+		long lookups = hits + misses;
+		if (LOG.isLoggable(INFO) && lookups % LOG_INTERVAL == 0) {
+			LOG.info("Verification key cache: " + hits + " hits, "
+					+ misses + " misses, " + keys.size() + " keys");
+		}
+	}
+}
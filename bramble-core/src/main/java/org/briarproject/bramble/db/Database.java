@@ -261,6 +261,18 @@ interface Database<T> {
 	 */
 	int countOfferedMessages(T txn, ContactId c) throws DbException;
 
+	/**
+	 * Returns the number of messages in each group that are eligible to be
+	 * offered to the given contact and haven't been sent, offered or
+	 * summarised to the contact since they were shared or the contact's
+	 * retransmission data was last reset. Groups without any such messages
+	 * are omitted.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<GroupId, Integer> countMessagesToSummarise(T txn, ContactId c)
+			throws DbException;
+
 	/**
 	 * Deletes the message with the given ID. Unlike
 	 * {@link #removeMessage(Object, MessageId)}, the message ID and any other
@@ -423,6 +435,18 @@ interface Database<T> {
 	Collection<MessageId> getMessageIds(T txn, GroupId g, Metadata query)
 			throws DbException;
 
+	/**
+	 * Returns the IDs of up to the given number of delivered messages in the
+	 * given group with sort keys, in ascending order of sort key.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @param after the sort key after which to start, or null to start from
+	 * the lowest sort key
+	 */
+	List<MessageId> getMessageIdsInSortOrder(T txn, GroupId g,
+			@Nullable byte[] after, int limit) throws DbException;
+
 	/**
 	 * Returns the length of the given message in bytes, including the
 	 * message header.
@@ -447,6 +471,31 @@ interface Database<T> {
 	Map<MessageId, Metadata> getMessageMetadata(T txn, GroupId g,
 			Metadata query) throws DbException;
 
+	/**
+	 * Returns the metadata for any delivered messages in the given group that
+	 * were received at or after the given time and have metadata that matches
+	 * all entries in the given query. If the query is empty, the metadata for
+	 * all delivered messages received in the time range is returned.
+	 * <p/>
+	 * Read-only.
+	 *
+	 * @see #getMessageTimesReceived
+	 */
+	Map<MessageId, Metadata> getMessageMetadata(T txn, GroupId g,
+			Metadata query, long minTimeReceived) throws DbException;
+
+	/**
+	 * Returns the times at which any delivered messages in the given group
+	 * were received, for the messages received at or after the given time.
+	 * A message is received when it's delivered to its client, or when it's
+	 * added if it's a local message, so the order in which messages are
+	 * received doesn't depend on their timestamps.
+	 * <p/>
+	 * Read-only.
+	 */
+	Map<MessageId, Long> getMessageTimesReceived(T txn, GroupId g,
+			long minTimeReceived) throws DbException;
+
 	/**
 	 * Returns the metadata for the given delivered or pending message.
 	 * This is only meant to be used by the ValidationManager.
@@ -463,6 +512,15 @@ interface Database<T> {
 	 */
 	Metadata getMessageMetadata(T txn, MessageId m) throws DbException;
 
+	/**
+	 * Returns the sort key of the given message, or null if no sort key has
+	 * been set.
+	 * <p/>
+	 * Read-only.
+	 */
+	@Nullable
+	byte[] getMessageSortKey(T txn, MessageId m) throws DbException;
+
 	/**
 	 * Returns the validation and delivery state of the given message.
 	 * <p/>
@@ -517,6 +575,16 @@ interface Database<T> {
 	Collection<MessageId> getMessagesToRequest(T txn, ContactId c,
 			int maxMessages) throws DbException;
 
+	/**
+	 * Returns the IDs of the messages in the given group that are shared
+	 * with the given contact and have not been seen or requested by the
+	 * contact, regardless of when they were last offered.
+	 * <p/>
+	 * Read-only.
+	 */
+	Collection<MessageId> getMessagesToSummarise(T txn, ContactId c,
+			GroupId g) throws DbException;
+
 	/**
 	 * Returns the IDs of some messages that are eligible to be sent to the
 	 * given contact. The total length of the messages including record headers
@@ -667,9 +735,12 @@ interface Database<T> {
 			throws DbException;
 
 	/**
-	 * Increments the outgoing stream counter for the given transport keys.
+	 * Returns the IDs of the messages in the given group that are visible
+	 * to the given contact.
+	 * <p/>
+	 * Read-only.
 	 */
-	void incrementStreamCounter(T txn, TransportId t, KeySetId k)
+	Collection<MessageId> getVisibleMessageIds(T txn, ContactId c, GroupId g)
 			throws DbException;
 
 	/**
@@ -836,17 +907,16 @@ interface Database<T> {
 			throws DbException;
 
 	/**
-	 * Sets the validation and delivery state of the given message.
+	 * Sets the sort key of the given message.
 	 */
-	void setMessageState(T txn, MessageId m, MessageState state)
+	void setMessageSortKey(T txn, MessageId m, byte[] sortKey)
 			throws DbException;
 
 	/**
-	 * Sets the reordering window for the given transport keys in the given
-	 * time period.
+	 * Sets the validation and delivery state of the given message.
 	 */
-	void setReorderingWindow(T txn, KeySetId k, TransportId t,
-			long timePeriod, long base, byte[] bitmap) throws DbException;
+	void setMessageState(T txn, MessageId m, MessageState state)
+			throws DbException;
 
 	/**
 	 * Sets the versions of the sync protocol supported by the given contact.
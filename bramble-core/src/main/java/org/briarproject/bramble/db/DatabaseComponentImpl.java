@@ -55,6 +55,8 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.event.GroupAddedEvent;
 import org.briarproject.bramble.api.sync.event.GroupRemovedEvent;
 import org.briarproject.bramble.api.sync.event.GroupVisibilityUpdatedEvent;
@@ -63,10 +65,12 @@ import org.briarproject.bramble.api.sync.event.MessageRequestedEvent;
 import org.briarproject.bramble.api.sync.event.MessageSharedEvent;
 import org.briarproject.bramble.api.sync.event.MessageStateChangedEvent;
 import org.briarproject.bramble.api.sync.event.MessageToAckEvent;
+import org.briarproject.bramble.api.sync.event.MessageToOfferEvent;
 import org.briarproject.bramble.api.sync.event.MessageToRequestEvent;
 import org.briarproject.bramble.api.sync.event.MessagesAckedEvent;
 import org.briarproject.bramble.api.sync.event.MessagesSentEvent;
 import org.briarproject.bramble.api.sync.event.SyncVersionsUpdatedEvent;
+import org.briarproject.bramble.api.sync.event.UnackedMessagesResetEvent;
 import org.briarproject.bramble.api.sync.validation.MessageState;
 import org.briarproject.bramble.api.transport.KeySetId;
 import org.briarproject.bramble.api.transport.TransportKeySet;
@@ -75,8 +79,11 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -91,9 +98,14 @@ import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUMMARY_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MIN_SUMMARY_IDS;
 import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
 import static org.briarproject.bramble.api.sync.validation.MessageState.UNKNOWN;
 import static org.briarproject.bramble.db.DatabaseConstants.MAX_OFFERED_MESSAGES;
+import static org.briarproject.bramble.db.SummaryUtils.createSummary;
+import static org.briarproject.bramble.db.SummaryUtils.createSummaryAck;
+import static org.briarproject.bramble.db.SummaryUtils.getAckedMessageIds;
 import static org.briarproject.bramble.util.LogUtils.logDuration;
 import static org.briarproject.bramble.util.LogUtils.logException;
 import static org.briarproject.bramble.util.LogUtils.now;
@@ -475,6 +487,30 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return new Offer(ids);
 	}
 
+	@Nullable
+	@Override
+	public Summary generateSummary(Transaction transaction, ContactId c,
+			long maxLatency) throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!db.containsContact(txn, c))
+			throw new NoSuchContactException();
+		Map<GroupId, Integer> counts = db.countMessagesToSummarise(txn, c);
+		for (Entry<GroupId, Integer> e : counts.entrySet()) {
+			if (e.getValue() < MIN_SUMMARY_IDS) continue;
+			GroupId g = e.getKey();
+			Collection<MessageId> ids = db.getMessagesToSummarise(txn, c, g);
+			// Groups with too many messages are offered individually
+			if (ids.size() > MAX_SUMMARY_IDS) continue;
+			// Don't offer the messages individually while waiting for the
+			// summary ack
+			for (MessageId m : ids)
+				db.updateRetransmissionData(txn, c, m, maxLatency);
+			return createSummary(g, ids);
+		}
+		return null;
+	}
+
 	@Nullable
 	@Override
 	public Request generateRequest(Transaction transaction, ContactId c,
@@ -632,6 +668,15 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getMessageIds(txn, g, query);
 	}
 
+	@Override
+	public List<MessageId> getMessageIdsInSortOrder(Transaction transaction,
+			GroupId g, @Nullable byte[] after, int limit) throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsGroup(txn, g))
+			throw new NoSuchGroupException();
+		return db.getMessageIdsInSortOrder(txn, g, after, limit);
+	}
+
 	@Override
 	public Collection<MessageId> getMessagesToAck(Transaction transaction,
 			ContactId c) throws DbException {
@@ -696,6 +741,26 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getMessageMetadata(txn, g, query);
 	}
 
+	@Override
+	public Map<MessageId, Metadata> getMessageMetadata(Transaction transaction,
+			GroupId g, Metadata query, long minTimeReceived)
+			throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsGroup(txn, g))
+			throw new NoSuchGroupException();
+		return db.getMessageMetadata(txn, g, query, minTimeReceived);
+	}
+
+	@Override
+	public Map<MessageId, Long> getMessageTimesReceived(
+			Transaction transaction, GroupId g, long minTimeReceived)
+			throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsGroup(txn, g))
+			throw new NoSuchGroupException();
+		return db.getMessageTimesReceived(txn, g, minTimeReceived);
+	}
+
 	@Override
 	public Metadata getMessageMetadata(Transaction transaction, MessageId m)
 			throws DbException {
@@ -715,6 +780,16 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getMessageMetadataForValidator(txn, m);
 	}
 
+	@Override
+	@Nullable
+	public byte[] getMessageSortKey(Transaction transaction, MessageId m)
+			throws DbException {
+		T txn = unbox(transaction);
+		if (!db.containsMessage(txn, m))
+			throw new NoSuchMessageException();
+		return db.getMessageSortKey(txn, m);
+	}
+
 	@Override
 	public MessageState getMessageState(Transaction transaction, MessageId m)
 			throws DbException {
@@ -793,6 +868,7 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		if (!db.containsContact(txn, c))
 			throw new NoSuchContactException();
 		db.resetUnackedMessagesToSend(txn, c);
+		transaction.attach(new UnackedMessagesResetEvent(c));
 	}
 
 	@Override
@@ -884,16 +960,6 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		return db.getTransportsWithKeys(txn);
 	}
 
-	@Override
-	public void incrementStreamCounter(Transaction transaction, TransportId t,
-			KeySetId k) throws DbException {
-		if (transaction.isReadOnly()) throw new IllegalArgumentException();
-		T txn = unbox(transaction);
-		if (!db.containsTransport(txn, t))
-			throw new NoSuchTransportException();
-		db.incrementStreamCounter(txn, t, k);
-	}
-
 	@Override
 	public void mergeGroupMetadata(Transaction transaction, GroupId g,
 			Metadata meta) throws DbException {
@@ -936,20 +1002,28 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		T txn = unbox(transaction);
 		if (!db.containsContact(txn, c))
 			throw new NoSuchContactException();
-		Collection<MessageId> acked = new ArrayList<>();
+		Collection<MessageId> visible = new ArrayList<>();
 		for (MessageId m : a.getMessageIds()) {
-			if (db.containsVisibleMessage(txn, c, m)) {
-				if (db.raiseSeenFlag(txn, c, m)) {
-					// This is the first time the message has been acked by
-					// this contact. Start the cleanup timer (a no-op unless
-					// a cleanup deadline has been set for this message)
-					long deadline = db.startCleanupTimer(txn, m);
-					if (deadline != TIMER_NOT_STARTED) {
-						transaction.attach(new CleanupTimerStartedEvent(m,
-								deadline));
-					}
-					acked.add(m);
+			if (db.containsVisibleMessage(txn, c, m)) visible.add(m);
+		}
+		raiseSeenFlags(transaction, c, visible);
+	}
+
+	private void raiseSeenFlags(Transaction transaction, ContactId c,
+			Collection<MessageId> visible) throws DbException {
+		T txn = unbox(transaction);
+		Collection<MessageId> acked = new ArrayList<>();
+		for (MessageId m : visible) {
+			if (db.raiseSeenFlag(txn, c, m)) {
+				// This is the first time the message has been acked by
+				// this contact. Start the cleanup timer (a no-op unless
+				// a cleanup deadline has been set for this message)
+				long deadline = db.startCleanupTimer(txn, m);
+				if (deadline != TIMER_NOT_STARTED) {
+					transaction.attach(new CleanupTimerStartedEvent(m,
+							deadline));
 				}
+				acked.add(m);
 			}
 		}
 		if (acked.size() > 0) {
@@ -1018,6 +1092,41 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		if (requested) transaction.attach(new MessageRequestedEvent(c));
 	}
 
+	@Override
+	public SummaryAck receiveSummary(Transaction transaction, ContactId c,
+			Summary s) throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!db.containsContact(txn, c))
+			throw new NoSuchContactException();
+		Collection<MessageId> ids =
+				db.getVisibleMessageIds(txn, c, s.getGroupId());
+		return createSummaryAck(s, ids);
+	}
+
+	@Override
+	public void receiveSummaryAck(Transaction transaction, ContactId c,
+			SummaryAck a) throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!db.containsContact(txn, c))
+			throw new NoSuchContactException();
+		Collection<MessageId> summarised =
+				db.getMessagesToSummarise(txn, c, a.getGroupId());
+		Collection<MessageId> acked = getAckedMessageIds(a, summarised);
+		raiseSeenFlags(transaction, c, acked);
+		if (acked.size() < summarised.size()) {
+			// The contact may be missing some of the messages in the other
+			// buckets, so offer them individually without waiting for the
+			// summary to expire
+			Set<MessageId> ackedSet = new HashSet<>(acked);
+			for (MessageId m : summarised) {
+				if (!ackedSet.contains(m)) db.resetExpiryTime(txn, c, m);
+			}
+			transaction.attach(new MessageToOfferEvent(c));
+		}
+	}
+
 	@Override
 	public void removeContact(Transaction transaction, ContactId c)
 			throws DbException {
@@ -1201,6 +1310,16 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		transaction.attach(new MessageSharedEvent(m, g, visibility));
 	}
 
+	@Override
+	public void setMessageSortKey(Transaction transaction, MessageId m,
+			byte[] sortKey) throws DbException {
+		if (transaction.isReadOnly()) throw new IllegalArgumentException();
+		T txn = unbox(transaction);
+		if (!db.containsMessage(txn, m))
+			throw new NoSuchMessageException();
+		db.setMessageSortKey(txn, m, sortKey);
+	}
+
 	@Override
 	public void setMessageState(Transaction transaction, MessageId m,
 			MessageState state) throws DbException {
@@ -1259,17 +1378,6 @@ class DatabaseComponentImpl<T> implements DatabaseComponent {
 		db.setHandshakeKeyPair(txn, local, publicKey, privateKey);
 	}
 
-	@Override
-	public void setReorderingWindow(Transaction transaction, KeySetId k,
-			TransportId t, long timePeriod, long base, byte[] bitmap)
-			throws DbException {
-		if (transaction.isReadOnly()) throw new IllegalArgumentException();
-		T txn = unbox(transaction);
-		if (!db.containsTransport(txn, t))
-			throw new NoSuchTransportException();
-		db.setReorderingWindow(txn, k, t, timePeriod, base, bitmap);
-	}
-
 	@Override
 	public void setSyncVersions(Transaction transaction, ContactId c,
 			List<Byte> supported) throws DbException {
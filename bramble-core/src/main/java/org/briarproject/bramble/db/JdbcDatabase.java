@@ -101,7 +101,7 @@ import static org.briarproject.bramble.util.LogUtils.now;
 abstract class JdbcDatabase implements Database<Connection> {
 
 	// Package access for testing
-	static final int CODE_SCHEMA_VERSION = 50;
+	static final int CODE_SCHEMA_VERSION = 52;
 
 	/**
 	 * The maximum number of idle connections to keep open.
@@ -185,6 +185,9 @@ abstract class JdbcDatabase implements Database<Connection> {
 					+ " (messageId _HASH NOT NULL,"
 					+ " groupId _HASH NOT NULL,"
 					+ " timestamp BIGINT NOT NULL,"
+					// The time the message was delivered, or added if it
+					// hasn't been delivered yet
+					+ " timeReceived BIGINT NOT NULL,"
 					+ " state INT NOT NULL,"
 					+ " shared BOOLEAN NOT NULL,"
 					+ " temporary BOOLEAN NOT NULL,"
@@ -195,6 +198,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 					+ " cleanupDeadline BIGINT,"
 					+ " length INT NOT NULL,"
 					+ " raw BLOB," // Null if message has been deleted
+					// Null if the client hasn't set a sort key
+					+ " sortKey _BINARY,"
 					+ " PRIMARY KEY (messageId),"
 					+ " FOREIGN KEY (groupId)"
 					+ " REFERENCES groups (groupId)"
@@ -354,6 +359,14 @@ abstract class JdbcDatabase implements Database<Connection> {
 			"CREATE INDEX IF NOT EXISTS statusesByContactIdTxCountTimestamp"
 					+ " ON statuses (contactId, txCount, timestamp)";
 
+	private static final String INDEX_MESSAGES_BY_GROUP_ID_TIME_RECEIVED =
+			"CREATE INDEX IF NOT EXISTS messagesByGroupIdTimeReceived"
+					+ " ON messages (groupId, timeReceived)";
+
+	private static final String INDEX_MESSAGES_BY_GROUP_ID_SORT_KEY =
+			"CREATE INDEX IF NOT EXISTS messagesByGroupIdSortKey"
+					+ " ON messages (groupId, sortKey)";
+
 	private static final String INDEX_MESSAGES_BY_CLEANUP_DEADLINE =
 			"CREATE INDEX IF NOT EXISTS messagesByCleanupDeadline"
 					+ " ON messages (cleanupDeadline)";
@@ -499,7 +512,9 @@ abstract class JdbcDatabase implements Database<Connection> {
 				new Migration46_47(dbTypes),
 				new Migration47_48(),
 				new Migration48_49(),
-				new Migration49_50()
+				new Migration49_50(),
+				new Migration50_51(),
+				new Migration51_52(dbTypes)
 		);
 	}
 
@@ -563,6 +578,8 @@ abstract class JdbcDatabase implements Database<Connection> {
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_GROUP_ID);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_TIMESTAMP);
 			s.executeUpdate(INDEX_STATUSES_BY_CONTACT_ID_TX_COUNT_TIMESTAMP);
+			s.executeUpdate(INDEX_MESSAGES_BY_GROUP_ID_TIME_RECEIVED);
+			s.executeUpdate(INDEX_MESSAGES_BY_GROUP_ID_SORT_KEY);
 			s.executeUpdate(INDEX_MESSAGES_BY_CLEANUP_DEADLINE);
 			s.close();
 		} catch (SQLException e) {
@@ -853,18 +870,19 @@ abstract class JdbcDatabase implements Database<Connection> {
 		PreparedStatement ps = null;
 		try {
 			String sql = "INSERT INTO messages (messageId, groupId, timestamp,"
-					+ " state, shared, temporary, length, raw)"
-					+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+					+ " timeReceived, state, shared, temporary, length, raw)"
+					+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 			ps = txn.prepareStatement(sql);
 			ps.setBytes(1, m.getId().getBytes());
 			ps.setBytes(2, m.getGroupId().getBytes());
 			ps.setLong(3, m.getTimestamp());
-			ps.setInt(4, state.getValue());
-			ps.setBoolean(5, shared);
-			ps.setBoolean(6, temporary);
+			ps.setLong(4, clock.currentTimeMillis());
+			ps.setInt(5, state.getValue());
+			ps.setBoolean(6, shared);
+			ps.setBoolean(7, temporary);
 			byte[] raw = messageFactory.getRawMessage(m);
-			ps.setInt(7, raw.length);
-			ps.setBytes(8, raw);
+			ps.setInt(8, raw.length);
+			ps.setBytes(9, raw);
 			int affected = ps.executeUpdate();
 			if (affected != 1) throw new DbStateException();
 			ps.close();
@@ -1437,6 +1455,36 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Map<GroupId, Integer> countMessagesToSummarise(Connection txn,
+			ContactId c) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT groupId, COUNT (messageId) FROM statuses"
+					+ " WHERE contactId = ? AND state = ?"
+					+ " AND groupShared = TRUE AND messageShared = TRUE"
+					+ " AND deleted = FALSE"
+					+ " AND seen = FALSE AND requested = FALSE"
+					+ " AND maxLatency IS NULL"
+					+ " GROUP BY groupId";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			ps.setInt(2, DELIVERED.getValue());
+			rs = ps.executeQuery();
+			Map<GroupId, Integer> counts = new HashMap<>();
+			while (rs.next())
+				counts.put(new GroupId(rs.getBytes(1)), rs.getInt(2));
+			rs.close();
+			ps.close();
+			return counts;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public void deleteMessage(Connection txn, MessageId m) throws DbException {
 		PreparedStatement ps = null;
@@ -1951,6 +1999,36 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public List<MessageId> getMessageIdsInSortOrder(Connection txn, GroupId g,
+			@Nullable byte[] after, int limit) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId FROM messages"
+					+ " WHERE groupId = ? AND state = ?";
+			if (after == null) sql += " AND sortKey IS NOT NULL";
+			else sql += " AND sortKey > ?";
+			sql += " ORDER BY sortKey LIMIT ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setInt(2, DELIVERED.getValue());
+			int index = 3;
+			if (after != null) ps.setBytes(index++, after);
+			ps.setInt(index, limit);
+			rs = ps.executeQuery();
+			List<MessageId> ids = new ArrayList<>();
+			while (rs.next()) ids.add(new MessageId(rs.getBytes(1)));
+			rs.close();
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public int getMessageLength(Connection txn, MessageId m)
 			throws DbException {
@@ -2021,6 +2099,51 @@ abstract class JdbcDatabase implements Database<Connection> {
 		return all;
 	}
 
+	@Override
+	public Map<MessageId, Metadata> getMessageMetadata(Connection txn,
+			GroupId g, Metadata query, long minTimeReceived)
+			throws DbException {
+		// Retrieve the message IDs in the time range
+		Set<MessageId> matches = new HashSet<>(
+				getMessageTimesReceived(txn, g, minTimeReceived).keySet());
+		// Intersect with the message IDs that match the query, if any
+		if (!matches.isEmpty() && !query.isEmpty())
+			matches.retainAll(getMessageIds(txn, g, query));
+		if (matches.isEmpty()) return Collections.emptyMap();
+		// Retrieve the metadata for each match
+		Map<MessageId, Metadata> all = new HashMap<>(matches.size());
+		for (MessageId m : matches) all.put(m, getMessageMetadata(txn, m));
+		return all;
+	}
+
+	@Override
+	public Map<MessageId, Long> getMessageTimesReceived(Connection txn,
+			GroupId g, long minTimeReceived) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId, timeReceived FROM messages"
+					+ " WHERE groupId = ? AND state = ? AND timeReceived >= ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, g.getBytes());
+			ps.setInt(2, DELIVERED.getValue());
+			ps.setLong(3, minTimeReceived);
+			rs = ps.executeQuery();
+			Map<MessageId, Long> times = new HashMap<>();
+			while (rs.next()) {
+				MessageId m = new MessageId(rs.getBytes(1));
+				times.put(m, rs.getLong(2));
+			}
+			rs.close();
+			ps.close();
+			return times;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Metadata getGroupMetadata(Connection txn, GroupId g)
 			throws DbException {
@@ -2216,6 +2339,30 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	@Nullable
+	public byte[] getMessageSortKey(Connection txn, MessageId m)
+			throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT sortKey FROM messages WHERE messageId = ?";
+			ps = txn.prepareStatement(sql);
+			ps.setBytes(1, m.getBytes());
+			rs = ps.executeQuery();
+			if (!rs.next()) throw new DbStateException();
+			byte[] sortKey = rs.getBytes(1);
+			if (rs.next()) throw new DbStateException();
+			rs.close();
+			ps.close();
+			return sortKey;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public MessageState getMessageState(Connection txn, MessageId m)
 			throws DbException {
@@ -2298,6 +2445,34 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
+	@Override
+	public Collection<MessageId> getMessagesToSummarise(Connection txn,
+			ContactId c, GroupId g) throws DbException {
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			String sql = "SELECT messageId FROM statuses"
+					+ " WHERE contactId = ? AND groupId = ? AND state = ?"
+					+ " AND groupShared = TRUE AND messageShared = TRUE"
+					+ " AND deleted = FALSE"
+					+ " AND seen = FALSE AND requested = FALSE";
+			ps = txn.prepareStatement(sql);
+			ps.setInt(1, c.getInt());
+			ps.setBytes(2, g.getBytes());
+			ps.setInt(3, DELIVERED.getValue());
+			rs = ps.executeQuery();
+			List<MessageId> ids = new ArrayList<>();
+			while (rs.next()) ids.add(new MessageId(rs.getBytes(1)));
+			rs.close();
+			ps.close();
+			return ids;
+		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Collection<MessageId> getMessagesToRequest(Connection txn,
 			ContactId c, int maxMessages) throws DbException {
@@ -2833,19 +3008,25 @@ abstract class JdbcDatabase implements Database<Connection> {
 	}
 
 	@Override
-	public void incrementStreamCounter(Connection txn, TransportId t,
-			KeySetId k) throws DbException {
+	public Collection<MessageId> getVisibleMessageIds(Connection txn,
+			ContactId c, GroupId g) throws DbException {
 		PreparedStatement ps = null;
+		ResultSet rs = null;
 		try {
-			String sql = "UPDATE outgoingKeys SET stream = stream + 1"
-					+ " WHERE transportId = ? AND keySetId = ?";
+			String sql = "SELECT messageId FROM statuses"
+					+ " WHERE contactId = ? AND groupId = ?"
+					+ " AND messageShared = TRUE";
 			ps = txn.prepareStatement(sql);
-			ps.setString(1, t.getString());
-			ps.setInt(2, k.getInt());
-			int affected = ps.executeUpdate();
-			if (affected != 1) throw new DbStateException();
+			ps.setInt(1, c.getInt());
+			ps.setBytes(2, g.getBytes());
+			rs = ps.executeQuery();
+			List<MessageId> ids = new ArrayList<>();
+			while (rs.next()) ids.add(new MessageId(rs.getBytes(1)));
+			rs.close();
 			ps.close();
+			return ids;
 		} catch (SQLException e) {
+			tryToClose(rs, LOG, WARNING);
 			tryToClose(ps, LOG, WARNING);
 			throw new DbException(e);
 		}
@@ -3557,17 +3738,47 @@ abstract class JdbcDatabase implements Database<Connection> {
 	}
 
 	@Override
-	public void setMessageState(Connection txn, MessageId m, MessageState state)
+	public void setMessageSortKey(Connection txn, MessageId m, byte[] sortKey)
 			throws DbException {
 		PreparedStatement ps = null;
 		try {
-			String sql = "UPDATE messages SET state = ? WHERE messageId = ?";
+			String sql = "UPDATE messages SET sortKey = ?"
+					+ " WHERE messageId = ?";
 			ps = txn.prepareStatement(sql);
-			ps.setInt(1, state.getValue());
+			ps.setBytes(1, sortKey);
 			ps.setBytes(2, m.getBytes());
 			int affected = ps.executeUpdate();
 			if (affected < 0 || affected > 1) throw new DbStateException();
 			ps.close();
+		} catch (SQLException e) {
+			tryToClose(ps, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public void setMessageState(Connection txn, MessageId m, MessageState state)
+			throws DbException {
+		PreparedStatement ps = null;
+		try {
+			String sql;
+			if (state == DELIVERED) {
+				// Messages are received in the order they're delivered
+				sql = "UPDATE messages SET state = ?, timeReceived = ?"
+						+ " WHERE messageId = ?";
+				ps = txn.prepareStatement(sql);
+				ps.setInt(1, state.getValue());
+				ps.setLong(2, clock.currentTimeMillis());
+				ps.setBytes(3, m.getBytes());
+			} else {
+				sql = "UPDATE messages SET state = ? WHERE messageId = ?";
+				ps = txn.prepareStatement(sql);
+				ps.setInt(1, state.getValue());
+				ps.setBytes(2, m.getBytes());
+			}
+			int affected = ps.executeUpdate();
+			if (affected < 0 || affected > 1) throw new DbStateException();
+			ps.close();
 			// Update denormalised column in messageMetadata
 			sql = "UPDATE messageMetadata SET state = ? WHERE messageId = ?";
 			ps = txn.prepareStatement(sql);
@@ -3609,30 +3820,6 @@ abstract class JdbcDatabase implements Database<Connection> {
 		}
 	}
 
-	@Override
-	public void setReorderingWindow(Connection txn, KeySetId k,
-			TransportId t, long timePeriod, long base, byte[] bitmap)
-			throws DbException {
-		PreparedStatement ps = null;
-		try {
-			String sql = "UPDATE incomingKeys SET base = ?, bitmap = ?"
-					+ " WHERE transportId = ? AND keySetId = ?"
-					+ " AND timePeriod = ?";
-			ps = txn.prepareStatement(sql);
-			ps.setLong(1, base);
-			ps.setBytes(2, bitmap);
-			ps.setString(3, t.getString());
-			ps.setInt(4, k.getInt());
-			ps.setLong(5, timePeriod);
-			int affected = ps.executeUpdate();
-			if (affected < 0 || affected > 1) throw new DbStateException();
-			ps.close();
-		} catch (SQLException e) {
-			tryToClose(ps, LOG, WARNING);
-			throw new DbException(e);
-		}
-	}
-
 	@Override
 	public void setSyncVersions(Connection txn, ContactId c,
 			List<Byte> supported) throws DbException {
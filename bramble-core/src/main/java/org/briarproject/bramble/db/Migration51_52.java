@@ -0,0 +1,46 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.db.DbException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.db.JdbcUtils.tryToClose;
+
+class Migration51_52 implements Migration<Connection> {
+
+	private static final Logger LOG = getLogger(Migration51_52.class.getName());
+
+	private final DatabaseTypes dbTypes;
+
+	Migration51_52(DatabaseTypes databaseTypes) {
+		this.dbTypes = databaseTypes;
+	}
+
+	@Override
+	public int getStartVersion() {
+		return 51;
+	}
+
+	@Override
+	public int getEndVersion() {
+		return 52;
+	}
+
+	@Override
+	public void migrate(Connection txn) throws DbException {
+		Statement s = null;
+		try {
+			s = txn.createStatement();
+			s.execute("ALTER TABLE messages"
+					+ dbTypes.replaceTypes(" ADD COLUMN sortKey _BINARY"));
+		} catch (SQLException e) {
+			tryToClose(s, LOG, WARNING);
+			throw new DbException(e);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
+import org.briarproject.bramble.api.sync.SyncConstants;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUMMARY_BUCKET_BITS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUMMARY_DIGEST_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.readUint32;
+
+/**
+ * Creates and compares {@link Summary summaries} of sets of messages.
+ * <p>
+ * Message IDs are hashes, so their bytes are used directly for choosing
+ * buckets and filter bits. A bucket's digest is the XOR of the last
+ * {@link SyncConstants#SUMMARY_DIGEST_BYTES} bytes of the IDs in the
+ * bucket, so the digests of two sets of IDs are equal if and only if the
+ * sets are equal, except with negligible probability.
+ * <p>
+ * False positives in the filter can add messages to the recipient's digest
+ * that weren't summarised, but can never remove messages from it. So a
+ * false positive can only cause a bucket not to be acked, in which case the
+ * messages in the bucket are offered individually.
+ */
+@NotNullByDefault
+class SummaryUtils {
+
+	/**
+	 * The number of filter bits per summarised message. With five hashes
+	 * this gives a false positive rate of about 2%.
+	 */
+	private static final int FILTER_BITS_PER_ID = 8;
+
+	private static final int HASHES = 5;
+
+	/**
+	 * The maximum number of summarised messages per bucket, unless that
+	 * would need more than {@link SyncConstants#MAX_SUMMARY_BUCKET_BITS}.
+	 * Smaller buckets mean fewer messages are offered individually when a
+	 * bucket isn't acked, at the cost of more digests in the summary ack.
+	 */
+	private static final int IDS_PER_BUCKET = 16;
+
+	static Summary createSummary(GroupId g, Collection<MessageId> ids) {
+		int bucketBits = 0;
+		while (bucketBits < MAX_SUMMARY_BUCKET_BITS &&
+				(IDS_PER_BUCKET << bucketBits) < ids.size()) {
+			bucketBits++;
+		}
+		int filterBytes = Math.max(1, ids.size() * FILTER_BITS_PER_ID / 8);
+		byte[] filter = new byte[filterBytes];
+		for (MessageId m : ids) {
+			byte[] id = m.getBytes();
+			for (int i = 0; i < HASHES; i++) {
+				int bit = getFilterBit(id, i, filterBytes);
+				filter[bit >> 3] |= 1 << (bit & 7);
+			}
+		}
+		return new Summary(g, bucketBits, HASHES, filter);
+	}
+
+	static boolean mightContain(Summary s, MessageId m) {
+		byte[] filter = s.getFilter();
+		byte[] id = m.getBytes();
+		for (int i = 0; i < s.getHashes(); i++) {
+			int bit = getFilterBit(id, i, filter.length);
+			if ((filter[bit >> 3] & (1 << (bit & 7))) == 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a summary ack for the given summary, where the given messages
+	 * are the recipient's messages in the summarised group.
+	 */
+	static SummaryAck createSummaryAck(Summary s, Collection<MessageId> ids) {
+		List<MessageId> matching = new ArrayList<>();
+		for (MessageId m : ids) if (mightContain(s, m)) matching.add(m);
+		int bucketBits = s.getBucketBits();
+		return new SummaryAck(s.getGroupId(), bucketBits,
+				getDigests(bucketBits, matching));
+	}
+
+	/**
+	 * Returns the messages from the given summarised messages that belong to
+	 * buckets acked by the given summary ack. The recipient of the summary
+	 * has all of these messages.
+	 */
+	static Collection<MessageId> getAckedMessageIds(SummaryAck a,
+			Collection<MessageId> summarised) {
+		int bucketBits = a.getBucketBits();
+		byte[] ours = getDigests(bucketBits, summarised);
+		byte[] theirs = a.getDigests();
+		List<MessageId> acked = new ArrayList<>();
+		for (MessageId m : summarised) {
+			int off = getBucket(m, bucketBits) * SUMMARY_DIGEST_BYTES;
+			if (digestsMatch(ours, theirs, off)) acked.add(m);
+		}
+		return acked;
+	}
+
+	private static int getFilterBit(byte[] id, int hash, int filterBytes) {
+		// The first four bytes of the ID are used for choosing the bucket
+		long word = readUint32(id, INT_32_BYTES * (hash + 1));
+		return (int) (word % (filterBytes * 8L));
+	}
+
+	private static int getBucket(MessageId m, int bucketBits) {
+		if (bucketBits == 0) return 0;
+		return (int) (readUint32(m.getBytes(), 0) >>> (32 - bucketBits));
+	}
+
+	private static byte[] getDigests(int bucketBits,
+			Collection<MessageId> ids) {
+		byte[] digests = new byte[SUMMARY_DIGEST_BYTES << bucketBits];
+		int start = UniqueId.LENGTH - SUMMARY_DIGEST_BYTES;
+		for (MessageId m : ids) {
+			byte[] id = m.getBytes();
+			int off = getBucket(m, bucketBits) * SUMMARY_DIGEST_BYTES;
+			for (int i = 0; i < SUMMARY_DIGEST_BYTES; i++)
+				digests[off + i] ^= id[start + i];
+		}
+		return digests;
+	}
+
+	private static boolean digestsMatch(byte[] a, byte[] b, int off) {
+		for (int i = 0; i < SUMMARY_DIGEST_BYTES; i++) {
+			if (a[off + i] != b[off + i]) return false;
+		}
+		return true;
+	}
+}
@@ -10,13 +10,25 @@ import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.lifecycle.Service;
 import org.briarproject.bramble.api.lifecycle.ServiceException;
+import org.briarproject.bramble.api.lifecycle.StartupStep;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
+import org.briarproject.bramble.api.lifecycle.event.StartupTimelineEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
@@ -24,6 +36,8 @@ import java.util.logging.Logger;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.Collections.sort;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
@@ -43,6 +57,9 @@ import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResul
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.DB_ERROR;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SERVICE_ERROR;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SUCCESS;
+import static org.briarproject.bramble.api.lifecycle.StartupStep.Type.OPEN_DATABASE;
+import static org.briarproject.bramble.api.lifecycle.StartupStep.Type.OPEN_DATABASE_HOOK;
+import static org.briarproject.bramble.api.lifecycle.StartupStep.Type.SERVICE;
 import static org.briarproject.bramble.api.system.Clock.MAX_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.api.system.Clock.MIN_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.util.LogUtils.logDuration;
@@ -62,12 +79,16 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	private final List<Service> services;
 	private final List<OpenDatabaseHook> openDatabaseHooks;
 	private final List<ExecutorService> executors;
+	private final Map<Service, Collection<Service>> dependencies;
+	private final List<StartupStep> timeline;
 	private final CountDownLatch dbLatch = new CountDownLatch(1);
 	private final CountDownLatch startupLatch = new CountDownLatch(1);
 	private final CountDownLatch shutdownLatch = new CountDownLatch(1);
 	private final AtomicReference<LifecycleState> state =
 			new AtomicReference<>(CREATED);
 
+	private volatile long startTime = 0;
+
 	@Inject
 	LifecycleManagerImpl(DatabaseComponent db, EventBus eventBus,
 			Clock clock) {
@@ -77,12 +98,22 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		services = new CopyOnWriteArrayList<>();
 		openDatabaseHooks = new CopyOnWriteArrayList<>();
 		executors = new CopyOnWriteArrayList<>();
+		dependencies = new ConcurrentHashMap<>();
+		timeline = new CopyOnWriteArrayList<>();
 	}
 
 	@Override
 	public void registerService(Service s) {
+		registerService(s, new ArrayList<>(services));
+	}
+
+	@Override
+	public void registerService(Service s, Collection<Service> dependencies) {
 		if (LOG.isLoggable(INFO))
 			LOG.info("Registering service " + s.getClass().getSimpleName());
+		if (!services.containsAll(dependencies))
+			throw new IllegalArgumentException();
+		this.dependencies.put(s, new ArrayList<>(dependencies));
 		services.add(s);
 	}
 
@@ -117,7 +148,10 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		try {
 			LOG.info("Opening database");
 			long start = now();
+			startTime = start;
 			boolean reopened = db.open(dbKey, this);
+			addStartupStep(OPEN_DATABASE, db.getClass().getSimpleName(),
+					start);
 			if (reopened) logDuration(LOG, "Reopening database", start);
 			else logDuration(LOG, "Creating database", start);
 
@@ -128,9 +162,11 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 				for (OpenDatabaseHook hook : openDatabaseHooks) {
 					start1 = now();
 					hook.onDatabaseOpened(txn);
+					String name = hook.getClass().getSimpleName();
+					addStartupStep(OPEN_DATABASE_HOOK, name, start1);
 					if (LOG.isLoggable(FINE)) {
 						logDuration(LOG, "Calling open database hook "
-								+ hook.getClass().getSimpleName(), start1);
+								+ name, start1);
 					}
 				}
 			});
@@ -140,18 +176,13 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 			dbLatch.countDown();
 			eventBus.broadcast(new LifecycleEvent(STARTING_SERVICES));
 
-			for (Service s : services) {
-				start = now();
-				s.startService();
-				if (LOG.isLoggable(FINE)) {
-					logDuration(LOG, "Starting service "
-							+ s.getClass().getSimpleName(), start);
-				}
-			}
+			startServicesInDependencyOrder();
+			logDuration(LOG, "Starting app", startTime);
 
 			state.set(RUNNING);
 			startupLatch.countDown();
 			eventBus.broadcast(new LifecycleEvent(RUNNING));
+			eventBus.broadcast(new StartupTimelineEvent(getStartupTimeline()));
 			return SUCCESS;
 		} catch (DataTooOldException e) {
 			logException(LOG, WARNING, e);
@@ -168,6 +199,89 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 		}
 	}
 
+	/**
+	 * Starts each service once its dependencies have started. Services that
+	 * become ready at the same time are started concurrently.
+	 */
+	private void startServicesInDependencyOrder() throws ServiceException {
+		List<Service> waiting = new ArrayList<>(services);
+		Set<Service> started = new HashSet<>();
+		ExecutorService executor = null;
+		CompletionService<Service> completion = null;
+		int running = 0;
+		try {
+			while (!waiting.isEmpty() || running > 0) {
+				List<Service> ready = new ArrayList<>();
+				Iterator<Service> it = waiting.iterator();
+				while (it.hasNext()) {
+					Service s = it.next();
+					if (started.containsAll(dependencies.get(s))) {
+						ready.add(s);
+						it.remove();
+					}
+				}
+				if (ready.size() == 1 && running == 0) {
+					// Nothing else can be started yet, so use this thread
+					Service s = ready.get(0);
+					startService(s);
+					started.add(s);
+					continue;
+				}
+				if (!ready.isEmpty() && completion == null) {
+					executor = newCachedThreadPool();
+					completion = new ExecutorCompletionService<>(executor);
+				}
+				for (Service s : ready) {
+					completion.submit(() -> {
+						startService(s);
+						return s;
+					});
+					running++;
+				}
+				// Dependencies are registered before their dependents, so
+				// something must be running if anything is still waiting
+				if (running == 0) throw new AssertionError();
+				started.add(takeStartedService(completion));
+				running--;
+			}
+		} finally {
+			if (executor != null) executor.shutdown();
+		}
+	}
+
+	private Service takeStartedService(CompletionService<Service> completion)
+			throws ServiceException {
+		try {
+			return completion.take().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServiceException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ServiceException)
+				throw (ServiceException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new ServiceException(cause);
+		}
+	}
+
+	private void startService(Service s) throws ServiceException {
+		long start = now();
+		s.startService();
+		String name = s.getClass().getSimpleName();
+		addStartupStep(SERVICE, name, start);
+		if (LOG.isLoggable(FINE))
+			logDuration(LOG, "Starting service " + name, start);
+	}
+
+	private void addStartupStep(StartupStep.Type type, String name,
+			long start) {
+		timeline.add(new StartupStep(type, name, start - startTime,
+				now() - start));
+	}
+
 	@Override
 	public void onDatabaseMigration() {
 		state.set(MIGRATING_DATABASE);
@@ -238,4 +352,12 @@ class LifecycleManagerImpl implements LifecycleManager, MigrationListener {
 	public LifecycleState getLifecycleState() {
 		return state.get();
 	}
+
+	@Override
+	public List<StartupStep> getStartupTimeline() {
+		List<StartupStep> steps = new ArrayList<>(timeline);
+		sort(steps, (a, b) -> a.getStart() < b.getStart() ? -1 :
+				(a.getStart() == b.getStart() ? 0 : 1));
+		return steps;
+	}
 }
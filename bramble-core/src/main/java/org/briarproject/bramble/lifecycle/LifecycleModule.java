@@ -11,6 +11,7 @@ import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.logging.Logger;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -19,10 +20,14 @@ import dagger.Module;
 import dagger.Provides;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Logger.getLogger;
 
 @Module
 public class LifecycleModule {
 
+	private static final Logger LOG =
+			getLogger(LifecycleModule.class.getName());
+
 	public static class EagerSingletons {
 		@Inject
 		@IoExecutor
@@ -47,15 +52,28 @@ public class LifecycleModule {
 	@IoExecutor
 	Executor provideIoExecutor(LifecycleManager lifecycleManager,
 			ThreadFactory threadFactory) {
+		// Use virtual threads if they've been enabled and are supported
+		if (VirtualThreads.isEnabled()) {
+			ThreadFactory virtual =
+					VirtualThreads.getThreadFactory("IoExecutor-");
+			if (virtual != null) {
+				LOG.info("Using virtual threads for IO");
+				threadFactory = virtual;
+			}
+		}
+		ExecutorService ioExecutor = createIoExecutor(threadFactory);
+		lifecycleManager.registerForShutdown(ioExecutor);
+		return ioExecutor;
+	}
+
+	static ExecutorService createIoExecutor(ThreadFactory threadFactory) {
 		// The thread pool is unbounded, so use direct handoff
 		BlockingQueue<Runnable> queue = new SynchronousQueue<>();
 		// Discard tasks that are submitted during shutdown
 		RejectedExecutionHandler policy =
 				new ThreadPoolExecutor.DiscardPolicy();
 		// Create threads as required and keep them in the pool for 60 seconds
-		ExecutorService ioExecutor = new ThreadPoolExecutor(0,
-				Integer.MAX_VALUE, 60, SECONDS, queue, threadFactory, policy);
-		lifecycleManager.registerForShutdown(ioExecutor);
-		return ioExecutor;
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, SECONDS,
+				queue, threadFactory, policy);
 	}
 }
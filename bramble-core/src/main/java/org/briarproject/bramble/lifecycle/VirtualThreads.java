@@ -0,0 +1,70 @@
+package org.briarproject.bramble.lifecycle;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
+
+/**
+ * Creates virtual threads on runtimes that support them (Java 21 and
+ * later). A virtual thread that blocks on a socket doesn't tie up a platform
+ * thread and its stack, so many connections that spend most of their time
+ * waiting for IO can share a small number of platform threads.
+ * <p>
+ * The virtual thread API is accessed by reflection so that the code can be
+ * compiled for and run on older runtimes, including Android.
+ */
+@NotNullByDefault
+public class VirtualThreads {
+
+	private static final Logger LOG = getLogger(VirtualThreads.class.getName());
+
+	/**
+	 * The system property that enables virtual threads for the
+	 * {@link org.briarproject.bramble.api.lifecycle.IoExecutor IoExecutor}
+	 * when it's set to "true". Virtual threads are only used if the runtime
+	 * supports them.
+	 */
+	public static final String ENABLE_PROPERTY =
+			"org.briarproject.bramble.virtualThreads";
+
+	private VirtualThreads() {
+	}
+
+	static boolean isEnabled() {
+		return Boolean.getBoolean(ENABLE_PROPERTY);
+	}
+
+	/**
+	 * Returns a factory that creates virtual threads with the given name
+	 * prefix, or null if the runtime doesn't support virtual threads.
+	 */
+	@Nullable
+	static ThreadFactory getThreadFactory(String namePrefix) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name = builderClass.getMethod("name", String.class,
+					long.class);
+			builder = name.invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory")
+					.invoke(builder);
+		} catch (ClassNotFoundException | NoSuchMethodException |
+				IllegalAccessException e) {
+			LOG.info("Virtual threads are not supported");
+			return null;
+		} catch (InvocationTargetException e) {
+			// Virtual threads are a disabled preview feature on Java 19-20
+			if (LOG.isLoggable(INFO))
+				LOG.info("Virtual threads are not available: " + e.getCause());
+			return null;
+		}
+	}
+}
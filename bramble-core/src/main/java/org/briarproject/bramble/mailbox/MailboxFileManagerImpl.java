@@ -239,6 +239,11 @@ class MailboxFileManagerImpl implements MailboxFileManager, EventListener {
 			return delegate.getMaxIdleTime();
 		}
 
+		@Override
+		public int getMaxFlushDelay() {
+			return delegate.getMaxFlushDelay();
+		}
+
 		@Override
 		public boolean isLossyAndCheap() {
 			return delegate.isLossyAndCheap();
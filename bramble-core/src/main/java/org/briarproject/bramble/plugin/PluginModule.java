@@ -2,9 +2,11 @@ package org.briarproject.bramble.plugin;
 
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.lifecycle.Service;
 import org.briarproject.bramble.api.plugin.BackoffFactory;
 import org.briarproject.bramble.api.plugin.PluginConfig;
 import org.briarproject.bramble.api.plugin.PluginManager;
+import org.briarproject.bramble.api.transport.KeyManager;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -12,6 +14,8 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.singletonList;
+
 @Module
 public class PluginModule {
 
@@ -30,8 +34,11 @@ public class PluginModule {
 	@Provides
 	@Singleton
 	PluginManager providePluginManager(LifecycleManager lifecycleManager,
-			PluginManagerImpl pluginManager) {
-		lifecycleManager.registerService(pluginManager);
+			KeyManager keyManager, PluginManagerImpl pluginManager) {
+		// Plugins may open connections as soon as they start, so the
+		// transports must have been added to the key manager
+		lifecycleManager.registerService(pluginManager,
+				singletonList((Service) keyManager));
 		return pluginManager;
 	}
 
@@ -6,6 +6,7 @@ import org.briarproject.bramble.api.connection.ConnectionManager;
 import org.briarproject.bramble.api.connection.ConnectionRegistry;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.event.ContactAddedEvent;
+import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.event.Event;
 import org.briarproject.bramble.api.event.EventListener;
@@ -34,7 +35,9 @@ import org.briarproject.nullsafety.NotNullByDefault;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Executor;
@@ -43,10 +46,14 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.Collections.sort;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
@@ -58,6 +65,23 @@ class PollerImpl implements Poller, EventListener {
 
 	private static final Logger LOG = getLogger(PollerImpl.class.getName());
 
+	/**
+	 * The number of consecutive polls without a connection after which a
+	 * contact starts backing off.
+	 */
+	private static final int FAILURES_BEFORE_BACKOFF = 3;
+
+	/**
+	 * The time for which a contact is skipped when it starts backing off.
+	 * The time doubles with each further failure.
+	 */
+	private static final long MIN_BACKOFF_MS = MINUTES.toMillis(5);
+
+	/**
+	 * The maximum time for which a contact is skipped.
+	 */
+	private static final long MAX_BACKOFF_MS = HOURS.toMillis(1);
+
 	private final Executor ioExecutor, wakefulIoExecutor;
 	private final TaskScheduler scheduler;
 	private final ConnectionManager connectionManager;
@@ -69,6 +93,8 @@ class PollerImpl implements Poller, EventListener {
 	private final Lock lock;
 	@GuardedBy("lock")
 	private final Map<TransportId, ScheduledPollTask> tasks;
+	@GuardedBy("lock")
+	private final Map<TransportId, Map<ContactId, ContactState>> states;
 
 	@Inject
 	PollerImpl(@IoExecutor Executor ioExecutor,
@@ -91,6 +117,28 @@ class PollerImpl implements Poller, EventListener {
 		this.clock = clock;
 		lock = new ReentrantLock();
 		tasks = new HashMap<>();
+		states = new HashMap<>();
+	}
+
+	/**
+	 * Returns the connection history of each contact that has been polled
+	 * or connected over the given transport.
+	 */
+	Map<ContactId, Reachability> getReachability(TransportId t) {
+		Map<ContactId, Reachability> reachability = new HashMap<>();
+		lock.lock();
+		try {
+			Map<ContactId, ContactState> transportStates = states.get(t);
+			if (transportStates != null) {
+				for (Entry<ContactId, ContactState> e :
+						transportStates.entrySet()) {
+					reachability.put(e.getKey(), e.getValue().snapshot());
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		return reachability;
 	}
 
 	@Override
@@ -99,6 +147,9 @@ class PollerImpl implements Poller, EventListener {
 			ContactAddedEvent c = (ContactAddedEvent) e;
 			// Connect to the newly added contact
 			connectToContact(c.getContactId());
+		} else if (e instanceof ContactRemovedEvent) {
+			ContactRemovedEvent c = (ContactRemovedEvent) e;
+			removeContactStates(c.getContactId());
 		} else if (e instanceof ConnectionClosedEvent) {
 			ConnectionClosedEvent c = (ConnectionClosedEvent) e;
 			// Reschedule polling, the polling interval may have decreased
@@ -109,10 +160,14 @@ class PollerImpl implements Poller, EventListener {
 			}
 		} else if (e instanceof ConnectionOpenedEvent) {
 			ConnectionOpenedEvent c = (ConnectionOpenedEvent) e;
+			// The contact is reachable, so stop backing off
+			recordConnection(c.getContactId(), c.getTransportId());
 			// Reschedule polling, the polling interval may have decreased
 			reschedule(c.getTransportId());
 		} else if (e instanceof TransportActiveEvent) {
 			TransportActiveEvent t = (TransportActiveEvent) e;
+			// Contacts that were unreachable may now be reachable
+			resetBackoff(t.getTransportId());
 			// Poll the newly activated transport
 			pollNow(t.getTransportId());
 		} else if (e instanceof TransportInactiveEvent) {
@@ -221,12 +276,48 @@ class PollerImpl implements Poller, EventListener {
 					transportPropertyManager.getRemoteProperties(t);
 			Collection<ContactId> connected =
 					connectionRegistry.getConnectedOrBetterContacts(t);
+			long now = clock.currentTimeMillis();
+			List<ContactId> contacts = new ArrayList<>();
+			int skipped = 0, failing = 0, withLatency = 0;
+			long totalLatency = 0;
+			lock.lock();
+			try {
+				for (ContactId c : remote.keySet()) {
+					if (connected.contains(c)) continue;
+					ContactState state = getContactState(c, t);
+					// If the last poll didn't lead to a connection, the
+					// contact was unreachable
+					if (state.pollPending) state.recordFailure(now);
+					if (now < state.backoffUntil) {
+						skipped++;
+						continue;
+					}
+					state.pollPending = true;
+					contacts.add(c);
+					if (state.consecutiveFailures > 0) failing++;
+					if (state.averageLatency != -1) {
+						withLatency++;
+						totalLatency += state.averageLatency;
+					}
+				}
+				// Poll the contacts that are most likely to be reachable first
+				sort(contacts, new ReachabilityComparator(states.get(t)));
+			} finally {
+				lock.unlock();
+			}
+			if (LOG.isLoggable(INFO)) {
+				String latency = withLatency == 0 ? "unknown"
+						: totalLatency / withLatency + " ms";
+				LOG.info("Polling " + contacts.size() + " contacts on " + t
+						+ ", " + failing + " unreachable last time, "
+						+ skipped + " backing off, average latency "
+						+ latency);
+			}
 			Collection<Pair<TransportProperties, ConnectionHandler>>
-					properties = new ArrayList<>();
-			for (Entry<ContactId, TransportProperties> e : remote.entrySet()) {
-				ContactId c = e.getKey();
-				if (!connected.contains(c))
-					properties.add(new Pair<>(e.getValue(), new Handler(c, t)));
+					properties = new ArrayList<>(contacts.size());
+			for (ContactId c : contacts) {
+				properties.add(new Pair<>(remote.get(c),
+						new Handler(c, t, now)));
 			}
 			if (!properties.isEmpty()) p.poll(properties);
 		} catch (DbException e) {
@@ -234,6 +325,135 @@ class PollerImpl implements Poller, EventListener {
 		}
 	}
 
+	@GuardedBy("lock")
+	private ContactState getContactState(ContactId c, TransportId t) {
+		Map<ContactId, ContactState> transportStates = states.get(t);
+		if (transportStates == null) {
+			transportStates = new HashMap<>();
+			states.put(t, transportStates);
+		}
+		ContactState state = transportStates.get(c);
+		if (state == null) {
+			state = new ContactState();
+			transportStates.put(c, state);
+		}
+		return state;
+	}
+
+	private void recordConnection(ContactId c, TransportId t) {
+		lock.lock();
+		try {
+			getContactState(c, t).recordConnection();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void recordLatency(ContactId c, TransportId t, long latency) {
+		lock.lock();
+		try {
+			getContactState(c, t).recordLatency(latency);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void resetBackoff(TransportId t) {
+		lock.lock();
+		try {
+			Map<ContactId, ContactState> transportStates = states.get(t);
+			if (transportStates == null) return;
+			for (ContactState state : transportStates.values()) {
+				state.pollPending = false;
+				state.consecutiveFailures = 0;
+				state.backoffUntil = 0;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void removeContactStates(ContactId c) {
+		lock.lock();
+		try {
+			for (Map<ContactId, ContactState> transportStates :
+					states.values()) {
+				transportStates.remove(c);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@NotThreadSafe
+	private static class ContactState {
+
+		private int connections = 0, failures = 0, consecutiveFailures = 0;
+		private long averageLatency = -1, backoffUntil = 0;
+		private boolean pollPending = false;
+
+		private void recordConnection() {
+			connections++;
+			consecutiveFailures = 0;
+			backoffUntil = 0;
+			pollPending = false;
+		}
+
+		private void recordLatency(long latency) {
+			if (averageLatency == -1) averageLatency = latency;
+			else averageLatency = (averageLatency * 3 + latency) / 4;
+		}
+
+		private void recordFailure(long now) {
+			failures++;
+			consecutiveFailures++;
+			pollPending = false;
+			int exponent = consecutiveFailures - FAILURES_BEFORE_BACKOFF;
+			if (exponent >= 0) {
+				// Double the backoff with each failure, up to the maximum
+				long backoff = exponent > 10 ? MAX_BACKOFF_MS
+						: Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << exponent);
+				backoffUntil = now + backoff;
+			}
+		}
+
+		private Reachability snapshot() {
+			return new Reachability(connections, failures,
+					consecutiveFailures, averageLatency, backoffUntil);
+		}
+	}
+
+	/**
+	 * Orders contacts by the number of consecutive failures, then by
+	 * average latency, with contacts of unknown latency last.
+	 */
+	@NotThreadSafe
+	private static class ReachabilityComparator
+			implements Comparator<ContactId> {
+
+		private final Map<ContactId, ContactState> transportStates;
+
+		private ReachabilityComparator(
+				Map<ContactId, ContactState> transportStates) {
+			this.transportStates = transportStates;
+		}
+
+		@Override
+		public int compare(ContactId a, ContactId b) {
+			ContactState stateA = transportStates.get(a);
+			ContactState stateB = transportStates.get(b);
+			if (stateA.consecutiveFailures != stateB.consecutiveFailures) {
+				return stateA.consecutiveFailures < stateB.consecutiveFailures
+						? -1 : 1;
+			}
+			long latencyA = stateA.averageLatency == -1 ? Long.MAX_VALUE
+					: stateA.averageLatency;
+			long latencyB = stateB.averageLatency == -1 ? Long.MAX_VALUE
+					: stateB.averageLatency;
+			return latencyA < latencyB ? -1 : (latencyA == latencyB ? 0 : 1);
+		}
+	}
+
 	private class ScheduledPollTask {
 
 		private final PollTask task;
@@ -282,14 +502,19 @@ class PollerImpl implements Poller, EventListener {
 
 		private final ContactId contactId;
 		private final TransportId transportId;
+		private final long pollTime;
 
-		private Handler(ContactId contactId, TransportId transportId) {
+		private Handler(ContactId contactId, TransportId transportId,
+				long pollTime) {
 			this.contactId = contactId;
 			this.transportId = transportId;
+			this.pollTime = pollTime;
 		}
 
 		@Override
 		public void handleConnection(DuplexTransportConnection c) {
+			recordLatency(contactId, transportId,
+					clock.currentTimeMillis() - pollTime);
 			connectionManager.manageOutgoingConnection(contactId,
 					transportId, c);
 		}
@@ -302,6 +527,8 @@ class PollerImpl implements Poller, EventListener {
 
 		@Override
 		public void handleWriter(TransportConnectionWriter w) {
+			recordLatency(contactId, transportId,
+					clock.currentTimeMillis() - pollTime);
 			connectionManager.manageOutgoingConnection(contactId,
 					transportId, w);
 		}
@@ -0,0 +1,66 @@
+package org.briarproject.bramble.plugin;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A snapshot of the poller's connection history for a contact over a
+ * transport.
+ */
+@Immutable
+@NotNullByDefault
+class Reachability {
+
+	private final int connections, failures, consecutiveFailures;
+	private final long averageLatency, backoffUntil;
+
+	Reachability(int connections, int failures, int consecutiveFailures,
+			long averageLatency, long backoffUntil) {
+		this.connections = connections;
+		this.failures = failures;
+		this.consecutiveFailures = consecutiveFailures;
+		this.averageLatency = averageLatency;
+		this.backoffUntil = backoffUntil;
+	}
+
+	/**
+	 * Returns the number of connections that have been opened to or from
+	 * the contact.
+	 */
+	int getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Returns the number of times the contact was polled without a
+	 * connection being opened before the next poll.
+	 */
+	int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns the number of failures since a connection was last opened.
+	 */
+	int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * Returns the moving average of the time in milliseconds between
+	 * polling the contact and connecting, or -1 if the contact has never
+	 * been connected by polling.
+	 */
+	long getAverageLatency() {
+		return averageLatency;
+	}
+
+	/**
+	 * Returns the time before which the contact won't be polled, or zero if
+	 * the contact isn't backing off.
+	 */
+	long getBackoffUntil() {
+		return backoffUntil;
+	}
+}
@@ -105,6 +105,11 @@ class RemovableDriveWriterTask extends RemovableDriveTaskImpl
 			return delegate.getMaxIdleTime();
 		}
 
+		@Override
+		public int getMaxFlushDelay() {
+			return delegate.getMaxFlushDelay();
+		}
+
 		@Override
 		public boolean isLossyAndCheap() {
 			return delegate.isLossyAndCheap();
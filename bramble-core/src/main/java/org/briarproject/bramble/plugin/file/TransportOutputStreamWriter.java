@@ -35,6 +35,11 @@ class TransportOutputStreamWriter implements TransportConnectionWriter {
 		return plugin.getMaxIdleTime();
 	}
 
+	@Override
+	public int getMaxFlushDelay() {
+		return 0;
+	}
+
 	@Override
 	public boolean isLossyAndCheap() {
 		return plugin.isLossyAndCheap();
@@ -62,6 +62,12 @@ class LanTcpPlugin extends TcpPlugin {
 
 	private static final String SEPARATOR = ",";
 
+	/**
+	 * LAN connections are fast enough that full frames matter more than a
+	 * few milliseconds of latency when transferring messages in bulk.
+	 */
+	private static final int MAX_FLUSH_DELAY = 20; // 20 milliseconds
+
 	/**
 	 * The IP address of an Android device providing a wifi access point.
 	 * <p>
@@ -128,6 +134,11 @@ class LanTcpPlugin extends TcpPlugin {
 		return DEFAULT_PREF_PLUGIN_ENABLE;
 	}
 
+	@Override
+	protected int getMaxFlushDelay() {
+		return MAX_FLUSH_DELAY;
+	}
+
 	@Override
 	protected List<InetSocketAddress> getLocalSocketAddresses(boolean ipv4) {
 		TransportProperties p = callback.getLocalProperties();
@@ -31,8 +31,13 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -43,6 +48,7 @@ import javax.annotation.concurrent.ThreadSafe;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.list;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
@@ -64,6 +70,18 @@ abstract class TcpPlugin implements DuplexPlugin, EventListener {
 	private static final Pattern DOTTED_QUAD =
 			Pattern.compile("^\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}$");
 
+	/**
+	 * How long to wait for an outgoing connection attempt to succeed before
+	 * starting an attempt to connect to the contact's next address.
+	 */
+	static final int CONNECTION_ATTEMPT_DELAY = 250; // 250 milliseconds
+
+	/**
+	 * The maximum number of contacts for which the last address that was
+	 * connected to is remembered.
+	 */
+	private static final int MAX_REMEMBERED_ADDRESSES = 100;
+
 	protected final Executor ioExecutor, wakefulIoExecutor, bindExecutor;
 	protected final Backoff backoff;
 	protected final PluginCallback callback;
@@ -72,6 +90,22 @@ abstract class TcpPlugin implements DuplexPlugin, EventListener {
 	protected final AtomicBoolean used = new AtomicBoolean(false);
 	protected final PluginState state = new PluginState();
 
+	/**
+	 * The address to which a connection was last made for each set of remote
+	 * properties, so that address can be tried first next time. The least
+	 * recently used entries are discarded.
+	 */
+	@GuardedBy("lastConnected")
+	private final Map<TransportProperties, InetSocketAddress> lastConnected =
+			new LinkedHashMap<TransportProperties, InetSocketAddress>(16,
+					0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Entry<TransportProperties, InetSocketAddress> e) {
+					return size() > MAX_REMEMBERED_ADDRESSES;
+				}
+			};
+
 	/**
 	 * Returns zero or more socket addresses on which the plugin should listen,
 	 * in order of preference. At most one of the addresses will be bound.
@@ -135,6 +169,14 @@ abstract class TcpPlugin implements DuplexPlugin, EventListener {
 		return maxIdleTime;
 	}
 
+	/**
+	 * Returns the maximum time in milliseconds for which data may be held
+	 * back before flushing a connection.
+	 */
+	protected int getMaxFlushDelay() {
+		return 0;
+	}
+
 	@Override
 	public void start() {
 		if (used.getAndSet(true)) throw new IllegalStateException();
@@ -280,6 +322,7 @@ abstract class TcpPlugin implements DuplexPlugin, EventListener {
 			LOG.warning("No interface for server socket");
 			return null;
 		}
+		List<InetSocketAddress> remotes = new ArrayList<>();
 		for (InetSocketAddress remote : getRemoteSocketAddresses(p, ipv4)) {
 			// Don't try to connect to our own address
 			if (!canConnectToOwnAddress() &&
@@ -294,24 +337,92 @@ abstract class TcpPlugin implements DuplexPlugin, EventListener {
 				}
 				continue;
 			}
-			try {
-				if (LOG.isLoggable(INFO))
-					LOG.info("Connecting to " + scrubSocketAddress(remote));
-				Socket s = createSocket();
-				s.bind(new InetSocketAddress(ss.getInetAddress(), 0));
-				s.connect(remote, connectionTimeout);
-				s.setSoTimeout(socketTimeout);
-				if (LOG.isLoggable(INFO))
-					LOG.info("Connected to " + scrubSocketAddress(remote));
-				return new TcpTransportConnection(this, s);
-			} catch (IOException e) {
-				if (LOG.isLoggable(INFO)) {
-					LOG.info("Could not connect to " +
-							scrubSocketAddress(remote));
+			remotes.add(remote);
+		}
+		if (remotes.isEmpty()) return null;
+		// Try the address that worked last time first
+		InetSocketAddress last;
+		synchronized (lastConnected) {
+			last = lastConnected.get(p);
+		}
+		if (last != null && remotes.remove(last)) remotes.add(0, last);
+		ConnectionAttempt winner;
+		try {
+			winner = connect(ss.getInetAddress(), remotes);
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while connecting");
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		if (winner == null) return null;
+		synchronized (lastConnected) {
+			lastConnected.put(new TransportProperties(p), winner.remote);
+		}
+		return new TcpTransportConnection(this, winner.socket);
+	}
+
+	/**
+	 * Races connection attempts to the given addresses, starting each attempt
+	 * {@link #CONNECTION_ATTEMPT_DELAY} ms after the previous one, or as soon
+	 * as the previous one fails. Returns the first attempt to succeed, or
+	 * null if all the attempts fail. The other attempts are cancelled.
+	 * <p>
+	 * This is similar to the "happy eyeballs" algorithm (RFC 8305): if a
+	 * contact advertises several addresses and the first ones are stale, the
+	 * time to connect is bounded by the delay between attempts rather than
+	 * the connection timeout of each stale address.
+	 */
+	@Nullable
+	private ConnectionAttempt connect(InetAddress localAddr,
+			List<InetSocketAddress> remotes) throws InterruptedException {
+		BlockingQueue<ConnectionAttempt> finished =
+				new LinkedBlockingQueue<>();
+		List<ConnectionAttempt> started = new ArrayList<>(remotes.size());
+		ConnectionAttempt winner = null;
+		int next = 0, failed = 0;
+		try {
+			while (failed < remotes.size()) {
+				if (next < remotes.size()) {
+					InetSocketAddress remote = remotes.get(next++);
+					Socket s = null;
+					try {
+						s = createSocket();
+						s.bind(new InetSocketAddress(localAddr, 0));
+					} catch (IOException e) {
+						if (LOG.isLoggable(INFO)) {
+							LOG.info("Could not create socket for " +
+									scrubSocketAddress(remote));
+						}
+						tryToClose(s, LOG, WARNING);
+						failed++;
+						continue;
+					}
+					ConnectionAttempt a =
+							new ConnectionAttempt(remote, s, finished);
+					started.add(a);
+					ioExecutor.execute(a);
+				}
+				// Wait for an attempt to finish or for the next attempt to
+				// be due, whichever comes first
+				ConnectionAttempt a;
+				if (next < remotes.size()) {
+					a = finished.poll(CONNECTION_ATTEMPT_DELAY, MILLISECONDS);
+				} else {
+					a = finished.take();
 				}
+				if (a == null) continue;
+				if (a.connected) {
+					winner = a;
+					return a;
+				}
+				failed++;
+			}
+			return null;
+		} finally {
+			for (ConnectionAttempt a : started) {
+				if (a != winner) tryToClose(a.socket, LOG, WARNING);
 			}
 		}
-		return null;
 	}
 
 	@Nullable
@@ -419,6 +530,45 @@ abstract class TcpPlugin implements DuplexPlugin, EventListener {
 		}
 	}
 
+	@NotNullByDefault
+	private class ConnectionAttempt implements Runnable {
+
+		private final InetSocketAddress remote;
+		private final Socket socket;
+		private final BlockingQueue<ConnectionAttempt> finished;
+
+		// Visible to the caller after the attempt is added to the queue
+		private boolean connected = false;
+
+		private ConnectionAttempt(InetSocketAddress remote, Socket socket,
+				BlockingQueue<ConnectionAttempt> finished) {
+			this.remote = remote;
+			this.socket = socket;
+			this.finished = finished;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (LOG.isLoggable(INFO))
+					LOG.info("Connecting to " + scrubSocketAddress(remote));
+				socket.connect(remote, connectionTimeout);
+				socket.setSoTimeout(socketTimeout);
+				connected = true;
+				if (LOG.isLoggable(INFO))
+					LOG.info("Connected to " + scrubSocketAddress(remote));
+			} catch (IOException e) {
+				// This is expected if the attempt was cancelled
+				if (LOG.isLoggable(INFO)) {
+					LOG.info("Could not connect to " +
+							scrubSocketAddress(remote));
+				}
+				tryToClose(socket, LOG, WARNING);
+			}
+			finished.add(this);
+		}
+	}
+
 	@ThreadSafe
 	@NotNullByDefault
 	protected class PluginState {
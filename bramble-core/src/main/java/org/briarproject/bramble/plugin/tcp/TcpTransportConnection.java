@@ -1,6 +1,5 @@
 package org.briarproject.bramble.plugin.tcp;
 
-import org.briarproject.bramble.api.plugin.Plugin;
 import org.briarproject.bramble.api.plugin.duplex.AbstractDuplexTransportConnection;
 import org.briarproject.bramble.util.IoUtils;
 import org.briarproject.nullsafety.NotNullByDefault;
@@ -17,10 +16,12 @@ import javax.annotation.concurrent.ThreadSafe;
 class TcpTransportConnection extends AbstractDuplexTransportConnection {
 
 	private final Socket socket;
+	private final int maxFlushDelay;
 
-	TcpTransportConnection(Plugin plugin, Socket socket) {
+	TcpTransportConnection(TcpPlugin plugin, Socket socket) {
 		super(plugin);
 		this.socket = socket;
+		maxFlushDelay = plugin.getMaxFlushDelay();
 	}
 
 	@Override
@@ -37,4 +38,9 @@ class TcpTransportConnection extends AbstractDuplexTransportConnection {
 	protected void closeConnection(boolean exception) throws IOException {
 		socket.close();
 	}
+
+	@Override
+	protected int getMaxFlushDelay() {
+		return maxFlushDelay;
+	}
 }
@@ -36,7 +36,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static org.briarproject.bramble.api.properties.TransportPropertyConstants.GROUP_KEY_DISCOVERED;
@@ -47,7 +48,7 @@ import static org.briarproject.bramble.api.properties.TransportPropertyConstants
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
 import static org.briarproject.bramble.util.StringUtils.isNullOrEmpty;
 
-@Immutable
+@ThreadSafe
 @NotNullByDefault
 class TransportPropertyManagerImpl implements TransportPropertyManager,
 		OpenDatabaseHook, ContactHook, ClientVersioningHook,
@@ -61,6 +62,32 @@ class TransportPropertyManagerImpl implements TransportPropertyManager,
 	private final Clock clock;
 	private final Group localGroup;
 
+	private final Object lock = new Object();
+
+	/**
+	 * The remote properties of each contact for each transport, including
+	 * any discovered properties. Entries are added when the properties are
+	 * loaded and replaced when an update is delivered, so the properties
+	 * can be polled without reading and parsing the update messages.
+	 */
+	@GuardedBy("lock")
+	private final Map<TransportId, Map<ContactId, TransportProperties>>
+			remoteProperties = new HashMap<>();
+
+	/**
+	 * The contact that each contact group belongs to, for the contacts with
+	 * entries in {@link #remoteProperties}.
+	 */
+	@GuardedBy("lock")
+	private final Map<GroupId, ContactId> groupContacts = new HashMap<>();
+
+	/**
+	 * Incremented whenever any remote properties change, so that properties
+	 * loaded before the change are not cached afterwards.
+	 */
+	@GuardedBy("lock")
+	private long generation = 0;
+
 	@Inject
 	TransportPropertyManagerImpl(DatabaseComponent db,
 			ClientHelper clientHelper,
@@ -104,7 +131,12 @@ class TransportPropertyManagerImpl implements TransportPropertyManager,
 
 	@Override
 	public void removingContact(Transaction txn, Contact c) throws DbException {
-		db.removeGroup(txn, getContactGroup(c));
+		Group g = getContactGroup(c);
+		db.removeGroup(txn, g);
+		synchronized (lock) {
+			removeRemoteProperties(c.getId(), null);
+			groupContacts.remove(g.getId());
+		}
 	}
 
 	@Override
@@ -135,6 +167,7 @@ class TransportPropertyManagerImpl implements TransportPropertyManager,
 					return ACCEPT_DO_NOT_SHARE;
 				}
 			}
+			updateRemoteProperties(txn, m, t);
 			txn.attach(new RemoteTransportPropertiesUpdatedEvent(t));
 		} catch (FormatException e) {
 			throw new InvalidMessageException(e);
@@ -149,6 +182,9 @@ class TransportPropertyManagerImpl implements TransportPropertyManager,
 		for (Entry<TransportId, TransportProperties> e : props.entrySet()) {
 			storeMessage(txn, g.getId(), e.getKey(), e.getValue(), 0,
 					false, false);
+			synchronized (lock) {
+				removeRemoteProperties(c, e.getKey());
+			}
 		}
 	}
 
@@ -178,6 +214,10 @@ class TransportPropertyManagerImpl implements TransportPropertyManager,
 					meta.put(GROUP_KEY_DISCOVERED, merged);
 					clientHelper.mergeGroupMetadata(txn, g.getId(), meta);
 					updateLocalProperties(txn, contact, t);
+					// The discovered properties apply to all transports
+					synchronized (lock) {
+						removeRemoteProperties(c, null);
+					}
 				}
 			});
 		} catch (FormatException e) {
@@ -263,32 +303,118 @@ class TransportPropertyManagerImpl implements TransportPropertyManager,
 
 	private TransportProperties getRemoteProperties(Transaction txn, Contact c,
 			TransportId t) throws DbException {
+		long generation;
+		synchronized (lock) {
+			Map<ContactId, TransportProperties> cached =
+					remoteProperties.get(t);
+			if (cached != null) {
+				TransportProperties p = cached.get(c.getId());
+				if (p != null) return new TransportProperties(p);
+			}
+			generation = this.generation;
+		}
 		Group g = getContactGroup(c);
+		TransportProperties p;
 		try {
 			// Find the latest remote update
-			TransportProperties remote;
 			LatestUpdate latest = findLatest(txn, g.getId(), t, false);
 			if (latest == null) {
-				remote = new TransportProperties();
+				p = new TransportProperties();
 			} else {
 				// Retrieve and parse the latest remote properties
 				BdfList message = clientHelper.getMessageAsList(txn,
 						latest.messageId, false);
-				remote = parseProperties(message);
+				p = parseProperties(message);
 			}
-			// Merge in any discovered properties
-			BdfDictionary meta =
-					clientHelper.getGroupMetadataAsDictionary(txn, g.getId());
-			BdfDictionary d = meta.getOptionalDictionary(GROUP_KEY_DISCOVERED);
-			if (d == null) return remote;
-			TransportProperties merged =
-					clientHelper.parseAndValidateTransportProperties(d);
-			// Received properties override discovered properties
-			merged.putAll(remote);
-			return merged;
+			p = mergeDiscoveredProperties(txn, g.getId(), p);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
+		TransportProperties loaded = p;
+		if (txn.isReadOnly()) {
+			cacheRemoteProperties(generation, g.getId(), c.getId(), t, loaded);
+		} else {
+			// The properties may include uncommitted changes
+			txn.attach(() -> cacheRemoteProperties(generation, g.getId(),
+					c.getId(), t, loaded));
+		}
+		return new TransportProperties(loaded);
+	}
+
+	/**
+	 * Returns the given remote properties merged with any properties that
+	 * have been discovered for the given contact group.
+	 */
+	private TransportProperties mergeDiscoveredProperties(Transaction txn,
+			GroupId g, TransportProperties remote)
+			throws DbException, FormatException {
+		BdfDictionary meta = clientHelper.getGroupMetadataAsDictionary(txn, g);
+		BdfDictionary d = meta.getOptionalDictionary(GROUP_KEY_DISCOVERED);
+		if (d == null) return remote;
+		TransportProperties merged =
+				clientHelper.parseAndValidateTransportProperties(d);
+		// Received properties override discovered properties
+		merged.putAll(remote);
+		return merged;
+	}
+
+	/**
+	 * Replaces any cached remote properties of the contact that sent the
+	 * given update when the transaction commits.
+	 */
+	private void updateRemoteProperties(Transaction txn, Message m,
+			TransportId t) throws DbException, FormatException {
+		GroupId g = m.getGroupId();
+		ContactId c;
+		long generation;
+		synchronized (lock) {
+			c = groupContacts.get(g);
+			if (c == null) {
+				// The contact's properties aren't cached, but they may be
+				// in the process of being loaded
+				this.generation++;
+				return;
+			}
+			generation = removeRemoteProperties(c, t);
+		}
+		TransportProperties p = mergeDiscoveredProperties(txn, g,
+				parseProperties(clientHelper.toList(m)));
+		txn.attach(() -> cacheRemoteProperties(generation, g, c, t, p));
+	}
+
+	private void cacheRemoteProperties(long generation, GroupId g,
+			ContactId c, TransportId t, TransportProperties p) {
+		synchronized (lock) {
+			if (this.generation != generation) return;
+			Map<ContactId, TransportProperties> cached =
+					remoteProperties.get(t);
+			if (cached == null) {
+				cached = new HashMap<>();
+				remoteProperties.put(t, cached);
+			}
+			cached.put(c, p);
+			groupContacts.put(g, c);
+		}
+	}
+
+	/**
+	 * Removes the given contact's cached remote properties for the given
+	 * transport, or for all transports if the transport is null, and
+	 * returns the new generation.
+	 */
+	@GuardedBy("lock")
+	private long removeRemoteProperties(ContactId c, @Nullable TransportId t) {
+		if (t == null) {
+			for (Map<ContactId, TransportProperties> cached :
+					remoteProperties.values()) {
+				cached.remove(c);
+			}
+		} else {
+			Map<ContactId, TransportProperties> cached =
+					remoteProperties.get(t);
+			if (cached != null) cached.remove(c);
+		}
+		return ++generation;
 	}
 
 	@Override
@@ -2,6 +2,8 @@ package org.briarproject.bramble.rendezvous;
 
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.plugin.PluginManager;
 import org.briarproject.bramble.api.rendezvous.RendezvousPoller;
 
 import javax.inject.Inject;
@@ -10,6 +12,8 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.singletonList;
+
 @Module
 public class RendezvousModule {
 
@@ -27,8 +31,11 @@ public class RendezvousModule {
 	@Provides
 	@Singleton
 	RendezvousPoller provideRendezvousPoller(LifecycleManager lifecycleManager,
-			EventBus eventBus, RendezvousPollerImpl rendezvousPoller) {
-		lifecycleManager.registerService(rendezvousPoller);
+			EventBus eventBus, PluginManager pluginManager,
+			RendezvousPollerImpl rendezvousPoller) {
+		// Pending contacts are polled using the plugins
+		lifecycleManager.registerService(rendezvousPoller,
+				singletonList((Service) pluginManager));
 		eventBus.addListener(rendezvousPoller);
 		return rendezvousPoller;
 	}
@@ -17,6 +17,8 @@ import org.briarproject.bramble.api.sync.Ack;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.Request;
 import org.briarproject.bramble.api.sync.SyncConstants;
 import org.briarproject.bramble.api.sync.SyncRecordWriter;
@@ -27,13 +29,17 @@ import org.briarproject.bramble.api.sync.event.GroupVisibilityUpdatedEvent;
 import org.briarproject.bramble.api.sync.event.MessageRequestedEvent;
 import org.briarproject.bramble.api.sync.event.MessageSharedEvent;
 import org.briarproject.bramble.api.sync.event.MessageToAckEvent;
+import org.briarproject.bramble.api.sync.event.MessageToOfferEvent;
 import org.briarproject.bramble.api.sync.event.MessageToRequestEvent;
+import org.briarproject.bramble.api.sync.event.SyncVersionsUpdatedEvent;
+import org.briarproject.bramble.api.sync.event.UnackedMessagesResetEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.transport.StreamWriter;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -52,8 +58,11 @@ import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPING;
 import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
+import static org.briarproject.bramble.api.sync.SyncConstants.COMPRESSION_VERSION;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.SHORT_ID_VERSION;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUMMARY_VERSION;
 import static org.briarproject.bramble.api.sync.SyncConstants.SUPPORTED_VERSIONS;
 import static org.briarproject.bramble.util.LogUtils.logException;
 
@@ -83,20 +92,28 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 	 * fewer round-trips between the DB and the output stream, but each
 	 * round-trip will block the DB for longer.
 	 */
-	private static final int BATCH_CAPACITY =
+	static final int BATCH_CAPACITY =
 			(RECORD_HEADER_BYTES + MAX_MESSAGE_LENGTH) * 2;
 
+	/**
+	 * A batch at least this large suggests that messages are being sent in
+	 * bulk, so another batch is likely to follow. A batch holding a single
+	 * chat message is much smaller than this.
+	 */
+	private static final int BULK_BATCH_BYTES = BATCH_CAPACITY / 2;
+
 	private final DatabaseComponent db;
 	private final Executor dbExecutor;
 	private final EventBus eventBus;
 	private final Clock clock;
 	private final ContactId contactId;
 	private final TransportId transportId;
-	private final long maxLatency, maxIdleTime;
+	private final long maxLatency, maxIdleTime, maxFlushDelay;
 	private final StreamWriter streamWriter;
 	private final SyncRecordWriter recordWriter;
 	@Nullable
 	private final Priority priority;
+	private final DuplexSessionStateImpl duplexState;
 	private final BlockingQueue<ThrowingRunnable<IOException>> writerTasks;
 
 	private final AtomicBoolean generateAckQueued = new AtomicBoolean(false);
@@ -105,14 +122,38 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 	private final AtomicBoolean generateRequestQueued =
 			new AtomicBoolean(false);
 	private final AtomicLong nextSendTime = new AtomicLong(Long.MAX_VALUE);
+	/**
+	 * True if the next offer should be preceded by a check for groups with
+	 * enough messages to summarise. Messages only build up in bulk while the
+	 * contact is unreachable, or when a group is shared or unacked messages
+	 * are reset, so the check isn't needed before every offer.
+	 */
+	private final AtomicBoolean summaryDue = new AtomicBoolean(true);
 
 	private volatile boolean interrupted = false;
+	/**
+	 * True if the contact has told us, via a versions record, that it can
+	 * read compressed messages.
+	 */
+	private volatile boolean compressionSupported = false;
+	/**
+	 * True if the contact has told us, via a versions record, that it can
+	 * read compact acks and requests.
+	 */
+	private volatile boolean shortIdsSupported = false;
+
+	/**
+	 * True if the last batch written was large enough to suggest that
+	 * messages are being sent in bulk. Only accessed by the writer thread.
+	 */
+	private boolean sendingInBulk = false;
 
 	DuplexOutgoingSession(DatabaseComponent db, Executor dbExecutor,
 			EventBus eventBus, Clock clock, ContactId contactId,
 			TransportId transportId, long maxLatency, int maxIdleTime,
-			StreamWriter streamWriter, SyncRecordWriter recordWriter,
-			@Nullable Priority priority) {
+			int maxFlushDelay, StreamWriter streamWriter,
+			SyncRecordWriter recordWriter, @Nullable Priority priority,
+			DuplexSessionStateImpl duplexState) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
 		this.eventBus = eventBus;
@@ -121,9 +162,11 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		this.transportId = transportId;
 		this.maxLatency = maxLatency;
 		this.maxIdleTime = maxIdleTime;
+		this.maxFlushDelay = maxFlushDelay;
 		this.streamWriter = streamWriter;
 		this.recordWriter = recordWriter;
 		this.priority = priority;
+		this.duplexState = duplexState;
 		writerTasks = new LinkedBlockingQueue<>();
 	}
 
@@ -131,6 +174,9 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 	@Override
 	public void run() throws IOException {
 		eventBus.addListener(this);
+		// Send acks for summaries received by the incoming session
+		duplexState.setSummaryAckListener(
+				() -> writerTasks.add(new WriteSummaryAcks()));
 		try {
 			// Send our supported protocol versions
 			recordWriter.writeVersions(new Versions(SUPPORTED_VERSIONS));
@@ -144,6 +190,8 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			long now = clock.currentTimeMillis();
 			long nextKeepalive = now + maxIdleTime;
 			boolean dataToFlush = true;
+			// The time by which unflushed data must be flushed, if any
+			long flushDeadline = Long.MAX_VALUE;
 			// Write records until interrupted
 			try {
 				while (!interrupted) {
@@ -152,11 +200,20 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 					long keepaliveWait = Math.max(0, nextKeepalive - now);
 					long sendWait = Math.max(0, nextSendTime.get() - now);
 					long wait = Math.min(keepaliveWait, sendWait);
-					// Flush any unflushed data if we're going to wait
+					// Flush any unflushed data if we're going to wait. If
+					// messages are being sent in bulk, wait a short time for
+					// the next batch first, so it can fill the same frames
 					if (wait > 0 && dataToFlush && writerTasks.isEmpty()) {
-						recordWriter.flush();
-						dataToFlush = false;
-						nextKeepalive = now + maxIdleTime;
+						if (flushDeadline == Long.MAX_VALUE)
+							flushDeadline = now + maxFlushDelay;
+						if (!sendingInBulk || now >= flushDeadline) {
+							recordWriter.flush();
+							dataToFlush = false;
+							flushDeadline = Long.MAX_VALUE;
+							nextKeepalive = now + maxIdleTime;
+						} else {
+							wait = Math.min(wait, flushDeadline - now);
+						}
 					}
 					// Wait for a record
 					ThrowingRunnable<IOException> task = writerTasks.poll(wait,
@@ -175,6 +232,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 							LOG.info("Sending keepalive");
 							recordWriter.flush();
 							dataToFlush = false;
+							flushDeadline = Long.MAX_VALUE;
 							nextKeepalive = now + maxIdleTime;
 						}
 					} else if (task == CLOSE) {
@@ -194,6 +252,8 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			}
 		} finally {
 			eventBus.removeListener(this);
+			duplexState.setSummaryAckListener(null);
+			recordWriter.release();
 		}
 	}
 
@@ -245,6 +305,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			GroupVisibilityUpdatedEvent g = (GroupVisibilityUpdatedEvent) e;
 			if (g.getVisibility() == SHARED &&
 					g.getAffectedContacts().contains(contactId)) {
+				summaryDue.set(true);
 				generateOffer();
 			}
 		} else if (e instanceof MessageRequestedEvent) {
@@ -256,6 +317,26 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		} else if (e instanceof MessageToRequestEvent) {
 			if (((MessageToRequestEvent) e).getContactId().equals(contactId))
 				generateRequest();
+		} else if (e instanceof MessageToOfferEvent) {
+			if (((MessageToOfferEvent) e).getContactId().equals(contactId))
+				generateOffer();
+		} else if (e instanceof SyncVersionsUpdatedEvent) {
+			SyncVersionsUpdatedEvent s = (SyncVersionsUpdatedEvent) e;
+			if (s.getContactId().equals(contactId)) {
+				List<Byte> supported = s.getSupportedVersions();
+				compressionSupported = supported.contains(COMPRESSION_VERSION);
+				shortIdsSupported = supported.contains(SHORT_ID_VERSION);
+				if (supported.contains(SUMMARY_VERSION)) {
+					summaryDue.set(true);
+					generateOffer();
+				}
+			}
+		} else if (e instanceof UnackedMessagesResetEvent) {
+			UnackedMessagesResetEvent u = (UnackedMessagesResetEvent) e;
+			if (u.getContactId().equals(contactId)) {
+				summaryDue.set(true);
+				generateOffer();
+			}
 		} else if (e instanceof LifecycleEvent) {
 			LifecycleEvent l = (LifecycleEvent) e;
 			if (l.getLifecycleState() == STOPPING) interrupt();
@@ -300,6 +381,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		@Override
 		public void run() throws IOException {
 			if (interrupted) return;
+			recordWriter.setShortIdsEnabled(shortIdsSupported);
 			recordWriter.writeAck(ack);
 			LOG.info("Sent ack");
 			generateAck();
@@ -346,7 +428,13 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		@Override
 		public void run() throws IOException {
 			if (interrupted) return;
-			for (Message m : batch) recordWriter.writeMessage(m);
+			recordWriter.setCompressionEnabled(compressionSupported);
+			int bytes = 0;
+			for (Message m : batch) {
+				recordWriter.writeMessage(m);
+				bytes += RECORD_HEADER_BYTES + m.getRawLength();
+			}
+			sendingInBulk = bytes >= BULK_BATCH_BYTES;
 			LOG.info("Sent batch");
 			generateBatch();
 		}
@@ -360,17 +448,33 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 			if (interrupted) return;
 			if (!generateOfferQueued.getAndSet(false))
 				throw new AssertionError();
+			boolean summarise = summaryDue.getAndSet(false);
 			try {
-				Offer o = db.transactionWithNullableResult(false, txn -> {
-					Offer offer = db.generateOffer(txn, contactId,
-							MAX_MESSAGE_IDS, maxLatency);
-					setNextSendTime(db.getNextSendTime(txn, contactId,
-							maxLatency));
-					return offer;
-				});
-				if (LOG.isLoggable(INFO))
-					LOG.info("Generated offer: " + (o != null));
-				if (o != null) writerTasks.add(new WriteOffer(o));
+				ThrowingRunnable<IOException> task =
+						db.transactionWithNullableResult(false, txn -> {
+							// If the contact supports summaries, summarise
+							// any groups with enough messages to offer
+							// before offering the rest
+							if (summarise && db.getSyncVersions(txn,
+									contactId).contains(SUMMARY_VERSION)) {
+								Summary s = db.generateSummary(txn,
+										contactId, maxLatency);
+								if (s != null) return new WriteSummary(s);
+							}
+							Offer o = db.generateOffer(txn, contactId,
+									MAX_MESSAGE_IDS, maxLatency);
+							setNextSendTime(db.getNextSendTime(txn, contactId,
+									maxLatency));
+							return o == null ? null : new WriteOffer(o);
+						});
+				if (task instanceof WriteSummary) {
+					LOG.info("Generated summary");
+					// Other groups may have enough messages to summarise
+					summaryDue.set(true);
+				} else if (LOG.isLoggable(INFO)) {
+					LOG.info("Generated offer: " + (task != null));
+				}
+				if (task != null) writerTasks.add(task);
 			} catch (DbException e) {
 				logException(LOG, WARNING, e);
 				interrupt();
@@ -396,6 +500,39 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		}
 	}
 
+	private class WriteSummary implements ThrowingRunnable<IOException> {
+
+		private final Summary summary;
+
+		private WriteSummary(Summary summary) {
+			this.summary = summary;
+		}
+
+		@IoExecutor
+		@Override
+		public void run() throws IOException {
+			if (interrupted) return;
+			recordWriter.writeSummary(summary);
+			LOG.info("Sent summary");
+			generateOffer();
+		}
+	}
+
+	private class WriteSummaryAcks implements ThrowingRunnable<IOException> {
+
+		@IoExecutor
+		@Override
+		public void run() throws IOException {
+			if (interrupted) return;
+			SummaryAck a = duplexState.pollSummaryAck();
+			while (a != null) {
+				recordWriter.writeSummaryAck(a);
+				LOG.info("Sent summary ack");
+				a = duplexState.pollSummaryAck();
+			}
+		}
+	}
+
 	private class GenerateRequest implements Runnable {
 
 		@DatabaseExecutor
@@ -429,6 +566,7 @@ class DuplexOutgoingSession implements SyncSession, EventListener {
 		@Override
 		public void run() throws IOException {
 			if (interrupted) return;
+			recordWriter.setShortIdsEnabled(shortIdsSupported);
 			recordWriter.writeRequest(request);
 			LOG.info("Sent request");
 			generateRequest();
@@ -0,0 +1,61 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.sync.DuplexSessionState;
+import org.briarproject.bramble.api.sync.SummaryAck;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+@ThreadSafe
+@NotNullByDefault
+class DuplexSessionStateImpl implements DuplexSessionState {
+
+	private final ShortIdTable shortIds = new ShortIdTable();
+
+	/**
+	 * Acks for summaries received by the incoming session, waiting to be
+	 * sent by the outgoing session.
+	 */
+	private final Queue<SummaryAck> summaryAcks =
+			new ConcurrentLinkedQueue<>();
+
+	@Nullable
+	private volatile Runnable summaryAckListener = null;
+
+	ShortIdTable getShortIdTable() {
+		return shortIds;
+	}
+
+	/**
+	 * Queues a summary ack to be sent by the outgoing session and notifies
+	 * the listener, if any.
+	 */
+	void addSummaryAck(SummaryAck a) {
+		summaryAcks.add(a);
+		Runnable listener = summaryAckListener;
+		if (listener != null) listener.run();
+	}
+
+	/**
+	 * Removes and returns the next queued summary ack, or returns null if
+	 * no summary acks are queued.
+	 */
+	@Nullable
+	SummaryAck pollSummaryAck() {
+		return summaryAcks.poll();
+	}
+
+	/**
+	 * Sets the listener to be notified when a summary ack is queued, or
+	 * removes the listener if the argument is null. If any summary acks are
+	 * already queued, the new listener is notified immediately.
+	 */
+	void setSummaryAckListener(@Nullable Runnable listener) {
+		summaryAckListener = listener;
+		if (listener != null && !summaryAcks.isEmpty()) listener.run();
+	}
+}
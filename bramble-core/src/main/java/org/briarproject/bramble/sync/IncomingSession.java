@@ -17,6 +17,8 @@ import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.PriorityHandler;
 import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.SyncRecordReader;
 import org.briarproject.bramble.api.sync.SyncSession;
 import org.briarproject.bramble.api.sync.Versions;
@@ -27,6 +29,7 @@ import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 import static java.util.logging.Level.WARNING;
@@ -50,18 +53,26 @@ class IncomingSession implements SyncSession, EventListener {
 	private final ContactId contactId;
 	private final SyncRecordReader recordReader;
 	private final PriorityHandler priorityHandler;
+	/**
+	 * The state shared with the outgoing session, or null if this session
+	 * is not part of a duplex connection.
+	 */
+	@Nullable
+	private final DuplexSessionStateImpl duplexState;
 
 	private volatile boolean interrupted = false;
 
 	IncomingSession(DatabaseComponent db, Executor dbExecutor,
 			EventBus eventBus, ContactId contactId,
-			SyncRecordReader recordReader, PriorityHandler priorityHandler) {
+			SyncRecordReader recordReader, PriorityHandler priorityHandler,
+			@Nullable DuplexSessionStateImpl duplexState) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
 		this.eventBus = eventBus;
 		this.contactId = contactId;
 		this.recordReader = recordReader;
 		this.priorityHandler = priorityHandler;
+		this.duplexState = duplexState;
 	}
 
 	@IoExecutor
@@ -93,6 +104,15 @@ class IncomingSession implements SyncSession, EventListener {
 				} else if (recordReader.hasPriority()) {
 					Priority p = recordReader.readPriority();
 					priorityHandler.handle(p);
+				} else if (recordReader.hasSummary()) {
+					Summary s = recordReader.readSummary();
+					// A summary can only be acked over the same connection,
+					// so ignore it if the connection is simplex
+					if (duplexState != null)
+						dbExecutor.execute(new ReceiveSummary(s, duplexState));
+				} else if (recordReader.hasSummaryAck()) {
+					SummaryAck a = recordReader.readSummaryAck();
+					dbExecutor.execute(new ReceiveSummaryAck(a));
 				} else {
 					// unknown records are ignored in RecordReader#eof()
 					throw new FormatException();
@@ -100,6 +120,7 @@ class IncomingSession implements SyncSession, EventListener {
 			}
 		} finally {
 			eventBus.removeListener(this);
+			recordReader.release();
 		}
 	}
 
@@ -204,6 +225,52 @@ class IncomingSession implements SyncSession, EventListener {
 		}
 	}
 
+	private class ReceiveSummary implements Runnable {
+
+		private final Summary summary;
+		private final DuplexSessionStateImpl duplexState;
+
+		private ReceiveSummary(Summary summary,
+				DuplexSessionStateImpl duplexState) {
+			this.summary = summary;
+			this.duplexState = duplexState;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			try {
+				SummaryAck a = db.transactionWithResult(false, txn ->
+						db.receiveSummary(txn, contactId, summary));
+				duplexState.addSummaryAck(a);
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+				interrupt();
+			}
+		}
+	}
+
+	private class ReceiveSummaryAck implements Runnable {
+
+		private final SummaryAck summaryAck;
+
+		private ReceiveSummaryAck(SummaryAck summaryAck) {
+			this.summaryAck = summaryAck;
+		}
+
+		@DatabaseExecutor
+		@Override
+		public void run() {
+			try {
+				db.transaction(false, txn ->
+						db.receiveSummaryAck(txn, contactId, summaryAck));
+			} catch (DbException e) {
+				logException(LOG, WARNING, e);
+				interrupt();
+			}
+		}
+	}
+
 	private class ReceiveVersions implements Runnable {
 
 		private final Versions versions;
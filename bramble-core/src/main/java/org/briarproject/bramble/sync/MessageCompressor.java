@@ -0,0 +1,127 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static java.util.Arrays.copyOf;
+import static java.util.zip.Deflater.BEST_SPEED;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
+
+/**
+ * Compresses and decompresses the payloads of compressed message records.
+ * <p>
+ * A compressed payload consists of a byte identifying the preset dictionary
+ * used for compression, followed by a zlib stream. The dictionary ID allows
+ * dictionaries trained on typical messages to be introduced later without
+ * changing the record format.
+ * <p>
+ * The deflater and inflater are created when they're first needed and
+ * reused for every message, as they're expensive to create. They hold native
+ * memory, so {@link #end()} must be called when the compressor is no longer
+ * needed.
+ */
+@NotThreadSafe
+@NotNullByDefault
+class MessageCompressor {
+
+	/**
+	 * The dictionary ID meaning that no preset dictionary is used.
+	 */
+	static final byte NO_DICTIONARY = 0;
+
+	/**
+	 * Messages shorter than this are not compressed, as the saving would be
+	 * too small to be worth the work.
+	 */
+	static final int MIN_COMPRESSION_LENGTH = 128;
+
+	@Nullable
+	private Deflater deflater = null;
+	@Nullable
+	private Inflater inflater = null;
+	@Nullable
+	private byte[] inflated = null;
+
+	/**
+	 * Returns the compressed payload for the given raw message, or null if
+	 * the message should be sent uncompressed because it's too short or
+	 * compression wouldn't make it any shorter.
+	 */
+	@Nullable
+	byte[] compress(byte[] raw) {
+		if (raw.length < MIN_COMPRESSION_LENGTH) return null;
+		if (deflater == null) deflater = new Deflater(BEST_SPEED);
+		deflater.reset();
+		deflater.setInput(raw);
+		deflater.finish();
+		// Give up if the compressed payload is no shorter than the message
+		byte[] payload = new byte[raw.length];
+		payload[0] = NO_DICTIONARY;
+		int length = 1;
+		while (!deflater.finished() && length < payload.length) {
+			length += deflater.deflate(payload, length,
+					payload.length - length);
+		}
+		if (!deflater.finished()) return null;
+		return copyOf(payload, length);
+	}
+
+	/**
+	 * Returns the raw message for the given compressed payload.
+	 *
+	 * @throws FormatException if the payload is invalid or the message is
+	 * longer than the maximum message length.
+	 */
+	byte[] decompress(byte[] payload) throws FormatException {
+		if (payload.length < 2) throw new FormatException();
+		if (payload[0] != NO_DICTIONARY) throw new FormatException();
+		if (inflater == null) inflater = new Inflater();
+		if (inflated == null) inflated = new byte[MAX_MESSAGE_LENGTH + 1];
+		inflater.reset();
+		inflater.setInput(payload, 1, payload.length - 1);
+		int length = 0;
+		try {
+			while (!inflater.finished()) {
+				// The buffer has room for one byte more than the maximum
+				// length, so we stop as soon as the message is too long
+				if (length > MAX_MESSAGE_LENGTH) throw new FormatException();
+				int read = inflater.inflate(inflated, length,
+						inflated.length - length);
+				if (read == 0 && (inflater.needsInput()
+						|| inflater.needsDictionary())) {
+					throw new FormatException();
+				}
+				length += read;
+			}
+		} catch (DataFormatException e) {
+			throw new FormatException();
+		}
+		if (length > MAX_MESSAGE_LENGTH) throw new FormatException();
+		// There must be no data after the end of the zlib stream
+		if (inflater.getRemaining() != 0) throw new FormatException();
+		return copyOf(inflated, length);
+	}
+
+	/**
+	 * Releases the native memory held by the deflater and inflater. If the
+	 * compressor is used again, a new deflater or inflater is created.
+	 */
+	void end() {
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		if (inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+		inflated = null;
+	}
+}
@@ -0,0 +1,89 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.SyncConstants;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SHORT_IDS;
+
+/**
+ * A table of short IDs for the messages offered or sent in each direction
+ * over a duplex connection, shared by the connection's incoming and outgoing
+ * sessions, via their {@link DuplexSessionStateImpl}.
+ * <p>
+ * Each peer numbers the message IDs it offers or sends in the order they're
+ * written to the connection, and the other peer numbers them in the same
+ * order as it reads them, so both peers agree on the numbering. Acks and
+ * requests sent to a peer that supports
+ * {@link SyncConstants#SHORT_ID_VERSION} can then refer to messages by the
+ * short IDs the peer gave them.
+ * <p>
+ * Only the first {@link SyncConstants#MAX_SHORT_IDS} message IDs in each
+ * direction are numbered, so the table's size is bounded.
+ */
+@ThreadSafe
+@NotNullByDefault
+class ShortIdTable {
+
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	private final List<MessageId> sent = new ArrayList<>();
+	@GuardedBy("lock")
+	private final Map<MessageId, Integer> received = new HashMap<>();
+	@GuardedBy("lock")
+	private int receivedCount = 0;
+
+	/**
+	 * Numbers a message ID that's about to be offered or sent to the peer.
+	 */
+	void addSentId(MessageId m) {
+		synchronized (lock) {
+			if (sent.size() < MAX_SHORT_IDS) sent.add(m);
+		}
+	}
+
+	/**
+	 * Returns the message ID we offered or sent with the given short ID, or
+	 * null if we haven't used the short ID.
+	 */
+	@Nullable
+	MessageId getSentId(int shortId) {
+		synchronized (lock) {
+			if (shortId < 0 || shortId >= sent.size()) return null;
+			return sent.get(shortId);
+		}
+	}
+
+	/**
+	 * Numbers a message ID that's been offered or sent by the peer.
+	 */
+	void addReceivedId(MessageId m) {
+		synchronized (lock) {
+			if (receivedCount == MAX_SHORT_IDS) return;
+			// If the ID has been received before, keep its first short ID
+			if (!received.containsKey(m)) received.put(m, receivedCount);
+			receivedCount++;
+		}
+	}
+
+	/**
+	 * Returns the short ID the peer gave the given message ID, or -1 if the
+	 * peer hasn't offered or sent the message with a short ID.
+	 */
+	int getReceivedShortId(MessageId m) {
+		synchronized (lock) {
+			Integer shortId = received.get(m);
+			return shortId == null ? -1 : shortId;
+		}
+	}
+}
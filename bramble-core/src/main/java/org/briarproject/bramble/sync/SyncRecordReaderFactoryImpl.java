@@ -2,6 +2,7 @@ package org.briarproject.bramble.sync;
 
 import org.briarproject.bramble.api.record.RecordReader;
 import org.briarproject.bramble.api.record.RecordReaderFactory;
+import org.briarproject.bramble.api.sync.DuplexSessionState;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.sync.SyncRecordReader;
 import org.briarproject.bramble.api.sync.SyncRecordReaderFactory;
@@ -29,6 +30,15 @@ class SyncRecordReaderFactoryImpl implements SyncRecordReaderFactory {
 	@Override
 	public SyncRecordReader createRecordReader(InputStream in) {
 		RecordReader reader = recordReaderFactory.createRecordReader(in);
-		return new SyncRecordReaderImpl(messageFactory, reader);
+		return new SyncRecordReaderImpl(messageFactory, reader, null);
+	}
+
+	@Override
+	public SyncRecordReader createRecordReader(InputStream in,
+			DuplexSessionState state) {
+		ShortIdTable shortIds =
+				((DuplexSessionStateImpl) state).getShortIdTable();
+		RecordReader reader = recordReaderFactory.createRecordReader(in);
+		return new SyncRecordReaderImpl(messageFactory, reader, shortIds);
 	}
 }
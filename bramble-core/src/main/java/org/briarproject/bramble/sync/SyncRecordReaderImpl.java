@@ -6,17 +6,21 @@ import org.briarproject.bramble.api.record.Record;
 import org.briarproject.bramble.api.record.RecordReader;
 import org.briarproject.bramble.api.record.RecordReader.RecordPredicate;
 import org.briarproject.bramble.api.sync.Ack;
+import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.SyncRecordReader;
 import org.briarproject.bramble.api.sync.Versions;
 import org.briarproject.bramble.util.ByteUtils;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,17 +28,27 @@ import java.util.List;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import static java.util.Arrays.copyOfRange;
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPACT_ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPACT_REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPRESSED_MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
 import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
 import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SUMMARY;
+import static org.briarproject.bramble.api.sync.RecordTypes.SUMMARY_ACK;
 import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUMMARY_BUCKET_BITS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUMMARY_HASHES;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUPPORTED_VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MESSAGE_HEADER_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.PRIORITY_NONCE_BYTES;
 import static org.briarproject.bramble.api.sync.SyncConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUMMARY_DIGEST_BYTES;
 
 @NotThreadSafe
 @NotNullByDefault
@@ -52,19 +66,33 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 
 	private static boolean isKnownRecordType(byte type) {
 		return type == ACK || type == MESSAGE || type == OFFER ||
-				type == REQUEST || type == VERSIONS || type == PRIORITY;
+				type == REQUEST || type == VERSIONS || type == PRIORITY ||
+				type == COMPRESSED_MESSAGE || type == SUMMARY ||
+				type == SUMMARY_ACK || type == COMPACT_ACK ||
+				type == COMPACT_REQUEST;
 	}
 
+	/**
+	 * The maximum length of a variable-length integer in a compact record,
+	 * which is enough for any short ID.
+	 */
+	private static final int MAX_VAR_INT_BYTES = 3;
+
 	private final MessageFactory messageFactory;
 	private final RecordReader reader;
+	private final MessageCompressor compressor = new MessageCompressor();
+	@Nullable
+	private final ShortIdTable shortIds;
 
 	@Nullable
 	private Record nextRecord = null;
 	private boolean eof = false;
 
-	SyncRecordReaderImpl(MessageFactory messageFactory, RecordReader reader) {
+	SyncRecordReaderImpl(MessageFactory messageFactory, RecordReader reader,
+			@Nullable ShortIdTable shortIds) {
 		this.messageFactory = messageFactory;
 		this.reader = reader;
+		this.shortIds = shortIds;
 	}
 
 	private byte getNextRecordType() {
@@ -91,7 +119,9 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 
 	@Override
 	public boolean hasAck() throws IOException {
-		return !eof() && getNextRecordType() == ACK;
+		if (eof()) return false;
+		byte type = getNextRecordType();
+		return type == ACK || type == COMPACT_ACK;
 	}
 
 	@Override
@@ -102,6 +132,9 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 
 	private List<MessageId> readMessageIds() throws IOException {
 		if (nextRecord == null) throw new AssertionError();
+		byte type = nextRecord.getRecordType();
+		if (type == COMPACT_ACK || type == COMPACT_REQUEST)
+			return readCompactMessageIds();
 		byte[] payload = nextRecord.getPayload();
 		if (payload.length == 0) throw new FormatException();
 		if (payload.length % UniqueId.LENGTH != 0) throw new FormatException();
@@ -115,9 +148,54 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 		return ids;
 	}
 
+	/**
+	 * Reads the message IDs from a compact record. Message IDs referred to by
+	 * short IDs are the ones we offered or sent, so the existing objects are
+	 * reused.
+	 *
+	 * @see SyncRecordWriterImpl
+	 */
+	private List<MessageId> readCompactMessageIds() throws IOException {
+		if (nextRecord == null) throw new AssertionError();
+		byte[] payload = nextRecord.getPayload();
+		if (payload.length == 0) throw new FormatException();
+		ByteArrayInputStream in = new ByteArrayInputStream(payload);
+		List<MessageId> ids = new ArrayList<>();
+		while (in.available() > 0) {
+			if (ids.size() == MAX_MESSAGE_IDS) throw new FormatException();
+			int i = readVarInt(in);
+			if (i == 0) {
+				byte[] id = new byte[UniqueId.LENGTH];
+				if (in.read(id, 0, id.length) != id.length)
+					throw new FormatException();
+				ids.add(new MessageId(id));
+			} else {
+				if (shortIds == null) throw new FormatException();
+				MessageId m = shortIds.getSentId(i - 1);
+				if (m == null) throw new FormatException();
+				ids.add(m);
+			}
+		}
+		nextRecord = null;
+		return ids;
+	}
+
+	private int readVarInt(ByteArrayInputStream in) throws FormatException {
+		int i = 0;
+		for (int shift = 0; shift < MAX_VAR_INT_BYTES * 7; shift += 7) {
+			int b = in.read();
+			if (b == -1) throw new FormatException();
+			i |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return i;
+		}
+		throw new FormatException();
+	}
+
 	@Override
 	public boolean hasMessage() throws IOException {
-		return !eof() && getNextRecordType() == MESSAGE;
+		if (eof()) return false;
+		byte type = getNextRecordType();
+		return type == MESSAGE || type == COMPRESSED_MESSAGE;
 	}
 
 	@Override
@@ -125,6 +203,8 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 		if (!hasMessage()) throw new FormatException();
 		if (nextRecord == null) throw new AssertionError();
 		byte[] payload = nextRecord.getPayload();
+		if (nextRecord.getRecordType() == COMPRESSED_MESSAGE)
+			payload = compressor.decompress(payload);
 		if (payload.length <= MESSAGE_HEADER_LENGTH)
 			throw new FormatException();
 		if (payload.length > MAX_MESSAGE_LENGTH)
@@ -133,7 +213,9 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 		long timestamp = ByteUtils.readUint64(payload, UniqueId.LENGTH);
 		if (timestamp < 0) throw new FormatException();
 		nextRecord = null;
-		return messageFactory.createMessage(payload);
+		Message m = messageFactory.createMessage(payload);
+		if (shortIds != null) shortIds.addReceivedId(m.getId());
+		return m;
 	}
 
 	@Override
@@ -144,12 +226,18 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 	@Override
 	public Offer readOffer() throws IOException {
 		if (!hasOffer()) throw new FormatException();
-		return new Offer(readMessageIds());
+		List<MessageId> ids = readMessageIds();
+		if (shortIds != null) {
+			for (MessageId m : ids) shortIds.addReceivedId(m);
+		}
+		return new Offer(ids);
 	}
 
 	@Override
 	public boolean hasRequest() throws IOException {
-		return !eof() && getNextRecordType() == REQUEST;
+		if (eof()) return false;
+		byte type = getNextRecordType();
+		return type == REQUEST || type == COMPACT_REQUEST;
 	}
 
 	@Override
@@ -199,4 +287,56 @@ class SyncRecordReaderImpl implements SyncRecordReader {
 		nextRecord = null;
 		return payload;
 	}
+
+	@Override
+	public boolean hasSummary() throws IOException {
+		return !eof() && getNextRecordType() == SUMMARY;
+	}
+
+	@Override
+	public Summary readSummary() throws IOException {
+		if (!hasSummary()) throw new FormatException();
+		if (nextRecord == null) throw new AssertionError();
+		byte[] payload = nextRecord.getPayload();
+		// Group ID, bucket bits, hashes, at least one byte of filter
+		if (payload.length < UniqueId.LENGTH + 3) throw new FormatException();
+		GroupId g = new GroupId(copyOfRange(payload, 0, UniqueId.LENGTH));
+		int bucketBits = payload[UniqueId.LENGTH] & 0xFF;
+		if (bucketBits > MAX_SUMMARY_BUCKET_BITS) throw new FormatException();
+		int hashes = payload[UniqueId.LENGTH + 1] & 0xFF;
+		if (hashes < 1 || hashes > MAX_SUMMARY_HASHES)
+			throw new FormatException();
+		byte[] filter =
+				copyOfRange(payload, UniqueId.LENGTH + 2, payload.length);
+		nextRecord = null;
+		return new Summary(g, bucketBits, hashes, filter);
+	}
+
+	@Override
+	public boolean hasSummaryAck() throws IOException {
+		return !eof() && getNextRecordType() == SUMMARY_ACK;
+	}
+
+	@Override
+	public SummaryAck readSummaryAck() throws IOException {
+		if (!hasSummaryAck()) throw new FormatException();
+		if (nextRecord == null) throw new AssertionError();
+		byte[] payload = nextRecord.getPayload();
+		if (payload.length <= UniqueId.LENGTH) throw new FormatException();
+		GroupId g = new GroupId(copyOfRange(payload, 0, UniqueId.LENGTH));
+		int bucketBits = payload[UniqueId.LENGTH] & 0xFF;
+		if (bucketBits > MAX_SUMMARY_BUCKET_BITS) throw new FormatException();
+		int digestBytes = SUMMARY_DIGEST_BYTES << bucketBits;
+		if (payload.length != UniqueId.LENGTH + 1 + digestBytes)
+			throw new FormatException();
+		byte[] digests =
+				copyOfRange(payload, UniqueId.LENGTH + 1, payload.length);
+		nextRecord = null;
+		return new SummaryAck(g, bucketBits, digests);
+	}
+
+	@Override
+	public void release() {
+		compressor.end();
+	}
 }
@@ -2,6 +2,7 @@ package org.briarproject.bramble.sync;
 
 import org.briarproject.bramble.api.record.RecordWriter;
 import org.briarproject.bramble.api.record.RecordWriterFactory;
+import org.briarproject.bramble.api.sync.DuplexSessionState;
 import org.briarproject.bramble.api.sync.MessageFactory;
 import org.briarproject.bramble.api.sync.SyncRecordWriter;
 import org.briarproject.bramble.api.sync.SyncRecordWriterFactory;
@@ -27,6 +28,15 @@ class SyncRecordWriterFactoryImpl implements SyncRecordWriterFactory {
 	@Override
 	public SyncRecordWriter createRecordWriter(OutputStream out) {
 		RecordWriter writer = recordWriterFactory.createRecordWriter(out);
-		return new SyncRecordWriterImpl(messageFactory, writer);
+		return new SyncRecordWriterImpl(messageFactory, writer, null);
+	}
+
+	@Override
+	public SyncRecordWriter createRecordWriter(OutputStream out,
+			DuplexSessionState state) {
+		ShortIdTable shortIds =
+				((DuplexSessionStateImpl) state).getShortIdTable();
+		RecordWriter writer = recordWriterFactory.createRecordWriter(out);
+		return new SyncRecordWriterImpl(messageFactory, writer, shortIds);
 	}
 }
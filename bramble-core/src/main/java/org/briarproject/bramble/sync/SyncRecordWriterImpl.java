@@ -1,5 +1,6 @@
 package org.briarproject.bramble.sync;
 
+import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.record.Record;
 import org.briarproject.bramble.api.record.RecordWriter;
 import org.briarproject.bramble.api.sync.Ack;
@@ -9,20 +10,29 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.SyncRecordWriter;
 import org.briarproject.bramble.api.sync.Versions;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collection;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPACT_ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPACT_REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPRESSED_MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
 import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
 import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SUMMARY;
+import static org.briarproject.bramble.api.sync.RecordTypes.SUMMARY_ACK;
 import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.PROTOCOL_VERSION;
 
@@ -33,10 +43,17 @@ class SyncRecordWriterImpl implements SyncRecordWriter {
 	private final MessageFactory messageFactory;
 	private final RecordWriter writer;
 	private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+	private final MessageCompressor compressor = new MessageCompressor();
+	@Nullable
+	private final ShortIdTable shortIds;
 
-	SyncRecordWriterImpl(MessageFactory messageFactory, RecordWriter writer) {
+	private boolean compressionEnabled = false, shortIdsEnabled = false;
+
+	SyncRecordWriterImpl(MessageFactory messageFactory, RecordWriter writer,
+			@Nullable ShortIdTable shortIds) {
 		this.messageFactory = messageFactory;
 		this.writer = writer;
+		this.shortIds = shortIds;
 	}
 
 	private void writeRecord(byte recordType) throws IOException {
@@ -47,26 +64,76 @@ class SyncRecordWriterImpl implements SyncRecordWriter {
 
 	@Override
 	public void writeAck(Ack a) throws IOException {
-		for (MessageId m : a.getMessageIds()) payload.write(m.getBytes());
-		writeRecord(ACK);
+		writeMessageIds(a.getMessageIds(), ACK, COMPACT_ACK);
+	}
+
+	/**
+	 * Writes the given message IDs as a compact record if short IDs are
+	 * enabled and the compact record would be shorter, otherwise as a plain
+	 * record.
+	 * <p>
+	 * Each message ID in a compact record is encoded as a variable-length
+	 * integer, seven bits per byte with the high bit set on all bytes except
+	 * the last. Zero means the full message ID follows. Any other value is
+	 * the recipient's short ID for the message plus one.
+	 */
+	private void writeMessageIds(Collection<MessageId> ids, byte type,
+			byte compactType) throws IOException {
+		if (shortIdsEnabled && shortIds != null) {
+			for (MessageId m : ids) {
+				int shortId = shortIds.getReceivedShortId(m);
+				if (shortId == -1) {
+					payload.write(0);
+					payload.write(m.getBytes());
+				} else {
+					writeVarInt(shortId + 1);
+				}
+			}
+			if (payload.size() < ids.size() * UniqueId.LENGTH) {
+				writeRecord(compactType);
+				return;
+			}
+			payload.reset();
+		}
+		for (MessageId m : ids) payload.write(m.getBytes());
+		writeRecord(type);
+	}
+
+	private void writeVarInt(int i) {
+		while (i > 0x7F) {
+			payload.write((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		payload.write(i);
 	}
 
 	@Override
 	public void writeMessage(Message m) throws IOException {
+		if (shortIds != null) shortIds.addSentId(m.getId());
 		byte[] raw = messageFactory.getRawMessage(m);
+		if (compressionEnabled) {
+			byte[] compressed = compressor.compress(raw);
+			if (compressed != null) {
+				writer.writeRecord(new Record(PROTOCOL_VERSION,
+						COMPRESSED_MESSAGE, compressed));
+				return;
+			}
+		}
 		writer.writeRecord(new Record(PROTOCOL_VERSION, MESSAGE, raw));
 	}
 
 	@Override
 	public void writeOffer(Offer o) throws IOException {
-		for (MessageId m : o.getMessageIds()) payload.write(m.getBytes());
+		for (MessageId m : o.getMessageIds()) {
+			if (shortIds != null) shortIds.addSentId(m);
+			payload.write(m.getBytes());
+		}
 		writeRecord(OFFER);
 	}
 
 	@Override
 	public void writeRequest(Request r) throws IOException {
-		for (MessageId m : r.getMessageIds()) payload.write(m.getBytes());
-		writeRecord(REQUEST);
+		writeMessageIds(r.getMessageIds(), REQUEST, COMPACT_REQUEST);
 	}
 
 	@Override
@@ -81,6 +148,33 @@ class SyncRecordWriterImpl implements SyncRecordWriter {
 				new Record(PROTOCOL_VERSION, PRIORITY, p.getNonce()));
 	}
 
+	@Override
+	public void writeSummary(Summary s) throws IOException {
+		payload.write(s.getGroupId().getBytes());
+		payload.write(s.getBucketBits());
+		payload.write(s.getHashes());
+		payload.write(s.getFilter());
+		writeRecord(SUMMARY);
+	}
+
+	@Override
+	public void writeSummaryAck(SummaryAck a) throws IOException {
+		payload.write(a.getGroupId().getBytes());
+		payload.write(a.getBucketBits());
+		payload.write(a.getDigests());
+		writeRecord(SUMMARY_ACK);
+	}
+
+	@Override
+	public void setCompressionEnabled(boolean enabled) {
+		compressionEnabled = enabled;
+	}
+
+	@Override
+	public void setShortIdsEnabled(boolean enabled) {
+		shortIdsEnabled = enabled;
+	}
+
 	@Override
 	public void flush() throws IOException {
 		writer.flush();
@@ -90,4 +184,9 @@ class SyncRecordWriterImpl implements SyncRecordWriter {
 	public long getBytesWritten() {
 		return writer.getBytesWritten();
 	}
+
+	@Override
+	public void release() {
+		compressor.end();
+	}
 }
@@ -5,6 +5,7 @@ import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.DuplexSessionState;
 import org.briarproject.bramble.api.sync.OutgoingSessionRecord;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.PriorityHandler;
@@ -58,7 +59,21 @@ class SyncSessionFactoryImpl implements SyncSessionFactory {
 		SyncRecordReader recordReader =
 				recordReaderFactory.createRecordReader(in);
 		return new IncomingSession(db, dbExecutor, eventBus, c, recordReader,
-				handler);
+				handler, null);
+	}
+
+	@Override
+	public DuplexSessionState createDuplexSessionState() {
+		return new DuplexSessionStateImpl();
+	}
+
+	@Override
+	public SyncSession createIncomingSession(ContactId c, InputStream in,
+			PriorityHandler handler, DuplexSessionState state) {
+		SyncRecordReader recordReader =
+				recordReaderFactory.createRecordReader(in, state);
+		return new IncomingSession(db, dbExecutor, eventBus, c, recordReader,
+				handler, (DuplexSessionStateImpl) state);
 	}
 
 	@Override
@@ -90,12 +105,14 @@ class SyncSessionFactoryImpl implements SyncSessionFactory {
 
 	@Override
 	public SyncSession createDuplexOutgoingSession(ContactId c, TransportId t,
-			long maxLatency, int maxIdleTime, StreamWriter streamWriter,
-			@Nullable Priority priority) {
+			long maxLatency, int maxIdleTime, int maxFlushDelay,
+			StreamWriter streamWriter, @Nullable Priority priority,
+			DuplexSessionState state) {
 		OutputStream out = streamWriter.getOutputStream();
 		SyncRecordWriter recordWriter =
-				recordWriterFactory.createRecordWriter(out);
+				recordWriterFactory.createRecordWriter(out, state);
 		return new DuplexOutgoingSession(db, dbExecutor, eventBus, clock, c, t,
-				maxLatency, maxIdleTime, streamWriter, recordWriter, priority);
+				maxLatency, maxIdleTime, maxFlushDelay, streamWriter,
+				recordWriter, priority, (DuplexSessionStateImpl) state);
 	}
 }
@@ -14,6 +14,8 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.emptyList;
+
 @Module
 public class ValidationModule {
 
@@ -37,7 +39,8 @@ public class ValidationModule {
 	ValidationManager provideValidationManager(
 			LifecycleManager lifecycleManager, EventBus eventBus,
 			ValidationManagerImpl validationManager) {
-		lifecycleManager.registerService(validationManager);
+		// The service only schedules work, so it has no dependencies
+		lifecycleManager.registerService(validationManager, emptyList());
 		eventBus.addListener(validationManager);
 		return validationManager;
 	}
@@ -0,0 +1,85 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.Immutable;
+
+import static java.util.Arrays.sort;
+import static java.util.Collections.emptyList;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+
+/**
+ * A compact index of the tags of reordering windows that are not expected
+ * to be used soon.
+ * <p>
+ * Only the first four bytes of each tag are stored, packed into a sorted
+ * array together with the index of the tag's window, so each tag takes eight
+ * bytes. A lookup returns the windows that may contain the tag. The caller
+ * must confirm the match by encoding the windows' tags in full.
+ */
+@Immutable
+@NotNullByDefault
+class DormantTagIndex<W> {
+
+	private final List<W> windows;
+	private final long[] entries;
+
+	/**
+	 * @param windows the windows to index
+	 * @param tags the tags of each window, concatenated
+	 */
+	DormantTagIndex(List<W> windows, byte[][] tags) {
+		if (tags.length != windows.size()) throw new IllegalArgumentException();
+		this.windows = new ArrayList<>(windows);
+		int size = 0;
+		for (byte[] t : tags) size += t.length / TAG_LENGTH;
+		entries = new long[size];
+		int entry = 0;
+		for (int i = 0; i < tags.length; i++) {
+			for (int off = 0; off < tags[i].length; off += TAG_LENGTH)
+				entries[entry++] = ((long) getPrefix(tags[i], off) << 32) | i;
+		}
+		sort(entries);
+	}
+
+	DormantTagIndex() {
+		this(new ArrayList<>(), new byte[0][]);
+	}
+
+	int size() {
+		return entries.length;
+	}
+
+	/**
+	 * Returns the windows that may contain the given tag.
+	 */
+	List<W> find(byte[] tag) {
+		if (tag.length < TAG_LENGTH) throw new IllegalArgumentException();
+		int prefix = getPrefix(tag, 0);
+		// Find the first entry with the prefix
+		long key = (long) prefix << 32;
+		int low = 0, high = entries.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (entries[mid] < key) low = mid + 1;
+			else high = mid;
+		}
+		if (low == entries.length || (int) (entries[low] >> 32) != prefix)
+			return emptyList();
+		List<W> found = new ArrayList<>(1);
+		for (int i = low; i < entries.length; i++) {
+			if ((int) (entries[i] >> 32) != prefix) break;
+			W window = windows.get((int) entries[i]);
+			if (!found.contains(window)) found.add(window);
+		}
+		return found;
+	}
+
+	private static int getPrefix(byte[] src, int off) {
+		return ((src[off] & 0xFF) << 24) | ((src[off + 1] & 0xFF) << 16)
+				| ((src[off + 2] & 0xFF) << 8) | (src[off + 3] & 0xFF);
+	}
+}
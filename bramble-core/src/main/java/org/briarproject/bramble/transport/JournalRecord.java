@@ -0,0 +1,112 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.api.transport.KeySetId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A change to the state of a transport key set that has been written to the
+ * {@link TransportKeyJournal} but may not yet have been written to the DB.
+ * <p>
+ * Each record holds the new state rather than the difference from the old
+ * state, so applying a record more than once, or applying an old record
+ * after a newer one, has no effect.
+ */
+@Immutable
+@NotNullByDefault
+class JournalRecord {
+
+	enum Type {
+		STREAM_COUNTER,
+		REORDERING_WINDOW,
+		KEYS_ACTIVE
+	}
+
+	private final Type type;
+	private final KeySetId keySetId;
+	private final long timePeriod, value;
+	@Nullable
+	private final byte[] windowBitmap;
+
+	private JournalRecord(Type type, KeySetId keySetId, long timePeriod,
+			long value, @Nullable byte[] windowBitmap) {
+		this.type = type;
+		this.keySetId = keySetId;
+		this.timePeriod = timePeriod;
+		this.value = value;
+		this.windowBitmap = windowBitmap;
+	}
+
+	/**
+	 * Returns a record of the outgoing stream counter of the given key set
+	 * reaching the given value.
+	 */
+	static JournalRecord streamCounter(KeySetId k, long timePeriod,
+			long streamCounter) {
+		return new JournalRecord(Type.STREAM_COUNTER, k, timePeriod,
+				streamCounter, null);
+	}
+
+	/**
+	 * Returns a record of the reordering window for the given time period
+	 * of the given key set reaching the given state.
+	 */
+	static JournalRecord reorderingWindow(KeySetId k, long timePeriod,
+			long base, byte[] bitmap) {
+		return new JournalRecord(Type.REORDERING_WINDOW, k, timePeriod, base,
+				bitmap);
+	}
+
+	/**
+	 * Returns a record of the outgoing keys of the given key set being
+	 * activated.
+	 */
+	static JournalRecord keysActive(KeySetId k) {
+		return new JournalRecord(Type.KEYS_ACTIVE, k, 0, 0, null);
+	}
+
+	Type getType() {
+		return type;
+	}
+
+	KeySetId getKeySetId() {
+		return keySetId;
+	}
+
+	long getTimePeriod() {
+		return timePeriod;
+	}
+
+	long getStreamCounter() {
+		if (type != Type.STREAM_COUNTER) throw new IllegalStateException();
+		return value;
+	}
+
+	long getWindowBase() {
+		if (type != Type.REORDERING_WINDOW) throw new IllegalStateException();
+		return value;
+	}
+
+	byte[] getWindowBitmap() {
+		if (windowBitmap == null) throw new IllegalStateException();
+		return windowBitmap;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof JournalRecord)) return false;
+		JournalRecord r = (JournalRecord) o;
+		return type == r.type && keySetId.equals(r.keySetId)
+				&& timePeriod == r.timePeriod && value == r.value
+				&& Arrays.equals(windowBitmap, r.windowBitmap);
+	}
+
+	@Override
+	public int hashCode() {
+		return keySetId.hashCode() ^ (int) (value ^ (value >>> 32));
+	}
+}
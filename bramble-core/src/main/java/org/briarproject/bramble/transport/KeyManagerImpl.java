@@ -1,5 +1,6 @@
 package org.briarproject.bramble.transport;
 
+import org.briarproject.bramble.api.Cancellable;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContactId;
 import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
@@ -20,6 +21,7 @@ import org.briarproject.bramble.api.lifecycle.ServiceException;
 import org.briarproject.bramble.api.plugin.PluginConfig;
 import org.briarproject.bramble.api.plugin.PluginFactory;
 import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.api.transport.KeyManager;
 import org.briarproject.bramble.api.transport.KeySetId;
 import org.briarproject.bramble.api.transport.StreamContext;
@@ -38,8 +40,12 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_TRANSPORT_LATENCY;
+import static org.briarproject.bramble.util.LogUtils.logException;
 
 @ThreadSafe
 @NotNullByDefault
@@ -48,24 +54,38 @@ class KeyManagerImpl implements KeyManager, Service, EventListener {
 	private static final Logger LOG =
 			Logger.getLogger(KeyManagerImpl.class.getName());
 
+	/**
+	 * How often to write journalled changes to transport keys to the DB.
+	 */
+	private static final long CHECKPOINT_INTERVAL_MS = MINUTES.toMillis(5);
+
 	private final DatabaseComponent db;
 	private final Executor dbExecutor;
+	private final TaskScheduler scheduler;
 	private final PluginConfig pluginConfig;
 	private final TransportCrypto transportCrypto;
+	private final TransportKeyJournal journal;
 
 	private final ConcurrentHashMap<TransportId, TransportKeyManager> managers;
 	private final AtomicBoolean used = new AtomicBoolean(false);
 
+	@Nullable
+	private volatile Cancellable checkpointTask = null;
+
 	@Inject
 	KeyManagerImpl(DatabaseComponent db,
 			@DatabaseExecutor Executor dbExecutor,
+			TaskScheduler scheduler,
 			PluginConfig pluginConfig,
 			TransportCrypto transportCrypto,
+			TransportKeyJournal journal,
 			TransportKeyManagerFactory transportKeyManagerFactory) {
 		this.db = db;
 		this.dbExecutor = dbExecutor;
+		this.scheduler = scheduler;
 		this.pluginConfig = pluginConfig;
 		this.transportCrypto = transportCrypto;
+		this.journal = journal;
 		managers = new ConcurrentHashMap<>();
 		for (PluginFactory<?> f : pluginConfig.getSimplexFactories()) {
 			TransportKeyManager m = transportKeyManagerFactory.
@@ -84,6 +104,7 @@ class KeyManagerImpl implements KeyManager, Service, EventListener {
 		if (used.getAndSet(true)) throw new IllegalStateException();
 		try {
 			db.transaction(false, txn -> {
+				journal.start(txn);
 				for (PluginFactory<?> f : pluginConfig.getSimplexFactories()) {
 					addTransport(txn, f);
 				}
@@ -94,6 +115,9 @@ class KeyManagerImpl implements KeyManager, Service, EventListener {
 		} catch (DbException e) {
 			throw new ServiceException(e);
 		}
+		checkpointTask = scheduler.scheduleWithFixedDelay(
+				this::scheduledCheckpoint, dbExecutor, CHECKPOINT_INTERVAL_MS,
+				CHECKPOINT_INTERVAL_MS, MILLISECONDS);
 	}
 
 	private void addTransport(Transaction txn, PluginFactory<?> f)
@@ -107,7 +131,34 @@ class KeyManagerImpl implements KeyManager, Service, EventListener {
 	}
 
 	@Override
-	public void stopService() {
+	public void stopService() throws ServiceException {
+		Cancellable task = checkpointTask;
+		if (task != null) task.cancel();
+		try {
+			checkpoint();
+		} catch (DbException e) {
+			throw new ServiceException(e);
+		}
+	}
+
+	@DatabaseExecutor
+	private void scheduledCheckpoint() {
+		try {
+			checkpoint();
+		} catch (DbException e) {
+			logException(LOG, WARNING, e);
+		}
+	}
+
+	/**
+	 * Writes any journalled changes to the DB and discards the parts of the
+	 * journal that are no longer needed.
+	 */
+	private void checkpoint() throws DbException {
+		db.transaction(false, txn -> {
+			journal.checkpoint(txn);
+			for (TransportKeyManager m : managers.values()) m.checkpoint(txn);
+		});
 	}
 
 	@Override
@@ -194,40 +245,32 @@ class KeyManagerImpl implements KeyManager, Service, EventListener {
 	@Override
 	public StreamContext getStreamContext(ContactId c, TransportId t)
 			throws DbException {
-		return withManager(t, m ->
-				db.transactionWithNullableResult(false, txn ->
-						m.getStreamContext(txn, c)));
+		return withManager(t, m -> m.getStreamContext(c));
 	}
 
 	@Override
 	public StreamContext getStreamContext(PendingContactId p, TransportId t)
 			throws DbException {
-		return withManager(t, m ->
-				db.transactionWithNullableResult(false, txn ->
-						m.getStreamContext(txn, p)));
+		return withManager(t, m -> m.getStreamContext(p));
 	}
 
 	@Override
 	public StreamContext getStreamContext(TransportId t, byte[] tag)
 			throws DbException {
-		return withManager(t, m ->
-				db.transactionWithNullableResult(false, txn ->
-						m.getStreamContext(txn, tag)));
+		return withManager(t, m -> m.getStreamContext(tag));
 	}
 
 	@Override
 	public StreamContext getStreamContextOnly(TransportId t, byte[] tag)
 			throws DbException {
-		return withManager(t, m ->
-				db.transactionWithNullableResult(false, txn ->
-						m.getStreamContextOnly(txn, tag)));
+		return withManager(t, m -> m.getStreamContextOnly(tag));
 	}
 
 	@Override
 	public void markTagAsRecognised(TransportId t, byte[] tag)
 			throws DbException {
 		withManager(t, m -> {
-			db.transaction(false, txn -> m.markTagAsRecognised(txn, tag));
+			m.markTagAsRecognised(tag);
 			return null;
 		});
 	}
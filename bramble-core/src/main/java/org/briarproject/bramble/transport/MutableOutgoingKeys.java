@@ -48,6 +48,16 @@ class MutableOutgoingKeys {
 		streamCounter++;
 	}
 
+	/**
+	 * Sets the stream counter to the given value, which must not be lower
+	 * than the current value.
+	 */
+	void setStreamCounter(long streamCounter) {
+		if (streamCounter < this.streamCounter)
+			throw new IllegalArgumentException();
+		this.streamCounter = streamCounter;
+	}
+
 	boolean isActive() {
 		return active;
 	}
@@ -34,6 +34,16 @@ class ReorderingWindow {
 		return base;
 	}
 
+	/**
+	 * Returns true if no stream numbers have been seen since the window was
+	 * created.
+	 */
+	boolean isUnused() {
+		if (base != 0) return false;
+		for (boolean b : seen) if (b) return false;
+		return true;
+	}
+
 	byte[] getBitmap() {
 		byte[] bitmap = new byte[seen.length / 8];
 		for (int i = 0; i < bitmap.length; i++) {
@@ -83,6 +93,35 @@ class ReorderingWindow {
 		return new Change(added, removed);
 	}
 
+	/**
+	 * Merges the given state of the window, which may be older or newer than
+	 * the current state, into the current state. The base never moves
+	 * backwards and stream numbers are never unmarked as seen, so the newer
+	 * state is the one with the higher base or, if the bases are equal, the
+	 * union of the seen stream numbers.
+	 *
+	 * @return True if the current state changed.
+	 */
+	boolean merge(long base, byte[] bitmap) {
+		if (bitmap.length * 8 != seen.length)
+			throw new IllegalArgumentException();
+		if (base < this.base) return false;
+		ReorderingWindow other = new ReorderingWindow(base, bitmap);
+		if (base > this.base) {
+			this.base = base;
+			seen = other.seen;
+			return true;
+		}
+		boolean changed = false;
+		for (int i = 0; i < seen.length; i++) {
+			if (other.seen[i] && !seen[i]) {
+				seen[i] = true;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
 	static class Change {
 
 		private final List<Long> added, removed;
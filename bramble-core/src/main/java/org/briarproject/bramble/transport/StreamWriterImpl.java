@@ -6,24 +6,34 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.logging.Logger;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
 
 /**
  * An {@link OutputStream} that packs data into transport frames, writing a
  * frame whenever there is a full frame to write or the {@link #flush()} method
  * is called.
+ * <p>
+ * Keeps track of how full the frames are, which shows how well the caller's
+ * flushes fit the data being sent. This is logged at the end of the stream.
  */
 @NotThreadSafe
 @NotNullByDefault
 class StreamWriterImpl extends OutputStream implements StreamWriter {
 
+	private static final Logger LOG =
+			getLogger(StreamWriterImpl.class.getName());
+
 	private final StreamEncrypter encrypter;
 	private final byte[] payload;
 
 	private int length = 0;
+	private long frames = 0, payloadBytes = 0;
 
 	StreamWriterImpl(StreamEncrypter encrypter) {
 		this.encrypter = encrypter;
@@ -39,12 +49,14 @@ class StreamWriterImpl extends OutputStream implements StreamWriter {
 	public void sendEndOfStream() throws IOException {
 		writeFrame(true);
 		encrypter.flush();
+		logFrameFill();
 	}
 
 	@Override
 	public void close() throws IOException {
 		writeFrame(true);
 		encrypter.flush();
+		logFrameFill();
 		super.close();
 	}
 
@@ -81,8 +93,34 @@ class StreamWriterImpl extends OutputStream implements StreamWriter {
 		length += len;
 	}
 
+	/**
+	 * Returns the number of frames written so far.
+	 */
+	long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 * Returns the average length of the payloads of the frames written so
+	 * far, as a fraction of the maximum payload length, or zero if no frames
+	 * have been written.
+	 */
+	double getAverageFrameFill() {
+		if (frames == 0) return 0;
+		return (double) payloadBytes / (frames * payload.length);
+	}
+
 	private void writeFrame(boolean finalFrame) throws IOException {
 		encrypter.writeFrame(payload, length, 0, finalFrame);
+		frames++;
+		payloadBytes += length;
 		length = 0;
 	}
+
+	private void logFrameFill() {
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Wrote " + frames + " frames, average fill "
+					+ Math.round(getAverageFrameFill() * 100) + "%");
+		}
+	}
 }
@@ -0,0 +1,251 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+
+/**
+ * An open-addressing hash table that maps tags to a context and a stream
+ * number.
+ * <p>
+ * The tags are stored in a single flat array rather than as one object per
+ * entry. Tags are pseudo-random, so their leading bytes are used directly as
+ * the hash code. Entries are addressed by slot, which remains valid until the
+ * table is next modified.
+ * <p>
+ * The table must only be modified by one thread at a time, but
+ * {@link #get(byte[])} may be called concurrently with modifications. Each
+ * entry is published by writing its context after its tag and stream
+ * number, and the slots of removed entries are not reused until the table is
+ * next rehashed, so a reader never sees a partly written entry.
+ */
+@ThreadSafe
+@NotNullByDefault
+class TagTable<C> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Marks a slot whose entry has been removed, so lookups keep probing.
+	 */
+	private static final Object REMOVED = new Object();
+
+	/**
+	 * Replaced rather than modified when the table is rehashed, so readers
+	 * that are still using the old storage see a consistent table.
+	 */
+	private volatile Storage storage = new Storage(MIN_CAPACITY);
+	// The number of live entries, and of slots that are live or removed
+	private int size = 0, used = 0;
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots, which is the upper bound (exclusive) for
+	 * iterating over the table with {@link #getContext(int)}.
+	 */
+	int getCapacity() {
+		return storage.capacity;
+	}
+
+	/**
+	 * Adds an entry, replacing any existing entry for the tag.
+	 */
+	void put(byte[] tag, C context, long streamNumber) {
+		put(tag, 0, context, streamNumber);
+	}
+
+	/**
+	 * Adds an entry for the tag starting at the given offset of the given
+	 * array, replacing any existing entry for the tag.
+	 */
+	void put(byte[] src, int off, C context, long streamNumber) {
+		if (src.length - off < TAG_LENGTH) throw new IllegalArgumentException();
+		Storage s = storage;
+		if ((used + 1) * 2 > s.capacity) s = rehash();
+		// Entries are not modified in place, so an existing entry is
+		// replaced by adding a new entry and then removing the old one
+		int existing = findSlot(s, src, off);
+		int slot = findFreeSlot(s, src, off);
+		System.arraycopy(src, off, s.tags, slot * TAG_LENGTH, TAG_LENGTH);
+		s.streamNumbers[slot] = streamNumber;
+		s.contexts.set(slot, context);
+		used++;
+		if (existing == -1) size++;
+		else s.contexts.set(existing, REMOVED);
+	}
+
+	/**
+	 * Returns the entry for the given tag, or null if there is no such
+	 * entry. This method may be called concurrently with modifications.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	Entry<C> get(byte[] tag) {
+		if (tag.length < TAG_LENGTH) throw new IllegalArgumentException();
+		Storage s = storage;
+		int slot = findSlot(s, tag, 0);
+		if (slot == -1) return null;
+		Object context = s.contexts.get(slot);
+		// The entry may have been removed since it was found
+		if (context == REMOVED) return null;
+		return new Entry<>((C) context, s.streamNumbers[slot]);
+	}
+
+	/**
+	 * Returns the slot holding the entry for the given tag, or -1 if there
+	 * is no such entry.
+	 */
+	int find(byte[] tag) {
+		if (tag.length < TAG_LENGTH) throw new IllegalArgumentException();
+		return findSlot(storage, tag, 0);
+	}
+
+	/**
+	 * Returns the context stored in the given slot, or null if the slot is
+	 * empty.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	C getContext(int slot) {
+		Object context = storage.contexts.get(slot);
+		return context == REMOVED ? null : (C) context;
+	}
+
+	long getStreamNumber(int slot) {
+		if (getContext(slot) == null) throw new IllegalArgumentException();
+		return storage.streamNumbers[slot];
+	}
+
+	/**
+	 * Removes the entry in the given slot. Other slots are unaffected, so
+	 * entries can be removed while iterating over the slots.
+	 */
+	void removeSlot(int slot) {
+		if (getContext(slot) == null) throw new IllegalArgumentException();
+		storage.contexts.set(slot, REMOVED);
+		size--;
+	}
+
+	/**
+	 * Removes the entry for the given tag, if any, and returns true if an
+	 * entry was removed.
+	 */
+	boolean remove(byte[] tag) {
+		int slot = find(tag);
+		if (slot == -1) return false;
+		removeSlot(slot);
+		return true;
+	}
+
+	void clear() {
+		storage = new Storage(MIN_CAPACITY);
+		size = 0;
+		used = 0;
+	}
+
+	private int hash(byte[] src, int off) {
+		return ((src[off] & 0xFF) << 24) | ((src[off + 1] & 0xFF) << 16)
+				| ((src[off + 2] & 0xFF) << 8) | (src[off + 3] & 0xFF);
+	}
+
+	private int findSlot(Storage s, byte[] src, int off) {
+		int mask = s.capacity - 1;
+		int slot = hash(src, off) & mask;
+		while (true) {
+			// Reading the context before the tag ensures that the tag has
+			// been written
+			Object context = s.contexts.get(slot);
+			if (context == null) return -1;
+			if (context != REMOVED && matches(s, slot, src, off)) return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private int findFreeSlot(Storage s, byte[] src, int off) {
+		int mask = s.capacity - 1;
+		int slot = hash(src, off) & mask;
+		while (s.contexts.get(slot) != null) slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private boolean matches(Storage s, int slot, byte[] src, int off) {
+		int start = slot * TAG_LENGTH;
+		for (int i = 0; i < TAG_LENGTH; i++) {
+			if (s.tags[start + i] != src[off + i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Copies the entries into new storage with room for at least as many
+	 * entries again, dropping any removed entries, and publishes the new
+	 * storage.
+	 */
+	private Storage rehash() {
+		Storage old = storage;
+		int capacity = MIN_CAPACITY;
+		while (capacity < (size + 1) * 4) capacity <<= 1;
+		Storage s = new Storage(capacity);
+		for (int i = 0; i < old.capacity; i++) {
+			Object context = old.contexts.get(i);
+			if (context == null || context == REMOVED) continue;
+			int off = i * TAG_LENGTH;
+			int slot = findFreeSlot(s, old.tags, off);
+			System.arraycopy(old.tags, off, s.tags, slot * TAG_LENGTH,
+					TAG_LENGTH);
+			s.streamNumbers[slot] = old.streamNumbers[i];
+			s.contexts.set(slot, context);
+		}
+		used = size;
+		storage = s;
+		return s;
+	}
+
+	/**
+	 * An entry returned by {@link #get(byte[])}.
+	 */
+	@Immutable
+	@NotNullByDefault
+	static class Entry<C> {
+
+		private final C context;
+		private final long streamNumber;
+
+		private Entry(C context, long streamNumber) {
+			this.context = context;
+			this.streamNumber = streamNumber;
+		}
+
+		C getContext() {
+			return context;
+		}
+
+		long getStreamNumber() {
+			return streamNumber;
+		}
+	}
+
+	private static class Storage {
+
+		private final int capacity;
+		private final byte[] tags;
+		private final long[] streamNumbers;
+		private final AtomicReferenceArray<Object> contexts;
+
+		private Storage(int capacity) {
+			this.capacity = capacity;
+			tags = new byte[capacity * TAG_LENGTH];
+			streamNumbers = new long[capacity];
+			contexts = new AtomicReferenceArray<>(capacity);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Collection;
+
+/**
+ * An append-only journal of changes to stream counters, reordering windows
+ * and the activation of outgoing keys.
+ * <p>
+ * Writing these changes to the DB would need a write transaction for every
+ * stream. Instead each change is appended to the journal before it takes
+ * effect, and the changed key sets are written to the DB periodically by
+ * a {@link #checkpoint(Transaction) checkpoint}. Changes that were
+ * journalled but not checkpointed before the app stopped are replayed when
+ * the app starts.
+ */
+@NotNullByDefault
+interface TransportKeyJournal {
+
+	/**
+	 * Loads the journal's key, creating it if necessary, and reads the
+	 * records left by earlier runs of the app. The records can be retrieved
+	 * with {@link #getRecords(TransportId)} and must be written to the DB
+	 * in the given transaction. The files holding them are deleted when the
+	 * transaction commits.
+	 */
+	void start(Transaction txn) throws DbException;
+
+	/**
+	 * Returns the records for the given transport that were read by
+	 * {@link #start(Transaction)}, in the order they were appended.
+	 */
+	Collection<JournalRecord> getRecords(TransportId t);
+
+	/**
+	 * Appends the given record for the given transport. When this method
+	 * returns, the record has been written to storage.
+	 */
+	void append(TransportId t, JournalRecord r) throws DbException;
+
+	/**
+	 * Appends the given records for the given transport, in order. When this
+	 * method returns, the records have been written to storage. Writing
+	 * several records in one call is cheaper than writing them one at a
+	 * time, as storage only needs to be synced once.
+	 */
+	void append(TransportId t, Collection<JournalRecord> records)
+			throws DbException;
+
+	/**
+	 * Starts a checkpoint. Records appended after this call are kept until
+	 * the next checkpoint. Records appended before this call are deleted
+	 * when the given transaction commits, so the caller must write all
+	 * changes made before this call to the DB in the same transaction.
+	 */
+	void checkpoint(Transaction txn) throws DbException;
+}
@@ -0,0 +1,342 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.DecryptionException;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DatabaseConfig;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.settings.Settings;
+import org.briarproject.bramble.api.transport.KeySetId;
+import org.briarproject.bramble.transport.JournalRecord.Type;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Inject;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.readUint32;
+import static org.briarproject.bramble.util.ByteUtils.writeUint32;
+import static org.briarproject.bramble.util.IoUtils.delete;
+import static org.briarproject.bramble.util.IoUtils.read;
+import static org.briarproject.bramble.util.IoUtils.tryToClose;
+import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.StringUtils.fromHexString;
+import static org.briarproject.bramble.util.StringUtils.toHexString;
+
+/**
+ * A {@link TransportKeyJournal} that stores its records in files in the
+ * database directory.
+ * <p>
+ * Each record is encrypted with a key that is stored in the DB, so the
+ * journal reveals no more than the encrypted DB does. Each record is synced
+ * to storage before {@link #append(TransportId, JournalRecord)} returns. If
+ * the app stops while a record is being written, the incomplete record
+ * fails to decrypt and is ignored along with anything after it. The change
+ * described by such a record has not taken effect, because changes only
+ * take effect after they have been journalled.
+ * <p>
+ * Each checkpoint starts a new file. The files from before the checkpoint
+ * are deleted when the checkpoint has been written to the DB.
+ */
+@ThreadSafe
+@NotNullByDefault
+class TransportKeyJournalImpl implements TransportKeyJournal {
+
+	private static final Logger LOG =
+			getLogger(TransportKeyJournalImpl.class.getName());
+
+	static final String SETTINGS_NAMESPACE = "transport-key-journal";
+	static final String SETTINGS_KEY = "key";
+
+	private static final String FILE_PREFIX = "transport-keys-";
+	private static final String FILE_SUFFIX = ".journal";
+
+	/**
+	 * The maximum length of an encrypted record in bytes. Records are much
+	 * shorter than this, so a longer length must be the result of an
+	 * incomplete write.
+	 */
+	private static final int MAX_RECORD_LENGTH = 1024;
+
+	private final DatabaseComponent db;
+	private final CryptoComponent crypto;
+	private final File dir;
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	@Nullable
+	private SecretKey key = null;
+	@GuardedBy("lock")
+	private final Map<TransportId, List<JournalRecord>> replayed =
+			new HashMap<>();
+	/**
+	 * The generation of the file that records are currently appended to.
+	 */
+	@GuardedBy("lock")
+	private long generation = 0;
+	/**
+	 * The file that records are currently appended to, or null if no
+	 * records have been appended since the last checkpoint.
+	 */
+	@GuardedBy("lock")
+	@Nullable
+	private FileOutputStream out = null;
+
+	@Inject
+	TransportKeyJournalImpl(DatabaseComponent db, CryptoComponent crypto,
+			DatabaseConfig databaseConfig) {
+		this.db = db;
+		this.crypto = crypto;
+		dir = databaseConfig.getDatabaseDirectory();
+	}
+
+	@Override
+	public void start(Transaction txn) throws DbException {
+		synchronized (lock) {
+			if (key != null) throw new IllegalStateException();
+			key = loadOrCreateKey(txn);
+			SortedMap<Long, File> files = getFiles();
+			for (File f : files.values()) readRecords(key, f);
+			if (!files.isEmpty()) generation = files.lastKey() + 1;
+			// The records will be written to the DB in this transaction
+			long keep = generation;
+			txn.attach(() -> deleteFilesBefore(keep));
+		}
+	}
+
+	@Override
+	public Collection<JournalRecord> getRecords(TransportId t) {
+		synchronized (lock) {
+			List<JournalRecord> records = replayed.remove(t);
+			return records == null ? emptyList() : records;
+		}
+	}
+
+	@Override
+	public void append(TransportId t, JournalRecord r) throws DbException {
+		append(t, singletonList(r));
+	}
+
+	@Override
+	public void append(TransportId t, Collection<JournalRecord> records)
+			throws DbException {
+		if (records.isEmpty()) return;
+		List<byte[]> plaintexts = new ArrayList<>(records.size());
+		for (JournalRecord r : records) plaintexts.add(encodeRecord(t, r));
+		synchronized (lock) {
+			if (key == null) throw new IllegalStateException();
+			ByteArrayOutputStream entries = new ByteArrayOutputStream();
+			for (byte[] plaintext : plaintexts) {
+				byte[] ciphertext = crypto.encryptWithKey(plaintext, key);
+				byte[] length = new byte[INT_32_BYTES];
+				writeUint32(ciphertext.length, length, 0);
+				entries.write(length, 0, length.length);
+				entries.write(ciphertext, 0, ciphertext.length);
+			}
+			try {
+				if (out == null) {
+					if (!dir.exists() && !dir.mkdirs())
+						throw new IOException("Could not create " + dir);
+					out = new FileOutputStream(getFile(generation), true);
+				}
+				out.write(entries.toByteArray());
+				out.getFD().sync();
+			} catch (IOException e) {
+				// Close the file. If the records were partly written, the
+				// next record will be appended after the incomplete one and
+				// will be lost when the journal is read, so start a new file
+				tryToClose(out, LOG, WARNING);
+				out = null;
+				generation++;
+				throw new DbException(e);
+			}
+		}
+	}
+
+	@Override
+	public void checkpoint(Transaction txn) {
+		synchronized (lock) {
+			if (key == null) throw new IllegalStateException();
+			if (out != null) {
+				tryToClose(out, LOG, WARNING);
+				out = null;
+				generation++;
+			}
+			// If an earlier checkpoint failed, its files will be deleted
+			// by this checkpoint
+			long keep = generation;
+			txn.attach(() -> deleteFilesBefore(keep));
+		}
+	}
+
+	@GuardedBy("lock")
+	private SecretKey loadOrCreateKey(Transaction txn) throws DbException {
+		Settings s = db.getSettings(txn, SETTINGS_NAMESPACE);
+		String hex = s.get(SETTINGS_KEY);
+		if (hex != null) {
+			try {
+				return new SecretKey(fromHexString(hex));
+			} catch (FormatException | IllegalArgumentException e) {
+				logException(LOG, WARNING, e);
+			}
+		}
+		SecretKey created = crypto.generateSecretKey();
+		s.put(SETTINGS_KEY, toHexString(created.getBytes()));
+		db.mergeSettings(txn, s, SETTINGS_NAMESPACE);
+		return created;
+	}
+
+	/**
+	 * Returns the journal files in the database directory, sorted by
+	 * generation.
+	 */
+	private SortedMap<Long, File> getFiles() {
+		SortedMap<Long, File> files = new TreeMap<>();
+		File[] children = dir.listFiles();
+		if (children == null) return files;
+		for (File f : children) {
+			String name = f.getName();
+			if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX))
+				continue;
+			String number = name.substring(FILE_PREFIX.length(),
+					name.length() - FILE_SUFFIX.length());
+			try {
+				files.put(Long.parseLong(number), f);
+			} catch (NumberFormatException e) {
+				if (LOG.isLoggable(WARNING))
+					LOG.warning("Unexpected journal file " + name);
+			}
+		}
+		return files;
+	}
+
+	private File getFile(long generation) {
+		return new File(dir, FILE_PREFIX + generation + FILE_SUFFIX);
+	}
+
+	private void deleteFilesBefore(long generation) {
+		for (Map.Entry<Long, File> e : getFiles().entrySet()) {
+			if (e.getKey() < generation) delete(e.getValue());
+		}
+	}
+
+	@GuardedBy("lock")
+	private void readRecords(SecretKey key, File f) {
+		int count = 0;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(f);
+			byte[] length = new byte[INT_32_BYTES];
+			while (true) {
+				try {
+					read(in, length);
+				} catch (EOFException e) {
+					break;
+				}
+				long len = readUint32(length, 0);
+				if (len > MAX_RECORD_LENGTH) {
+					LOG.warning("Incomplete journal record");
+					break;
+				}
+				byte[] ciphertext = new byte[(int) len];
+				read(in, ciphertext);
+				decodeRecord(crypto.decryptWithKey(ciphertext, key));
+				count++;
+			}
+		} catch (EOFException | DecryptionException e) {
+			// The last record was not completely written
+			LOG.warning("Incomplete journal record");
+		} catch (IOException e) {
+			logException(LOG, WARNING, e);
+		} finally {
+			tryToClose(in, LOG, WARNING);
+		}
+		if (LOG.isLoggable(INFO))
+			LOG.info("Read " + count + " records from " + f.getName());
+	}
+
+	private byte[] encodeRecord(TransportId t, JournalRecord r) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bytes);
+		try {
+			data.writeByte(r.getType().ordinal());
+			data.writeUTF(t.getString());
+			data.writeInt(r.getKeySetId().getInt());
+			if (r.getType() == Type.STREAM_COUNTER) {
+				data.writeLong(r.getTimePeriod());
+				data.writeLong(r.getStreamCounter());
+			} else if (r.getType() == Type.REORDERING_WINDOW) {
+				data.writeLong(r.getTimePeriod());
+				data.writeLong(r.getWindowBase());
+				byte[] bitmap = r.getWindowBitmap();
+				data.writeByte(bitmap.length);
+				data.write(bitmap);
+			}
+			data.flush();
+		} catch (IOException e) {
+			// Writing to a ByteArrayOutputStream doesn't throw
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	@GuardedBy("lock")
+	private void decodeRecord(byte[] plaintext) throws IOException {
+		DataInputStream data =
+				new DataInputStream(new ByteArrayInputStream(plaintext));
+		int type = data.readUnsignedByte();
+		if (type >= Type.values().length) throw new IOException();
+		TransportId t = new TransportId(data.readUTF());
+		KeySetId k = new KeySetId(data.readInt());
+		JournalRecord r;
+		if (type == Type.STREAM_COUNTER.ordinal()) {
+			long timePeriod = data.readLong();
+			long streamCounter = data.readLong();
+			r = JournalRecord.streamCounter(k, timePeriod, streamCounter);
+		} else if (type == Type.REORDERING_WINDOW.ordinal()) {
+			long timePeriod = data.readLong();
+			long base = data.readLong();
+			byte[] bitmap = new byte[data.readUnsignedByte()];
+			data.readFully(bitmap);
+			r = JournalRecord.reorderingWindow(k, timePeriod, base, bitmap);
+		} else {
+			r = JournalRecord.keysActive(k);
+		}
+		List<JournalRecord> records = replayed.get(t);
+		if (records == null) {
+			records = new ArrayList<>();
+			replayed.put(t, records);
+		}
+		records.add(r);
+	}
+}
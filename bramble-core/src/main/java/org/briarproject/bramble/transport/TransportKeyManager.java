@@ -37,20 +37,22 @@ interface TransportKeyManager {
 	boolean canSendOutgoingStreams(PendingContactId p);
 
 	@Nullable
-	StreamContext getStreamContext(Transaction txn, ContactId c)
-			throws DbException;
+	StreamContext getStreamContext(ContactId c) throws DbException;
 
 	@Nullable
-	StreamContext getStreamContext(Transaction txn, PendingContactId p)
-			throws DbException;
+	StreamContext getStreamContext(PendingContactId p) throws DbException;
 
 	@Nullable
-	StreamContext getStreamContext(Transaction txn, byte[] tag)
-			throws DbException;
+	StreamContext getStreamContext(byte[] tag) throws DbException;
 
 	@Nullable
-	StreamContext getStreamContextOnly(Transaction txn, byte[] tag);
+	StreamContext getStreamContextOnly(byte[] tag);
+
+	void markTagAsRecognised(byte[] tag) throws DbException;
 
-	void markTagAsRecognised(Transaction txn, byte[] tag) throws DbException;
+	/**
+	 * Writes any key sets with journalled changes to the DB.
+	 */
+	void checkpoint(Transaction txn) throws DbException;
 
 }
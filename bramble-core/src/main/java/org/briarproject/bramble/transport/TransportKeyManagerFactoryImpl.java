@@ -1,5 +1,6 @@
 package org.briarproject.bramble.transport;
 
+import org.briarproject.bramble.api.crypto.CryptoExecutor;
 import org.briarproject.bramble.api.crypto.TransportCrypto;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DatabaseExecutor;
@@ -19,20 +20,25 @@ class TransportKeyManagerFactoryImpl implements
 		TransportKeyManagerFactory {
 
 	private final DatabaseComponent db;
+	private final TransportKeyJournal journal;
 	private final TransportCrypto transportCrypto;
-	private final Executor dbExecutor;
+	private final Executor dbExecutor, cryptoExecutor;
 	private final TaskScheduler scheduler;
 	private final Clock clock;
 
 	@Inject
 	TransportKeyManagerFactoryImpl(DatabaseComponent db,
+			TransportKeyJournal journal,
 			TransportCrypto transportCrypto,
 			@DatabaseExecutor Executor dbExecutor,
+			@CryptoExecutor Executor cryptoExecutor,
 			TaskScheduler scheduler,
 			Clock clock) {
 		this.db = db;
+		this.journal = journal;
 		this.transportCrypto = transportCrypto;
 		this.dbExecutor = dbExecutor;
+		this.cryptoExecutor = cryptoExecutor;
 		this.scheduler = scheduler;
 		this.clock = clock;
 	}
@@ -40,8 +46,9 @@ class TransportKeyManagerFactoryImpl implements
 	@Override
 	public TransportKeyManager createTransportKeyManager(
 			TransportId transportId, long maxLatency) {
-		return new TransportKeyManagerImpl(db, transportCrypto, dbExecutor,
-				scheduler, clock, transportId, maxLatency);
+		return new TransportKeyManagerImpl(db, journal, transportCrypto,
+				dbExecutor, cryptoExecutor, scheduler, clock, transportId,
+				maxLatency);
 	}
 
 }
@@ -1,8 +1,8 @@
 package org.briarproject.bramble.transport;
 
-import org.briarproject.bramble.api.Bytes;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContactId;
+import org.briarproject.bramble.api.crypto.CryptoExecutor;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.crypto.TransportCrypto;
 import org.briarproject.bramble.api.db.DatabaseComponent;
@@ -24,9 +24,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
@@ -34,14 +40,20 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.asList;
+import static java.util.Arrays.copyOfRange;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
 import static org.briarproject.bramble.api.transport.TransportConstants.PROTOCOL_VERSION;
 import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
 import static org.briarproject.bramble.util.ByteUtils.MAX_32_BIT_UNSIGNED;
+import static org.briarproject.bramble.util.LogUtils.logDuration;
 import static org.briarproject.bramble.util.LogUtils.logException;
+import static org.briarproject.bramble.util.LogUtils.now;
 import static org.briarproject.nullsafety.NullSafety.requireExactlyOneNull;
 
 @ThreadSafe
@@ -51,9 +63,20 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 	private static final Logger LOG =
 			getLogger(TransportKeyManagerImpl.class.getName());
 
+	/**
+	 * The minimum number of reordering windows for which tags are encoded in
+	 * parallel. Below this, handing the work to other threads costs more
+	 * than it saves.
+	 */
+	private static final int MIN_PARALLEL_WINDOWS = 16;
+
+	private static final int MAX_PARALLELISM =
+			Math.max(1, Runtime.getRuntime().availableProcessors());
+
 	private final DatabaseComponent db;
+	private final TransportKeyJournal journal;
 	private final TransportCrypto transportCrypto;
-	private final Executor dbExecutor;
+	private final Executor dbExecutor, cryptoExecutor;
 	private final TaskScheduler scheduler;
 	private final Clock clock;
 	private final TransportId transportId;
@@ -63,25 +86,57 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 
 	@GuardedBy("lock")
 	private final Map<KeySetId, MutableTransportKeySet> keys = new HashMap<>();
+	/**
+	 * Modified while holding the lock, but entries may be looked up without
+	 * it. When the keys are updated, a new table is built while the old one
+	 * remains in use, and then the new table replaces the old one, so
+	 * lookups never see a partly built table.
+	 */
+	private volatile TagTable<TagContext> inContexts = new TagTable<>();
+	/**
+	 * Tags that are waiting to be recognised. The reordering windows are
+	 * updated and journalled by whichever thread next takes the lock.
+	 */
+	private final Queue<RecognisedTag> recognisedTags =
+			new ConcurrentLinkedQueue<>();
 	@GuardedBy("lock")
-	private final Map<Bytes, TagContext> inContexts = new HashMap<>();
+	private final Map<KeySetId, List<TagContext>> dormantKeySets =
+			new HashMap<>();
+	/**
+	 * Written while holding the lock, but may be read without it, as the
+	 * index is immutable.
+	 */
+	private volatile DormantTagIndex<TagContext> dormantTags =
+			new DormantTagIndex<>();
 	@GuardedBy("lock")
 	private final Map<ContactId, MutableTransportKeySet>
 			contactOutContexts = new HashMap<>();
 	@GuardedBy("lock")
 	private final Map<PendingContactId, MutableTransportKeySet>
 			pendingContactOutContexts = new HashMap<>();
+	/**
+	 * The key sets that have journalled changes that have not been written
+	 * to the DB, mapped to the number of the most recent change.
+	 */
+	@GuardedBy("lock")
+	private final Map<KeySetId, Long> unsaved = new HashMap<>();
+	@GuardedBy("lock")
+	private long changes = 0;
 
 	TransportKeyManagerImpl(DatabaseComponent db,
+			TransportKeyJournal journal,
 			TransportCrypto transportCrypto,
 			Executor dbExecutor,
+			Executor cryptoExecutor,
 			TaskScheduler scheduler,
 			Clock clock,
 			TransportId transportId,
 			long maxLatency) {
 		this.db = db;
+		this.journal = journal;
 		this.transportCrypto = transportCrypto;
 		this.dbExecutor = dbExecutor;
+		this.cryptoExecutor = cryptoExecutor;
 		this.scheduler = scheduler;
 		this.clock = clock;
 		this.transportId = transportId;
@@ -97,11 +152,25 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 			// Load the transport keys from the DB
 			Collection<TransportKeySet> loaded =
 					db.getTransportKeys(txn, transportId);
+			// Apply any changes that were journalled but not saved
+			Map<KeySetId, TransportKeySet> replayed =
+					replayJournal(txn, loaded);
+			List<TransportKeySet> merged = new ArrayList<>(loaded.size());
+			for (TransportKeySet ks : loaded) {
+				TransportKeySet replayedKs = replayed.get(ks.getKeySetId());
+				merged.add(replayedKs == null ? ks : replayedKs);
+			}
 			// Update the keys to the current time period
-			UpdateResult updateResult = updateKeys(loaded, now);
+			UpdateResult updateResult = updateKeys(merged, now);
 			// Initialise mutable state for all contacts
-			addKeys(updateResult.current);
-			// Write any updated keys back to the DB
+			addKeys(updateResult.current, inContexts);
+			// Write any updated or replayed keys back to the DB
+			for (TransportKeySet ks : updateResult.updated)
+				replayed.remove(ks.getKeySetId());
+			for (TransportKeySet ks : updateResult.current) {
+				if (replayed.containsKey(ks.getKeySetId()))
+					updateResult.updated.add(ks);
+			}
 			if (!updateResult.updated.isEmpty())
 				db.updateTransportKeys(txn, updateResult.updated);
 		} finally {
@@ -111,6 +180,76 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 		scheduleKeyUpdate(now);
 	}
 
+	/**
+	 * Applies the records left in the journal by the last run to the given
+	 * key sets and returns the updated versions of any key sets that were
+	 * changed, which must be written back to the DB.
+	 */
+	private Map<KeySetId, TransportKeySet> replayJournal(Transaction txn,
+			Collection<TransportKeySet> keys) throws DbException {
+		Map<KeySetId, TransportKeySet> replayed = new HashMap<>();
+		Collection<JournalRecord> records = journal.getRecords(transportId);
+		if (records.isEmpty()) return replayed;
+		Map<KeySetId, TransportKeySet> byId = new HashMap<>();
+		Map<KeySetId, MutableTransportKeys> mutable = new HashMap<>();
+		for (TransportKeySet ks : keys) {
+			byId.put(ks.getKeySetId(), ks);
+			mutable.put(ks.getKeySetId(),
+					new MutableTransportKeys(ks.getKeys()));
+		}
+		for (JournalRecord r : records) {
+			KeySetId k = r.getKeySetId();
+			// The key set may have been removed since the record was written
+			MutableTransportKeys m = mutable.get(k);
+			if (m == null) continue;
+			if (applyRecord(txn, k, m, r)) {
+				TransportKeySet ks = byId.get(k);
+				replayed.put(k, new TransportKeySet(k, ks.getContactId(),
+						ks.getPendingContactId(), m.snapshot()));
+			}
+		}
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Replayed " + records.size() + " journal records, "
+					+ replayed.size() + " key sets changed");
+		}
+		return replayed;
+	}
+
+	/**
+	 * Applies a journal record to the given keys and returns true if the
+	 * keys changed. Records for earlier time periods are ignored.
+	 */
+	private boolean applyRecord(Transaction txn, KeySetId k,
+			MutableTransportKeys m, JournalRecord r) throws DbException {
+		switch (r.getType()) {
+			case STREAM_COUNTER:
+				MutableOutgoingKeys outKeys = m.getCurrentOutgoingKeys();
+				if (outKeys.getTimePeriod() != r.getTimePeriod()) return false;
+				if (outKeys.getStreamCounter() >= r.getStreamCounter())
+					return false;
+				outKeys.setStreamCounter(r.getStreamCounter());
+				return true;
+			case REORDERING_WINDOW:
+				for (MutableIncomingKeys inKeys : asList(
+						m.getPreviousIncomingKeys(),
+						m.getCurrentIncomingKeys(),
+						m.getNextIncomingKeys())) {
+					if (inKeys.getTimePeriod() == r.getTimePeriod()) {
+						return inKeys.getWindow().merge(r.getWindowBase(),
+								r.getWindowBitmap());
+					}
+				}
+				return false;
+			case KEYS_ACTIVE:
+				if (m.getCurrentOutgoingKeys().isActive()) return false;
+				m.getCurrentOutgoingKeys().activate();
+				db.setTransportKeysActive(txn, transportId, k);
+				return true;
+			default:
+				throw new AssertionError();
+		}
+	}
+
 	private UpdateResult updateKeys(Collection<TransportKeySet> keys,
 			long now) {
 		UpdateResult updateResult = new UpdateResult();
@@ -131,45 +270,219 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 		return updateResult;
 	}
 
+	/**
+	 * Initialises the mutable state for the given key sets, adding the tags
+	 * of any active key sets to the given table.
+	 */
 	@GuardedBy("lock")
-	private void addKeys(Collection<TransportKeySet> keys) {
+	private void addKeys(Collection<TransportKeySet> keys,
+			TagTable<TagContext> contexts) {
+		// The tags of active and dormant key sets are encoded together so
+		// the work can be shared between threads, with the active ones first
+		List<TagContext> tagContexts = new ArrayList<>(keys.size() * 3);
+		List<TagContext> dormant = new ArrayList<>();
 		for (TransportKeySet ks : keys) {
-			addKeys(ks.getKeySetId(), ks.getContactId(),
-					ks.getPendingContactId(),
-					new MutableTransportKeys(ks.getKeys()));
+			MutableTransportKeys m = new MutableTransportKeys(ks.getKeys());
+			List<TagContext> windows = addKeys(ks.getKeySetId(),
+					ks.getContactId(), ks.getPendingContactId(), m);
+			if (isDormant(m)) {
+				dormantKeySets.put(ks.getKeySetId(), windows);
+				dormant.addAll(windows);
+			} else {
+				tagContexts.addAll(windows);
+			}
+		}
+		int active = tagContexts.size();
+		tagContexts.addAll(dormant);
+		List<List<Long>> streamNumbers = getUnseen(tagContexts);
+		byte[][] tags = encodeTags(tagContexts, streamNumbers);
+		addTags(contexts, tagContexts, streamNumbers, tags, active);
+		dormantTags = new DormantTagIndex<>(dormant,
+				copyOfRange(tags, active, tags.length));
+		if (LOG.isLoggable(INFO)) {
+			LOG.info(dormantKeySets.size() + " of " + keys.size()
+					+ " key sets are dormant");
 		}
 	}
 
+	/**
+	 * Returns true if the given keys have not been used for sending or
+	 * receiving streams in the current time period or the periods either
+	 * side of it. Keys for pending contacts and keys that have not yet been
+	 * activated are never dormant, as they are expected to be used soon.
+	 */
+	private boolean isDormant(MutableTransportKeys keys) {
+		if (keys.isHandshakeMode()) return false;
+		MutableOutgoingKeys outKeys = keys.getCurrentOutgoingKeys();
+		if (!outKeys.isActive() || outKeys.getStreamCounter() > 0)
+			return false;
+		return keys.getPreviousIncomingKeys().getWindow().isUnused()
+				&& keys.getCurrentIncomingKeys().getWindow().isUnused()
+				&& keys.getNextIncomingKeys().getWindow().isUnused();
+	}
+
+	/**
+	 * Initialises the mutable state for a key set and returns the contexts
+	 * of its incoming keys, for which tags must then be encoded.
+	 */
 	@GuardedBy("lock")
-	private void addKeys(KeySetId keySetId, @Nullable ContactId contactId,
+	private List<TagContext> addKeys(KeySetId keySetId,
+			@Nullable ContactId contactId,
 			@Nullable PendingContactId pendingContactId,
 			MutableTransportKeys keys) {
 		requireExactlyOneNull(contactId, pendingContactId);
 		MutableTransportKeySet ks = new MutableTransportKeySet(keySetId,
 				contactId, pendingContactId, keys);
 		this.keys.put(keySetId, ks);
-		boolean handshakeMode = keys.isHandshakeMode();
-		encodeTags(keySetId, contactId, pendingContactId,
-				keys.getPreviousIncomingKeys(), handshakeMode);
-		encodeTags(keySetId, contactId, pendingContactId,
-				keys.getCurrentIncomingKeys(), handshakeMode);
-		encodeTags(keySetId, contactId, pendingContactId,
-				keys.getNextIncomingKeys(), handshakeMode);
 		considerReplacingOutgoingKeys(ks);
+		boolean handshakeMode = keys.isHandshakeMode();
+		return asList(
+				new TagContext(keySetId, contactId, pendingContactId,
+						keys.getPreviousIncomingKeys(), handshakeMode),
+				new TagContext(keySetId, contactId, pendingContactId,
+						keys.getCurrentIncomingKeys(), handshakeMode),
+				new TagContext(keySetId, contactId, pendingContactId,
+						keys.getNextIncomingKeys(), handshakeMode));
 	}
 
 	@GuardedBy("lock")
-	private void encodeTags(KeySetId keySetId, @Nullable ContactId contactId,
-			@Nullable PendingContactId pendingContactId,
-			MutableIncomingKeys inKeys, boolean handshakeMode) {
-		for (long streamNumber : inKeys.getWindow().getUnseen()) {
-			TagContext tagCtx = new TagContext(keySetId, contactId,
-					pendingContactId, inKeys, streamNumber, handshakeMode);
+	private void encodeTags(List<TagContext> tagContexts) {
+		List<List<Long>> streamNumbers = getUnseen(tagContexts);
+		byte[][] tags = encodeTags(tagContexts, streamNumbers);
+		addTags(inContexts, tagContexts, streamNumbers, tags,
+				tagContexts.size());
+	}
+
+	@GuardedBy("lock")
+	private List<List<Long>> getUnseen(List<TagContext> tagContexts) {
+		List<List<Long>> streamNumbers = new ArrayList<>(tagContexts.size());
+		for (TagContext tagCtx : tagContexts)
+			streamNumbers.add(tagCtx.inKeys.getWindow().getUnseen());
+		return streamNumbers;
+	}
+
+	/**
+	 * Adds the tags of the first {@code count} windows to the given table.
+	 */
+	@GuardedBy("lock")
+	private void addTags(TagTable<TagContext> contexts,
+			List<TagContext> tagContexts, List<List<Long>> streamNumbers,
+			byte[][] tags, int count) {
+		for (int i = 0; i < count; i++) {
+			TagContext tagCtx = tagContexts.get(i);
+			List<Long> unseen = streamNumbers.get(i);
+			for (int j = 0; j < unseen.size(); j++)
+				contexts.put(tags[i], j * TAG_LENGTH, tagCtx, unseen.get(j));
+		}
+	}
+
+	/**
+	 * Returns the tags for the unseen stream numbers of each window.
+	 */
+	@GuardedBy("lock")
+	private byte[][] encodeTags(List<TagContext> tagContexts,
+			List<List<Long>> streamNumbers) {
+		long start = now();
+		int windows = tagContexts.size();
+		byte[][] tags = new byte[windows][];
+		if (windows < MIN_PARALLEL_WINDOWS) {
+			for (int i = 0; i < windows; i++) {
+				tags[i] = encodeTags(tagContexts.get(i).inKeys.getTagKey(),
+						streamNumbers.get(i));
+			}
+		} else {
+			encodeTagsInParallel(tagContexts, streamNumbers, tags);
+		}
+		if (windows >= MIN_PARALLEL_WINDOWS)
+			logDuration(LOG, "Encoding tags for " + windows + " windows", start);
+		return tags;
+	}
+
+	/**
+	 * Moves any dormant key sets that may have produced the given tag into
+	 * the tag table, and returns true if any key sets were moved.
+	 */
+	@GuardedBy("lock")
+	private boolean promoteDormantKeys(byte[] tag) {
+		boolean promoted = false;
+		for (TagContext candidate : dormantTags.find(tag)) {
+			List<TagContext> windows =
+					dormantKeySets.remove(candidate.keySetId);
+			if (windows != null) {
+				LOG.info("Promoting dormant keys");
+				encodeTags(windows);
+				promoted = true;
+			}
+		}
+		return promoted;
+	}
+
+	/**
+	 * Returns the slot in the tag table holding the given tag, promoting
+	 * dormant keys if necessary, or -1 if the tag is not recognised.
+	 */
+	@GuardedBy("lock")
+	private int findTag(byte[] tag) {
+		int slot = inContexts.find(tag);
+		if (slot == -1 && promoteDormantKeys(tag)) slot = inContexts.find(tag);
+		return slot;
+	}
+
+	/**
+	 * Encodes the tags for the given windows on the crypto executor. The
+	 * calling thread takes part in the work, so the tags are encoded even if
+	 * the executor doesn't run the helper tasks.
+	 */
+	private void encodeTagsInParallel(List<TagContext> tagContexts,
+			List<List<Long>> streamNumbers, byte[][] tags) {
+		int windows = tags.length;
+		AtomicInteger next = new AtomicInteger(0);
+		CountDownLatch done = new CountDownLatch(windows);
+		Runnable task = () -> {
+			for (int i = next.getAndIncrement(); i < windows;
+					i = next.getAndIncrement()) {
+				try {
+					tags[i] = encodeTags(tagContexts.get(i).inKeys.getTagKey(),
+							streamNumbers.get(i));
+				} finally {
+					done.countDown();
+				}
+			}
+		};
+		int helpers = Math.min(windows, MAX_PARALLELISM) - 1;
+		for (int i = 0; i < helpers; i++) cryptoExecutor.execute(task);
+		task.run();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		// Encode any tags that a helper task failed to encode
+		for (int i = 0; i < windows; i++) {
+			if (tags[i] == null) {
+				tags[i] = encodeTags(tagContexts.get(i).inKeys.getTagKey(),
+						streamNumbers.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Returns the tags for the given stream numbers, concatenated.
+	 */
+	private byte[] encodeTags(SecretKey tagKey, List<Long> streamNumbers) {
+		byte[] tags = new byte[streamNumbers.size() * TAG_LENGTH];
+		for (int i = 0; i < streamNumbers.size(); i++) {
 			byte[] tag = new byte[TAG_LENGTH];
-			transportCrypto.encodeTag(tag, inKeys.getTagKey(), PROTOCOL_VERSION,
-					streamNumber);
-			inContexts.put(new Bytes(tag), tagCtx);
+			transportCrypto.encodeTag(tag, tagKey, PROTOCOL_VERSION,
+					streamNumbers.get(i));
+			arraycopy(tag, 0, tags, i * TAG_LENGTH, TAG_LENGTH);
 		}
+		return tags;
 	}
 
 	@GuardedBy("lock")
@@ -230,7 +543,8 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 			// Write the keys back to the DB
 			KeySetId keySetId = db.addTransportKeys(txn, c, k);
 			// Initialise mutable state for the keys
-			addKeys(keySetId, c, null, new MutableTransportKeys(k));
+			encodeTags(addKeys(keySetId, c, null,
+					new MutableTransportKeys(k)));
 			return keySetId;
 		} finally {
 			lock.unlock();
@@ -250,7 +564,8 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 			// Write the keys back to the DB
 			KeySetId keySetId = db.addTransportKeys(txn, c, k);
 			// Initialise mutable state for the keys
-			addKeys(keySetId, c, null, new MutableTransportKeys(k));
+			encodeTags(addKeys(keySetId, c, null,
+					new MutableTransportKeys(k)));
 			return keySetId;
 		} finally {
 			lock.unlock();
@@ -270,7 +585,8 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 			// Write the keys back to the DB
 			KeySetId keySetId = db.addTransportKeys(txn, p, k);
 			// Initialise mutable state for the keys
-			addKeys(keySetId, null, p, new MutableTransportKeys(k));
+			encodeTags(addKeys(keySetId, null, p,
+					new MutableTransportKeys(k)));
 			return keySetId;
 		} finally {
 			lock.unlock();
@@ -297,9 +613,15 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 		lock.lock();
 		try {
 			// Remove mutable state for the contact
-			Iterator<TagContext> it = inContexts.values().iterator();
+			for (int i = 0; i < inContexts.getCapacity(); i++) {
+				TagContext tagCtx = inContexts.getContext(i);
+				if (tagCtx != null && c.equals(tagCtx.contactId)) {
+					inContexts.removeSlot(i);
+				}
+			}
+			Iterator<List<TagContext>> it = dormantKeySets.values().iterator();
 			while (it.hasNext())
-				if (c.equals(it.next().contactId)) it.remove();
+				if (c.equals(it.next().get(0).contactId)) it.remove();
 			contactOutContexts.remove(c);
 			Iterator<MutableTransportKeySet> it1 = keys.values().iterator();
 			while (it1.hasNext())
@@ -314,9 +636,15 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 		lock.lock();
 		try {
 			// Remove mutable state for the pending contact
-			Iterator<TagContext> it = inContexts.values().iterator();
+			for (int i = 0; i < inContexts.getCapacity(); i++) {
+				TagContext tagCtx = inContexts.getContext(i);
+				if (tagCtx != null && p.equals(tagCtx.pendingContactId)) {
+					inContexts.removeSlot(i);
+				}
+			}
+			Iterator<List<TagContext>> it = dormantKeySets.values().iterator();
 			while (it.hasNext())
-				if (p.equals(it.next().pendingContactId)) it.remove();
+				if (p.equals(it.next().get(0).pendingContactId)) it.remove();
 			pendingContactOutContexts.remove(p);
 			Iterator<MutableTransportKeySet> it1 = keys.values().iterator();
 			while (it1.hasNext())
@@ -351,21 +679,19 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 	}
 
 	@Override
-	public StreamContext getStreamContext(Transaction txn, ContactId c)
-			throws DbException {
-		return getStreamContext(txn, c, null);
+	public StreamContext getStreamContext(ContactId c) throws DbException {
+		return getStreamContext(c, null);
 	}
 
 	@Override
-	public StreamContext getStreamContext(Transaction txn, PendingContactId p)
+	public StreamContext getStreamContext(PendingContactId p)
 			throws DbException {
-		return getStreamContext(txn, null, p);
+		return getStreamContext(null, p);
 	}
 
 	@Nullable
-	private StreamContext getStreamContext(Transaction txn,
-			@Nullable ContactId c, @Nullable PendingContactId p)
-			throws DbException {
+	private StreamContext getStreamContext(@Nullable ContactId c,
+			@Nullable PendingContactId p) throws DbException {
 		lock.lock();
 		try {
 			// Look up the outgoing keys for the contact
@@ -379,9 +705,14 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 			StreamContext ctx = new StreamContext(c, p, transportId,
 					outKeys.getTagKey(), outKeys.getHeaderKey(),
 					outKeys.getStreamCounter(), keys.isHandshakeMode());
-			// Increment the stream counter and write it back to the DB
+			// Increment the stream counter and journal the change before
+			// the stream is used. If journalling fails, the stream number
+			// is skipped rather than risking its reuse
 			outKeys.incrementStreamCounter();
-			db.incrementStreamCounter(txn, transportId, ks.getKeySetId());
+			journal.append(transportId, JournalRecord.streamCounter(
+					ks.getKeySetId(), outKeys.getTimePeriod(),
+					outKeys.getStreamCounter()));
+			setUnsaved(ks.getKeySetId());
 			return ctx;
 		} finally {
 			lock.unlock();
@@ -389,83 +720,202 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 	}
 
 	@Override
-	public StreamContext getStreamContext(Transaction txn, byte[] tag)
-			throws DbException {
+	public StreamContext getStreamContext(byte[] tag) throws DbException {
+		// Unless the tag is in the table or may belong to dormant keys, it's
+		// not recognised, and there's no need to take the lock
+		if (inContexts.get(tag) == null && dormantTags.find(tag).isEmpty())
+			return null;
+		return recogniseTag(tag);
+	}
+
+	@Override
+	public StreamContext getStreamContextOnly(byte[] tag) {
+		TagTable.Entry<TagContext> entry = inContexts.get(tag);
+		if (entry != null) {
+			return createStreamContext(entry.getContext(),
+					entry.getStreamNumber());
+		}
+		if (dormantTags.find(tag).isEmpty()) return null;
 		lock.lock();
 		try {
-			StreamContext ctx = streamContextFromTag(tag);
-			if (ctx == null) return null;
-			markTagAsRecognised(txn, tag);
-			return ctx;
+			int slot = findTag(tag);
+			if (slot == -1) return null;
+			return createStreamContext(inContexts, slot);
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	private StreamContext createStreamContext(TagTable<TagContext> contexts,
+			int slot) {
+		TagContext tagCtx = contexts.getContext(slot);
+		if (tagCtx == null) throw new AssertionError();
+		return createStreamContext(tagCtx, contexts.getStreamNumber(slot));
+	}
+
+	private StreamContext createStreamContext(TagContext tagCtx,
+			long streamNumber) {
+		MutableIncomingKeys inKeys = tagCtx.inKeys;
+		return new StreamContext(tagCtx.contactId,
+				tagCtx.pendingContactId, transportId,
+				inKeys.getTagKey(), inKeys.getHeaderKey(),
+				streamNumber, tagCtx.handshakeMode);
+	}
+
 	@Override
-	public StreamContext getStreamContextOnly(Transaction txn, byte[] tag) {
+	public void markTagAsRecognised(byte[] tag) throws DbException {
+		recogniseTag(tag);
+	}
+
+	/**
+	 * Marks the given tag as recognised and returns a stream context for
+	 * it, or null if the tag is not recognised. The change to the reordering
+	 * window is journalled before this method returns.
+	 * <p>
+	 * While one thread holds the lock and writes to the journal, tags
+	 * recognised by other threads are queued, and the next thread to take
+	 * the lock journals all of them with a single sync.
+	 */
+	@Nullable
+	private StreamContext recogniseTag(byte[] tag) throws DbException {
+		RecognisedTag r = new RecognisedTag(tag.clone());
+		recognisedTags.add(r);
 		lock.lock();
 		try {
-			return streamContextFromTag(tag);
+			// Another thread may have journalled the tag while we were
+			// waiting for the lock
+			if (!r.done) applyRecognisedTags();
+			if (r.exception != null) throw r.exception;
+			return r.ctx;
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	/**
+	 * Updates the reordering windows for any tags that are waiting to be
+	 * recognised and journals the changes.
+	 */
 	@GuardedBy("lock")
-	@Nullable
-	private StreamContext streamContextFromTag(byte[] tag) {
-		// Look up the incoming keys for the tag
-		TagContext tagCtx = inContexts.get(new Bytes(tag));
-		if (tagCtx == null) return null;
-		MutableIncomingKeys inKeys = tagCtx.inKeys;
-		// Create a stream context
-		return new StreamContext(tagCtx.contactId,
-				tagCtx.pendingContactId, transportId,
-				inKeys.getTagKey(), inKeys.getHeaderKey(),
-				tagCtx.streamNumber, tagCtx.handshakeMode);
+	private void applyRecognisedTags() {
+		List<RecognisedTag> applied = new ArrayList<>();
+		List<JournalRecord> records = new ArrayList<>();
+		for (RecognisedTag r = recognisedTags.poll(); r != null;
+				r = recognisedTags.poll()) {
+			r.ctx = markTagAsRecognisedLocked(r.tag, records);
+			applied.add(r);
+		}
+		// The changes to the windows have already taken effect, so if
+		// journalling fails the streams are refused rather than risking
+		// their reuse after a restart
+		DbException exception = null;
+		if (!records.isEmpty()) {
+			try {
+				journal.append(transportId, records);
+			} catch (DbException e) {
+				exception = e;
+			}
+		}
+		for (RecognisedTag r : applied) {
+			if (r.ctx != null) r.exception = exception;
+			r.done = true;
+		}
 	}
 
-	@Override
-	public void markTagAsRecognised(Transaction txn, byte[] tag)
-			throws DbException {
-		TagContext tagCtx = inContexts.remove(new Bytes(tag));
-		if (tagCtx == null) return;
+	/**
+	 * Updates the reordering window for the given tag, adds the records to
+	 * be journalled to the given list, and returns a stream context for the
+	 * tag, or null if the tag is not recognised.
+	 */
+	@Nullable
+	@GuardedBy("lock")
+	private StreamContext markTagAsRecognisedLocked(byte[] tag,
+			List<JournalRecord> records) {
+		int slot = findTag(tag);
+		if (slot == -1) return null;
+		StreamContext ctx = createStreamContext(inContexts, slot);
+		TagContext tagCtx = inContexts.getContext(slot);
+		if (tagCtx == null) throw new AssertionError();
+		long seen = inContexts.getStreamNumber(slot);
+		inContexts.removeSlot(slot);
 		MutableIncomingKeys inKeys = tagCtx.inKeys;
 		// Update the reordering window
 		ReorderingWindow window = inKeys.getWindow();
-		Change change = window.setSeen(tagCtx.streamNumber);
+		Change change = window.setSeen(seen);
 		// Add tags for any stream numbers added to the window
 		for (long streamNumber : change.getAdded()) {
 			byte[] addTag = new byte[TAG_LENGTH];
 			transportCrypto.encodeTag(addTag, inKeys.getTagKey(),
 					PROTOCOL_VERSION, streamNumber);
-			TagContext tagCtx1 = new TagContext(tagCtx.keySetId,
-					tagCtx.contactId, tagCtx.pendingContactId, inKeys,
-					streamNumber, tagCtx.handshakeMode);
-			inContexts.put(new Bytes(addTag), tagCtx1);
+			inContexts.put(addTag, tagCtx, streamNumber);
 		}
 		// Remove tags for any stream numbers removed from the window
 		for (long streamNumber : change.getRemoved()) {
-			if (streamNumber == tagCtx.streamNumber) continue;
+			if (streamNumber == seen) continue;
 			byte[] removeTag = new byte[TAG_LENGTH];
 			transportCrypto.encodeTag(removeTag, inKeys.getTagKey(),
 					PROTOCOL_VERSION, streamNumber);
-			inContexts.remove(new Bytes(removeTag));
+			inContexts.remove(removeTag);
 		}
-		// Write the window back to the DB
-		db.setReorderingWindow(txn, tagCtx.keySetId, transportId,
-				inKeys.getTimePeriod(), window.getBase(),
-				window.getBitmap());
+		// Journal the new state of the window
+		records.add(JournalRecord.reorderingWindow(tagCtx.keySetId,
+				inKeys.getTimePeriod(), window.getBase(), window.getBitmap()));
+		setUnsaved(tagCtx.keySetId);
 		// If the outgoing keys are inactive, activate them
 		MutableTransportKeySet ks = keys.get(tagCtx.keySetId);
 		MutableOutgoingKeys outKeys =
 				ks.getKeys().getCurrentOutgoingKeys();
 		if (!outKeys.isActive()) {
 			LOG.info("Activating outgoing keys");
+			records.add(JournalRecord.keysActive(tagCtx.keySetId));
 			outKeys.activate();
 			considerReplacingOutgoingKeys(ks);
-			db.setTransportKeysActive(txn, transportId, tagCtx.keySetId);
+		}
+		return ctx;
+	}
+
+	@Override
+	public void checkpoint(Transaction txn) throws DbException {
+		lock.lock();
+		try {
+			if (unsaved.isEmpty()) return;
+			Map<KeySetId, Long> saved = new HashMap<>(unsaved);
+			List<TransportKeySet> snapshot = new ArrayList<>(saved.size());
+			for (KeySetId k : saved.keySet()) {
+				// The key set may have been removed
+				MutableTransportKeySet ks = keys.get(k);
+				if (ks == null) continue;
+				MutableTransportKeys m = ks.getKeys();
+				snapshot.add(new TransportKeySet(k, ks.getContactId(),
+						ks.getPendingContactId(), m.snapshot()));
+				if (m.getCurrentOutgoingKeys().isActive())
+					db.setTransportKeysActive(txn, transportId, k);
+			}
+			db.updateTransportKeys(txn, snapshot);
+			// Once the transaction commits, forget about any changes that
+			// have been saved, unless the key sets have changed again
+			txn.attach(() -> removeSaved(saved));
+			if (LOG.isLoggable(INFO))
+				LOG.info("Saving " + snapshot.size() + " key sets");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@GuardedBy("lock")
+	private void setUnsaved(KeySetId k) {
+		unsaved.put(k, ++changes);
+	}
+
+	private void removeSaved(Map<KeySetId, Long> saved) {
+		lock.lock();
+		try {
+			for (Entry<KeySetId, Long> e : saved.entrySet()) {
+				Long change = unsaved.get(e.getKey());
+				if (e.getValue().equals(change)) unsaved.remove(e.getKey());
+			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -483,12 +933,16 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 						ks.getKeys().snapshot()));
 			}
 			UpdateResult updateResult = updateKeys(snapshot, now);
-			// Rebuild the mutable state for all contacts
-			inContexts.clear();
+			// Rebuild the mutable state for all contacts. Tags may be
+			// looked up without the lock while the new tag table is being
+			// built, so the old table stays in use until then
+			dormantKeySets.clear();
 			contactOutContexts.clear();
 			pendingContactOutContexts.clear();
 			keys.clear();
-			addKeys(updateResult.current);
+			TagTable<TagContext> contexts = new TagTable<>();
+			addKeys(updateResult.current, contexts);
+			inContexts = contexts;
 			// Write any updated keys back to the DB
 			if (!updateResult.updated.isEmpty())
 				db.updateTransportKeys(txn, updateResult.updated);
@@ -499,6 +953,9 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 		scheduleKeyUpdate(now);
 	}
 
+	/**
+	 * The context shared by all the tags of a reordering window.
+	 */
 	private static class TagContext {
 
 		private final KeySetId keySetId;
@@ -507,23 +964,38 @@ class TransportKeyManagerImpl implements TransportKeyManager {
 		@Nullable
 		private final PendingContactId pendingContactId;
 		private final MutableIncomingKeys inKeys;
-		private final long streamNumber;
 		private final boolean handshakeMode;
 
 		private TagContext(KeySetId keySetId, @Nullable ContactId contactId,
 				@Nullable PendingContactId pendingContactId,
-				MutableIncomingKeys inKeys, long streamNumber,
-				boolean handshakeMode) {
+				MutableIncomingKeys inKeys, boolean handshakeMode) {
 			requireExactlyOneNull(contactId, pendingContactId);
 			this.keySetId = keySetId;
 			this.contactId = contactId;
 			this.pendingContactId = pendingContactId;
 			this.inKeys = inKeys;
-			this.streamNumber = streamNumber;
 			this.handshakeMode = handshakeMode;
 		}
 	}
 
+	/**
+	 * A tag that is waiting to be recognised. The fields other than the tag
+	 * are only accessed while holding the lock.
+	 */
+	private static class RecognisedTag {
+
+		private final byte[] tag;
+		private boolean done = false;
+		@Nullable
+		private StreamContext ctx = null;
+		@Nullable
+		private DbException exception = null;
+
+		private RecognisedTag(byte[] tag) {
+			this.tag = tag;
+		}
+	}
+
 	private static class UpdateResult {
 
 		private final Collection<TransportKeySet> current = new ArrayList<>();
@@ -14,6 +14,8 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.emptyList;
+
 @Module
 public class TransportModule {
 
@@ -40,11 +42,19 @@ public class TransportModule {
 		return transportKeyManagerFactory;
 	}
 
+	@Provides
+	@Singleton
+	TransportKeyJournal provideTransportKeyJournal(
+			TransportKeyJournalImpl journal) {
+		return journal;
+	}
+
 	@Provides
 	@Singleton
 	KeyManager provideKeyManager(LifecycleManager lifecycleManager,
 			EventBus eventBus, KeyManagerImpl keyManager) {
-		lifecycleManager.registerService(keyManager);
+		// The service only loads keys from the DB, so it has no dependencies
+		lifecycleManager.registerService(keyManager, emptyList());
 		eventBus.addListener(keyManager);
 		return keyManager;
 	}
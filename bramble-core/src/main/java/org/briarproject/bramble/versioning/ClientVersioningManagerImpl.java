@@ -42,11 +42,17 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Logger.getLogger;
 import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.api.sync.Group.Visibility.VISIBLE;
@@ -54,10 +60,17 @@ import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.D
 import static org.briarproject.bramble.versioning.ClientVersioningConstants.MSG_KEY_LOCAL;
 import static org.briarproject.bramble.versioning.ClientVersioningConstants.MSG_KEY_UPDATE_VERSION;
 
+@ThreadSafe
 @NotNullByDefault
 class ClientVersioningManagerImpl implements ClientVersioningManager,
 		Service, OpenDatabaseHook, ContactHook, IncomingMessageHook {
 
+	private static final Logger LOG =
+			getLogger(ClientVersioningManagerImpl.class.getName());
+
+	private static final CachedStates NO_STATES =
+			new CachedStates(emptyMap(), emptyMap());
+
 	private final DatabaseComponent db;
 	private final ClientHelper clientHelper;
 	private final ContactGroupFactory contactGroupFactory;
@@ -68,6 +81,23 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 	private final Map<ClientMajorVersion, ClientVersioningHook> hooks =
 			new ConcurrentHashMap<>();
 
+	/**
+	 * The client visibilities and remote minor versions for each contact,
+	 * derived from the latest local and remote updates. Entries are only
+	 * added with state that has been committed to the database, and are
+	 * removed by any transaction that modifies the updates.
+	 */
+	private final Map<ContactId, CachedStates> cache =
+			new ConcurrentHashMap<>();
+	/**
+	 * Incremented whenever an entry is removed from the cache, so that
+	 * entries loaded by earlier transactions aren't added after they've
+	 * become obsolete.
+	 */
+	private final AtomicLong cacheGeneration = new AtomicLong(0);
+	private final AtomicLong cacheHits = new AtomicLong(0);
+	private final AtomicLong cacheMisses = new AtomicLong(0);
+
 	@Inject
 	ClientVersioningManagerImpl(DatabaseComponent db, ClientHelper clientHelper,
 			ContactGroupFactory contactGroupFactory, Clock clock) {
@@ -90,45 +120,28 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 	@Override
 	public Visibility getClientVisibility(Transaction txn, ContactId contactId,
 			ClientId clientId, int majorVersion) throws DbException {
-		try {
-			LatestUpdates latest = findLatestUpdates(txn, contactId);
-			if (latest == null || latest.remote == null) return INVISIBLE;
-			if (latest.local == null) throw new DbException();
-			Update localUpdate = loadUpdate(txn, latest.local.messageId);
-			Update remoteUpdate = loadUpdate(txn, latest.remote.messageId);
-			Map<ClientMajorVersion, Visibility> visibilities =
-					getVisibilities(localUpdate.states, remoteUpdate.states);
-			ClientMajorVersion key =
-					new ClientMajorVersion(clientId, majorVersion);
-			Visibility v = visibilities.get(key);
-			return v == null ? INVISIBLE : v;
-		} catch (FormatException e) {
-			throw new DbException(e);
-		}
+		CachedStates states = getCachedStates(txn, contactId);
+		ClientMajorVersion key = new ClientMajorVersion(clientId, majorVersion);
+		Visibility v = states.visibilities.get(key);
+		return v == null ? INVISIBLE : v;
 	}
 
 	@Override
 	public int getClientMinorVersion(Transaction txn, ContactId contactId,
 			ClientId clientId, int majorVersion) throws DbException {
-		try {
-			LatestUpdates latest = findLatestUpdates(txn, contactId);
-			if (latest == null || latest.remote == null) return -1;
-			Update remoteUpdate = loadUpdate(txn, latest.remote.messageId);
-			ClientMajorVersion key =
-					new ClientMajorVersion(clientId, majorVersion);
-			for (ClientState remote : remoteUpdate.states) {
-				if (remote.clientVersion.getClientMajorVersion().equals(key))
-					return remote.clientVersion.getMinorVersion();
-			}
-			return -1;
-		} catch (FormatException e) {
-			throw new DbException(e);
-		}
+		CachedStates states = getCachedStates(txn, contactId);
+		ClientMajorVersion key = new ClientMajorVersion(clientId, majorVersion);
+		Integer minorVersion = states.remoteMinorVersions.get(key);
+		return minorVersion == null ? -1 : minorVersion;
 	}
 
 	@Override
 	public void onDatabaseOpened(Transaction txn) throws DbException {
-		if (db.containsGroup(txn, localGroup.getId())) return;
+		if (db.containsGroup(txn, localGroup.getId())) {
+			// Populate the cache for any existing contacts
+			for (Contact c : db.getContacts(txn)) loadStates(txn, c);
+			return;
+		}
 		db.addGroup(txn, localGroup);
 		// Set things up for any pre-existing contacts
 		for (Contact c : db.getContacts(txn)) addingContact(txn, c);
@@ -152,6 +165,10 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 
 	@Override
 	public void stopService() {
+		if (LOG.isLoggable(INFO)) {
+			LOG.info("Client state cache: " + cacheHits.get() + " hits, "
+					+ cacheMisses.get() + " misses");
+		}
 	}
 
 	@Override
@@ -166,11 +183,15 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 		List<ClientVersion> versions = new ArrayList<>(clients);
 		Collections.sort(versions);
 		storeFirstUpdate(txn, g.getId(), versions);
+		// There's no remote update yet, so all clients are invisible
+		invalidateCachedStates(c.getId());
+		cacheStates(txn, c.getId(), NO_STATES);
 	}
 
 	@Override
 	public void removingContact(Transaction txn, Contact c) throws DbException {
 		db.removeGroup(txn, getContactGroup(c));
+		invalidateCachedStates(c.getId());
 	}
 
 	@Override
@@ -222,8 +243,12 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 					getVisibilities(oldLocalStates, oldRemoteStates);
 			Map<ClientMajorVersion, Visibility> after =
 					getVisibilities(newLocalStates, newRemoteStates);
-			// Call hooks for any visibilities that have changed
+			// Replace the cached states with the new states
 			ContactId c = clientHelper.getContactId(txn, m.getGroupId());
+			invalidateCachedStates(c);
+			cacheStates(txn, c, new CachedStates(after,
+					getRemoteMinorVersions(newRemoteStates)));
+			// Call hooks for any visibilities that have changed
 			if (!before.equals(after)) {
 				Contact contact = db.getContact(txn, c);
 				callVisibilityHooks(txn, contact, before, after);
@@ -341,6 +366,10 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 					getVisibilities(oldLocalStates, remoteStates);
 			Map<ClientMajorVersion, Visibility> after =
 					getVisibilities(newLocalStates, remoteStates);
+			// Replace the cached states with the new states
+			invalidateCachedStates(c.getId());
+			cacheStates(txn, c.getId(), new CachedStates(after,
+					getRemoteMinorVersions(remoteStates)));
 			// Call hooks for any visibilities that have changed
 			callVisibilityHooks(txn, c, before, after);
 		} catch (FormatException e) {
@@ -353,15 +382,70 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 				MAJOR_VERSION, c);
 	}
 
-	@Nullable
-	private LatestUpdates findLatestUpdates(Transaction txn, ContactId c)
-			throws DbException, FormatException {
-		Contact contact = db.getContact(txn, c);
-		Group g = getContactGroup(contact);
-		// Contact may be in the process of being added or removed, so
-		// contact group may not exist
-		if (!db.containsGroup(txn, g.getId())) return null;
-		return findLatestUpdates(txn, g.getId());
+	private CachedStates getCachedStates(Transaction txn, ContactId c)
+			throws DbException {
+		CachedStates cached = cache.get(c);
+		if (cached != null) {
+			cacheHits.incrementAndGet();
+			return cached;
+		}
+		cacheMisses.incrementAndGet();
+		return loadStates(txn, db.getContact(txn, c));
+	}
+
+	/**
+	 * Loads the client visibilities and remote minor versions for the given
+	 * contact from the latest local and remote updates, and adds them to
+	 * the cache.
+	 */
+	private CachedStates loadStates(Transaction txn, Contact c)
+			throws DbException {
+		try {
+			Group g = getContactGroup(c);
+			// Contact may be in the process of being added or removed, so
+			// contact group may not exist
+			if (!db.containsGroup(txn, g.getId())) return NO_STATES;
+			LatestUpdates latest = findLatestUpdates(txn, g.getId());
+			CachedStates states;
+			if (latest.remote == null) {
+				states = NO_STATES;
+			} else {
+				if (latest.local == null) throw new DbException();
+				Update localUpdate = loadUpdate(txn, latest.local.messageId);
+				Update remoteUpdate = loadUpdate(txn, latest.remote.messageId);
+				states = new CachedStates(
+						getVisibilities(localUpdate.states,
+								remoteUpdate.states),
+						getRemoteMinorVersions(remoteUpdate.states));
+			}
+			cacheStates(txn, c.getId(), states);
+			return states;
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Adds the given states to the cache. If the transaction is read-only
+	 * the states are committed and can be added immediately. Otherwise they
+	 * are added when the transaction commits, unless the cache has been
+	 * invalidated in the meantime.
+	 */
+	private void cacheStates(Transaction txn, ContactId c,
+			CachedStates states) {
+		if (txn.isReadOnly()) {
+			cache.put(c, states);
+		} else {
+			long generation = cacheGeneration.get();
+			txn.attach(() -> {
+				if (cacheGeneration.get() == generation) cache.put(c, states);
+			});
+		}
+	}
+
+	private void invalidateCachedStates(ContactId c) {
+		cacheGeneration.incrementAndGet();
+		cache.remove(c);
 	}
 
 	private LatestUpdates findLatestUpdates(Transaction txn, GroupId g)
@@ -480,6 +564,17 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 		return visibilities;
 	}
 
+	private Map<ClientMajorVersion, Integer> getRemoteMinorVersions(
+			List<ClientState> remoteStates) {
+		Map<ClientMajorVersion, Integer> minorVersions = new HashMap<>();
+		for (ClientState cs : remoteStates) {
+			ClientVersion cv = cs.clientVersion;
+			minorVersions.put(cv.getClientMajorVersion(),
+					cv.getMinorVersion());
+		}
+		return minorVersions;
+	}
+
 	private void callVisibilityHooks(Transaction txn, Contact c,
 			Map<ClientMajorVersion, Visibility> before,
 			Map<ClientMajorVersion, Visibility> after) throws DbException {
@@ -562,6 +657,18 @@ class ClientVersioningManagerImpl implements ClientVersioningManager,
 		}
 	}
 
+	private static class CachedStates {
+
+		private final Map<ClientMajorVersion, Visibility> visibilities;
+		private final Map<ClientMajorVersion, Integer> remoteMinorVersions;
+
+		private CachedStates(Map<ClientMajorVersion, Visibility> visibilities,
+				Map<ClientMajorVersion, Integer> remoteMinorVersions) {
+			this.visibilities = visibilities;
+			this.remoteMinorVersions = remoteMinorVersions;
+		}
+	}
+
 	private static class ClientState {
 
 		private final ClientVersion clientVersion;
@@ -14,6 +14,7 @@ import javax.inject.Singleton;
 import dagger.Module;
 import dagger.Provides;
 
+import static java.util.Collections.emptyList;
 import static org.briarproject.bramble.api.versioning.ClientVersioningManager.CLIENT_ID;
 import static org.briarproject.bramble.api.versioning.ClientVersioningManager.MAJOR_VERSION;
 
@@ -35,7 +36,9 @@ public class VersioningModule {
 			LifecycleManager lifecycleManager, ContactManager contactManager,
 			ValidationManager validationManager) {
 		lifecycleManager.registerOpenDatabaseHook(clientVersioningManager);
-		lifecycleManager.registerService(clientVersioningManager);
+		// The service only updates the DB, so it has no dependencies
+		lifecycleManager.registerService(clientVersioningManager,
+				emptyList());
 		contactManager.registerContactHook(clientVersioningManager);
 		validationManager.registerIncomingMessageHook(CLIENT_ID, MAJOR_VERSION,
 				clientVersioningManager);
@@ -0,0 +1,74 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.briarproject.bramble.api.transport.TransportConstants.FRAME_HEADER_PLAINTEXT_LENGTH;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_PAYLOAD_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+
+// Not a JUnit test
+public class AuthenticatedCipherPerformanceTest {
+
+	private static final int SAMPLES = 50;
+	private static final int FRAMES_PER_SAMPLE = 1000;
+
+	public static void main(String[] args) throws GeneralSecurityException {
+		runTest("XSalsa20-Poly1305 (BouncyCastle)",
+				new XSalsa20Poly1305AuthenticatedCipher(), 24);
+		runTest("ChaCha20-Poly1305 (BouncyCastle)",
+				new ChaCha20Poly1305AuthenticatedCipher(), 12);
+		if (ChaCha20Poly1305CipherFactory.isJdkCipherAvailable()) {
+			runTest("ChaCha20-Poly1305 (platform)",
+					ChaCha20Poly1305CipherFactory.createCipher(), 12);
+		} else {
+			System.out.println("ChaCha20-Poly1305 (platform): unavailable");
+		}
+	}
+
+	private static void runTest(String name, AuthenticatedCipher cipher,
+			int ivBytes) throws GeneralSecurityException {
+		SecretKey key = getSecretKey();
+		// Encrypt and decrypt frames of the maximum size used by streams
+		for (int length : new int[] {FRAME_HEADER_PLAINTEXT_LENGTH,
+				MAX_PAYLOAD_LENGTH}) {
+			byte[] plaintext = getRandomBytes(length);
+			byte[] ciphertext = new byte[length + cipher.getMacBytes()];
+			byte[][] ivs = new byte[FRAMES_PER_SAMPLE][];
+			List<Long> encrypt = new ArrayList<>(), decrypt = new ArrayList<>();
+			for (int i = 0; i < SAMPLES; i++) {
+				// Use a fresh IV for each frame, as a stream would
+				for (int j = 0; j < FRAMES_PER_SAMPLE; j++)
+					ivs[j] = getRandomBytes(ivBytes);
+				long start = System.nanoTime();
+				for (int j = 0; j < FRAMES_PER_SAMPLE; j++) {
+					cipher.init(true, key, ivs[j]);
+					cipher.process(plaintext, 0, length, ciphertext, 0);
+				}
+				encrypt.add(System.nanoTime() - start);
+				start = System.nanoTime();
+				for (int j = 0; j < FRAMES_PER_SAMPLE; j++) {
+					cipher.init(false, key, ivs[FRAMES_PER_SAMPLE - 1]);
+					cipher.process(ciphertext, 0, ciphertext.length,
+							plaintext, 0);
+				}
+				decrypt.add(System.nanoTime() - start);
+			}
+			System.out.println(name + ", " + length + " byte frames: "
+					+ "encrypt " + getThroughput(encrypt, length) + " MiB/s, "
+					+ "decrypt " + getThroughput(decrypt, length) + " MiB/s");
+		}
+	}
+
+	private static long getThroughput(List<Long> samples, int length) {
+		Collections.sort(samples);
+		long median = samples.get(samples.size() / 2);
+		long bytes = (long) length * FRAMES_PER_SAMPLE;
+		return bytes * 1_000_000_000L / median / (1024 * 1024);
+	}
+}
@@ -0,0 +1,128 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.util.StringUtils;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.briarproject.bramble.crypto.ChaCha20Poly1305CipherFactory.IV_BYTES;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that every available implementation of ChaCha20-Poly1305 conforms
+ * to the specification and produces the same output.
+ */
+public class ChaCha20Poly1305AuthenticatedCipherTest extends BrambleTestCase {
+
+	// Test vector from Project Wycheproof, chacha20_poly1305_test.json,
+	// test case 1
+	private final byte[] TEST_KEY = StringUtils.fromHexString(
+			"80ba3192c803ce965ea371d5ff073cf0f43b6a2ab576b208426e11409c09b9b0");
+	private final byte[] TEST_IV = StringUtils.fromHexString(
+			"4da5bf8dfd5852c1ea12379d");
+	private final byte[] TEST_MAC = StringUtils.fromHexString(
+			"76acb342cf3166a5b63c0c0ea1383c8d");
+
+	private final Random random = new Random();
+
+	private List<AuthenticatedCipher> getCiphers() throws Exception {
+		List<AuthenticatedCipher> ciphers = new ArrayList<>();
+		ciphers.add(new ChaCha20Poly1305AuthenticatedCipher());
+		if (ChaCha20Poly1305CipherFactory.isJdkCipherAvailable())
+			ciphers.add(ChaCha20Poly1305CipherFactory.createCipher());
+		return ciphers;
+	}
+
+	@Test
+	public void testEncryptTestVector() throws Exception {
+		for (AuthenticatedCipher cipher : getCiphers()) {
+			cipher.init(true, new SecretKey(TEST_KEY), TEST_IV);
+			byte[] output = new byte[cipher.getMacBytes()];
+			assertEquals(output.length,
+					cipher.process(new byte[0], 0, 0, output, 0));
+			assertArrayEquals(TEST_MAC, output);
+		}
+	}
+
+	@Test
+	public void testDecryptTestVector() throws Exception {
+		for (AuthenticatedCipher cipher : getCiphers()) {
+			cipher.init(false, new SecretKey(TEST_KEY), TEST_IV);
+			assertEquals(0, cipher.process(TEST_MAC, 0, TEST_MAC.length,
+					new byte[0], 0));
+		}
+	}
+
+	@Test
+	public void testImplementationsAreInteroperable() throws Exception {
+		List<AuthenticatedCipher> ciphers = getCiphers();
+		for (int length : new int[] {1, 63, 64, 65, 1024, 4096}) {
+			SecretKey key = getSecretKey();
+			byte[] iv = getRandomBytes(IV_BYTES);
+			byte[] input = getRandomBytes(length);
+			byte[] expected = null;
+			for (AuthenticatedCipher cipher : ciphers) {
+				// Encrypt at an offset to check offsets are respected
+				byte[] ciphertext = new byte[length + cipher.getMacBytes() + 1];
+				cipher.init(true, key, iv);
+				assertEquals(ciphertext.length - 1,
+						cipher.process(input, 0, length, ciphertext, 1));
+				if (expected == null) expected = ciphertext;
+				else assertArrayEquals(expected, ciphertext);
+			}
+			// Each implementation should decrypt the ciphertext
+			for (AuthenticatedCipher cipher : ciphers) {
+				byte[] output = new byte[length];
+				cipher.init(false, key, iv);
+				assertEquals(length, cipher.process(expected, 1,
+						expected.length - 1, output, 0));
+				assertArrayEquals(input, output);
+			}
+		}
+	}
+
+	@Test
+	public void testDecryptFailsWithShortInput() throws Exception {
+		for (AuthenticatedCipher cipher : getCiphers()) {
+			cipher.init(false, new SecretKey(TEST_KEY), TEST_IV);
+			byte[] input = new byte[cipher.getMacBytes() - 1];
+			System.arraycopy(TEST_MAC, 0, input, 0, input.length);
+			try {
+				cipher.process(input, 0, input.length, new byte[0], 0);
+				fail();
+			} catch (GeneralSecurityException expected) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testDecryptFailsWithAlteredCiphertext() throws Exception {
+		SecretKey key = getSecretKey();
+		byte[] iv = getRandomBytes(IV_BYTES);
+		byte[] input = getRandomBytes(123);
+		for (AuthenticatedCipher cipher : getCiphers()) {
+			byte[] ciphertext = new byte[input.length + cipher.getMacBytes()];
+			cipher.init(true, key, iv);
+			cipher.process(input, 0, input.length, ciphertext, 0);
+			ciphertext[random.nextInt(ciphertext.length)] ^= 0xFF;
+			cipher.init(false, key, iv);
+			try {
+				cipher.process(ciphertext, 0, ciphertext.length,
+						new byte[input.length], 0);
+				fail();
+			} catch (GeneralSecurityException expected) {
+				// Expected
+			}
+		}
+	}
+}
@@ -11,6 +11,7 @@ import java.security.GeneralSecurityException;
 
 import static org.briarproject.bramble.util.StringUtils.fromHexString;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class EdSignatureTest extends SignatureTest {
@@ -170,4 +171,29 @@ public class EdSignatureTest extends SignatureTest {
 			assertTrue(signature.verify(signatureBytes));
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRfc8032TestVectorsWithKeyCache() throws Exception {
+		VerificationKeyCache keyCache =
+				new VerificationKeyCache(EdSignature.CURVE_SPEC, 2);
+		// Verify each signature twice, so the second verification uses
+		// the cached key
+		for (int i = 0; i < 2; i++) {
+			for (String[] vector : TEST_VECTORS) {
+				byte[] publicKeyBytes = fromHexString(vector[1]);
+				byte[] messageBytes = fromHexString(vector[2]);
+				byte[] signatureBytes = fromHexString(vector[3]);
+
+				EdSignature signature = new EdSignature(keyCache);
+				signature.initVerify(new SignaturePublicKey(publicKeyBytes));
+				signature.update(messageBytes);
+				assertTrue(signature.verify(signatureBytes));
+				// Altering the message should invalidate the signature
+				signature.initVerify(new SignaturePublicKey(publicKeyBytes));
+				signature.update(messageBytes);
+				signature.update((byte) 0);
+				assertFalse(signature.verify(signatureBytes));
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package org.briarproject.bramble.crypto;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.test.TestSecureRandomProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.briarproject.bramble.api.sync.MessageId.BLOCK_LABEL;
+import static org.briarproject.bramble.api.sync.MessageId.ID_LABEL;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.writeUint32;
+import static org.briarproject.bramble.util.StringUtils.toUtf8;
+
+/**
+ * Compares the latency and allocation of message ID hashing with a new
+ * digest for every hash and with the reusable digests used by
+ * {@link CryptoComponentImpl}, with several threads hashing at once as they
+ * would when receiving messages from several contacts.
+ */
+// Not a JUnit test
+public class HashPerformanceTest {
+
+	private static final int SAMPLES = 50;
+	private static final int MESSAGES_PER_SAMPLE = 2000;
+	private static final int BODY_LENGTH = 1024;
+	private static final int THREADS = 4;
+	private static final byte[] FORMAT_VERSION_BYTES = new byte[] {1};
+
+	public static void main(String[] args) throws Exception {
+		CryptoComponent crypto =
+				new CryptoComponentImpl(new TestSecureRandomProvider(), null);
+		ExecutorService executor = newFixedThreadPool(THREADS);
+		try {
+			for (int round = 0; round < 2; round++) {
+				// The first round warms up the JIT
+				boolean print = round == 1;
+				runTest("New digest per hash", executor, print,
+						HashPerformanceTest::hashWithNewDigests);
+				runTest("Reusable digests", executor, print, crypto::hash);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void runTest(String name, ExecutorService executor,
+			boolean print, HashFunction hash) throws Exception {
+		List<Future<Result>> futures = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++)
+			futures.add(executor.submit(new Worker(hash)));
+		List<Long> latencies = new ArrayList<>();
+		long allocated = 0;
+		for (Future<Result> f : futures) {
+			Result r = f.get();
+			latencies.addAll(r.latencies);
+			if (r.allocated < 0 || allocated < 0) allocated = -1;
+			else allocated += r.allocated;
+		}
+		if (!print) return;
+		Collections.sort(latencies);
+		long median = latencies.get(latencies.size() / 2);
+		long ids = (long) THREADS * SAMPLES * MESSAGES_PER_SAMPLE;
+		String allocation = allocated < 0 ? "unknown"
+				: (allocated / ids) + " bytes";
+		System.out.println(name + ": median "
+				+ (median / MESSAGES_PER_SAMPLE) + " ns per message ID, "
+				+ "allocation " + allocation + " per message ID");
+	}
+
+	private static byte[] hashWithNewDigests(String label, byte[]... inputs) {
+		// The implementation of CryptoComponent#hash() before digests were
+		// reused
+		byte[] labelBytes = toUtf8(label);
+		Digest digest = new Blake2bDigest(256);
+		byte[] length = new byte[INT_32_BYTES];
+		writeUint32(labelBytes.length, length, 0);
+		digest.update(length, 0, length.length);
+		digest.update(labelBytes, 0, labelBytes.length);
+		for (byte[] input : inputs) {
+			writeUint32(input.length, length, 0);
+			digest.update(length, 0, length.length);
+			digest.update(input, 0, input.length);
+		}
+		byte[] output = new byte[digest.getDigestSize()];
+		digest.doFinal(output, 0);
+		return output;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the calling thread, or -1 if
+	 * the JVM doesn't report it.
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			Method m = bean.getClass().getMethod("getThreadAllocatedBytes",
+					long.class);
+			m.setAccessible(true);
+			return (Long) m.invoke(bean, Thread.currentThread().getId());
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	private interface HashFunction {
+
+		byte[] hash(String label, byte[]... inputs);
+	}
+
+	private static class Result {
+
+		private final List<Long> latencies;
+		private final long allocated;
+
+		private Result(List<Long> latencies, long allocated) {
+			this.latencies = latencies;
+			this.allocated = allocated;
+		}
+	}
+
+	private static class Worker implements Callable<Result> {
+
+		private final HashFunction hash;
+
+		private Worker(HashFunction hash) {
+			this.hash = hash;
+		}
+
+		@Override
+		public Result call() {
+			byte[] groupId = getRandomId();
+			byte[] timestamp = getRandomBytes(INT_64_BYTES);
+			byte[][] bodies = new byte[MESSAGES_PER_SAMPLE][];
+			for (int i = 0; i < MESSAGES_PER_SAMPLE; i++)
+				bodies[i] = getRandomBytes(BODY_LENGTH);
+			List<Long> latencies = new ArrayList<>(SAMPLES);
+			long allocatedBefore = getAllocatedBytes();
+			for (int i = 0; i < SAMPLES; i++) {
+				long start = System.nanoTime();
+				for (byte[] body : bodies) {
+					// Hash a message as MessageFactoryImpl does
+					byte[] rootHash =
+							hash.hash(BLOCK_LABEL, FORMAT_VERSION_BYTES, body);
+					hash.hash(ID_LABEL, FORMAT_VERSION_BYTES, groupId,
+							timestamp, rootHash);
+				}
+				latencies.add(System.nanoTime() - start);
+			}
+			long allocatedAfter = getAllocatedBytes();
+			long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1
+					: allocatedAfter - allocatedBefore;
+			return new Result(latencies, allocated);
+		}
+	}
+}
@@ -1,12 +1,14 @@
 package org.briarproject.bramble.crypto;
 
 import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.Hasher;
 import org.briarproject.bramble.test.BrambleTestCase;
 import org.briarproject.bramble.test.TestSecureRandomProvider;
 import org.briarproject.bramble.test.TestUtils;
 import org.briarproject.bramble.util.StringUtils;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -48,4 +50,35 @@ public class HashTest extends BrambleTestCase {
 		assertFalse(Arrays.equals(hash1, hash2));
 	}
 
+	@Test
+	public void testHasherProducesSameHashes() {
+		byte[] expected =
+				crypto.hash(label, inputBytes, inputBytes1, inputBytes2);
+		Hasher hasher = crypto.createHasher(label);
+		hasher.update(inputBytes);
+		hasher.update(inputBytes1);
+		hasher.update(inputBytes2);
+		assertArrayEquals(expected, hasher.getHash());
+		// The hasher can be reused with inputs supplied in other forms
+		byte[] padded = new byte[inputBytes.length + 2];
+		System.arraycopy(inputBytes, 0, padded, 1, inputBytes.length);
+		hasher.update(padded, 1, inputBytes.length);
+		ByteBuffer direct = ByteBuffer.allocateDirect(inputBytes1.length);
+		direct.put(inputBytes1);
+		direct.flip();
+		hasher.update(direct);
+		assertFalse(direct.hasRemaining());
+		hasher.update(ByteBuffer.allocate(0));
+		assertArrayEquals(expected, hasher.getHash());
+	}
+
+	@Test
+	public void testHashesAreIndependentOfEarlierHashes() {
+		// The digest is reused between calls, so an earlier hash with
+		// different inputs must not affect a later one
+		byte[] hash1 = crypto.hash(label, inputBytes);
+		crypto.hash(label, inputBytes1, inputBytes2);
+		byte[] hash2 = crypto.hash(label, inputBytes);
+		assertArrayEquals(hash1, hash2);
+	}
 }
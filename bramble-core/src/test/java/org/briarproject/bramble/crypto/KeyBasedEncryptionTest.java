@@ -0,0 +1,77 @@
+package org.briarproject.bramble.crypto;
+
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.DecryptionException;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestSecureRandomProvider;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.briarproject.bramble.api.crypto.DecryptionResult.INVALID_CIPHERTEXT;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAC_LENGTH;
+import static org.briarproject.bramble.crypto.ChaCha20Poly1305CipherFactory.IV_BYTES;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class KeyBasedEncryptionTest extends BrambleTestCase {
+
+	private final CryptoComponent crypto =
+			new CryptoComponentImpl(new TestSecureRandomProvider(), null);
+
+	private final SecretKey key = getSecretKey();
+
+	@Test
+	public void testEncryptionAndDecryption() throws Exception {
+		byte[] input = getRandomBytes(123);
+		byte[] ciphertext = crypto.encryptWithKey(input, key);
+		// The ciphertext contains the IV, encrypted input and MAC
+		assertEquals(IV_BYTES + input.length + MAC_LENGTH, ciphertext.length);
+		byte[] output = crypto.decryptWithKey(ciphertext, key);
+		assertArrayEquals(input, output);
+	}
+
+	@Test
+	public void testEncryptionUsesRandomIv() {
+		byte[] input = getRandomBytes(123);
+		byte[] ciphertext1 = crypto.encryptWithKey(input, key);
+		byte[] ciphertext2 = crypto.encryptWithKey(input, key);
+		assertFalse(Arrays.equals(Arrays.copyOf(ciphertext1, IV_BYTES),
+				Arrays.copyOf(ciphertext2, IV_BYTES)));
+	}
+
+	@Test
+	public void testModifiedCiphertextThrowsException() {
+		byte[] ciphertext = crypto.encryptWithKey(getRandomBytes(123), key);
+		ciphertext[ciphertext.length - 1] ^= (byte) 0xFF;
+		assertInvalidCiphertext(ciphertext, key);
+	}
+
+	@Test
+	public void testWrongKeyThrowsException() {
+		byte[] ciphertext = crypto.encryptWithKey(getRandomBytes(123), key);
+		assertInvalidCiphertext(ciphertext, getSecretKey());
+	}
+
+	@Test
+	public void testTruncatedCiphertextThrowsException() {
+		byte[] ciphertext = crypto.encryptWithKey(getRandomBytes(123), key);
+		byte[] truncated =
+				Arrays.copyOf(ciphertext, IV_BYTES + MAC_LENGTH - 1);
+		assertInvalidCiphertext(truncated, key);
+	}
+
+	private void assertInvalidCiphertext(byte[] ciphertext, SecretKey key) {
+		try {
+			crypto.decryptWithKey(ciphertext, key);
+			fail();
+		} catch (DecryptionException expected) {
+			assertEquals(INVALID_CIPHERTEXT, expected.getDecryptionResult());
+		}
+	}
+}
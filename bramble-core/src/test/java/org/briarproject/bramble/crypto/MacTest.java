@@ -1,16 +1,24 @@
 package org.briarproject.bramble.crypto;
 
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
 import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.Hasher;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.test.BrambleTestCase;
 import org.briarproject.bramble.test.TestSecureRandomProvider;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
+import static java.lang.System.arraycopy;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.util.ByteUtils.INT_32_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.writeUint32;
 import static org.briarproject.bramble.util.StringUtils.getRandomString;
+import static org.briarproject.bramble.util.StringUtils.toUtf8;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -76,4 +84,56 @@ public class MacTest extends BrambleTestCase {
 				input3));
 	}
 
+	@Test
+	public void testSwitchingKeysProducesSameMacsAsFreshDigests() {
+		// The MAC digest is reused while the key stays the same, so
+		// switching between keys must not leak state between them
+		byte[] expected1 = getReferenceMac(label1, key1, input1, input2);
+		byte[] expected2 = getReferenceMac(label1, key2, input1, input2);
+		for (int i = 0; i < 3; i++) {
+			assertArrayEquals(expected1, crypto.mac(label1, key1, input1,
+					input2));
+			assertArrayEquals(expected1, crypto.mac(label1, key1, input1,
+					input2));
+			assertArrayEquals(expected2, crypto.mac(label1, key2, input1,
+					input2));
+		}
+	}
+
+	@Test
+	public void testHasherProducesSameMacs() {
+		byte[] expected = crypto.mac(label1, key1, input1, input2, input3);
+		Hasher mac = crypto.createMac(label1, key1);
+		// Supply the inputs as slices of a larger array and as a buffer
+		byte[] combined = new byte[input1.length + input2.length];
+		arraycopy(input1, 0, combined, 0, input1.length);
+		arraycopy(input2, 0, combined, input1.length, input2.length);
+		mac.update(combined, 0, input1.length);
+		mac.update(ByteBuffer.wrap(combined, input1.length, input2.length));
+		mac.update(input3);
+		assertArrayEquals(expected, mac.getHash());
+		// The hasher can be reused
+		mac.update(input1);
+		mac.update(input2);
+		mac.update(input3);
+		assertArrayEquals(expected, mac.getHash());
+	}
+
+	private byte[] getReferenceMac(String label, SecretKey key,
+			byte[]... inputs) {
+		Digest digest = new Blake2bDigest(key.getBytes(), 32, null, null);
+		byte[] labelBytes = toUtf8(label);
+		byte[] length = new byte[INT_32_BYTES];
+		writeUint32(labelBytes.length, length, 0);
+		digest.update(length, 0, length.length);
+		digest.update(labelBytes, 0, labelBytes.length);
+		for (byte[] input : inputs) {
+			writeUint32(input.length, length, 0);
+			digest.update(length, 0, length.length);
+			digest.update(input, 0, input.length);
+		}
+		byte[] output = new byte[digest.getDigestSize()];
+		digest.doFinal(output, 0);
+		return output;
+	}
 }
@@ -36,6 +36,14 @@ public class PasswordBasedEncryptionTest extends BrambleMockTestCase {
 		assertArrayEquals(input, output);
 	}
 
+	@Test
+	public void testEncryptionUsesFormatReadableByOlderVersions() {
+		byte[] input = getRandomBytes(1234);
+		String password = "password";
+		byte[] ciphertext = crypto.encryptWithPassword(input, password, null);
+		assertEquals(0, ciphertext[0]);
+	}
+
 	@Test
 	public void testInvalidFormatVersionThrowsException() {
 		byte[] input = getRandomBytes(1234);
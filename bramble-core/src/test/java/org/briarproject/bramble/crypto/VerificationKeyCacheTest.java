@@ -0,0 +1,62 @@
+package org.briarproject.bramble.crypto;
+
+import net.i2p.crypto.eddsa.EdDSAPublicKey;
+
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.PublicKey;
+import org.briarproject.bramble.api.crypto.SignaturePublicKey;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestSecureRandomProvider;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class VerificationKeyCacheTest extends BrambleTestCase {
+
+	private final CryptoComponent crypto =
+			new CryptoComponentImpl(new TestSecureRandomProvider(), null);
+
+	private final VerificationKeyCache cache =
+			new VerificationKeyCache(EdSignature.CURVE_SPEC, 2);
+
+	@Test
+	public void testCachedKeyIsReturned() {
+		PublicKey k = crypto.generateSignatureKeyPair().getPublic();
+		EdDSAPublicKey decoded = cache.getPublicKey(k);
+		assertArrayEquals(k.getEncoded(), decoded.getAbyte());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		// An equal key with a different array should hit the cache
+		PublicKey copy = new SignaturePublicKey(k.getEncoded().clone());
+		assertSame(decoded, cache.getPublicKey(copy));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getSize());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedKeyIsEvicted() {
+		PublicKey k1 = crypto.generateSignatureKeyPair().getPublic();
+		PublicKey k2 = crypto.generateSignatureKeyPair().getPublic();
+		PublicKey k3 = crypto.generateSignatureKeyPair().getPublic();
+		EdDSAPublicKey decoded1 = cache.getPublicKey(k1);
+		EdDSAPublicKey decoded2 = cache.getPublicKey(k2);
+		// Use the first key again, so the second key is least recently used
+		assertSame(decoded1, cache.getPublicKey(k1));
+		cache.getPublicKey(k3);
+		assertEquals(2, cache.getSize());
+		assertSame(decoded1, cache.getPublicKey(k1));
+		// The second key was evicted and must be decoded again
+		assertNotSame(decoded2, cache.getPublicKey(k2));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(4, cache.getMissCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAgreementKeyIsRejected() {
+		cache.getPublicKey(crypto.generateAgreementKeyPair().getPublic());
+	}
+}
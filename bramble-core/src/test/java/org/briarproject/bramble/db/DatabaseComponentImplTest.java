@@ -38,6 +38,8 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.MessageStatus;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.event.GroupAddedEvent;
 import org.briarproject.bramble.api.sync.event.GroupRemovedEvent;
 import org.briarproject.bramble.api.sync.event.GroupVisibilityUpdatedEvent;
@@ -46,6 +48,7 @@ import org.briarproject.bramble.api.sync.event.MessageRequestedEvent;
 import org.briarproject.bramble.api.sync.event.MessageSharedEvent;
 import org.briarproject.bramble.api.sync.event.MessageStateChangedEvent;
 import org.briarproject.bramble.api.sync.event.MessageToAckEvent;
+import org.briarproject.bramble.api.sync.event.MessageToOfferEvent;
 import org.briarproject.bramble.api.sync.event.MessageToRequestEvent;
 import org.briarproject.bramble.api.sync.event.MessagesAckedEvent;
 import org.briarproject.bramble.api.sync.event.MessagesSentEvent;
@@ -62,6 +65,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
@@ -78,10 +82,12 @@ import static org.briarproject.bramble.api.sync.Group.Visibility.INVISIBLE;
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
 import static org.briarproject.bramble.api.sync.Group.Visibility.VISIBLE;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.MIN_SUMMARY_IDS;
 import static org.briarproject.bramble.api.sync.validation.MessageState.DELIVERED;
 import static org.briarproject.bramble.api.sync.validation.MessageState.UNKNOWN;
-import static org.briarproject.bramble.api.transport.TransportConstants.REORDERING_WINDOW_SIZE;
 import static org.briarproject.bramble.db.DatabaseConstants.MAX_OFFERED_MESSAGES;
+import static org.briarproject.bramble.db.SummaryUtils.createSummary;
+import static org.briarproject.bramble.db.SummaryUtils.createSummaryAck;
 import static org.briarproject.bramble.test.TestUtils.getAgreementPrivateKey;
 import static org.briarproject.bramble.test.TestUtils.getAgreementPublicKey;
 import static org.briarproject.bramble.test.TestUtils.getAuthor;
@@ -93,6 +99,7 @@ import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -846,11 +853,11 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			throws Exception {
 		context.checking(new Expectations() {{
 			// Check whether the transport is in the DB (which it's not)
-			exactly(8).of(database).startTransaction();
+			exactly(6).of(database).startTransaction();
 			will(returnValue(txn));
-			exactly(8).of(database).containsTransport(txn, transportId);
+			exactly(6).of(database).containsTransport(txn, transportId);
 			will(returnValue(false));
-			exactly(8).of(database).abortTransaction(txn);
+			exactly(6).of(database).abortTransaction(txn);
 			// Allow other checks to pass
 			allowing(database).containsContact(txn, contactId);
 			will(returnValue(true));
@@ -886,15 +893,6 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			// Expected
 		}
 
-		try {
-			db.transaction(false, transaction ->
-					db.incrementStreamCounter(transaction, transportId,
-							keySetId));
-			fail();
-		} catch (NoSuchTransportException expected) {
-			// Expected
-		}
-
 		try {
 			db.transaction(false, transaction ->
 					db.removeTransportKeys(transaction, transportId, keySetId));
@@ -911,15 +909,6 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 			// Expected
 		}
 
-		try {
-			db.transaction(false, transaction ->
-					db.setReorderingWindow(transaction, keySetId, transportId,
-							0, 0, new byte[REORDERING_WINDOW_SIZE / 8]));
-			fail();
-		} catch (NoSuchTransportException expected) {
-			// Expected
-		}
-
 		try {
 			db.transaction(false, transaction ->
 					db.setTransportKeysActive(transaction, transportId,
@@ -1055,6 +1044,55 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 		});
 	}
 
+	@Test
+	public void testGenerateSummary() throws Exception {
+		List<MessageId> ids = new ArrayList<>();
+		for (int i = 0; i < MIN_SUMMARY_IDS; i++)
+			ids.add(new MessageId(getRandomId()));
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).countMessagesToSummarise(txn, contactId);
+			will(returnValue(singletonMap(groupId, MIN_SUMMARY_IDS)));
+			oneOf(database).getMessagesToSummarise(txn, contactId, groupId);
+			will(returnValue(ids));
+			exactly(MIN_SUMMARY_IDS).of(database).updateRetransmissionData(
+					with(txn), with(contactId), with(any(MessageId.class)),
+					with(maxLatency));
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction -> {
+			Summary s = db.generateSummary(transaction, contactId, maxLatency);
+			assertNotNull(s);
+			assertEquals(groupId, s.getGroupId());
+		});
+	}
+
+	@Test
+	public void testGenerateSummaryReturnsNullIfTooFewMessages()
+			throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).countMessagesToSummarise(txn, contactId);
+			will(returnValue(singletonMap(groupId, MIN_SUMMARY_IDS - 1)));
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction ->
+				assertNull(db.generateSummary(transaction, contactId,
+						maxLatency)));
+	}
+
 	@Test
 	public void testGenerateRequest() throws Exception {
 		MessageId messageId1 = new MessageId(getRandomId());
@@ -1401,6 +1439,87 @@ public class DatabaseComponentImplTest extends BrambleMockTestCase {
 				db.receiveRequest(transaction, contactId, r));
 	}
 
+	@Test
+	public void testReceiveSummary() throws Exception {
+		Collection<MessageId> ids = asList(messageId, messageId1);
+		Summary s = createSummary(groupId, ids);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).getVisibleMessageIds(txn, contactId, groupId);
+			will(returnValue(ids));
+			oneOf(database).commitTransaction(txn);
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		SummaryAck a = db.transactionWithResult(false, transaction ->
+				db.receiveSummary(transaction, contactId, s));
+		// The ack should tell the contact that we have both messages
+		SummaryAck expected = createSummaryAck(s, ids);
+		assertEquals(groupId, a.getGroupId());
+		assertEquals(expected.getBucketBits(), a.getBucketBits());
+		assertArrayEquals(expected.getDigests(), a.getDigests());
+	}
+
+	@Test
+	public void testReceiveSummaryAck() throws Exception {
+		Collection<MessageId> ids = asList(messageId, messageId1);
+		// The contact has both of the summarised messages
+		SummaryAck a = createSummaryAck(createSummary(groupId, ids), ids);
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).getMessagesToSummarise(txn, contactId, groupId);
+			will(returnValue(ids));
+			oneOf(database).raiseSeenFlag(txn, contactId, messageId);
+			will(returnValue(true));
+			oneOf(database).startCleanupTimer(txn, messageId);
+			will(returnValue(TIMER_NOT_STARTED));
+			oneOf(database).raiseSeenFlag(txn, contactId, messageId1);
+			will(returnValue(true));
+			oneOf(database).startCleanupTimer(txn, messageId1);
+			will(returnValue(TIMER_NOT_STARTED));
+			oneOf(database).commitTransaction(txn);
+			oneOf(eventBus).broadcast(with(any(MessagesAckedEvent.class)));
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction ->
+				db.receiveSummaryAck(transaction, contactId, a));
+	}
+
+	@Test
+	public void testReceiveSummaryAckWithMissingMessage() throws Exception {
+		Collection<MessageId> ids = asList(messageId, messageId1);
+		// The contact only has one of the summarised messages. The messages
+		// are in the same bucket, so neither of them is acked
+		SummaryAck a = createSummaryAck(createSummary(groupId, ids),
+				singletonList(messageId));
+		context.checking(new Expectations() {{
+			oneOf(database).startTransaction();
+			will(returnValue(txn));
+			oneOf(database).containsContact(txn, contactId);
+			will(returnValue(true));
+			oneOf(database).getMessagesToSummarise(txn, contactId, groupId);
+			will(returnValue(ids));
+			oneOf(database).resetExpiryTime(txn, contactId, messageId);
+			oneOf(database).resetExpiryTime(txn, contactId, messageId1);
+			oneOf(database).commitTransaction(txn);
+			oneOf(eventBus).broadcast(with(any(MessageToOfferEvent.class)));
+		}});
+		DatabaseComponent db = createDatabaseComponent(database, eventBus,
+				eventExecutor, shutdownManager);
+
+		db.transaction(false, transaction ->
+				db.receiveSummaryAck(transaction, contactId, a));
+	}
+
 	@Test
 	public void testSetAckSent() throws Exception {
 		Collection<MessageId> acked = asList(messageId, messageId1);
@@ -47,6 +47,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -57,6 +58,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -905,191 +907,6 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
-	@Test
-	public void testIncrementStreamCounter() throws Exception {
-		long timePeriod = 123;
-		TransportKeys keys = createTransportKeys(timePeriod, true);
-		long streamCounter = keys.getCurrentOutgoingKeys().getStreamCounter();
-
-		Database<Connection> db = open(false);
-		Connection txn = db.startTransaction();
-
-		// Add the contact, transport and transport keys
-		db.addIdentity(txn, identity);
-		assertEquals(contactId,
-				db.addContact(txn, author, localAuthor.getId(), null, true));
-		db.addTransport(txn, transportId, 123);
-		assertEquals(keySetId, db.addTransportKeys(txn, contactId, keys));
-
-		// Increment the stream counter twice and retrieve the transport keys
-		db.incrementStreamCounter(txn, transportId, keySetId);
-		db.incrementStreamCounter(txn, transportId, keySetId);
-		Collection<TransportKeySet> newKeys =
-				db.getTransportKeys(txn, transportId);
-		assertEquals(1, newKeys.size());
-		TransportKeySet ks = newKeys.iterator().next();
-		assertEquals(keySetId, ks.getKeySetId());
-		assertEquals(contactId, ks.getContactId());
-		TransportKeys k = ks.getKeys();
-		assertEquals(transportId, k.getTransportId());
-		OutgoingKeys outCurr = k.getCurrentOutgoingKeys();
-		assertEquals(timePeriod, outCurr.getTimePeriod());
-		assertEquals(streamCounter + 2, outCurr.getStreamCounter());
-
-		// The rest of the keys should be unaffected
-		assertKeysEquals(keys.getPreviousIncomingKeys(),
-				k.getPreviousIncomingKeys());
-		assertKeysEquals(keys.getCurrentIncomingKeys(),
-				k.getCurrentIncomingKeys());
-		assertKeysEquals(keys.getNextIncomingKeys(), k.getNextIncomingKeys());
-
-		db.commitTransaction(txn);
-		db.close();
-	}
-
-	@Test
-	public void testIncrementStreamCounterForHandshakeKeys() throws Exception {
-		long timePeriod = 123;
-		SecretKey rootKey = getSecretKey();
-		boolean alice = random.nextBoolean();
-		TransportKeys keys = createHandshakeKeys(timePeriod, rootKey, alice);
-		long streamCounter = keys.getCurrentOutgoingKeys().getStreamCounter();
-
-		Database<Connection> db = open(false);
-		Connection txn = db.startTransaction();
-
-		// Add the contact, transport and handshake keys
-		db.addIdentity(txn, identity);
-		assertEquals(contactId,
-				db.addContact(txn, author, localAuthor.getId(), null, true));
-		db.addTransport(txn, transportId, 123);
-		assertEquals(keySetId, db.addTransportKeys(txn, contactId, keys));
-
-		// Increment the stream counter twice and retrieve the handshake keys
-		db.incrementStreamCounter(txn, transportId, keySetId);
-		db.incrementStreamCounter(txn, transportId, keySetId);
-		Collection<TransportKeySet> newKeys =
-				db.getTransportKeys(txn, transportId);
-		assertEquals(1, newKeys.size());
-		TransportKeySet ks = newKeys.iterator().next();
-		assertEquals(keySetId, ks.getKeySetId());
-		assertEquals(contactId, ks.getContactId());
-		TransportKeys k = ks.getKeys();
-		assertEquals(transportId, k.getTransportId());
-		assertNotNull(k.getRootKey());
-		assertArrayEquals(rootKey.getBytes(), k.getRootKey().getBytes());
-		assertEquals(alice, k.isAlice());
-		OutgoingKeys outCurr = k.getCurrentOutgoingKeys();
-		assertEquals(timePeriod, outCurr.getTimePeriod());
-		assertEquals(streamCounter + 2, outCurr.getStreamCounter());
-
-		// The rest of the keys should be unaffected
-		assertKeysEquals(keys.getPreviousIncomingKeys(),
-				k.getPreviousIncomingKeys());
-		assertKeysEquals(keys.getCurrentIncomingKeys(),
-				k.getCurrentIncomingKeys());
-		assertKeysEquals(keys.getNextIncomingKeys(), k.getNextIncomingKeys());
-
-		db.commitTransaction(txn);
-		db.close();
-	}
-
-	@Test
-	public void testSetReorderingWindow() throws Exception {
-		boolean active = random.nextBoolean();
-		long timePeriod = 123;
-		TransportKeys keys = createTransportKeys(timePeriod, active);
-		long base = keys.getCurrentIncomingKeys().getWindowBase();
-		byte[] bitmap = keys.getCurrentIncomingKeys().getWindowBitmap();
-
-		Database<Connection> db = open(false);
-		Connection txn = db.startTransaction();
-
-		// Add the contact, transport and transport keys
-		db.addIdentity(txn, identity);
-		assertEquals(contactId,
-				db.addContact(txn, author, localAuthor.getId(), null, true));
-		db.addTransport(txn, transportId, 123);
-		assertEquals(keySetId, db.addTransportKeys(txn, contactId, keys));
-
-		// Update the reordering window and retrieve the transport keys
-		random.nextBytes(bitmap);
-		db.setReorderingWindow(txn, keySetId, transportId, timePeriod,
-				base + 1, bitmap);
-		Collection<TransportKeySet> newKeys =
-				db.getTransportKeys(txn, transportId);
-		assertEquals(1, newKeys.size());
-		TransportKeySet ks = newKeys.iterator().next();
-		assertEquals(keySetId, ks.getKeySetId());
-		assertEquals(contactId, ks.getContactId());
-		TransportKeys k = ks.getKeys();
-		assertEquals(transportId, k.getTransportId());
-		IncomingKeys inCurr = k.getCurrentIncomingKeys();
-		assertEquals(timePeriod, inCurr.getTimePeriod());
-		assertEquals(base + 1, inCurr.getWindowBase());
-		assertArrayEquals(bitmap, inCurr.getWindowBitmap());
-
-		// The rest of the keys should be unaffected
-		assertKeysEquals(keys.getPreviousIncomingKeys(),
-				k.getPreviousIncomingKeys());
-		assertKeysEquals(keys.getNextIncomingKeys(), k.getNextIncomingKeys());
-		assertKeysEquals(keys.getCurrentOutgoingKeys(),
-				k.getCurrentOutgoingKeys());
-
-		db.commitTransaction(txn);
-		db.close();
-	}
-
-	@Test
-	public void testSetReorderingWindowForHandshakeKeys() throws Exception {
-		long timePeriod = 123;
-		SecretKey rootKey = getSecretKey();
-		boolean alice = random.nextBoolean();
-		TransportKeys keys = createHandshakeKeys(timePeriod, rootKey, alice);
-		long base = keys.getCurrentIncomingKeys().getWindowBase();
-		byte[] bitmap = keys.getCurrentIncomingKeys().getWindowBitmap();
-
-		Database<Connection> db = open(false);
-		Connection txn = db.startTransaction();
-
-		// Add the contact, transport and handshake keys
-		db.addIdentity(txn, identity);
-		assertEquals(contactId,
-				db.addContact(txn, author, localAuthor.getId(), null, true));
-		db.addTransport(txn, transportId, 123);
-		assertEquals(keySetId, db.addTransportKeys(txn, contactId, keys));
-
-		// Update the reordering window and retrieve the handshake keys
-		random.nextBytes(bitmap);
-		db.setReorderingWindow(txn, keySetId, transportId, timePeriod,
-				base + 1, bitmap);
-		Collection<TransportKeySet> newKeys =
-				db.getTransportKeys(txn, transportId);
-		assertEquals(1, newKeys.size());
-		TransportKeySet ks = newKeys.iterator().next();
-		assertEquals(keySetId, ks.getKeySetId());
-		assertEquals(contactId, ks.getContactId());
-		TransportKeys k = ks.getKeys();
-		assertEquals(transportId, k.getTransportId());
-		assertNotNull(k.getRootKey());
-		assertArrayEquals(rootKey.getBytes(), k.getRootKey().getBytes());
-		assertEquals(alice, k.isAlice());
-		IncomingKeys inCurr = k.getCurrentIncomingKeys();
-		assertEquals(timePeriod, inCurr.getTimePeriod());
-		assertEquals(base + 1, inCurr.getWindowBase());
-		assertArrayEquals(bitmap, inCurr.getWindowBitmap());
-
-		// The rest of the keys should be unaffected
-		assertKeysEquals(keys.getPreviousIncomingKeys(),
-				k.getPreviousIncomingKeys());
-		assertKeysEquals(keys.getNextIncomingKeys(), k.getNextIncomingKeys());
-		assertKeysEquals(keys.getCurrentOutgoingKeys(),
-				k.getCurrentOutgoingKeys());
-
-		db.commitTransaction(txn);
-		db.close();
-	}
-
 	@Test
 	public void testGetContactsByAuthorId() throws Exception {
 		Database<Connection> db = open(false);
@@ -1483,6 +1300,153 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testMetadataQueriesWithMinTimeReceived() throws Exception {
+		long now = System.currentTimeMillis();
+		AtomicLong time = new AtomicLong(now);
+		// The second message has an earlier timestamp but arrives later
+		long timestamp = message.getTimestamp();
+		Message message1 = getMessage(groupId, 123, timestamp - 1);
+		MessageId messageId1 = message1.getId();
+		Message message2 = getMessage(groupId, 123, timestamp - 2);
+		MessageId messageId2 = message2.getId();
+
+		Database<Connection> db =
+				open(false, new TestMessageFactory(), new SettableClock(time));
+		Connection txn = db.startTransaction();
+
+		// Add a group and a message
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+
+		// Time: now + 1
+		// Add a message with an earlier timestamp and a message that hasn't
+		// been delivered yet
+		time.incrementAndGet();
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+		db.addMessage(txn, message2, UNKNOWN, true, false, null);
+
+		// Attach some metadata to the messages
+		Metadata metadata = new Metadata();
+		metadata.put("foo", new byte[] {'b', 'a', 'r'});
+		db.mergeMessageMetadata(txn, messageId, metadata);
+		Metadata metadata1 = new Metadata();
+		metadata1.put("foo", new byte[] {'q', 'u', 'x'});
+		db.mergeMessageMetadata(txn, messageId1, metadata1);
+		db.mergeMessageMetadata(txn, messageId2, metadata1);
+
+		// Only delivered messages have times received
+		Map<MessageId, Long> times =
+				db.getMessageTimesReceived(txn, groupId, now);
+		assertEquals(2, times.size());
+		assertEquals(now, times.get(messageId).longValue());
+		assertEquals(now + 1, times.get(messageId1).longValue());
+
+		// An empty query with the earlier time matches both messages
+		Metadata query = new Metadata();
+		Map<MessageId, Metadata> all =
+				db.getMessageMetadata(txn, groupId, query, now);
+		assertEquals(2, all.size());
+		assertArrayEquals(metadata.get("foo"), all.get(messageId).get("foo"));
+		assertArrayEquals(metadata1.get("foo"),
+				all.get(messageId1).get("foo"));
+
+		// An empty query with the later time matches the message that arrived
+		// later, even though its timestamp is earlier
+		all = db.getMessageMetadata(txn, groupId, query, now + 1);
+		assertEquals(1, all.size());
+		assertArrayEquals(metadata1.get("foo"),
+				all.get(messageId1).get("foo"));
+
+		// A query that matches the first message is bounded by the time
+		query.put("foo", metadata.get("foo"));
+		all = db.getMessageMetadata(txn, groupId, query, now);
+		assertEquals(1, all.size());
+		assertTrue(all.containsKey(messageId));
+		all = db.getMessageMetadata(txn, groupId, query, now + 1);
+		assertTrue(all.isEmpty());
+
+		// Time: now + 2
+		// A message is received when it's delivered, not when it's added
+		time.incrementAndGet();
+		db.setMessageState(txn, messageId2, DELIVERED);
+		times = db.getMessageTimesReceived(txn, groupId, now + 2);
+		assertEquals(singletonMap(messageId2, now + 2), times);
+		all = db.getMessageMetadata(txn, groupId, new Metadata(), now + 2);
+		assertEquals(1, all.size());
+		assertTrue(all.containsKey(messageId2));
+
+		// Messages that aren't delivered any more aren't returned
+		db.setMessageState(txn, messageId2, PENDING);
+		times = db.getMessageTimesReceived(txn, groupId, now + 2);
+		assertTrue(times.isEmpty());
+		all = db.getMessageMetadata(txn, groupId, new Metadata(), now + 2);
+		assertTrue(all.isEmpty());
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
+	@Test
+	public void testMessageIdsInSortOrder() throws Exception {
+		Message message1 = getMessage(groupId);
+		MessageId messageId1 = message1.getId();
+		Message message2 = getMessage(groupId);
+		MessageId messageId2 = message2.getId();
+		Message message3 = getMessage(groupId);
+		MessageId messageId3 = message3.getId();
+		Message message4 = getMessage(groupId);
+		MessageId messageId4 = message4.getId();
+		// The first key is a prefix of the second, and the third key is
+		// greater than both if the bytes are compared as unsigned values
+		byte[] key = new byte[] {0x01};
+		byte[] key1 = new byte[] {0x01, 0x02};
+		byte[] key2 = new byte[] {(byte) 0x80};
+
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a group and some messages, one of which isn't delivered
+		db.addGroup(txn, group);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+		db.addMessage(txn, message1, DELIVERED, true, false, null);
+		db.addMessage(txn, message2, DELIVERED, true, false, null);
+		db.addMessage(txn, message3, DELIVERED, true, false, null);
+		db.addMessage(txn, message4, UNKNOWN, true, false, null);
+
+		// No messages have sort keys yet
+		assertNull(db.getMessageSortKey(txn, messageId));
+		assertEquals(emptyList(),
+				db.getMessageIdsInSortOrder(txn, groupId, null, 10));
+
+		// Set the sort keys of all the messages except the fourth, in
+		// reverse order
+		db.setMessageSortKey(txn, messageId4, key);
+		db.setMessageSortKey(txn, messageId2, key2);
+		db.setMessageSortKey(txn, messageId1, key1);
+		db.setMessageSortKey(txn, messageId, key);
+		assertArrayEquals(key1, db.getMessageSortKey(txn, messageId1));
+		assertNull(db.getMessageSortKey(txn, messageId3));
+
+		// Read the messages with sort keys in pages of two
+		assertEquals(asList(messageId, messageId1),
+				db.getMessageIdsInSortOrder(txn, groupId, null, 2));
+		assertEquals(singletonList(messageId2),
+				db.getMessageIdsInSortOrder(txn, groupId, key1, 2));
+		assertEquals(emptyList(),
+				db.getMessageIdsInSortOrder(txn, groupId, key2, 2));
+
+		// The undelivered message is returned once it's delivered
+		db.setMessageState(txn, messageId4, DELIVERED);
+		List<MessageId> ids =
+				db.getMessageIdsInSortOrder(txn, groupId, null, 2);
+		assertEquals(new HashSet<>(asList(messageId, messageId4)),
+				new HashSet<>(ids));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testMetadataQueriesOnlyForDeliveredMessages() throws Exception {
 		Message message1 = getMessage(groupId);
@@ -2245,6 +2209,56 @@ public abstract class JdbcDatabaseTest extends BrambleTestCase {
 		db.close();
 	}
 
+	@Test
+	public void testMessagesToSummarise() throws Exception {
+		Database<Connection> db = open(false);
+		Connection txn = db.startTransaction();
+
+		// Add a contact, a shared group and a shared message
+		db.addIdentity(txn, identity);
+		assertEquals(contactId,
+				db.addContact(txn, author, localAuthor.getId(), null, true));
+		db.addGroup(txn, group);
+		db.addGroupVisibility(txn, contactId, groupId, true);
+		db.addMessage(txn, message, DELIVERED, true, false, null);
+
+		// The message should be counted and summarisable
+		assertEquals(singletonMap(groupId, 1),
+				db.countMessagesToSummarise(txn, contactId));
+		assertEquals(singletonList(messageId),
+				db.getMessagesToSummarise(txn, contactId, groupId));
+		assertEquals(singletonList(messageId),
+				db.getVisibleMessageIds(txn, contactId, groupId));
+
+		// Once the message has been offered it should no longer be counted,
+		// but it should still be summarisable until it's been seen
+		db.updateRetransmissionData(txn, contactId, messageId, MAX_LATENCY);
+		assertEquals(emptyMap(), db.countMessagesToSummarise(txn, contactId));
+		assertEquals(singletonList(messageId),
+				db.getMessagesToSummarise(txn, contactId, groupId));
+
+		// Resetting the expiry time should not make the message countable
+		db.resetExpiryTime(txn, contactId, messageId);
+		assertEquals(emptyMap(), db.countMessagesToSummarise(txn, contactId));
+
+		// Resetting the contact's retransmission data should
+		db.resetUnackedMessagesToSend(txn, contactId);
+		assertEquals(singletonMap(groupId, 1),
+				db.countMessagesToSummarise(txn, contactId));
+
+		// Once the message has been seen it should not be summarisable, but
+		// it should still be visible
+		db.raiseSeenFlag(txn, contactId, messageId);
+		assertEquals(emptyMap(), db.countMessagesToSummarise(txn, contactId));
+		assertEquals(emptyList(),
+				db.getMessagesToSummarise(txn, contactId, groupId));
+		assertEquals(singletonList(messageId),
+				db.getVisibleMessageIds(txn, contactId, groupId));
+
+		db.commitTransaction(txn);
+		db.close();
+	}
+
 	@Test
 	public void testPendingContacts() throws Exception {
 		Database<Connection> db = open(false);
@@ -0,0 +1,147 @@
+package org.briarproject.bramble.db;
+
+import org.briarproject.bramble.api.UniqueId;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Collections.emptyList;
+import static org.briarproject.bramble.api.record.Record.MAX_RECORD_PAYLOAD_BYTES;
+import static org.briarproject.bramble.api.record.Record.RECORD_HEADER_BYTES;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUMMARY_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUMMARY_DIGEST_BYTES;
+import static org.briarproject.bramble.db.SummaryUtils.createSummary;
+import static org.briarproject.bramble.db.SummaryUtils.createSummaryAck;
+import static org.briarproject.bramble.db.SummaryUtils.getAckedMessageIds;
+import static org.briarproject.bramble.db.SummaryUtils.mightContain;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SummaryUtilsTest extends BrambleTestCase {
+
+	private final GroupId groupId = new GroupId(getRandomId());
+
+	@Test
+	public void testFilterContainsAllSummarisedMessages() {
+		List<MessageId> ids = createMessageIds(1000);
+		Summary s = createSummary(groupId, ids);
+		assertEquals(groupId, s.getGroupId());
+		for (MessageId m : ids) assertTrue(mightContain(s, m));
+	}
+
+	@Test
+	public void testMaximumSizeSummaryFitsInRecords() {
+		Summary s = createSummary(groupId, createMessageIds(MAX_SUMMARY_IDS));
+		assertTrue(UniqueId.LENGTH + 2 + s.getFilter().length
+				<= MAX_RECORD_PAYLOAD_BYTES);
+		int digestBytes = SUMMARY_DIGEST_BYTES << s.getBucketBits();
+		assertTrue(UniqueId.LENGTH + 1 + digestBytes
+				<= MAX_RECORD_PAYLOAD_BYTES);
+	}
+
+	@Test
+	public void testAllMessagesAckedIfRecipientHasAllMessages() {
+		List<MessageId> ids = createMessageIds(1000);
+		Summary s = createSummary(groupId, ids);
+		SummaryAck a = createSummaryAck(s, ids);
+		assertEquals(groupId, a.getGroupId());
+		assertEquals(new HashSet<>(ids),
+				new HashSet<>(getAckedMessageIds(a, ids)));
+	}
+
+	@Test
+	public void testNoMessagesAckedIfRecipientHasNoMessages() {
+		List<MessageId> ids = createMessageIds(1000);
+		Summary s = createSummary(groupId, ids);
+		SummaryAck a = createSummaryAck(s, emptyList());
+		assertEquals(emptyList(), getAckedMessageIds(a, ids));
+	}
+
+	@Test
+	public void testMissingMessagesAreNotAcked() {
+		List<MessageId> ids = createMessageIds(1000);
+		List<MessageId> held = new ArrayList<>(ids.subList(10, ids.size()));
+		// The recipient also has some messages that weren't summarised
+		held.addAll(createMessageIds(1000));
+		Summary s = createSummary(groupId, ids);
+		SummaryAck a = createSummaryAck(s, held);
+		Collection<MessageId> acked = getAckedMessageIds(a, ids);
+		assertTrue(held.containsAll(acked));
+		for (MessageId m : ids.subList(0, 10))
+			assertFalse(acked.contains(m));
+		// Most of the messages should be acked
+		assertTrue(acked.size() > ids.size() / 2);
+	}
+
+	@Test
+	public void testSummaryUsesFewerBytesThanOffers() {
+		// The sender has 10,000 messages that it thinks the recipient
+		// hasn't seen. The recipient has all but 20 of them, plus 2,000 that
+		// the sender doesn't have
+		List<MessageId> ids = createMessageIds(10_000);
+		List<MessageId> missing = ids.subList(0, 20);
+		List<MessageId> held = new ArrayList<>(ids.subList(20, ids.size()));
+		held.addAll(createMessageIds(2_000));
+		Set<MessageId> heldSet = new HashSet<>(held);
+
+		// Offering every message individually: the sender offers every
+		// message and the recipient acks or requests each one
+		long offerBytes = countOfferBytes(ids, heldSet);
+
+		// Summarising the messages: the sender sends a summary, the recipient
+		// replies with a summary ack, then the messages that weren't acked
+		// are offered individually
+		Summary s = createSummary(groupId, ids);
+		SummaryAck a = createSummaryAck(s, held);
+		Set<MessageId> acked = new HashSet<>(getAckedMessageIds(a, ids));
+		for (MessageId m : missing) assertFalse(acked.contains(m));
+		List<MessageId> unacked = new ArrayList<>();
+		for (MessageId m : ids) if (!acked.contains(m)) unacked.add(m);
+		long summaryBytes = RECORD_HEADER_BYTES + UniqueId.LENGTH + 2
+				+ s.getFilter().length;
+		summaryBytes += RECORD_HEADER_BYTES + UniqueId.LENGTH + 1
+				+ a.getDigests().length;
+		summaryBytes += countOfferBytes(unacked, heldSet);
+
+		// The summary should save at least 80% of the bytes
+		assertTrue(summaryBytes * 5 < offerBytes);
+	}
+
+	private List<MessageId> createMessageIds(int count) {
+		List<MessageId> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) ids.add(new MessageId(getRandomId()));
+		return ids;
+	}
+
+	/**
+	 * Returns the number of bytes needed to offer the given messages and to
+	 * ack or request each of them, excluding the messages themselves.
+	 */
+	private long countOfferBytes(Collection<MessageId> offered,
+			Set<MessageId> held) {
+		int acks = 0, requests = 0;
+		for (MessageId m : offered) {
+			if (held.contains(m)) acks++;
+			else requests++;
+		}
+		return countIdBytes(offered.size()) + countIdBytes(acks)
+				+ countIdBytes(requests);
+	}
+
+	private long countIdBytes(int ids) {
+		int records = (ids + MAX_MESSAGE_IDS - 1) / MAX_MESSAGE_IDS;
+		return records * RECORD_HEADER_BYTES + (long) ids * UniqueId.LENGTH;
+	}
+}
@@ -0,0 +1,176 @@
+package org.briarproject.bramble.lifecycle;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.Executors.defaultThreadFactory;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.util.IoUtils.tryToClose;
+
+/**
+ * Opens many connections over the loopback interface and runs them on the
+ * IO executor with platform threads and, if the runtime supports them,
+ * virtual threads. Each end of each connection has a task that reads and a
+ * task that writes, as a duplex sync connection does, and there's a task
+ * for accepting connections, as there is for each transport plugin.
+ * <p>
+ * The writers pause between frames, so like most connections to contacts,
+ * the connections are idle most of the time. Reports the number of platform
+ * threads, the resident set size (on Linux) and the throughput.
+ * <p>
+ * Usage: IoExecutorLoadTest [connections] [seconds]
+ */
+// Not a JUnit test
+public class IoExecutorLoadTest {
+
+	private static final Logger LOG =
+			getLogger(IoExecutorLoadTest.class.getName());
+
+	private static final int DEFAULT_CONNECTIONS = 1000;
+	private static final int DEFAULT_SECONDS = 10;
+	private static final int FRAME_LENGTH = 1024;
+	private static final int PAUSE_MS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0])
+				: DEFAULT_CONNECTIONS;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1])
+				: DEFAULT_SECONDS;
+		System.out.println(connections + " connections, " + seconds
+				+ " seconds, RSS before start: " + getRss());
+		runTest("Platform threads", defaultThreadFactory(), connections,
+				seconds);
+		ThreadFactory virtual = VirtualThreads.getThreadFactory("IoTest-");
+		if (virtual == null) {
+			System.out.println("Virtual threads are not supported");
+		} else {
+			runTest("Virtual threads", virtual, connections, seconds);
+		}
+	}
+
+	private static void runTest(String name, ThreadFactory threadFactory,
+			int connections, int seconds) throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+		ExecutorService ioExecutor =
+				LifecycleModule.createIoExecutor(threadFactory);
+		long deadline = System.currentTimeMillis() + SECONDS.toMillis(seconds);
+		AtomicLong bytesRead = new AtomicLong(0);
+		// Each connection has two ends, each with a reader and a writer
+		CountDownLatch finished = new CountDownLatch(connections * 4);
+		ServerSocket ss = new ServerSocket();
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+		ss.bind(new InetSocketAddress(loopback, 0), connections);
+		ioExecutor.execute(() -> {
+			// Accept connections until the server socket is closed
+			while (true) {
+				try {
+					Socket s = ss.accept();
+					startConnection(ioExecutor, s, deadline, bytesRead,
+							finished);
+				} catch (IOException e) {
+					return;
+				}
+			}
+		});
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < connections; i++) {
+			ioExecutor.execute(() -> {
+				try {
+					Socket s = new Socket(loopback, ss.getLocalPort());
+					startConnection(ioExecutor, s, deadline, bytesRead,
+							finished);
+				} catch (IOException e) {
+					System.err.println("Failed to connect: " + e);
+					// Neither end of the connection will run
+					for (int j = 0; j < 4; j++) finished.countDown();
+				}
+			});
+		}
+		// Measure the threads and memory while the connections are open
+		Thread.sleep(SECONDS.toMillis(seconds) / 2);
+		int live = threads.getThreadCount();
+		String rss = getRss();
+		finished.await();
+		long duration = System.currentTimeMillis() - start;
+		ss.close();
+		ioExecutor.shutdown();
+		long mbPerSecond = bytesRead.get() * 1000 / duration / 1024 / 1024;
+		System.out.println(name + ": " + live + " live platform threads, "
+				+ threads.getPeakThreadCount() + " peak, RSS " + rss + ", "
+				+ mbPerSecond + " MiB/s");
+	}
+
+	private static void startConnection(ExecutorService ioExecutor, Socket s,
+			long deadline, AtomicLong bytesRead, CountDownLatch finished) {
+		// Close the socket when the reader and the writer have finished
+		AtomicInteger running = new AtomicInteger(2);
+		ioExecutor.execute(() -> {
+			try {
+				InputStream in = s.getInputStream();
+				byte[] buf = new byte[FRAME_LENGTH];
+				int read;
+				while ((read = in.read(buf)) != -1) bytesRead.addAndGet(read);
+			} catch (IOException e) {
+				System.err.println("Failed to read: " + e);
+			} finally {
+				if (running.decrementAndGet() == 0) tryToClose(s, LOG, WARNING);
+				finished.countDown();
+			}
+		});
+		ioExecutor.execute(() -> {
+			try {
+				OutputStream out = s.getOutputStream();
+				byte[] frame = new byte[FRAME_LENGTH];
+				while (System.currentTimeMillis() < deadline) {
+					out.write(frame);
+					out.flush();
+					Thread.sleep(PAUSE_MS);
+				}
+				s.shutdownOutput();
+			} catch (IOException | InterruptedException e) {
+				System.err.println("Failed to write: " + e);
+			} finally {
+				if (running.decrementAndGet() == 0) tryToClose(s, LOG, WARNING);
+				finished.countDown();
+			}
+		});
+	}
+
+	/**
+	 * Returns the resident set size of the process, or "unknown" if it
+	 * can't be read.
+	 */
+	private static String getRss() {
+		File status = new File("/proc/self/status");
+		if (!status.exists()) return "unknown";
+		try (BufferedReader r = new BufferedReader(new FileReader(status))) {
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (line.startsWith("VmRSS:"))
+					return line.substring(6).trim();
+			}
+		} catch (IOException e) {
+			// Fall through
+		}
+		return "unknown";
+	}
+}
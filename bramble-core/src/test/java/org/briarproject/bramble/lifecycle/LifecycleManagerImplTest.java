@@ -6,23 +6,41 @@ import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.EventBus;
 import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
 import org.briarproject.bramble.api.lifecycle.Service;
+import org.briarproject.bramble.api.lifecycle.ServiceException;
+import org.briarproject.bramble.api.lifecycle.StartupStep;
 import org.briarproject.bramble.api.lifecycle.event.LifecycleEvent;
+import org.briarproject.bramble.api.lifecycle.event.StartupTimelineEvent;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
 import org.jmock.Expectations;
+import org.jmock.Sequence;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.RUNNING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STARTING;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.LifecycleState.STOPPED;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.ALREADY_RUNNING;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.CLOCK_ERROR;
+import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SERVICE_ERROR;
 import static org.briarproject.bramble.api.lifecycle.LifecycleManager.StartResult.SUCCESS;
+import static org.briarproject.bramble.api.lifecycle.StartupStep.Type.OPEN_DATABASE;
+import static org.briarproject.bramble.api.lifecycle.StartupStep.Type.OPEN_DATABASE_HOOK;
+import static org.briarproject.bramble.api.lifecycle.StartupStep.Type.SERVICE;
 import static org.briarproject.bramble.api.system.Clock.MAX_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.api.system.Clock.MIN_REASONABLE_TIME_MS;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class LifecycleManagerImplTest extends BrambleMockTestCase {
 
@@ -31,6 +49,8 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 	private final Clock clock = context.mock(Clock.class);
 	private final OpenDatabaseHook hook = context.mock(OpenDatabaseHook.class);
 	private final Service service = context.mock(Service.class);
+	private final Service service1 = context.mock(Service.class, "service1");
+	private final Service service2 = context.mock(Service.class, "service2");
 
 	private final SecretKey dbKey = getSecretKey();
 
@@ -51,6 +71,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).removeTemporaryMessages(txn);
 			oneOf(hook).onDatabaseOpened(txn);
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimelineEvent.class)));
 		}});
 
 		lifecycleManager.registerOpenDatabaseHook(hook);
@@ -73,6 +94,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).removeTemporaryMessages(txn);
 			oneOf(service).startService();
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimelineEvent.class)));
 		}});
 
 		lifecycleManager.registerService(service);
@@ -128,6 +150,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).transaction(with(false), withDbRunnable(txn));
 			oneOf(db).removeTemporaryMessages(txn);
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimelineEvent.class)));
 		}});
 
 		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
@@ -153,6 +176,7 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 			oneOf(db).transaction(with(false), withDbRunnable(txn));
 			oneOf(db).removeTemporaryMessages(txn);
 			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimelineEvent.class)));
 		}});
 
 		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
@@ -173,4 +197,146 @@ public class LifecycleManagerImplTest extends BrambleMockTestCase {
 		lifecycleManager.stopServices();
 		assertEquals(STOPPED, lifecycleManager.getLifecycleState());
 	}
+
+	@Test
+	public void testServicesAreStartedAfterTheirDependencies()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		Sequence sequence = context.sequence("sequence");
+
+		expectOpenDatabase(now, txn);
+		context.checking(new Expectations() {{
+			oneOf(service).startService();
+			inSequence(sequence);
+			oneOf(service2).startService();
+			inSequence(sequence);
+			oneOf(service1).startService();
+		}});
+
+		lifecycleManager.registerService(service);
+		// This service has no dependencies
+		lifecycleManager.registerService(service1, emptyList());
+		// This service only depends on the first
+		lifecycleManager.registerService(service2, singletonList(service));
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+	}
+
+	@Test
+	public void testIndependentServicesAreStartedConcurrently()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+		CountDownLatch latch = new CountDownLatch(2);
+		// Each service waits for the other to start
+		Service waiting = new Service() {
+			@Override
+			public void startService() throws ServiceException {
+				latch.countDown();
+				try {
+					if (!latch.await(10, SECONDS))
+						throw new ServiceException();
+				} catch (InterruptedException e) {
+					throw new ServiceException(e);
+				}
+			}
+
+			@Override
+			public void stopService() {
+			}
+		};
+
+		expectOpenDatabase(now, txn);
+		context.checking(new Expectations() {{
+			oneOf(service).startService();
+			will(new CustomAction("wait for other service") {
+				@Override
+				public Object invoke(Invocation invocation) throws Throwable {
+					waiting.startService();
+					return null;
+				}
+			});
+		}});
+
+		lifecycleManager.registerService(service, emptyList());
+		lifecycleManager.registerService(waiting, emptyList());
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		assertEquals(RUNNING, lifecycleManager.getLifecycleState());
+	}
+
+	@Test
+	public void testStartupFailsIfConcurrentServiceFailsToStart()
+			throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(service).startService();
+			oneOf(service1).startService();
+			will(throwException(new ServiceException()));
+		}});
+
+		lifecycleManager.registerService(service, emptyList());
+		lifecycleManager.registerService(service1, emptyList());
+
+		assertEquals(SERVICE_ERROR, lifecycleManager.startServices(dbKey));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDependenciesMustBeRegisteredFirst() {
+		lifecycleManager.registerService(service1, singletonList(service));
+	}
+
+	@Test
+	public void testStartupTimelineIsRecorded() throws Exception {
+		long now = System.currentTimeMillis();
+		Transaction txn = new Transaction(null, false);
+
+		expectOpenDatabase(now, txn);
+		context.checking(new Expectations() {{
+			oneOf(hook).onDatabaseOpened(txn);
+			oneOf(service).startService();
+			oneOf(service1).startService();
+		}});
+
+		lifecycleManager.registerOpenDatabaseHook(hook);
+		lifecycleManager.registerService(service);
+		lifecycleManager.registerService(service1);
+
+		assertEquals(SUCCESS, lifecycleManager.startServices(dbKey));
+		List<StartupStep> timeline = lifecycleManager.getStartupTimeline();
+		assertEquals(4, timeline.size());
+		assertEquals(asList(OPEN_DATABASE, OPEN_DATABASE_HOOK, SERVICE,
+				SERVICE), asList(timeline.get(0).getType(),
+				timeline.get(1).getType(), timeline.get(2).getType(),
+				timeline.get(3).getType()));
+		for (int i = 1; i < timeline.size(); i++) {
+			assertTrue(timeline.get(i).getStart() >=
+					timeline.get(i - 1).getStart());
+		}
+	}
+
+	private void expectOpenDatabase(long now, Transaction txn)
+			throws Exception {
+		context.checking(new DbExpectations() {{
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(db).open(dbKey, lifecycleManager);
+			will(returnValue(false));
+			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(db).removeTemporaryMessages(txn);
+			allowing(eventBus).broadcast(with(any(LifecycleEvent.class)));
+			oneOf(eventBus).broadcast(with(any(StartupTimelineEvent.class)));
+		}});
+	}
 }
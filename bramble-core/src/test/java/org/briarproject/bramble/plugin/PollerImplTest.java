@@ -1,6 +1,7 @@
 package org.briarproject.bramble.plugin;
 
 import org.briarproject.bramble.api.Cancellable;
+import org.briarproject.bramble.api.Pair;
 import org.briarproject.bramble.api.connection.ConnectionManager;
 import org.briarproject.bramble.api.connection.ConnectionRegistry;
 import org.briarproject.bramble.api.contact.ContactId;
@@ -22,6 +23,7 @@ import org.briarproject.bramble.api.properties.TransportPropertyManager;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.CaptureArgumentAction;
 import org.briarproject.bramble.test.ImmediateExecutor;
 import org.briarproject.bramble.test.RunAction;
 import org.jmock.Expectations;
@@ -29,8 +31,13 @@ import org.jmock.imposters.ByteBuddyClassImposteriser;
 import org.junit.Test;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
@@ -41,6 +48,9 @@ import static org.briarproject.bramble.test.CollectionMatcher.collectionOf;
 import static org.briarproject.bramble.test.PairMatcher.pairOf;
 import static org.briarproject.bramble.test.TestUtils.getContactId;
 import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class PollerImplTest extends BrambleMockTestCase {
 
@@ -365,6 +375,8 @@ public class PollerImplTest extends BrambleMockTestCase {
 			will(returnValue(singletonMap(contactId, properties)));
 			oneOf(connectionRegistry).getConnectedOrBetterContacts(transportId);
 			will(returnValue(emptyList()));
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
 			// Poll the plugin
 			oneOf(plugin).poll(with(collectionOf(
 					pairOf(equal(properties), any(ConnectionHandler.class)))));
@@ -409,6 +421,8 @@ public class PollerImplTest extends BrambleMockTestCase {
 			will(returnValue(singletonMap(contactId, properties)));
 			oneOf(connectionRegistry).getConnectedOrBetterContacts(transportId);
 			will(returnValue(singletonList(contactId)));
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
 			// All contacts are connected, so don't poll the plugin
 		}});
 
@@ -442,6 +456,168 @@ public class PollerImplTest extends BrambleMockTestCase {
 		poller.eventOccurred(new TransportInactiveEvent(transportId));
 	}
 
+	@Test
+	public void testUnreachableContactBacksOff() throws Exception {
+		DuplexPlugin plugin = context.mock(DuplexPlugin.class);
+		AtomicReference<Runnable> pollTask = new AtomicReference<>();
+
+		context.checking(new Expectations() {{
+			allowing(plugin).getId();
+			will(returnValue(transportId));
+		}});
+		expectPollOnTransportActivated(plugin, pollTask);
+
+		poller.eventOccurred(new TransportActiveEvent(transportId));
+
+		// The first three polls don't lead to connections
+		for (int i = 0; i < 3; i++) {
+			expectPollingTaskRuns(plugin, pollTask, now + i * pollingInterval,
+					i == 0, singletonMap(contactId, properties));
+			context.checking(new Expectations() {{
+				oneOf(plugin).poll(with(collectionOf(pairOf(
+						equal(properties), any(ConnectionHandler.class)))));
+			}});
+			pollTask.get().run();
+		}
+
+		// The contact has failed three times in a row, so it's skipped
+		long fourthPoll = now + 3 * pollingInterval;
+		expectPollingTaskRuns(plugin, pollTask, fourthPoll, false,
+				singletonMap(contactId, properties));
+		pollTask.get().run();
+
+		Reachability r = poller.getReachability(transportId).get(contactId);
+		assertNotNull(r);
+		assertEquals(0, r.getConnections());
+		assertEquals(3, r.getFailures());
+		assertEquals(3, r.getConsecutiveFailures());
+		assertEquals(-1, r.getAverageLatency());
+		assertTrue(r.getBackoffUntil() > fourthPoll);
+
+		// Activating the transport again resets the backoff and replaces
+		// the scheduled polling task
+		context.checking(new Expectations() {{
+			oneOf(cancellable).cancel();
+		}});
+		expectPollOnTransportActivated(plugin, pollTask);
+		poller.eventOccurred(new TransportActiveEvent(transportId));
+		r = poller.getReachability(transportId).get(contactId);
+		assertNotNull(r);
+		assertEquals(3, r.getFailures());
+		assertEquals(0, r.getConsecutiveFailures());
+		assertEquals(0, r.getBackoffUntil());
+	}
+
+	@Test
+	public void testReachableContactsArePolledFirst() throws Exception {
+		DuplexPlugin plugin = context.mock(DuplexPlugin.class);
+		AtomicReference<Runnable> pollTask = new AtomicReference<>();
+		ContactId contactId1 = getContactId();
+		TransportProperties properties1 = new TransportProperties();
+		properties1.put("foo", "bar");
+		// The unreachable contact comes first in map order
+		Map<ContactId, TransportProperties> remote = new LinkedHashMap<>();
+		remote.put(contactId1, properties1);
+		remote.put(contactId, properties);
+		AtomicReference<Collection> polled = new AtomicReference<>();
+
+		context.checking(new Expectations() {{
+			allowing(plugin).getId();
+			will(returnValue(transportId));
+		}});
+		expectPollOnTransportActivated(plugin, pollTask);
+
+		poller.eventOccurred(new TransportActiveEvent(transportId));
+
+		// Poll both contacts
+		expectPollingTaskRuns(plugin, pollTask, now, true, remote);
+		context.checking(new Expectations() {{
+			oneOf(plugin).poll(with(any(Collection.class)));
+		}});
+		pollTask.get().run();
+
+		// A connection to the second contact is opened
+		context.checking(new Expectations() {{
+			oneOf(pluginManager).getPlugin(transportId);
+			will(returnValue(plugin));
+			oneOf(plugin).shouldPoll();
+			will(returnValue(true));
+			// Don't replace the scheduled task, which is due earlier
+			oneOf(plugin).getPollingInterval();
+			will(returnValue(pollingInterval));
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now + 1));
+		}});
+		poller.eventOccurred(new ConnectionOpenedEvent(contactId, transportId,
+				false));
+
+		// Poll both contacts again - the second contact comes first
+		expectPollingTaskRuns(plugin, pollTask, now + pollingInterval, false,
+				remote);
+		context.checking(new Expectations() {{
+			oneOf(plugin).poll(with(any(Collection.class)));
+			will(new CaptureArgumentAction<>(polled, Collection.class, 0));
+		}});
+		pollTask.get().run();
+
+		List<?> pairs = new ArrayList<Object>(polled.get());
+		assertEquals(2, pairs.size());
+		assertEquals(properties, ((Pair<?, ?>) pairs.get(0)).getFirst());
+		assertEquals(properties1, ((Pair<?, ?>) pairs.get(1)).getFirst());
+
+		Map<ContactId, Reachability> reachability =
+				poller.getReachability(transportId);
+		assertEquals(1, reachability.get(contactId).getConnections());
+		assertEquals(0, reachability.get(contactId).getFailures());
+		assertEquals(0, reachability.get(contactId1).getConnections());
+		assertEquals(1, reachability.get(contactId1).getFailures());
+	}
+
+	private void expectPollOnTransportActivated(Plugin plugin,
+			AtomicReference<Runnable> pollTask) {
+		context.checking(new Expectations() {{
+			// Get the plugin
+			oneOf(pluginManager).getPlugin(transportId);
+			will(returnValue(plugin));
+			// The plugin supports polling
+			oneOf(plugin).shouldPoll();
+			will(returnValue(true));
+			// Schedule a polling task immediately
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(now));
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(ioExecutor), with(0L), with(MILLISECONDS));
+			will(doAll(new CaptureArgumentAction<>(pollTask, Runnable.class, 0),
+					returnValue(cancellable)));
+		}});
+	}
+
+	private void expectPollingTaskRuns(Plugin plugin,
+			AtomicReference<Runnable> pollTask, long time, boolean first,
+			Map<ContactId, TransportProperties> remote) throws Exception {
+		context.checking(new Expectations() {{
+			// Running the polling task schedules the next polling task
+			oneOf(plugin).getPollingInterval();
+			will(returnValue(pollingInterval));
+			if (first) {
+				oneOf(random).nextDouble();
+				will(returnValue(1.0));
+			}
+			exactly(2).of(clock).currentTimeMillis();
+			will(returnValue(time));
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(ioExecutor), with((long) pollingInterval),
+					with(MILLISECONDS));
+			will(doAll(new CaptureArgumentAction<>(pollTask, Runnable.class, 0),
+					returnValue(cancellable)));
+			// Get the transport properties and connected contacts
+			oneOf(transportPropertyManager).getRemoteProperties(transportId);
+			will(returnValue(remote));
+			oneOf(connectionRegistry).getConnectedOrBetterContacts(transportId);
+			will(returnValue(emptyList()));
+		}});
+	}
+
 	private void expectReschedule(Plugin plugin) {
 		context.checking(new Expectations() {{
 			// Get the plugin
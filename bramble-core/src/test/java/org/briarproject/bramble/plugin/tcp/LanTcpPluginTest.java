@@ -196,6 +196,56 @@ public class LanTcpPluginTest extends BrambleTestCase {
 		plugin.stop();
 	}
 
+	@Test
+	public void testOutgoingConnectionSkipsUnreachableAddresses()
+			throws Exception {
+		assumeTrue(systemHasLocalIpv4Address());
+		plugin.start();
+		// The plugin should have bound a socket and stored the port number
+		assertTrue(callback.propertiesLatch.await(5, SECONDS));
+		String ipPorts = callback.local.get("ipPorts");
+		assertNotNull(ipPorts);
+		String addrString = ipPorts.split(",")[0].split(":")[0];
+		// Find a port on the same interface that nobody is listening on
+		ServerSocket closed = new ServerSocket();
+		closed.bind(new InetSocketAddress(addrString, 0));
+		int closedPort = closed.getLocalPort();
+		closed.close();
+		// Listen on the same interface as the plugin
+		ServerSocket ss = new ServerSocket();
+		ss.bind(new InetSocketAddress(addrString, 0), 10);
+		int port = ss.getLocalPort();
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicBoolean error = new AtomicBoolean(false);
+		new Thread(() -> {
+			try {
+				ss.accept();
+				latch.countDown();
+			} catch (IOException e) {
+				error.set(true);
+			}
+		}).start();
+		// Connect to the unreachable port and then the listening port
+		TransportProperties p = new TransportProperties();
+		p.put("ipPorts", addrString + ":" + closedPort + "," +
+				addrString + ":" + port);
+		DuplexTransportConnection d = plugin.createConnection(p);
+		assertNotNull(d);
+		// Check that the connection was accepted
+		assertTrue(latch.await(5, SECONDS));
+		assertFalse(error.get());
+		// The address that worked should be tried first next time
+		d.getReader().dispose(false, true);
+		d.getWriter().dispose(false);
+		d = plugin.createConnection(p);
+		assertNotNull(d);
+		// Clean up
+		d.getReader().dispose(false, true);
+		d.getWriter().dispose(false);
+		ss.close();
+		plugin.stop();
+	}
+
 	@Test
 	public void testIncomingKeyAgreementConnection() throws Exception {
 		assumeTrue(systemHasLocalIpv4Address());
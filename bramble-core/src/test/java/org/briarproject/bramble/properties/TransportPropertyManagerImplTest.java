@@ -8,8 +8,10 @@ import org.briarproject.bramble.api.data.BdfDictionary;
 import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.data.MetadataParser;
+import org.briarproject.bramble.api.db.CommitAction;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.db.TaskAction;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.properties.TransportProperties;
@@ -545,6 +547,100 @@ public class TransportPropertyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(merged, properties.get(contact.getId()));
 	}
 
+	@Test
+	public void testRemotePropertiesAreCached() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Contact contact = getContact();
+		Group contactGroup = getGroup(CLIENT_ID, MAJOR_VERSION);
+		TransportId fooId = new TransportId("foo");
+
+		context.checking(new DbExpectations() {{
+			exactly(2).of(db).transactionWithResult(with(true),
+					withDbCallable(txn));
+			exactly(2).of(db).getContacts(txn);
+			will(returnValue(singletonList(contact)));
+			// The properties are only loaded the first time
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+					contactGroup.getId());
+			will(returnValue(emptyMap()));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					contactGroup.getId());
+			will(returnValue(new BdfDictionary()));
+		}});
+
+		TransportPropertyManagerImpl t = createInstance();
+		assertTrue(t.getRemoteProperties(fooId).get(contact.getId())
+				.isEmpty());
+		assertTrue(t.getRemoteProperties(fooId).get(contact.getId())
+				.isEmpty());
+	}
+
+	@Test
+	public void testDeliveredUpdateReplacesCachedProperties()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Contact contact = getContact();
+		Group contactGroup = getGroup(CLIENT_ID, MAJOR_VERSION);
+		TransportId fooId = new TransportId("foo");
+		Message message = getMessage(contactGroup.getId());
+		Metadata meta = new Metadata();
+		BdfDictionary metaDictionary = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_TRANSPORT_ID, "foo"),
+				new BdfEntry(MSG_KEY_VERSION, 1),
+				new BdfEntry(MSG_KEY_LOCAL, false)
+		);
+		BdfList fooUpdate = BdfList.of("foo", 1, fooPropertiesDict);
+
+		context.checking(new DbExpectations() {{
+			exactly(2).of(db).transactionWithResult(with(true),
+					withDbCallable(txn));
+			exactly(2).of(db).getContacts(txn);
+			will(returnValue(singletonList(contact)));
+			// Load the properties, which are empty
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+					contactGroup.getId());
+			will(returnValue(emptyMap()));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn,
+					contactGroup.getId());
+			will(returnValue(new BdfDictionary()));
+			// Deliver the first update
+			oneOf(metadataParser).parse(meta);
+			will(returnValue(metaDictionary));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn1,
+					contactGroup.getId());
+			will(returnValue(emptyMap()));
+			// Parse the update and merge in any discovered properties
+			oneOf(clientHelper).toList(message);
+			will(returnValue(fooUpdate));
+			oneOf(clientHelper).parseAndValidateTransportProperties(
+					fooPropertiesDict);
+			will(returnValue(fooProperties));
+			oneOf(clientHelper).getGroupMetadataAsDictionary(txn1,
+					contactGroup.getId());
+			will(returnValue(new BdfDictionary()));
+		}});
+
+		TransportPropertyManagerImpl t = createInstance();
+		assertTrue(t.getRemoteProperties(fooId).get(contact.getId())
+				.isEmpty());
+		assertEquals(ACCEPT_DO_NOT_SHARE,
+				t.incomingMessage(txn1, message, meta));
+		// Commit the transaction
+		for (CommitAction a : txn1.getActions()) {
+			if (a instanceof TaskAction) ((TaskAction) a).getTask().run();
+		}
+		// The cached properties should have been replaced
+		assertEquals(fooProperties,
+				t.getRemoteProperties(fooId).get(contact.getId()));
+	}
+
 	@Test
 	public void testMergingUnchangedPropertiesDoesNotCreateUpdate()
 			throws Exception {
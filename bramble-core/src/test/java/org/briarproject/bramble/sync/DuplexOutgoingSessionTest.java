@@ -0,0 +1,335 @@
+package org.briarproject.bramble.sync;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.event.EventBus;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.SummaryAck;
+import org.briarproject.bramble.api.sync.SyncRecordWriter;
+import org.briarproject.bramble.api.sync.Versions;
+import org.briarproject.bramble.api.sync.event.MessageRequestedEvent;
+import org.briarproject.bramble.api.sync.event.MessageToOfferEvent;
+import org.briarproject.bramble.api.sync.event.UnackedMessagesResetEvent;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.api.transport.StreamWriter;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.jmock.Expectations;
+import org.jmock.Sequence;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUMMARY_VERSION;
+import static org.briarproject.bramble.sync.DuplexOutgoingSession.BATCH_CAPACITY;
+import static org.briarproject.bramble.test.TestUtils.getContactId;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.test.TestUtils.getTransportId;
+
+public class DuplexOutgoingSessionTest extends BrambleMockTestCase {
+
+	private static final int MAX_LATENCY = Integer.MAX_VALUE;
+	private static final int MAX_IDLE_TIME = 1000;
+	private static final int MAX_FLUSH_DELAY = 100;
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final EventBus eventBus = context.mock(EventBus.class);
+	private final Clock clock = context.mock(Clock.class);
+	private final StreamWriter streamWriter = context.mock(StreamWriter.class);
+	private final SyncRecordWriter recordWriter =
+			context.mock(SyncRecordWriter.class);
+	private final Executor dbExecutor = new ImmediateExecutor();
+
+	private final ContactId contactId = getContactId();
+	private final TransportId transportId = getTransportId();
+	private final GroupId groupId = new GroupId(getRandomId());
+	// A maximum-size message fills half a batch, so it's sent in bulk
+	private final Message bulkMessage =
+			getMessage(groupId, MAX_MESSAGE_BODY_LENGTH);
+	private final Message bulkMessage1 =
+			getMessage(groupId, MAX_MESSAGE_BODY_LENGTH);
+	private final Message smallMessage = getMessage(groupId, 100);
+	private final Transaction txn = new Transaction(null, false);
+	private final DuplexSessionStateImpl duplexState =
+			new DuplexSessionStateImpl();
+
+	private final DuplexOutgoingSession session =
+			new DuplexOutgoingSession(db, dbExecutor, eventBus, clock,
+					contactId, transportId, MAX_LATENCY, MAX_IDLE_TIME,
+					MAX_FLUSH_DELAY, streamWriter, recordWriter, null,
+					duplexState);
+
+	@Test
+	public void testSmallBatchIsFlushedImmediately() throws Exception {
+		Sequence sequence = context.sequence("clock");
+		expectStartSession(smallMessage);
+		expectWriteMessage(smallMessage);
+
+		context.checking(new Expectations() {{
+			// Start the session
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			// Write the batch
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			// Flush the batch without waiting
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			oneOf(recordWriter).flush();
+			inSequence(sequence);
+			will(interruptSession());
+		}});
+
+		expectEndSession();
+		session.run();
+	}
+
+	@Test
+	public void testBulkBatchDelaysFlushByAtMostMaxFlushDelay()
+			throws Exception {
+		Sequence sequence = context.sequence("clock");
+		expectStartSession(bulkMessage);
+		expectWriteMessage(bulkMessage);
+
+		context.checking(new Expectations() {{
+			// Start the session
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			// Write the batch
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			// Set the flush deadline and wait for another batch
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			// No batch arrives. Half the delay has passed, so keep waiting
+			exactly(2).of(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L + MAX_FLUSH_DELAY / 2));
+			// No batch arrives. The deadline has been reached, so flush
+			exactly(2).of(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L + MAX_FLUSH_DELAY));
+			oneOf(recordWriter).flush();
+			inSequence(sequence);
+			will(interruptSession());
+		}});
+
+		expectEndSession();
+		session.run();
+	}
+
+	@Test
+	public void testKeepaliveClearsFlushDeadline() throws Exception {
+		Sequence sequence = context.sequence("clock");
+		expectStartSession(bulkMessage);
+		expectWriteMessage(bulkMessage);
+
+		context.checking(new Expectations() {{
+			// Start the session. The keepalive is due at 1000
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(0L));
+			// Write the batch
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(999L));
+			// Set the flush deadline to 1099 and wait for another batch
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(999L));
+			// No batch arrives. The keepalive is due, so flush
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			oneOf(recordWriter).flush();
+			inSequence(sequence);
+			will(new CustomAction("request another message") {
+				@Override
+				public Object invoke(Invocation invocation) {
+					session.eventOccurred(
+							new MessageRequestedEvent(contactId));
+					return null;
+				}
+			});
+			// Another bulk batch is generated
+			oneOf(db).generateRequestedBatch(txn, contactId,
+					BATCH_CAPACITY, MAX_LATENCY);
+			will(returnValue(singletonList(bulkMessage1)));
+			// Write the batch
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1000L));
+			// Set a new flush deadline, 1150, and wait for another batch
+			oneOf(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1050L));
+			// No batch arrives. The old deadline would have been reached,
+			// but the new one hasn't, so keep waiting
+			exactly(2).of(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1099L));
+			// No batch arrives. The new deadline has been reached, so flush
+			exactly(2).of(clock).currentTimeMillis();
+			inSequence(sequence);
+			will(returnValue(1150L));
+			oneOf(recordWriter).flush();
+			inSequence(sequence);
+			will(interruptSession());
+		}});
+		expectWriteMessage(bulkMessage1);
+
+		expectEndSession();
+		session.run();
+	}
+
+	@Test
+	public void testSummaryAckQueuedByIncomingSessionIsSent()
+			throws Exception {
+		// The incoming session for the same connection has received a
+		// summary and queued the ack
+		SummaryAck summaryAck = new SummaryAck(groupId, 0, new byte[0]);
+		duplexState.addSummaryAck(summaryAck);
+		expectStartSession(smallMessage);
+		expectWriteMessage(smallMessage);
+
+		context.checking(new Expectations() {{
+			allowing(clock).currentTimeMillis();
+			will(returnValue(1000L));
+			// Write the summary ack, then the batch, then flush
+			oneOf(recordWriter).writeSummaryAck(summaryAck);
+			oneOf(recordWriter).flush();
+			will(interruptSession());
+		}});
+
+		expectEndSession();
+		session.run();
+	}
+
+	@Test
+	public void testSummaryIsOnlyGeneratedAtStartAndAfterReset()
+			throws Exception {
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			allowing(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(txn));
+			allowing(db).getNextSendTime(txn, contactId, MAX_LATENCY);
+			will(returnValue(Long.MAX_VALUE));
+			allowing(clock).currentTimeMillis();
+			will(returnValue(1000L));
+			// No acks, messages or requests to send
+			oneOf(db).generateAck(txn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			oneOf(db).generateRequestedBatch(txn, contactId,
+					BATCH_CAPACITY, MAX_LATENCY);
+			will(returnValue(null));
+			oneOf(db).generateRequest(txn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// The contact supports summaries. Check for groups to summarise
+			// when the session starts and after unacked messages are reset,
+			// but not before every offer
+			exactly(2).of(db).getSyncVersions(txn, contactId);
+			will(returnValue(singletonList(SUMMARY_VERSION)));
+			exactly(2).of(db).generateSummary(txn, contactId, MAX_LATENCY);
+			will(returnValue(null));
+			exactly(3).of(db).generateOffer(txn, contactId,
+					MAX_MESSAGE_IDS, MAX_LATENCY);
+			will(returnValue(null));
+			// Flush the versions record
+			oneOf(recordWriter).flush();
+			will(new CustomAction("offer and reset messages") {
+				@Override
+				public Object invoke(Invocation invocation) {
+					session.eventOccurred(new MessageToOfferEvent(contactId));
+					session.eventOccurred(
+							new UnackedMessagesResetEvent(contactId));
+					session.interrupt();
+					return null;
+				}
+			});
+		}});
+
+		expectEndSession();
+		session.run();
+	}
+
+	private void expectStartSession(Message firstMessage) throws Exception {
+		context.checking(new DbExpectations() {{
+			// Add listener
+			oneOf(eventBus).addListener(session);
+			// Send the protocol versions
+			oneOf(recordWriter).writeVersions(with(any(Versions.class)));
+			allowing(db).transactionWithNullableResult(with(false),
+					withNullableDbCallable(txn));
+			allowing(db).getNextSendTime(txn, contactId, MAX_LATENCY);
+			will(returnValue(Long.MAX_VALUE));
+			// No acks to send
+			oneOf(db).generateAck(txn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+			// One message to send
+			oneOf(db).generateRequestedBatch(txn, contactId,
+					BATCH_CAPACITY, MAX_LATENCY);
+			will(returnValue(singletonList(firstMessage)));
+			// The contact doesn't support summaries, and there are no
+			// messages to offer
+			oneOf(db).getSyncVersions(txn, contactId);
+			will(returnValue(singletonList((byte) 0)));
+			oneOf(db).generateOffer(txn, contactId, MAX_MESSAGE_IDS,
+					MAX_LATENCY);
+			will(returnValue(null));
+			// No requests to send
+			oneOf(db).generateRequest(txn, contactId, MAX_MESSAGE_IDS);
+			will(returnValue(null));
+		}});
+	}
+
+	private void expectWriteMessage(Message m) throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(recordWriter).setCompressionEnabled(false);
+			oneOf(recordWriter).writeMessage(m);
+			// No more messages to send
+			oneOf(db).generateRequestedBatch(txn, contactId,
+					BATCH_CAPACITY, MAX_LATENCY);
+			will(returnValue(null));
+		}});
+	}
+
+	private void expectEndSession() throws Exception {
+		context.checking(new Expectations() {{
+			// Send the end of stream marker
+			oneOf(streamWriter).sendEndOfStream();
+			// Remove listener
+			oneOf(eventBus).removeListener(session);
+			// Release the compressor
+			oneOf(recordWriter).release();
+		}});
+	}
+
+	private CustomAction interruptSession() {
+		return new CustomAction("interrupt session") {
+			@Override
+			public Object invoke(Invocation invocation) {
+				session.interrupt();
+				return null;
+			}
+		};
+	}
+}
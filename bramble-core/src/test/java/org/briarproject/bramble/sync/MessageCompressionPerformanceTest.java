@@ -0,0 +1,118 @@
+package org.briarproject.bramble.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.briarproject.bramble.api.sync.SyncConstants.MESSAGE_HEADER_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.util.StringUtils.toUtf8;
+
+/**
+ * Measures the compression ratio and throughput of {@link MessageCompressor}
+ * for messages shaped like forum posts: a random header followed by a BDF
+ * list holding the parent ID, a list holding the author's name and public
+ * key, the post text and a signature.
+ */
+// Not a JUnit test
+public class MessageCompressionPerformanceTest {
+
+	private static final int MESSAGES = 10_000;
+	private static final String[] WORDS = {"the", "of", "and", "to", "a",
+			"in", "is", "it", "you", "that", "was", "for", "on", "are",
+			"with", "as", "this", "be", "at", "have", "from", "or", "by",
+			"forum", "post", "message", "contact", "group", "sync", "reply",
+			"think", "people", "about", "would", "there", "their", "what"};
+
+	// BDF type codes, see org.briarproject.bramble.data.Types
+	private static final int NULL = 0x00, INT_8 = 0x21, STRING_16 = 0x42,
+			RAW_8 = 0x51, LIST = 0x60, END = 0x80;
+
+	public static void main(String[] args) throws Exception {
+		Random random = new Random(0);
+		List<byte[]> messages = new ArrayList<>(MESSAGES);
+		for (int i = 0; i < MESSAGES; i++)
+			messages.add(createForumPost(random));
+		for (int round = 0; round < 2; round++) {
+			// The first round warms up the JIT
+			boolean print = round == 1;
+			runTest(messages, print);
+		}
+	}
+
+	private static void runTest(List<byte[]> messages, boolean print)
+			throws Exception {
+		MessageCompressor compressor = new MessageCompressor();
+		long rawBytes = 0, sentBytes = 0, compressNs = 0, decompressNs = 0;
+		int compressed = 0;
+		for (byte[] raw : messages) {
+			long start = System.nanoTime();
+			byte[] payload = compressor.compress(raw);
+			compressNs += System.nanoTime() - start;
+			rawBytes += raw.length;
+			if (payload == null) {
+				sentBytes += raw.length;
+			} else {
+				compressed++;
+				sentBytes += payload.length;
+				start = System.nanoTime();
+				compressor.decompress(payload);
+				decompressNs += System.nanoTime() - start;
+			}
+		}
+		if (!print) return;
+		System.out.println(compressed + " of " + messages.size()
+				+ " messages compressed, " + rawBytes + " bytes reduced to "
+				+ sentBytes + " (" + (sentBytes * 100 / rawBytes) + "%)");
+		System.out.println("Compression: "
+				+ (rawBytes * 1000 / compressNs) + " MB/s");
+		if (compressed > 0) {
+			System.out.println("Decompression: "
+					+ (rawBytes * 1000 / decompressNs) + " MB/s");
+		}
+	}
+
+	private static byte[] createForumPost(Random random) throws Exception {
+		StringBuilder text = new StringBuilder();
+		// Most posts are short, a few are long
+		int words = 5 + (int) Math.min(Math.abs(random.nextGaussian() * 150),
+				4000);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) text.append(' ');
+			text.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(getRandomBytes(MESSAGE_HEADER_LENGTH));
+		out.write(LIST);
+		if (random.nextBoolean()) writeRaw(out, getRandomId());
+		else out.write(NULL);
+		out.write(LIST);
+		out.write(INT_8);
+		out.write(0);
+		writeString(out, "author" + random.nextInt(100));
+		writeRaw(out, getRandomBytes(32));
+		out.write(END);
+		writeString(out, text.toString());
+		writeRaw(out, getRandomBytes(64));
+		out.write(END);
+		return out.toByteArray();
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String s)
+			throws Exception {
+		byte[] b = toUtf8(s);
+		out.write(STRING_16);
+		out.write(b.length >> 8);
+		out.write(b.length);
+		out.write(b);
+	}
+
+	private static void writeRaw(ByteArrayOutputStream out, byte[] b)
+			throws Exception {
+		out.write(RAW_8);
+		out.write(b.length);
+		out.write(b);
+	}
+}
@@ -1,12 +1,14 @@
 package org.briarproject.bramble.sync;
 
 import org.briarproject.bramble.BrambleCoreIntegrationTestEagerSingletons;
+import org.briarproject.bramble.api.UniqueId;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.crypto.TransportCrypto;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.sync.Ack;
 import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.DuplexSessionState;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupFactory;
 import org.briarproject.bramble.api.sync.Message;
@@ -102,6 +104,39 @@ public class SyncIntegrationTest extends BrambleTestCase {
 		read(write());
 	}
 
+	@Test
+	public void testWriteAndReadWithShortIds() throws Exception {
+		DuplexSessionState aliceState = new DuplexSessionStateImpl();
+		DuplexSessionState bobState = new DuplexSessionStateImpl();
+
+		// Alice sends the messages to Bob
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		SyncRecordWriter aliceWriter =
+				recordWriterFactory.createRecordWriter(out, aliceState);
+		aliceWriter.writeMessage(message);
+		aliceWriter.writeMessage(message1);
+		aliceWriter.flush();
+		SyncRecordReader bobReader = recordReaderFactory.createRecordReader(
+				new ByteArrayInputStream(out.toByteArray()), bobState);
+		checkMessageEquality(message, bobReader.readMessage());
+		checkMessageEquality(message1, bobReader.readMessage());
+
+		// Bob acks the messages, referring to them by their short IDs
+		out = new ByteArrayOutputStream();
+		SyncRecordWriter bobWriter =
+				recordWriterFactory.createRecordWriter(out, bobState);
+		bobWriter.setShortIdsEnabled(true);
+		bobWriter.writeAck(new Ack(messageIds));
+		bobWriter.flush();
+		// The ack should be shorter than the message IDs alone
+		assertTrue(out.size() < messageIds.size() * UniqueId.LENGTH);
+		SyncRecordReader aliceReader = recordReaderFactory.createRecordReader(
+				new ByteArrayInputStream(out.toByteArray()), aliceState);
+		assertTrue(aliceReader.hasAck());
+		assertEquals(messageIds, aliceReader.readAck().getMessageIds());
+		assertTrue(aliceReader.eof());
+	}
+
 	private byte[] write() throws Exception {
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		StreamContext ctx = new StreamContext(contactId, null, transportId,
@@ -13,6 +13,8 @@ import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.api.sync.Offer;
 import org.briarproject.bramble.api.sync.Priority;
 import org.briarproject.bramble.api.sync.Request;
+import org.briarproject.bramble.api.sync.Summary;
+import org.briarproject.bramble.api.sync.SummaryAck;
 import org.briarproject.bramble.api.sync.SyncRecordReader;
 import org.briarproject.bramble.api.sync.Versions;
 import org.briarproject.bramble.test.BrambleMockTestCase;
@@ -22,25 +24,37 @@ import org.jmock.Expectations;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.Deflater;
 
 import static org.briarproject.bramble.api.record.Record.MAX_RECORD_PAYLOAD_BYTES;
 import static org.briarproject.bramble.api.sync.RecordTypes.ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPACT_ACK;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPACT_REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.COMPRESSED_MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.MESSAGE;
 import static org.briarproject.bramble.api.sync.RecordTypes.OFFER;
 import static org.briarproject.bramble.api.sync.RecordTypes.PRIORITY;
 import static org.briarproject.bramble.api.sync.RecordTypes.REQUEST;
+import static org.briarproject.bramble.api.sync.RecordTypes.SUMMARY;
+import static org.briarproject.bramble.api.sync.RecordTypes.SUMMARY_ACK;
 import static org.briarproject.bramble.api.sync.RecordTypes.VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_BODY_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_MESSAGE_IDS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUMMARY_BUCKET_BITS;
+import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUMMARY_HASHES;
 import static org.briarproject.bramble.api.sync.SyncConstants.MAX_SUPPORTED_VERSIONS;
 import static org.briarproject.bramble.api.sync.SyncConstants.MESSAGE_HEADER_LENGTH;
 import static org.briarproject.bramble.api.sync.SyncConstants.PRIORITY_NONCE_BYTES;
 import static org.briarproject.bramble.api.sync.SyncConstants.PROTOCOL_VERSION;
+import static org.briarproject.bramble.api.sync.SyncConstants.SUMMARY_DIGEST_BYTES;
 import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class SyncRecordReaderImplTest extends BrambleMockTestCase {
@@ -48,9 +62,10 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 	private final MessageFactory messageFactory =
 			context.mock(MessageFactory.class);
 	private final RecordReader recordReader = context.mock(RecordReader.class);
+	private final ShortIdTable shortIds = new ShortIdTable();
 
 	private final SyncRecordReader reader =
-			new SyncRecordReaderImpl(messageFactory, recordReader);
+			new SyncRecordReaderImpl(messageFactory, recordReader, shortIds);
 
 	@Test
 	public void testNoFormatExceptionIfMessageIsMinimumSize() throws Exception {
@@ -84,6 +99,34 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		reader.readMessage();
 	}
 
+	@Test
+	public void testCompressedMessageIsDecompressed() throws Exception {
+		expectReadRecord(createCompressedMessage(MESSAGE_HEADER_LENGTH
+				+ MAX_MESSAGE_BODY_LENGTH));
+		expectCreateMessage(MAX_MESSAGE_BODY_LENGTH);
+
+		assertTrue(reader.hasMessage());
+		reader.readMessage();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfCompressedMessageIsTooLarge()
+			throws Exception {
+		expectReadRecord(createCompressedMessage(MESSAGE_HEADER_LENGTH
+				+ MAX_MESSAGE_BODY_LENGTH + 1));
+
+		reader.readMessage();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfCompressedMessageIsInvalid()
+			throws Exception {
+		expectReadRecord(new Record(PROTOCOL_VERSION, COMPRESSED_MESSAGE,
+				getRandomBytes(1024)));
+
+		reader.readMessage();
+	}
+
 	@Test
 	public void testNoFormatExceptionIfAckIsMaximumSize() throws Exception {
 		expectReadRecord(createAck());
@@ -129,6 +172,87 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		reader.readRequest();
 	}
 
+	@Test
+	public void testOfferedMessagesAreGivenShortIds() throws Exception {
+		expectReadRecord(createOffer());
+
+		Offer offer = reader.readOffer();
+		int shortId = 0;
+		for (MessageId m : offer.getMessageIds())
+			assertEquals(shortId++, shortIds.getReceivedShortId(m));
+	}
+
+	@Test
+	public void testCompactAckIsResolvedUsingShortIds() throws Exception {
+		MessageId sent = new MessageId(getRandomId());
+		MessageId sent1 = new MessageId(getRandomId());
+		shortIds.addSentId(sent);
+		shortIds.addSentId(sent1);
+		byte[] unsent = getRandomId();
+		// Short IDs are written plus one, zero means a full ID follows
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		payload.write(2);
+		payload.write(1);
+		payload.write(0);
+		payload.write(unsent);
+		expectReadRecord(new Record(PROTOCOL_VERSION, COMPACT_ACK,
+				payload.toByteArray()));
+
+		assertTrue(reader.hasAck());
+		List<MessageId> ids = new ArrayList<>(reader.readAck().getMessageIds());
+		assertEquals(3, ids.size());
+		assertSame(sent1, ids.get(0));
+		assertSame(sent, ids.get(1));
+		assertArrayEquals(unsent, ids.get(2).getBytes());
+	}
+
+	@Test
+	public void testCompactRequestWithMultiByteShortId() throws Exception {
+		List<MessageId> sent = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			MessageId m = new MessageId(getRandomId());
+			shortIds.addSentId(m);
+			sent.add(m);
+		}
+		// Short ID 199 is written as 200, which needs two bytes
+		byte[] payload = new byte[] {(byte) (0x80 | (200 & 0x7F)), 1};
+		expectReadRecord(new Record(PROTOCOL_VERSION, COMPACT_REQUEST,
+				payload));
+
+		assertTrue(reader.hasRequest());
+		Request request = reader.readRequest();
+		assertEquals(1, request.getMessageIds().size());
+		assertSame(sent.get(199), request.getMessageIds().iterator().next());
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfCompactRequestHasUnknownShortId()
+			throws Exception {
+		shortIds.addSentId(new MessageId(getRandomId()));
+		expectReadRecord(new Record(PROTOCOL_VERSION, COMPACT_REQUEST,
+				new byte[] {2}));
+
+		reader.readRequest();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfCompactAckHasTruncatedId()
+			throws Exception {
+		// A zero followed by one byte too few for a full ID
+		expectReadRecord(new Record(PROTOCOL_VERSION, COMPACT_ACK,
+				new byte[UniqueId.LENGTH]));
+
+		reader.readAck();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfCompactAckIsEmpty() throws Exception {
+		expectReadRecord(new Record(PROTOCOL_VERSION, COMPACT_ACK,
+				new byte[0]));
+
+		reader.readAck();
+	}
+
 	@Test
 	public void testNoFormatExceptionIfVersionsIsMaximumSize()
 			throws Exception {
@@ -181,13 +305,81 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		assertEquals(PRIORITY_NONCE_BYTES, priority.getNonce().length);
 	}
 
+	@Test
+	public void testNoFormatExceptionIfSummaryIsValid() throws Exception {
+		expectReadRecord(createSummary(MAX_SUMMARY_BUCKET_BITS,
+				MAX_SUMMARY_HASHES, 1));
+
+		Summary s = reader.readSummary();
+		assertEquals(MAX_SUMMARY_BUCKET_BITS, s.getBucketBits());
+		assertEquals(MAX_SUMMARY_HASHES, s.getHashes());
+		assertEquals(1, s.getFilter().length);
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSummaryHasTooManyBucketBits()
+			throws Exception {
+		expectReadRecord(createSummary(MAX_SUMMARY_BUCKET_BITS + 1, 1, 1));
+
+		reader.readSummary();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSummaryHasNoHashes() throws Exception {
+		expectReadRecord(createSummary(0, 0, 1));
+
+		reader.readSummary();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSummaryHasTooManyHashes()
+			throws Exception {
+		expectReadRecord(createSummary(0, MAX_SUMMARY_HASHES + 1, 1));
+
+		reader.readSummary();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSummaryFilterIsEmpty() throws Exception {
+		expectReadRecord(createSummary(0, 1, 0));
+
+		reader.readSummary();
+	}
+
+	@Test
+	public void testNoFormatExceptionIfSummaryAckIsValid() throws Exception {
+		expectReadRecord(createSummaryAck(MAX_SUMMARY_BUCKET_BITS,
+				SUMMARY_DIGEST_BYTES << MAX_SUMMARY_BUCKET_BITS));
+
+		SummaryAck a = reader.readSummaryAck();
+		assertEquals(MAX_SUMMARY_BUCKET_BITS, a.getBucketBits());
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSummaryAckHasTooManyBucketBits()
+			throws Exception {
+		int bucketBits = MAX_SUMMARY_BUCKET_BITS + 1;
+		expectReadRecord(createSummaryAck(bucketBits,
+				SUMMARY_DIGEST_BYTES << bucketBits));
+
+		reader.readSummaryAck();
+	}
+
+	@Test(expected = FormatException.class)
+	public void testFormatExceptionIfSummaryAckHasWrongNumberOfDigests()
+			throws Exception {
+		expectReadRecord(createSummaryAck(1, SUMMARY_DIGEST_BYTES));
+
+		reader.readSummaryAck();
+	}
+
 	@Test
 	public void testEofReturnsTrueWhenAtEndOfStream() throws Exception {
 		expectReadRecord(createAck());
 		expectReadEof();
 
 		SyncRecordReader reader =
-				new SyncRecordReaderImpl(messageFactory, recordReader);
+				new SyncRecordReaderImpl(messageFactory, recordReader, null);
 		assertFalse(reader.eof());
 		assertTrue(reader.hasAck());
 		Ack ack = reader.readAck();
@@ -233,6 +425,19 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		return new Record(PROTOCOL_VERSION, MESSAGE, new byte[payloadLength]);
 	}
 
+	private Record createCompressedMessage(int rawLength) {
+		Deflater deflater = new Deflater();
+		deflater.setInput(new byte[rawLength]);
+		deflater.finish();
+		byte[] buf = new byte[rawLength];
+		// The first byte of the payload is the dictionary ID
+		int length = 1 + deflater.deflate(buf, 1, buf.length - 1);
+		deflater.end();
+		byte[] payload = new byte[length];
+		System.arraycopy(buf, 0, payload, 0, length);
+		return new Record(PROTOCOL_VERSION, COMPRESSED_MESSAGE, payload);
+	}
+
 	private Record createAck() throws Exception {
 		return new Record(PROTOCOL_VERSION, ACK, createPayload());
 	}
@@ -268,6 +473,22 @@ public class SyncRecordReaderImplTest extends BrambleMockTestCase {
 		return new Record(PROTOCOL_VERSION, PRIORITY, payload);
 	}
 
+	private Record createSummary(int bucketBits, int hashes,
+			int filterBytes) {
+		byte[] payload = new byte[UniqueId.LENGTH + 2 + filterBytes];
+		System.arraycopy(getRandomId(), 0, payload, 0, UniqueId.LENGTH);
+		payload[UniqueId.LENGTH] = (byte) bucketBits;
+		payload[UniqueId.LENGTH + 1] = (byte) hashes;
+		return new Record(PROTOCOL_VERSION, SUMMARY, payload);
+	}
+
+	private Record createSummaryAck(int bucketBits, int digestBytes) {
+		byte[] payload = new byte[UniqueId.LENGTH + 1 + digestBytes];
+		System.arraycopy(getRandomId(), 0, payload, 0, UniqueId.LENGTH);
+		payload[UniqueId.LENGTH] = (byte) bucketBits;
+		return new Record(PROTOCOL_VERSION, SUMMARY_ACK, payload);
+	}
+
 	private byte[] createPayload() throws Exception {
 		ByteArrayOutputStream payload = new ByteArrayOutputStream();
 		while (payload.size() + UniqueId.LENGTH <= MAX_RECORD_PAYLOAD_BYTES) {
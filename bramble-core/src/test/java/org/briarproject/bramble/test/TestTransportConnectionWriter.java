@@ -38,6 +38,11 @@ public class TestTransportConnectionWriter
 		return 60_000;
 	}
 
+	@Override
+	public int getMaxFlushDelay() {
+		return 0;
+	}
+
 	@Override
 	public boolean isLossyAndCheap() {
 		return lossyAndCheap;
@@ -0,0 +1,73 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DormantTagIndexTest extends BrambleTestCase {
+
+	@Test
+	public void testEmptyIndexFindsNothing() {
+		DormantTagIndex<String> index = new DormantTagIndex<>();
+		assertEquals(0, index.size());
+		assertTrue(index.find(getRandomBytes(TAG_LENGTH)).isEmpty());
+	}
+
+	@Test
+	public void testFindsWindowsContainingTags() {
+		byte[] foo = getRandomBytes(TAG_LENGTH * 3);
+		byte[] bar = getRandomBytes(TAG_LENGTH * 2);
+		DormantTagIndex<String> index = new DormantTagIndex<>(
+				asList("foo", "bar"), new byte[][] {foo, bar});
+		assertEquals(5, index.size());
+		for (int i = 0; i < 3; i++)
+			assertEquals(singletonList("foo"), index.find(getTag(foo, i)));
+		for (int i = 0; i < 2; i++)
+			assertEquals(singletonList("bar"), index.find(getTag(bar, i)));
+		assertTrue(index.find(getRandomBytes(TAG_LENGTH)).isEmpty());
+	}
+
+	@Test
+	public void testFindsAllWindowsWithMatchingPrefix() {
+		byte[] foo = getRandomBytes(TAG_LENGTH * 2);
+		byte[] bar = getRandomBytes(TAG_LENGTH);
+		// The second tag of the first window and the tag of the second
+		// window share a prefix
+		arraycopy(bar, 0, foo, TAG_LENGTH, 4);
+		DormantTagIndex<String> index = new DormantTagIndex<>(
+				asList("foo", "bar"), new byte[][] {foo, bar});
+		List<String> found = index.find(bar);
+		assertEquals(2, found.size());
+		assertTrue(found.containsAll(asList("foo", "bar")));
+		// Only the prefix is compared, so the match must be confirmed
+		byte[] other = getRandomBytes(TAG_LENGTH);
+		arraycopy(bar, 0, other, 0, 4);
+		assertEquals(2, index.find(other).size());
+	}
+
+	@Test
+	public void testHandlesNegativePrefixes() {
+		byte[] foo = getRandomBytes(TAG_LENGTH * 2);
+		foo[0] = (byte) 0x80;
+		foo[TAG_LENGTH] = (byte) 0x7F;
+		DormantTagIndex<String> index = new DormantTagIndex<>(
+				singletonList("foo"), new byte[][] {foo});
+		assertEquals(singletonList("foo"), index.find(getTag(foo, 0)));
+		assertEquals(singletonList("foo"), index.find(getTag(foo, 1)));
+	}
+
+	private byte[] getTag(byte[] tags, int i) {
+		byte[] tag = new byte[TAG_LENGTH];
+		arraycopy(tags, i * TAG_LENGTH, tag, 0, TAG_LENGTH);
+		return tag;
+	}
+}
@@ -1,5 +1,6 @@
 package org.briarproject.bramble.transport;
 
+import org.briarproject.bramble.api.Cancellable;
 import org.briarproject.bramble.api.contact.ContactId;
 import org.briarproject.bramble.api.contact.PendingContactId;
 import org.briarproject.bramble.api.contact.event.ContactRemovedEvent;
@@ -12,6 +13,7 @@ import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.plugin.PluginConfig;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.plugin.simplex.SimplexPluginFactory;
+import org.briarproject.bramble.api.system.TaskScheduler;
 import org.briarproject.bramble.api.transport.KeySetId;
 import org.briarproject.bramble.api.transport.StreamContext;
 import org.briarproject.bramble.test.BrambleMockTestCase;
@@ -28,6 +30,7 @@ import java.util.Random;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
 import static org.briarproject.bramble.test.TestUtils.getAgreementPrivateKey;
 import static org.briarproject.bramble.test.TestUtils.getAgreementPublicKey;
@@ -42,6 +45,9 @@ import static org.junit.Assert.assertNull;
 public class KeyManagerImplTest extends BrambleMockTestCase {
 
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final TaskScheduler scheduler = context.mock(TaskScheduler.class);
+	private final TransportKeyJournal journal =
+			context.mock(TransportKeyJournal.class);
 	private final PluginConfig pluginConfig = context.mock(PluginConfig.class);
 	private final TransportKeyManagerFactory transportKeyManagerFactory =
 			context.mock(TransportKeyManagerFactory.class);
@@ -50,6 +56,8 @@ public class KeyManagerImplTest extends BrambleMockTestCase {
 	private final TransportCrypto transportCrypto =
 			context.mock(TransportCrypto.class);
 
+	private final Cancellable checkpointTask = context.mock(Cancellable.class);
+
 	private final DeterministicExecutor executor = new DeterministicExecutor();
 	private final Transaction txn = new Transaction(null, false);
 	private final ContactId contactId = getContactId();
@@ -97,13 +105,18 @@ public class KeyManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(transportKeyManager));
 		}});
 
-		keyManager = new KeyManagerImpl(db, executor,
-				pluginConfig, transportCrypto, transportKeyManagerFactory);
+		keyManager = new KeyManagerImpl(db, executor, scheduler, pluginConfig,
+				transportCrypto, journal, transportKeyManagerFactory);
 
 		context.checking(new DbExpectations() {{
-			oneOf(db).addTransport(txn, transportId, maxLatency);
 			oneOf(db).transaction(with(false), withDbRunnable(txn));
+			oneOf(journal).start(txn);
+			oneOf(db).addTransport(txn, transportId, maxLatency);
 			oneOf(transportKeyManager).start(txn);
+			oneOf(scheduler).scheduleWithFixedDelay(with(any(Runnable.class)),
+					with(executor), with(any(long.class)),
+					with(any(long.class)), with(MILLISECONDS));
+			will(returnValue(checkpointTask));
 		}});
 
 		keyManager.startService();
@@ -188,10 +201,8 @@ public class KeyManagerImplTest extends BrambleMockTestCase {
 
 	@Test
 	public void testGetStreamContextForContact() throws Exception {
-		context.checking(new DbExpectations() {{
-			oneOf(db).transactionWithNullableResult(with(false),
-					withNullableDbCallable(txn));
-			oneOf(transportKeyManager).getStreamContext(txn, contactId);
+		context.checking(new Expectations() {{
+			oneOf(transportKeyManager).getStreamContext(contactId);
 			will(returnValue(contactStreamContext));
 		}});
 
@@ -201,10 +212,8 @@ public class KeyManagerImplTest extends BrambleMockTestCase {
 
 	@Test
 	public void testGetStreamContextForPendingContact() throws Exception {
-		context.checking(new DbExpectations() {{
-			oneOf(db).transactionWithNullableResult(with(false),
-					withNullableDbCallable(txn));
-			oneOf(transportKeyManager).getStreamContext(txn, pendingContactId);
+		context.checking(new Expectations() {{
+			oneOf(transportKeyManager).getStreamContext(pendingContactId);
 			will(returnValue(pendingContactStreamContext));
 		}});
 
@@ -220,10 +229,8 @@ public class KeyManagerImplTest extends BrambleMockTestCase {
 
 	@Test
 	public void testGetStreamContextForTag() throws Exception {
-		context.checking(new DbExpectations() {{
-			oneOf(db).transactionWithNullableResult(with(false),
-					withNullableDbCallable(txn));
-			oneOf(transportKeyManager).getStreamContext(txn, tag);
+		context.checking(new Expectations() {{
+			oneOf(transportKeyManager).getStreamContext(tag);
 			will(returnValue(contactStreamContext));
 		}});
 
@@ -231,6 +238,29 @@ public class KeyManagerImplTest extends BrambleMockTestCase {
 				keyManager.getStreamContext(transportId, tag));
 	}
 
+	@Test
+	public void testMarkTagAsRecognised() throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(transportKeyManager).markTagAsRecognised(tag);
+		}});
+
+		keyManager.markTagAsRecognised(transportId, tag);
+	}
+
+	@Test
+	public void testJournalIsCheckpointedWhenServiceStops() throws Exception {
+		Transaction txn1 = new Transaction(null, false);
+
+		context.checking(new DbExpectations() {{
+			oneOf(checkpointTask).cancel();
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			oneOf(journal).checkpoint(txn1);
+			oneOf(transportKeyManager).checkpoint(txn1);
+		}});
+
+		keyManager.stopService();
+	}
+
 	@Test
 	public void testContactRemovedEvent() {
 		ContactRemovedEvent event = new ContactRemovedEvent(contactId);
@@ -11,6 +11,8 @@ import java.util.Collections;
 import static org.briarproject.bramble.api.transport.TransportConstants.REORDERING_WINDOW_SIZE;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ReorderingWindowTest extends BrambleTestCase {
 
@@ -105,4 +107,31 @@ public class ReorderingWindowTest extends BrambleTestCase {
 		bitmap[bitmap.length / 2 - 1] = (byte) 0x02; // 0000 0010
 		assertArrayEquals(bitmap, window.getBitmap());
 	}
+
+	@Test
+	public void testMergingKeepsNewerState() {
+		byte[] bitmap = new byte[BITMAP_BYTES];
+		bitmap[0] = (byte) 0x40; // 0100 0000
+		ReorderingWindow window = new ReorderingWindow(2L, bitmap);
+		// A state with a lower base is older and should be ignored
+		byte[] older = new byte[BITMAP_BYTES];
+		older[0] = (byte) 0x80; // 1000 0000
+		assertFalse(window.merge(1L, older));
+		assertEquals(2L, window.getBase());
+		assertArrayEquals(bitmap, window.getBitmap());
+		// A state with the same base should be combined with the window
+		byte[] same = new byte[BITMAP_BYTES];
+		same[0] = (byte) 0x20; // 0010 0000
+		assertTrue(window.merge(2L, same));
+		bitmap[0] = (byte) 0x60; // 0110 0000
+		assertArrayEquals(bitmap, window.getBitmap());
+		// Merging the same state again should have no effect
+		assertFalse(window.merge(2L, same));
+		// A state with a higher base is newer and should replace the window
+		byte[] newer = new byte[BITMAP_BYTES];
+		newer[1] = (byte) 0x01; // 0000 0001
+		assertTrue(window.merge(5L, newer));
+		assertEquals(5L, window.getBase());
+		assertArrayEquals(newer, window.getBitmap());
+	}
 }
@@ -146,4 +146,27 @@ public class StreamWriterImplTest extends BrambleMockTestCase {
 		// There should be one byte left in the buffer
 		w.close();
 	}
+
+	@Test
+	public void testAverageFrameFill() throws Exception {
+		StreamEncrypter encrypter = context.mock(StreamEncrypter.class);
+		StreamWriterImpl w = new StreamWriterImpl(encrypter);
+		context.checking(new Expectations() {{
+			// Write a full non-final frame
+			oneOf(encrypter).writeFrame(with(any(byte[].class)),
+					with(MAX_PAYLOAD_LENGTH), with(0), with(false));
+			// Write a non-final frame with an empty payload
+			oneOf(encrypter).writeFrame(with(any(byte[].class)), with(0),
+					with(0), with(false));
+			// Flush the stream
+			oneOf(encrypter).flush();
+		}});
+		assertEquals(0, w.getFrameCount());
+		assertEquals(0, w.getAverageFrameFill(), 0);
+		w.write(new byte[MAX_PAYLOAD_LENGTH]);
+		w.flush();
+		// One full frame and one empty frame have been written
+		assertEquals(2, w.getFrameCount());
+		assertEquals(0.5, w.getAverageFrameFill(), 0);
+	}
 }
@@ -0,0 +1,225 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.crypto.KeyPair;
+import org.briarproject.bramble.api.crypto.PublicKey;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.crypto.TransportCrypto;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.system.TaskScheduler;
+import org.briarproject.bramble.api.transport.IncomingKeys;
+import org.briarproject.bramble.api.transport.KeySetId;
+import org.briarproject.bramble.api.transport.OutgoingKeys;
+import org.briarproject.bramble.api.transport.TransportKeySet;
+import org.briarproject.bramble.api.transport.TransportKeys;
+import org.briarproject.bramble.test.ImmediateExecutor;
+import org.briarproject.bramble.test.SettableClock;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.arraycopy;
+import static java.util.Collections.emptyList;
+import static java.util.logging.Level.OFF;
+import static java.util.logging.Logger.getLogger;
+import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
+import static org.briarproject.bramble.util.ByteUtils.writeUint64;
+
+/**
+ * Measures the cost of recognising an incoming tag with different numbers
+ * of contacts. The tag table is updated entry by entry, so the cost per tag
+ * should not grow with the number of contacts.
+ * <p>
+ * Tags are encoded by copying the tag key rather than with real crypto, so
+ * the results show the cost of the table and the lock, not the cost of
+ * encoding tags.
+ */
+// Not a JUnit test
+public class TagRecognitionPerformanceTest {
+
+	private static final int[] CONTACTS = {100, 1_000, 10_000, 50_000};
+	private static final int TAGS = 20_000;
+	private static final long MAX_LATENCY = 30 * 1000;
+	private static final long TIME_PERIOD = 1000;
+
+	private static final TransportId TRANSPORT_ID = getTransportId();
+	private static final Random RANDOM = new Random();
+
+	public static void main(String[] args) throws Exception {
+		getLogger("").setLevel(OFF);
+		for (int round = 0; round < 2; round++) {
+			// The first round warms up the JIT
+			for (int contacts : CONTACTS) {
+				long nanosPerTag = measure(contacts);
+				if (round == 1) {
+					System.out.println(String.format(
+							"%,d contacts: %,d ns per recognised tag",
+							contacts, nanosPerTag));
+				}
+			}
+		}
+	}
+
+	private static long measure(int contacts) throws Exception {
+		Mockery context = new Mockery();
+		context.setThreadingPolicy(new Synchroniser());
+		DatabaseComponent db = context.mock(DatabaseComponent.class);
+		TaskScheduler scheduler = context.mock(TaskScheduler.class);
+		Executor executor = new ImmediateExecutor();
+		long timePeriodLength = MAX_LATENCY + MAX_CLOCK_DIFFERENCE;
+		SettableClock clock = new SettableClock(
+				new AtomicLong(timePeriodLength * TIME_PERIOD));
+
+		List<SecretKey> tagKeys = new ArrayList<>(contacts);
+		Collection<TransportKeySet> loaded = new ArrayList<>(contacts);
+		for (int i = 0; i < contacts; i++) {
+			SecretKey tagKey = getSecretKey();
+			tagKeys.add(tagKey);
+			loaded.add(new TransportKeySet(new KeySetId(i),
+					new ContactId(i), null, createTransportKeys(tagKey)));
+		}
+		Transaction txn = new Transaction(null, false);
+		context.checking(new Expectations() {{
+			allowing(db).getTransportKeys(txn, TRANSPORT_ID);
+			will(returnValue(loaded));
+			allowing(scheduler).schedule(with(any(Runnable.class)),
+					with(any(Executor.class)), with(any(long.class)),
+					with(any(TimeUnit.class)));
+		}});
+
+		TransportKeyManager transportKeyManager =
+				new TransportKeyManagerImpl(db, new NoOpJournal(),
+						new CopyingTransportCrypto(), executor, executor,
+						scheduler, clock, TRANSPORT_ID, MAX_LATENCY);
+		transportKeyManager.start(txn);
+
+		// Choose the tags before measuring. Each contact's streams are
+		// received in order, so every tag moves a reordering window
+		long[] nextStreamNumbers = new long[contacts];
+		List<byte[]> tags = new ArrayList<>(TAGS);
+		for (int i = 0; i < TAGS; i++) {
+			int contact = RANDOM.nextInt(contacts);
+			tags.add(encodeTag(tagKeys.get(contact),
+					nextStreamNumbers[contact]++));
+		}
+		long start = System.nanoTime();
+		for (byte[] tag : tags) {
+			if (transportKeyManager.getStreamContext(tag) == null)
+				throw new AssertionError();
+		}
+		return (System.nanoTime() - start) / TAGS;
+	}
+
+	private static TransportKeys createTransportKeys(SecretKey tagKey) {
+		SecretKey headerKey = getSecretKey();
+		IncomingKeys inPrev = new IncomingKeys(getSecretKey(), headerKey,
+				TIME_PERIOD - 1);
+		IncomingKeys inCurr = new IncomingKeys(tagKey, headerKey,
+				TIME_PERIOD);
+		IncomingKeys inNext = new IncomingKeys(getSecretKey(), headerKey,
+				TIME_PERIOD + 1);
+		// The keys have been used, so they're not dormant
+		OutgoingKeys outCurr = new OutgoingKeys(getSecretKey(), headerKey,
+				TIME_PERIOD, 1, true);
+		return new TransportKeys(TRANSPORT_ID, inPrev, inCurr, inNext,
+				outCurr);
+	}
+
+	/**
+	 * Returns a tag that depends only on the tag key and stream number.
+	 */
+	private static byte[] encodeTag(SecretKey tagKey, long streamNumber) {
+		byte[] tag = new byte[TAG_LENGTH];
+		arraycopy(tagKey.getBytes(), 0, tag, 0, TAG_LENGTH);
+		writeUint64(streamNumber, tag, TAG_LENGTH - INT_64_BYTES);
+		return tag;
+	}
+
+	private static class CopyingTransportCrypto implements TransportCrypto {
+
+		@Override
+		public boolean isAlice(PublicKey theirHandshakePublicKey,
+				KeyPair ourHandshakeKeyPair) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SecretKey deriveStaticMasterKey(
+				PublicKey theirHandshakePublicKey,
+				KeyPair ourHandshakeKeyPair) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SecretKey deriveHandshakeRootKey(SecretKey staticMasterKey,
+				boolean pendingContact) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TransportKeys deriveRotationKeys(TransportId t,
+				SecretKey rootKey, long timePeriod, boolean alice,
+				boolean active) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TransportKeys deriveHandshakeKeys(TransportId t,
+				SecretKey rootKey, long timePeriod, boolean alice) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TransportKeys updateTransportKeys(TransportKeys k,
+				long timePeriod) {
+			return k;
+		}
+
+		@Override
+		public void encodeTag(byte[] tag, SecretKey tagKey,
+				int protocolVersion, long streamNumber) {
+			byte[] encoded =
+					TagRecognitionPerformanceTest.encodeTag(tagKey,
+							streamNumber);
+			arraycopy(encoded, 0, tag, 0, TAG_LENGTH);
+		}
+	}
+
+	private static class NoOpJournal implements TransportKeyJournal {
+
+		@Override
+		public void start(Transaction txn) {
+		}
+
+		@Override
+		public Collection<JournalRecord> getRecords(TransportId t) {
+			return emptyList();
+		}
+
+		@Override
+		public void append(TransportId t, JournalRecord r) {
+		}
+
+		@Override
+		public void append(TransportId t, Collection<JournalRecord> records) {
+		}
+
+		@Override
+		public void checkpoint(Transaction txn) {
+		}
+	}
+}
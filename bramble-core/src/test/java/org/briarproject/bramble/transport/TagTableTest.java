@@ -0,0 +1,206 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.briarproject.bramble.api.transport.TransportConstants.TAG_LENGTH;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TagTableTest extends BrambleTestCase {
+
+	private final TagTable<String> table = new TagTable<>();
+
+	@Test
+	public void testFindsEntries() {
+		byte[] tag = getRandomBytes(TAG_LENGTH);
+		assertEquals(-1, table.find(tag));
+		table.put(tag, "foo", 123);
+		assertEquals(1, table.size());
+		int slot = table.find(tag);
+		assertNotEquals(-1, slot);
+		assertEquals("foo", table.getContext(slot));
+		assertEquals(123, table.getStreamNumber(slot));
+		// A copy of the tag should find the same entry
+		assertEquals(slot, table.find(tag.clone()));
+	}
+
+	@Test
+	public void testReplacesEntries() {
+		byte[] tag = getRandomBytes(TAG_LENGTH);
+		table.put(tag, "foo", 123);
+		table.put(tag, "bar", 456);
+		assertEquals(1, table.size());
+		int slot = table.find(tag);
+		assertEquals("bar", table.getContext(slot));
+		assertEquals(456, table.getStreamNumber(slot));
+	}
+
+	@Test
+	public void testPutsTagsFromOffset() {
+		byte[] tags = getRandomBytes(TAG_LENGTH * 3);
+		for (int i = 0; i < 3; i++) table.put(tags, i * TAG_LENGTH, "foo", i);
+		assertEquals(3, table.size());
+		for (int i = 0; i < 3; i++) {
+			byte[] tag = new byte[TAG_LENGTH];
+			System.arraycopy(tags, i * TAG_LENGTH, tag, 0, TAG_LENGTH);
+			assertEquals(i, table.getStreamNumber(table.find(tag)));
+		}
+	}
+
+	@Test
+	public void testRemovesEntries() {
+		byte[] tag = getRandomBytes(TAG_LENGTH);
+		table.put(tag, "foo", 123);
+		assertTrue(table.remove(tag));
+		assertFalse(table.remove(tag));
+		assertEquals(0, table.size());
+		assertEquals(-1, table.find(tag));
+		// The tag can be added again
+		table.put(tag, "bar", 456);
+		assertEquals(1, table.size());
+		assertEquals("bar", table.getContext(table.find(tag)));
+	}
+
+	@Test
+	public void testFindsEntriesAfterCollidingEntriesAreRemoved() {
+		// Tags with the same leading bytes are hashed to the same slot
+		List<byte[]> tags = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			byte[] tag = getRandomBytes(TAG_LENGTH);
+			tag[0] = tag[1] = tag[2] = tag[3] = 0;
+			tags.add(tag);
+			table.put(tag, "foo", i);
+		}
+		table.remove(tags.get(0));
+		table.remove(tags.get(2));
+		assertEquals(3, table.size());
+		assertEquals(-1, table.find(tags.get(0)));
+		assertEquals(-1, table.find(tags.get(2)));
+		assertEquals(1, table.getStreamNumber(table.find(tags.get(1))));
+		assertEquals(3, table.getStreamNumber(table.find(tags.get(3))));
+		assertEquals(4, table.getStreamNumber(table.find(tags.get(4))));
+	}
+
+	@Test
+	public void testGrowsAndKeepsEntries() {
+		int entries = 10_000;
+		List<byte[]> tags = new ArrayList<>(entries);
+		for (int i = 0; i < entries; i++) {
+			byte[] tag = getRandomBytes(TAG_LENGTH);
+			tags.add(tag);
+			table.put(tag, "foo", i);
+		}
+		assertEquals(entries, table.size());
+		assertTrue(table.getCapacity() >= entries * 2);
+		for (int i = 0; i < entries; i++)
+			assertEquals(i, table.getStreamNumber(table.find(tags.get(i))));
+	}
+
+	@Test
+	public void testRemovesSlotsWhileIterating() {
+		for (int i = 0; i < 100; i++)
+			table.put(getRandomBytes(TAG_LENGTH), i % 2 == 0 ? "foo" : "bar", i);
+		for (int i = 0; i < table.getCapacity(); i++) {
+			if ("foo".equals(table.getContext(i))) table.removeSlot(i);
+		}
+		assertEquals(50, table.size());
+		for (int i = 0; i < table.getCapacity(); i++) {
+			String context = table.getContext(i);
+			if (context != null) assertEquals("bar", context);
+		}
+	}
+
+	@Test
+	public void testReclaimsRemovedSlots() {
+		byte[] tag = getRandomBytes(TAG_LENGTH);
+		table.put(tag, "foo", 0);
+		int capacity = table.getCapacity();
+		// Repeatedly adding and removing entries should not grow the table
+		for (int i = 0; i < 1000; i++) {
+			byte[] tag1 = getRandomBytes(TAG_LENGTH);
+			table.put(tag1, "bar", i);
+			assertTrue(table.remove(tag1));
+		}
+		assertEquals(capacity, table.getCapacity());
+		assertEquals(1, table.size());
+		assertEquals("foo", table.getContext(table.find(tag)));
+	}
+
+	@Test
+	public void testClearRemovesAllEntries() {
+		byte[] tag = getRandomBytes(TAG_LENGTH);
+		table.put(tag, "foo", 123);
+		table.clear();
+		assertEquals(0, table.size());
+		assertEquals(-1, table.find(tag));
+		for (int i = 0; i < table.getCapacity(); i++)
+			assertNull(table.getContext(i));
+	}
+
+	@Test
+	public void testGetReturnsEntries() {
+		byte[] tag = getRandomBytes(TAG_LENGTH);
+		assertNull(table.get(tag));
+		table.put(tag, "foo", 123);
+		TagTable.Entry<String> entry = table.get(tag.clone());
+		assertNotNull(entry);
+		assertEquals("foo", entry.getContext());
+		assertEquals(123, entry.getStreamNumber());
+		// Replacing the entry should not modify the entry already returned
+		table.put(tag, "bar", 456);
+		assertEquals("foo", entry.getContext());
+		assertEquals(123, entry.getStreamNumber());
+		TagTable.Entry<String> entry1 = table.get(tag);
+		assertNotNull(entry1);
+		assertEquals("bar", entry1.getContext());
+		assertEquals(456, entry1.getStreamNumber());
+		table.remove(tag);
+		assertNull(table.get(tag));
+	}
+
+	@Test
+	public void testEntriesCanBeReadWhileTableIsModified() throws Exception {
+		List<byte[]> tags = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			byte[] tag = getRandomBytes(TAG_LENGTH);
+			tags.add(tag);
+			table.put(tag, "foo", i);
+		}
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicBoolean failed = new AtomicBoolean(false);
+		Thread reader = new Thread(() -> {
+			while (!done.get()) {
+				for (int i = 0; i < tags.size(); i++) {
+					TagTable.Entry<String> entry = table.get(tags.get(i));
+					if (entry == null || entry.getStreamNumber() != i) {
+						failed.set(true);
+						return;
+					}
+				}
+			}
+		});
+		reader.start();
+		// Add and remove enough entries for the table to be rehashed
+		List<byte[]> added = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			byte[] tag = getRandomBytes(TAG_LENGTH);
+			added.add(tag);
+			table.put(tag, "bar", i);
+			if (i % 2 == 1) assertTrue(table.remove(added.get(i / 2)));
+		}
+		done.set(true);
+		reader.join();
+		assertFalse(failed.get());
+		assertEquals(5100, table.size());
+	}
+}
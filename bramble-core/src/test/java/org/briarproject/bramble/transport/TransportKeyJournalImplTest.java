@@ -0,0 +1,213 @@
+package org.briarproject.bramble.transport;
+
+import org.briarproject.bramble.api.crypto.CryptoComponent;
+import org.briarproject.bramble.api.crypto.SecretKey;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.TaskAction;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.plugin.TransportId;
+import org.briarproject.bramble.api.settings.Settings;
+import org.briarproject.bramble.api.transport.KeySetId;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfig;
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.briarproject.bramble.api.transport.TransportConstants.REORDERING_WINDOW_SIZE;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.briarproject.bramble.transport.TransportKeyJournalImpl.SETTINGS_KEY;
+import static org.briarproject.bramble.transport.TransportKeyJournalImpl.SETTINGS_NAMESPACE;
+import static org.briarproject.bramble.util.StringUtils.toHexString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransportKeyJournalImplTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final CryptoComponent crypto = context.mock(CryptoComponent.class);
+
+	private final SecretKey key = getSecretKey();
+	private final TransportId transportId = getTransportId();
+	private final TransportId transportId1 = getTransportId();
+	private final KeySetId keySetId = new KeySetId(123);
+	private final JournalRecord counter =
+			JournalRecord.streamCounter(keySetId, 1000, 5);
+	private final JournalRecord window = JournalRecord.reorderingWindow(
+			keySetId, 999, 3, getRandomBytes(REORDERING_WINDOW_SIZE / 8));
+	private final JournalRecord active = JournalRecord.keysActive(keySetId);
+
+	private File testDir, dbDir;
+
+	@Before
+	public void setUp() throws Exception {
+		testDir = getTestDirectory();
+		dbDir = new TestDatabaseConfig(testDir).getDatabaseDirectory();
+		context.checking(new Expectations() {{
+			// The records are "encrypted" by returning the plaintext
+			allowing(crypto).encryptWithKey(with(any(byte[].class)),
+					with(key));
+			will(new ReturnFirstParameterAction());
+			allowing(crypto).decryptWithKey(with(any(byte[].class)),
+					with(key));
+			will(new ReturnFirstParameterAction());
+		}});
+	}
+
+	@After
+	public void tearDown() {
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testKeyIsCreatedAtFirstStartup() throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Settings settings = new Settings();
+
+		context.checking(new Expectations() {{
+			oneOf(db).getSettings(txn, SETTINGS_NAMESPACE);
+			will(returnValue(settings));
+			oneOf(crypto).generateSecretKey();
+			will(returnValue(key));
+			oneOf(db).mergeSettings(txn, settings, SETTINGS_NAMESPACE);
+		}});
+
+		TransportKeyJournal journal = createJournal();
+		journal.start(txn);
+		assertEquals(toHexString(key.getBytes()), settings.get(SETTINGS_KEY));
+		assertTrue(journal.getRecords(transportId).isEmpty());
+	}
+
+	@Test
+	public void testRecordsAreReadAtNextStartup() throws Exception {
+		TransportKeyJournal journal = startJournal();
+		journal.append(transportId, counter);
+		journal.append(transportId1, active);
+		journal.append(transportId, window);
+
+		TransportKeyJournal journal1 = startJournal();
+		assertEquals(asList(counter, window),
+				journal1.getRecords(transportId));
+		assertEquals(singletonList(active), journal1.getRecords(transportId1));
+		// The records are only returned once
+		assertTrue(journal1.getRecords(transportId).isEmpty());
+	}
+
+	@Test
+	public void testRecordsAppendedTogetherAreReadInOrder() throws Exception {
+		TransportKeyJournal journal = startJournal();
+		journal.append(transportId, asList(window, active));
+		journal.append(transportId, counter);
+
+		TransportKeyJournal journal1 = startJournal();
+		assertEquals(asList(window, active, counter),
+				journal1.getRecords(transportId));
+	}
+
+	@Test
+	public void testFilesAreDeletedWhenStartupCommits() throws Exception {
+		TransportKeyJournal journal = startJournal();
+		journal.append(transportId, counter);
+
+		Transaction txn = new Transaction(null, false);
+		TransportKeyJournal journal1 = startJournal(txn);
+		assertEquals(singletonList(counter), journal1.getRecords(transportId));
+		commit(txn);
+		journal1.append(transportId, window);
+
+		// Only the record written after the startup should be read
+		TransportKeyJournal journal2 = startJournal();
+		assertEquals(singletonList(window), journal2.getRecords(transportId));
+	}
+
+	@Test
+	public void testFilesAreDeletedWhenCheckpointCommits() throws Exception {
+		TransportKeyJournal journal = startJournal();
+		journal.append(transportId, counter);
+		Transaction txn = new Transaction(null, false);
+		journal.checkpoint(txn);
+		journal.append(transportId, window);
+
+		// The checkpoint hasn't committed, so both records should be read
+		TransportKeyJournal journal1 = startJournal();
+		assertEquals(asList(counter, window), journal1.getRecords(transportId));
+
+		// The record from before the checkpoint should not be read
+		commit(txn);
+		TransportKeyJournal journal2 = startJournal();
+		assertEquals(singletonList(window), journal2.getRecords(transportId));
+	}
+
+	@Test
+	public void testIncompleteRecordIsIgnored() throws Exception {
+		TransportKeyJournal journal = startJournal();
+		journal.append(transportId, counter);
+		journal.append(transportId, window);
+
+		// Remove the last byte of the last record
+		File[] files = dbDir.listFiles();
+		assertNotNull(files);
+		assertEquals(1, files.length);
+		RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		raf.setLength(raf.length() - 1);
+		raf.close();
+
+		TransportKeyJournal journal1 = startJournal();
+		assertEquals(singletonList(counter), journal1.getRecords(transportId));
+	}
+
+	private TransportKeyJournal createJournal() {
+		return new TransportKeyJournalImpl(db, crypto,
+				new TestDatabaseConfig(testDir));
+	}
+
+	private TransportKeyJournal startJournal() throws Exception {
+		return startJournal(new Transaction(null, false));
+	}
+
+	private TransportKeyJournal startJournal(Transaction txn)
+			throws Exception {
+		Settings settings = new Settings();
+		settings.put(SETTINGS_KEY, toHexString(key.getBytes()));
+
+		context.checking(new Expectations() {{
+			oneOf(db).getSettings(txn, SETTINGS_NAMESPACE);
+			will(returnValue(settings));
+		}});
+
+		TransportKeyJournal journal = createJournal();
+		journal.start(txn);
+		return journal;
+	}
+
+	private void commit(Transaction txn) {
+		List<?> actions = txn.getActions();
+		for (Object a : actions) ((TaskAction) a).getTask().run();
+	}
+
+	private static class ReturnFirstParameterAction extends CustomAction {
+
+		private ReturnFirstParameterAction() {
+			super("returns the first parameter");
+		}
+
+		@Override
+		public Object invoke(Invocation invocation) {
+			return invocation.getParameter(0);
+		}
+	}
+}
@@ -5,6 +5,8 @@ import org.briarproject.bramble.api.contact.PendingContactId;
 import org.briarproject.bramble.api.crypto.SecretKey;
 import org.briarproject.bramble.api.crypto.TransportCrypto;
 import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.TaskAction;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.plugin.TransportId;
 import org.briarproject.bramble.api.system.Clock;
@@ -17,6 +19,7 @@ import org.briarproject.bramble.api.transport.TransportKeySet;
 import org.briarproject.bramble.api.transport.TransportKeys;
 import org.briarproject.bramble.test.BrambleMockTestCase;
 import org.briarproject.bramble.test.DbExpectations;
+import org.briarproject.bramble.test.ImmediateExecutor;
 import org.briarproject.bramble.test.RunAction;
 import org.hamcrest.Description;
 import org.jmock.Expectations;
@@ -29,8 +32,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static java.lang.System.arraycopy;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.briarproject.bramble.api.transport.TransportConstants.MAX_CLOCK_DIFFERENCE;
@@ -41,19 +49,25 @@ import static org.briarproject.bramble.test.TestUtils.getContactId;
 import static org.briarproject.bramble.test.TestUtils.getRandomId;
 import static org.briarproject.bramble.test.TestUtils.getSecretKey;
 import static org.briarproject.bramble.test.TestUtils.getTransportId;
+import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
 import static org.briarproject.bramble.util.ByteUtils.MAX_32_BIT_UNSIGNED;
+import static org.briarproject.bramble.util.ByteUtils.writeUint64;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 
 	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final TransportKeyJournal journal =
+			context.mock(TransportKeyJournal.class);
 	private final TransportCrypto transportCrypto =
 			context.mock(TransportCrypto.class);
 	private final Executor dbExecutor = context.mock(Executor.class);
+	private final Executor cryptoExecutor = new ImmediateExecutor();
 	private final TaskScheduler scheduler = context.mock(TaskScheduler.class);
 	private final Clock clock = context.mock(Clock.class);
 
@@ -72,8 +86,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 	private final Random random = new Random();
 
 	private final TransportKeyManager transportKeyManager =
-			new TransportKeyManagerImpl(db, transportCrypto, dbExecutor,
-					scheduler, clock, transportId, maxLatency);
+			new TransportKeyManagerImpl(db, journal, transportCrypto,
+					dbExecutor, cryptoExecutor, scheduler, clock, transportId,
+					maxLatency);
 
 	@Test
 	public void testKeysAreUpdatedAtStartup() throws Exception {
@@ -95,6 +110,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 			// Load the transport keys
 			oneOf(db).getTransportKeys(txn, transportId);
 			will(returnValue(loaded));
+			// Check the journal for changes that weren't saved
+			oneOf(journal).getRecords(transportId);
+			will(returnValue(emptyList()));
 			// Update the transport keys
 			oneOf(transportCrypto).updateTransportKeys(shouldUpdate, 1000);
 			will(returnValue(updated));
@@ -121,6 +139,127 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 				transportKeyManager.canSendOutgoingStreams(contactId));
 	}
 
+	@Test
+	public void testTagsAreEncodedAtStartupIfHelperTasksAreNotRun()
+			throws Exception {
+		// Enough key sets for the tags to be encoded in parallel. The keys
+		// are inactive, so they're not dormant
+		int keySets = 6;
+		Collection<TransportKeySet> loaded = new ArrayList<>();
+		for (int i = 0; i < keySets; i++) {
+			loaded.add(new TransportKeySet(new KeySetId(i), getContactId(),
+					null, createTransportKeys(1000, 0, false)));
+		}
+		Transaction txn = new Transaction(null, false);
+		// Keep a copy of the tags
+		List<byte[]> tags = new ArrayList<>();
+		// Discard any tasks submitted to the crypto executor
+		Executor discardingExecutor = r -> {
+		};
+
+		context.checking(new Expectations() {{
+			// Get the current time (the start of time period 1000)
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(timePeriodLength * 1000));
+			// Load the transport keys
+			oneOf(db).getTransportKeys(txn, transportId);
+			will(returnValue(loaded));
+			// Check the journal for changes that weren't saved
+			oneOf(journal).getRecords(transportId);
+			will(returnValue(emptyList()));
+			// Update the transport keys (the keys are unaffected)
+			for (TransportKeySet ks : loaded) {
+				oneOf(transportCrypto).updateTransportKeys(ks.getKeys(), 1000);
+				will(returnValue(ks.getKeys()));
+			}
+			// Encode the tags (3 sets per contact)
+			for (long i = 0; i < REORDERING_WINDOW_SIZE; i++) {
+				exactly(keySets * 3).of(transportCrypto).encodeTag(
+						with(any(byte[].class)), with(tagKey),
+						with(PROTOCOL_VERSION), with(i));
+				will(new EncodeTagAction(tags));
+			}
+			// Schedule a key update at the start of the next time period
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(timePeriodLength),
+					with(MILLISECONDS));
+		}});
+
+		TransportKeyManager transportKeyManager = new TransportKeyManagerImpl(
+				db, journal, transportCrypto, dbExecutor, discardingExecutor,
+				scheduler, clock, transportId, maxLatency);
+		transportKeyManager.start(txn);
+		// All the tags should be recognised
+		assertEquals(keySets * 3 * REORDERING_WINDOW_SIZE, tags.size());
+		for (byte[] tag : tags) {
+			StreamContext ctx =
+					transportKeyManager.getStreamContextOnly(tag);
+			assertNotNull(ctx);
+			assertNotNull(ctx.getContactId());
+		}
+	}
+
+	@Test
+	public void testDormantKeysArePromotedWhenTagIsRecognised()
+			throws Exception {
+		// The keys are active but unused, so they're dormant
+		SecretKey prevTagKey = getSecretKey();
+		SecretKey currTagKey = getSecretKey();
+		SecretKey nextTagKey = getSecretKey();
+		TransportKeys dormant = new TransportKeys(transportId,
+				new IncomingKeys(prevTagKey, headerKey, 999),
+				new IncomingKeys(currTagKey, headerKey, 1000),
+				new IncomingKeys(nextTagKey, headerKey, 1001),
+				new OutgoingKeys(tagKey, headerKey, 1000, 0, true));
+		Collection<TransportKeySet> loaded = singletonList(
+				new TransportKeySet(keySetId, contactId, null, dormant));
+		Transaction txn = new Transaction(null, false);
+		AtomicInteger encoded = new AtomicInteger(0);
+
+		context.checking(new Expectations() {{
+			// Get the current time (the start of time period 1000)
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(timePeriodLength * 1000));
+			// Load the transport keys
+			oneOf(db).getTransportKeys(txn, transportId);
+			will(returnValue(loaded));
+			// Check the journal for changes that weren't saved
+			oneOf(journal).getRecords(transportId);
+			will(returnValue(emptyList()));
+			// Update the transport keys (the keys are unaffected)
+			oneOf(transportCrypto).updateTransportKeys(dormant, 1000);
+			will(returnValue(dormant));
+			// Encode the tags
+			allowing(transportCrypto).encodeTag(with(any(byte[].class)),
+					with(any(SecretKey.class)), with(PROTOCOL_VERSION),
+					with(any(long.class)));
+			will(new DeterministicEncodeTagAction(encoded));
+			// Schedule a key update at the start of the next time period
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(timePeriodLength),
+					with(MILLISECONDS));
+		}});
+
+		transportKeyManager.start(txn);
+		// The tags should have been encoded for the dormant index
+		assertEquals(REORDERING_WINDOW_SIZE * 3, encoded.get());
+		// An unknown tag should not cause the keys to be promoted
+		assertNull(transportKeyManager.getStreamContextOnly(new byte[TAG_LENGTH]));
+		assertEquals(REORDERING_WINDOW_SIZE * 3, encoded.get());
+		// A tag from the dormant keys should cause them to be promoted
+		StreamContext ctx = transportKeyManager.getStreamContextOnly(encodeTag(currTagKey, 1));
+		assertNotNull(ctx);
+		assertEquals(contactId, ctx.getContactId());
+		assertEquals(currTagKey, ctx.getTagKey());
+		assertEquals(1, ctx.getStreamNumber());
+		assertEquals(REORDERING_WINDOW_SIZE * 6, encoded.get());
+		// Tags from the promoted keys should be found without encoding again
+		ctx = transportKeyManager.getStreamContextOnly(encodeTag(nextTagKey, 0));
+		assertNotNull(ctx);
+		assertEquals(nextTagKey, ctx.getTagKey());
+		assertEquals(REORDERING_WINDOW_SIZE * 6, encoded.get());
+	}
+
 	@Test
 	public void testRotationKeysForContactAreDerivedAndUpdatedWhenAdded()
 			throws Exception {
@@ -153,8 +292,8 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		}});
 
 		TransportKeyManager transportKeyManager = new TransportKeyManagerImpl(
-				db, transportCrypto, dbExecutor, scheduler, clock, transportId,
-				maxLatency);
+				db, journal, transportCrypto, dbExecutor, cryptoExecutor,
+				scheduler, clock, transportId, maxLatency);
 		// The timestamp is 1 ms before the start of time period 1000
 		long timestamp = timePeriodLength * 1000 - 1;
 		assertEquals(keySetId, transportKeyManager.addRotationKeys(txn,
@@ -231,24 +370,20 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 	@Test
 	public void testOutgoingStreamContextIsNullIfContactIsNotFound()
 			throws Exception {
-		Transaction txn = new Transaction(null, false);
-
 		TransportKeyManager transportKeyManager = new TransportKeyManagerImpl(
-				db, transportCrypto, dbExecutor, scheduler, clock, transportId,
-				maxLatency);
-		assertNull(transportKeyManager.getStreamContext(txn, contactId));
+				db, journal, transportCrypto, dbExecutor, cryptoExecutor,
+				scheduler, clock, transportId, maxLatency);
+		assertNull(transportKeyManager.getStreamContext(contactId));
 		assertFalse(transportKeyManager.canSendOutgoingStreams(contactId));
 	}
 
 	@Test
 	public void testOutgoingStreamContextIsNullIfPendingContactIsNotFound()
 			throws Exception {
-		Transaction txn = new Transaction(null, false);
-
 		TransportKeyManager transportKeyManager = new TransportKeyManagerImpl(
-				db, transportCrypto, dbExecutor, scheduler, clock, transportId,
-				maxLatency);
-		assertNull(transportKeyManager.getStreamContext(txn, pendingContactId));
+				db, journal, transportCrypto, dbExecutor, cryptoExecutor,
+				scheduler, clock, transportId, maxLatency);
+		assertNull(transportKeyManager.getStreamContext(pendingContactId));
 		assertFalse(transportKeyManager.canSendOutgoingStreams(
 				pendingContactId));
 	}
@@ -269,7 +404,7 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(keySetId, transportKeyManager.addRotationKeys(
 				txn, contactId, rootKey, timestamp, alice, true));
 		assertFalse(transportKeyManager.canSendOutgoingStreams(contactId));
-		assertNull(transportKeyManager.getStreamContext(txn, contactId));
+		assertNull(transportKeyManager.getStreamContext(contactId));
 	}
 
 	@Test
@@ -283,8 +418,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		expectAddContactKeysNotUpdated(alice, true, transportKeys, txn);
 
 		context.checking(new Expectations() {{
-			// Increment the stream counter
-			oneOf(db).incrementStreamCounter(txn, transportId, keySetId);
+			// Journal the incremented stream counter
+			oneOf(journal).append(transportId, JournalRecord.streamCounter(
+					keySetId, 1000, MAX_32_BIT_UNSIGNED + 1));
 		}});
 
 		// The timestamp is at the start of time period 1000
@@ -293,8 +429,7 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 				txn, contactId, rootKey, timestamp, alice, true));
 		// The first request should return a stream context
 		assertTrue(transportKeyManager.canSendOutgoingStreams(contactId));
-		StreamContext ctx = transportKeyManager.getStreamContext(txn,
-				contactId);
+		StreamContext ctx = transportKeyManager.getStreamContext(contactId);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
@@ -303,7 +438,7 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(MAX_32_BIT_UNSIGNED, ctx.getStreamNumber());
 		// The second request should return null, the counter is exhausted
 		assertFalse(transportKeyManager.canSendOutgoingStreams(contactId));
-		assertNull(transportKeyManager.getStreamContext(txn, contactId));
+		assertNull(transportKeyManager.getStreamContext(contactId));
 	}
 
 	@Test
@@ -323,8 +458,7 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(active,
 				transportKeyManager.canSendOutgoingStreams(contactId));
 		// The tag should not be recognised
-		assertNull(transportKeyManager.getStreamContext(txn,
-				new byte[TAG_LENGTH]));
+		assertNull(transportKeyManager.getStreamContext(new byte[TAG_LENGTH]));
 	}
 
 	@Test
@@ -361,9 +495,10 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 					with(tagKey), with(PROTOCOL_VERSION),
 					with((long) REORDERING_WINDOW_SIZE));
 			will(new EncodeTagAction(tags));
-			// Save the reordering window (previous time period, base 1)
-			oneOf(db).setReorderingWindow(txn, keySetId, transportId, 999,
-					1, new byte[REORDERING_WINDOW_SIZE / 8]);
+			// Journal the reordering window (previous time period, base 1)
+			oneOf(journal).append(transportId, singletonList(
+					JournalRecord.reorderingWindow(keySetId, 999, 1,
+							new byte[REORDERING_WINDOW_SIZE / 8])));
 		}});
 
 		// The timestamp is at the start of time period 1000
@@ -375,7 +510,7 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(REORDERING_WINDOW_SIZE * 3, tags.size());
 		byte[] tag = tags.get(0);
 		// The first request should return a stream context
-		StreamContext ctx = transportKeyManager.getStreamContext(txn, tag);
+		StreamContext ctx = transportKeyManager.getStreamContext(tag);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
@@ -385,7 +520,65 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		// Another tag should have been encoded
 		assertEquals(REORDERING_WINDOW_SIZE * 3 + 1, tags.size());
 		// The second request should return null, the tag has already been used
-		assertNull(transportKeyManager.getStreamContext(txn, tag));
+		assertNull(transportKeyManager.getStreamContext(tag));
+	}
+
+	@Test
+	public void testStreamIsRefusedIfJournallingFails() throws Exception {
+		boolean alice = random.nextBoolean();
+		TransportKeys transportKeys = createTransportKeys(1000, 0, true);
+		Transaction txn = new Transaction(null, false);
+
+		// Keep a copy of the tags
+		List<byte[]> tags = new ArrayList<>();
+
+		context.checking(new Expectations() {{
+			oneOf(transportCrypto).deriveRotationKeys(transportId, rootKey,
+					1000, alice, true);
+			will(returnValue(transportKeys));
+			// Get the current time (the start of time period 1000)
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(timePeriodLength * 1000));
+			// Encode the tags (3 sets)
+			for (long i = 0; i < REORDERING_WINDOW_SIZE; i++) {
+				exactly(3).of(transportCrypto).encodeTag(
+						with(any(byte[].class)), with(tagKey),
+						with(PROTOCOL_VERSION), with(i));
+				will(new EncodeTagAction(tags));
+			}
+			// Updated the transport keys (the keys are unaffected)
+			oneOf(transportCrypto).updateTransportKeys(transportKeys, 1000);
+			will(returnValue(transportKeys));
+			// Save the keys
+			oneOf(db).addTransportKeys(txn, contactId, transportKeys);
+			will(returnValue(keySetId));
+			// Encode a new tag after sliding the window
+			oneOf(transportCrypto).encodeTag(with(any(byte[].class)),
+					with(tagKey), with(PROTOCOL_VERSION),
+					with((long) REORDERING_WINDOW_SIZE));
+			will(new EncodeTagAction(tags));
+			// Try to journal the reordering window, which fails
+			oneOf(journal).append(transportId, singletonList(
+					JournalRecord.reorderingWindow(keySetId, 999, 1,
+							new byte[REORDERING_WINDOW_SIZE / 8])));
+			will(throwException(new DbException()));
+		}});
+
+		// The timestamp is at the start of time period 1000
+		long timestamp = timePeriodLength * 1000;
+		assertEquals(keySetId, transportKeyManager.addRotationKeys(
+				txn, contactId, rootKey, timestamp, alice, true));
+		// Use the first tag (previous time period, stream number 0)
+		byte[] tag = tags.get(0);
+		// The stream should be refused, as the window couldn't be journalled
+		try {
+			transportKeyManager.getStreamContext(tag);
+			fail();
+		} catch (DbException expected) {
+			// Expected
+		}
+		// The tag should not be recognised again
+		assertNull(transportKeyManager.getStreamContext(tag));
 	}
 
 	@Test
@@ -422,9 +615,10 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 					with(tagKey), with(PROTOCOL_VERSION),
 					with((long) REORDERING_WINDOW_SIZE));
 			will(new EncodeTagAction(tags));
-			// Save the reordering window (previous time period, base 1)
-			oneOf(db).setReorderingWindow(txn, keySetId, transportId, 999,
-					1, new byte[REORDERING_WINDOW_SIZE / 8]);
+			// Journal the reordering window (previous time period, base 1)
+			oneOf(journal).append(transportId, singletonList(
+					JournalRecord.reorderingWindow(keySetId, 999, 1,
+							new byte[REORDERING_WINDOW_SIZE / 8])));
 		}});
 
 		// The timestamp is at the start of time period 1000
@@ -436,14 +630,14 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(REORDERING_WINDOW_SIZE * 3, tags.size());
 		byte[] tag = tags.get(0);
 		// Repeated request should return same stream context
-		StreamContext ctx = transportKeyManager.getStreamContextOnly(txn, tag);
+		StreamContext ctx = transportKeyManager.getStreamContextOnly(tag);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
 		assertEquals(tagKey, ctx.getTagKey());
 		assertEquals(headerKey, ctx.getHeaderKey());
 		assertEquals(0L, ctx.getStreamNumber());
-		ctx = transportKeyManager.getStreamContextOnly(txn, tag);
+		ctx = transportKeyManager.getStreamContextOnly(tag);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
@@ -451,11 +645,11 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(headerKey, ctx.getHeaderKey());
 		assertEquals(0L, ctx.getStreamNumber());
 		// Then mark tag as recognised
-		transportKeyManager.markTagAsRecognised(txn, tag);
+		transportKeyManager.markTagAsRecognised(tag);
 		// Another tag should have been encoded
 		assertEquals(REORDERING_WINDOW_SIZE * 3 + 1, tags.size());
 		// Finally ensure the used tag is not recognised again
-		assertNull(transportKeyManager.getStreamContextOnly(txn, tag));
+		assertNull(transportKeyManager.getStreamContextOnly(tag));
 	}
 
 	@Test
@@ -474,6 +668,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 			// Load the transport keys
 			oneOf(db).getTransportKeys(txn, transportId);
 			will(returnValue(loaded));
+			// Check the journal for changes that weren't saved
+			oneOf(journal).getRecords(transportId);
+			will(returnValue(emptyList()));
 			// Update the transport keys (the keys are unaffected)
 			oneOf(transportCrypto).updateTransportKeys(transportKeys, 1000);
 			will(returnValue(transportKeys));
@@ -518,6 +715,76 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertTrue(transportKeyManager.canSendOutgoingStreams(contactId));
 	}
 
+	@Test
+	public void testTagIsRecognisedWhileKeysAreUpdated() throws Exception {
+		TransportKeys transportKeys = createTransportKeys(1000, 0, true);
+		Collection<TransportKeySet> loaded = singletonList(
+				new TransportKeySet(keySetId, contactId, null, transportKeys));
+		TransportKeys updated = createTransportKeys(1001, 0, true);
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, false);
+		AtomicInteger encoded = new AtomicInteger(0);
+		AtomicReference<StreamContext> found = new AtomicReference<>();
+		byte[] tag = encodeTag(tagKey, 0);
+
+		context.checking(new DbExpectations() {{
+			// Get the current time (the start of time period 1000)
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(timePeriodLength * 1000));
+			// Load the transport keys
+			oneOf(db).getTransportKeys(txn, transportId);
+			will(returnValue(loaded));
+			// Check the journal for changes that weren't saved
+			oneOf(journal).getRecords(transportId);
+			will(returnValue(emptyList()));
+			// Update the transport keys (the keys are unaffected)
+			oneOf(transportCrypto).updateTransportKeys(transportKeys, 1000);
+			will(returnValue(transportKeys));
+			// Encode the tags (3 sets)
+			exactly(REORDERING_WINDOW_SIZE * 3).of(transportCrypto)
+					.encodeTag(with(any(byte[].class)), with(tagKey),
+							with(PROTOCOL_VERSION), with(any(long.class)));
+			will(new DeterministicEncodeTagAction(encoded));
+			// Schedule a key update at the start of the next time period
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(timePeriodLength),
+					with(MILLISECONDS));
+			will(new RunAction());
+			// Start a transaction for updating keys
+			oneOf(db).transaction(with(false), withDbRunnable(txn1));
+			// Get the current time (the start of time period 1001)
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(timePeriodLength * 1001));
+			// Update the transport keys
+			oneOf(transportCrypto).updateTransportKeys(
+					with(any(TransportKeys.class)), with(1001L));
+			will(returnValue(updated));
+			// Encode the tags (3 sets). While the tags are being encoded,
+			// look up a tag from another thread
+			exactly(REORDERING_WINDOW_SIZE * 3).of(transportCrypto)
+					.encodeTag(with(any(byte[].class)), with(tagKey),
+							with(PROTOCOL_VERSION), with(any(long.class)));
+			will(doAll(new DeterministicEncodeTagAction(encoded),
+					new LookUpTagAction(tag, found)));
+			// Save the keys that were updated
+			oneOf(db).updateTransportKeys(txn1, singletonList(
+					new TransportKeySet(keySetId, contactId, null, updated)));
+			// Schedule a key update at the start of the next time period
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(timePeriodLength),
+					with(MILLISECONDS));
+		}});
+
+		transportKeyManager.start(txn);
+		// The tag should have been recognised while the keys were updated
+		StreamContext ctx = found.get();
+		assertNotNull(ctx);
+		assertEquals(contactId, ctx.getContactId());
+		assertEquals(0L, ctx.getStreamNumber());
+		// The tag should still be recognised after the keys were updated
+		assertNotNull(transportKeyManager.getStreamContextOnly(tag));
+	}
+
 	@Test
 	public void testActivatingKeys() throws Exception {
 		boolean alice = random.nextBoolean();
@@ -529,8 +796,9 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		context.checking(new Expectations() {{
 			// Activate the keys
 			oneOf(db).setTransportKeysActive(txn, transportId, keySetId);
-			// Increment the stream counter
-			oneOf(db).incrementStreamCounter(txn, transportId, keySetId);
+			// Journal the incremented stream counter
+			oneOf(journal).append(transportId,
+					JournalRecord.streamCounter(keySetId, 1000, 1));
 		}});
 
 		// The timestamp is at the start of time period 1000
@@ -539,12 +807,11 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 				txn, contactId, rootKey, timestamp, alice, false));
 		// The keys are inactive so no stream context should be returned
 		assertFalse(transportKeyManager.canSendOutgoingStreams(contactId));
-		assertNull(transportKeyManager.getStreamContext(txn, contactId));
+		assertNull(transportKeyManager.getStreamContext(contactId));
 		transportKeyManager.activateKeys(txn, keySetId);
 		// The keys are active so a stream context should be returned
 		assertTrue(transportKeyManager.canSendOutgoingStreams(contactId));
-		StreamContext ctx = transportKeyManager.getStreamContext(txn,
-				contactId);
+		StreamContext ctx = transportKeyManager.getStreamContext(contactId);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
@@ -587,13 +854,15 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 					with(tagKey), with(PROTOCOL_VERSION),
 					with((long) REORDERING_WINDOW_SIZE));
 			will(new EncodeTagAction(tags));
-			// Save the reordering window (previous time period, base 1)
-			oneOf(db).setReorderingWindow(txn, keySetId, transportId, 999,
-					1, new byte[REORDERING_WINDOW_SIZE / 8]);
-			// Activate the keys
-			oneOf(db).setTransportKeysActive(txn, transportId, keySetId);
-			// Increment the stream counter
-			oneOf(db).incrementStreamCounter(txn, transportId, keySetId);
+			// Journal the reordering window (previous time period, base 1)
+			// and the activation of the keys
+			oneOf(journal).append(transportId, asList(
+					JournalRecord.reorderingWindow(keySetId, 999, 1,
+							new byte[REORDERING_WINDOW_SIZE / 8]),
+					JournalRecord.keysActive(keySetId)));
+			// Journal the incremented stream counter
+			oneOf(journal).append(transportId,
+					JournalRecord.streamCounter(keySetId, 1000, 1));
 		}});
 
 		// The timestamp is at the start of time period 1000
@@ -602,11 +871,11 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 				txn, contactId, rootKey, timestamp, alice, false));
 		// The keys are inactive so no stream context should be returned
 		assertFalse(transportKeyManager.canSendOutgoingStreams(contactId));
-		assertNull(transportKeyManager.getStreamContext(txn, contactId));
+		assertNull(transportKeyManager.getStreamContext(contactId));
 		// Recognising an incoming tag should activate the outgoing keys
 		assertEquals(REORDERING_WINDOW_SIZE * 3, tags.size());
 		byte[] tag = tags.get(0);
-		StreamContext ctx = transportKeyManager.getStreamContext(txn, tag);
+		StreamContext ctx = transportKeyManager.getStreamContext(tag);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
@@ -615,7 +884,7 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(0L, ctx.getStreamNumber());
 		// The keys are active so a stream context should be returned
 		assertTrue(transportKeyManager.canSendOutgoingStreams(contactId));
-		ctx = transportKeyManager.getStreamContext(txn, contactId);
+		ctx = transportKeyManager.getStreamContext(contactId);
 		assertNotNull(ctx);
 		assertEquals(contactId, ctx.getContactId());
 		assertEquals(transportId, ctx.getTransportId());
@@ -624,6 +893,104 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 		assertEquals(0L, ctx.getStreamNumber());
 	}
 
+	@Test
+	public void testJournalledChangesAreReplayedAtStartup() throws Exception {
+		TransportKeys transportKeys = createTransportKeys(1000, 0, false);
+		Collection<TransportKeySet> loaded = singletonList(
+				new TransportKeySet(keySetId, contactId, null, transportKeys));
+		byte[] bitmap = new byte[REORDERING_WINDOW_SIZE / 8];
+		bitmap[0] = (byte) 0x80;
+		Collection<JournalRecord> records = asList(
+				JournalRecord.streamCounter(keySetId, 1000, 5),
+				// An older counter should not replace a newer one
+				JournalRecord.streamCounter(keySetId, 1000, 3),
+				// A counter for an earlier time period should be ignored
+				JournalRecord.streamCounter(keySetId, 999, 10),
+				JournalRecord.reorderingWindow(keySetId, 1000, 1, bitmap),
+				JournalRecord.keysActive(keySetId),
+				// The key set for this record has been removed
+				JournalRecord.streamCounter(keySetId1, 1000, 1));
+		Transaction txn = new Transaction(null, false);
+		List<byte[]> tags = new ArrayList<>();
+
+		context.checking(new Expectations() {{
+			// Get the current time (the start of time period 1000)
+			oneOf(clock).currentTimeMillis();
+			will(returnValue(timePeriodLength * 1000));
+			// Load the transport keys
+			oneOf(db).getTransportKeys(txn, transportId);
+			will(returnValue(loaded));
+			// Check the journal for changes that weren't saved
+			oneOf(journal).getRecords(transportId);
+			will(returnValue(records));
+			// Activate the keys
+			oneOf(db).setTransportKeysActive(txn, transportId, keySetId);
+			// Update the transport keys (the keys are unaffected)
+			oneOf(transportCrypto).updateTransportKeys(
+					with(any(TransportKeys.class)), with(1000L));
+			will(new ReturnFirstParameterAction());
+			// Encode the tags
+			allowing(transportCrypto).encodeTag(with(any(byte[].class)),
+					with(tagKey), with(PROTOCOL_VERSION),
+					with(any(long.class)));
+			will(new EncodeTagAction(tags));
+			// Save the replayed keys
+			oneOf(db).updateTransportKeys(txn, singletonList(
+					new TransportKeySet(keySetId, contactId, null,
+							transportKeys)));
+			// Schedule a key update at the start of the next time period
+			oneOf(scheduler).schedule(with(any(Runnable.class)),
+					with(dbExecutor), with(timePeriodLength),
+					with(MILLISECONDS));
+			// Journal the incremented stream counter
+			oneOf(journal).append(transportId,
+					JournalRecord.streamCounter(keySetId, 1000, 6));
+		}});
+
+		transportKeyManager.start(txn);
+		// The keys were activated by the journal
+		assertTrue(transportKeyManager.canSendOutgoingStreams(contactId));
+		// The stream counter was restored by the journal
+		StreamContext ctx = transportKeyManager.getStreamContext(contactId);
+		assertNotNull(ctx);
+		assertEquals(5, ctx.getStreamNumber());
+	}
+
+	@Test
+	public void testCheckpointSavesJournalledChanges() throws Exception {
+		boolean alice = random.nextBoolean();
+		TransportKeys transportKeys = createTransportKeys(1000, 0, true);
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, false);
+
+		expectAddContactKeysNotUpdated(alice, true, transportKeys, txn);
+
+		context.checking(new Expectations() {{
+			// Journal the incremented stream counter
+			oneOf(journal).append(transportId,
+					JournalRecord.streamCounter(keySetId, 1000, 1));
+			// Save the changed keys at the first checkpoint
+			oneOf(db).setTransportKeysActive(txn1, transportId, keySetId);
+			oneOf(db).updateTransportKeys(txn1, singletonList(
+					new TransportKeySet(keySetId, contactId, null,
+							transportKeys)));
+		}});
+
+		// The timestamp is at the start of time period 1000
+		long timestamp = timePeriodLength * 1000;
+		assertEquals(keySetId, transportKeyManager.addRotationKeys(
+				txn, contactId, rootKey, timestamp, alice, true));
+		assertNotNull(transportKeyManager.getStreamContext(contactId));
+		transportKeyManager.checkpoint(txn1);
+		// Commit the transaction
+		assertEquals(1, txn1.getActions().size());
+		((TaskAction) txn1.getActions().get(0)).getTask().run();
+		// There are no changes to save at the second checkpoint
+		transportKeyManager.checkpoint(txn2);
+		assertTrue(txn2.getActions().isEmpty());
+	}
+
 	private void expectAddContactKeysNotUpdated(boolean alice, boolean active,
 			TransportKeys transportKeys, Transaction txn) throws Exception {
 		context.checking(new Expectations() {{
@@ -677,6 +1044,85 @@ public class TransportKeyManagerImplTest extends BrambleMockTestCase {
 				rootKey, alice);
 	}
 
+	/**
+	 * Returns a tag that depends only on the tag key and stream number.
+	 */
+	private byte[] encodeTag(SecretKey tagKey, long streamNumber) {
+		byte[] tag = new byte[TAG_LENGTH];
+		arraycopy(tagKey.getBytes(), 0, tag, 0, TAG_LENGTH);
+		writeUint64(streamNumber, tag, TAG_LENGTH - INT_64_BYTES);
+		return tag;
+	}
+
+	private class DeterministicEncodeTagAction implements Action {
+
+		private final AtomicInteger encoded;
+
+		private DeterministicEncodeTagAction(AtomicInteger encoded) {
+			this.encoded = encoded;
+		}
+
+		@Override
+		public Object invoke(Invocation invocation) {
+			byte[] tag = (byte[]) invocation.getParameter(0);
+			SecretKey tagKey = (SecretKey) invocation.getParameter(1);
+			long streamNumber = (Long) invocation.getParameter(3);
+			arraycopy(encodeTag(tagKey, streamNumber), 0, tag, 0, TAG_LENGTH);
+			encoded.incrementAndGet();
+			return null;
+		}
+
+		@Override
+		public void describeTo(Description description) {
+			description.appendText("encodes a deterministic tag");
+		}
+	}
+
+	/**
+	 * Looks up a tag from another thread, the first time the action is
+	 * invoked, and stores the result.
+	 */
+	private class LookUpTagAction implements Action {
+
+		private final byte[] tag;
+		private final AtomicReference<StreamContext> found;
+		private final AtomicBoolean invoked = new AtomicBoolean(false);
+
+		private LookUpTagAction(byte[] tag,
+				AtomicReference<StreamContext> found) {
+			this.tag = tag;
+			this.found = found;
+		}
+
+		@Override
+		public Object invoke(Invocation invocation) throws Throwable {
+			if (invoked.getAndSet(true)) return null;
+			Thread t = new Thread(() ->
+					found.set(transportKeyManager.getStreamContextOnly(tag)));
+			t.start();
+			t.join();
+			return null;
+		}
+
+		@Override
+		public void describeTo(Description description) {
+			description.appendText("looks up a tag from another thread");
+		}
+	}
+
+	private static class ReturnFirstParameterAction implements Action {
+
+		@Override
+		public Object invoke(Invocation invocation) {
+			return invocation.getParameter(0);
+		}
+
+		@Override
+		public void describeTo(Description description) {
+			description.appendText("returns the first parameter");
+		}
+	}
+
 	private class EncodeTagAction implements Action {
 
 		private final Collection<byte[]> tags;
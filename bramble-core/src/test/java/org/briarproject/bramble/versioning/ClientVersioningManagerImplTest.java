@@ -88,13 +88,31 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 	@Test
 	public void testDoesNotCreateGroupsAtStartupIfAlreadyCreated()
 			throws Exception {
+		MessageId localUpdateId = new MessageId(getRandomId());
+		BdfDictionary localUpdateMeta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_UPDATE_VERSION, 1L),
+				new BdfEntry(MSG_KEY_LOCAL, true));
+
 		context.checking(new Expectations() {{
 			oneOf(db).containsGroup(txn, localGroup.getId());
 			will(returnValue(true));
+			// Load the client states for the cache
+			oneOf(db).getContacts(txn);
+			will(returnValue(singletonList(contact)));
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(db).containsGroup(txn, contactGroup.getId());
+			will(returnValue(true));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
+					contactGroup.getId());
+			will(returnValue(singletonMap(localUpdateId, localUpdateMeta)));
 		}});
 
 		ClientVersioningManagerImpl c = createInstance();
 		c.onDatabaseOpened(txn);
+		// The states should be cached when the transaction commits
+		assertEquals(1, txn.getActions().size());
 	}
 
 	@Test
@@ -887,7 +905,9 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 		Map<MessageId, BdfDictionary> messageMetadata = new HashMap<>();
 		messageMetadata.put(localUpdateId, localUpdateMeta);
 		messageMetadata.put(remoteUpdateId, remoteUpdateMeta);
-		// The client is not supported remotely
+		// The client is supported locally but not remotely
+		BdfList localUpdateBody = BdfList.of(BdfList.of(
+				BdfList.of(clientId.getString(), 123, 234, false)), 1L);
 		BdfList remoteUpdateBody = BdfList.of(new BdfList(), 1L);
 
 		expectGetContactGroup(true);
@@ -895,6 +915,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
 					contactGroup.getId());
 			will(returnValue(messageMetadata));
+			oneOf(clientHelper).getMessageAsList(txn, localUpdateId);
+			will(returnValue(localUpdateBody));
 			oneOf(clientHelper).getMessageAsList(txn, remoteUpdateId);
 			will(returnValue(remoteUpdateBody));
 		}});
@@ -918,7 +940,9 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 		Map<MessageId, BdfDictionary> messageMetadata = new HashMap<>();
 		messageMetadata.put(localUpdateId, localUpdateMeta);
 		messageMetadata.put(remoteUpdateId, remoteUpdateMeta);
-		// The client is supported remotely but not active
+		// The client is supported locally and remotely but not active
+		BdfList localUpdateBody = BdfList.of(BdfList.of(
+				BdfList.of(clientId.getString(), 123, 234, false)), 1L);
 		BdfList remoteUpdateBody = BdfList.of(BdfList.of(
 				BdfList.of(clientId.getString(), 123, 234, false)), 1L);
 
@@ -927,6 +951,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
 					contactGroup.getId());
 			will(returnValue(messageMetadata));
+			oneOf(clientHelper).getMessageAsList(txn, localUpdateId);
+			will(returnValue(localUpdateBody));
 			oneOf(clientHelper).getMessageAsList(txn, remoteUpdateId);
 			will(returnValue(remoteUpdateBody));
 		}});
@@ -950,7 +976,9 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 		Map<MessageId, BdfDictionary> messageMetadata = new HashMap<>();
 		messageMetadata.put(localUpdateId, localUpdateMeta);
 		messageMetadata.put(remoteUpdateId, remoteUpdateMeta);
-		// The client is supported remotely and active
+		// The client is supported locally and remotely and active
+		BdfList localUpdateBody = BdfList.of(BdfList.of(
+				BdfList.of(clientId.getString(), 123, 234, true)), 1L);
 		BdfList remoteUpdateBody = BdfList.of(BdfList.of(
 				BdfList.of(clientId.getString(), 123, 234, true)), 1L);
 
@@ -959,6 +987,8 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 			oneOf(clientHelper).getMessageMetadataAsDictionary(txn,
 					contactGroup.getId());
 			will(returnValue(messageMetadata));
+			oneOf(clientHelper).getMessageAsList(txn, localUpdateId);
+			will(returnValue(localUpdateBody));
 			oneOf(clientHelper).getMessageAsList(txn, remoteUpdateId);
 			will(returnValue(remoteUpdateBody));
 		}});
@@ -968,6 +998,91 @@ public class ClientVersioningManagerImplTest extends BrambleMockTestCase {
 				clientId, 123));
 	}
 
+	@Test
+	public void testReturnsCachedStatesInReadOnlyTransaction()
+			throws Exception {
+		Transaction readOnlyTxn = new Transaction(null, true);
+		MessageId localUpdateId = new MessageId(getRandomId());
+		BdfDictionary localUpdateMeta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_UPDATE_VERSION, 1L),
+				new BdfEntry(MSG_KEY_LOCAL, true));
+		MessageId remoteUpdateId = new MessageId(getRandomId());
+		BdfDictionary remoteUpdateMeta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_UPDATE_VERSION, 1L),
+				new BdfEntry(MSG_KEY_LOCAL, false));
+		Map<MessageId, BdfDictionary> messageMetadata = new HashMap<>();
+		messageMetadata.put(localUpdateId, localUpdateMeta);
+		messageMetadata.put(remoteUpdateId, remoteUpdateMeta);
+		BdfList localUpdateBody = BdfList.of(BdfList.of(
+				BdfList.of(clientId.getString(), 123, 234, true)), 1L);
+		BdfList remoteUpdateBody = BdfList.of(BdfList.of(
+				BdfList.of(clientId.getString(), 123, 345, true)), 1L);
+
+		// The updates should only be loaded once
+		context.checking(new Expectations() {{
+			oneOf(db).getContact(readOnlyTxn, contact.getId());
+			will(returnValue(contact));
+			oneOf(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(db).containsGroup(readOnlyTxn, contactGroup.getId());
+			will(returnValue(true));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(readOnlyTxn,
+					contactGroup.getId());
+			will(returnValue(messageMetadata));
+			oneOf(clientHelper).getMessageAsList(readOnlyTxn, localUpdateId);
+			will(returnValue(localUpdateBody));
+			oneOf(clientHelper).getMessageAsList(readOnlyTxn, remoteUpdateId);
+			will(returnValue(remoteUpdateBody));
+		}});
+
+		ClientVersioningManagerImpl c = createInstance();
+		assertEquals(SHARED, c.getClientVisibility(readOnlyTxn,
+				contact.getId(), clientId, 123));
+		assertEquals(SHARED, c.getClientVisibility(readOnlyTxn,
+				contact.getId(), clientId, 123));
+		assertEquals(345, c.getClientMinorVersion(readOnlyTxn,
+				contact.getId(), clientId, 123));
+		assertEquals(INVISIBLE, c.getClientVisibility(readOnlyTxn,
+				contact.getId(), clientId, 124));
+	}
+
+	@Test
+	public void testCachedStatesAreInvalidatedWhenRemovingContact()
+			throws Exception {
+		Transaction readOnlyTxn = new Transaction(null, true);
+		MessageId localUpdateId = new MessageId(getRandomId());
+		BdfDictionary localUpdateMeta = BdfDictionary.of(
+				new BdfEntry(MSG_KEY_UPDATE_VERSION, 1L),
+				new BdfEntry(MSG_KEY_LOCAL, true));
+
+		context.checking(new Expectations() {{
+			// Load the states, which will be cached
+			exactly(2).of(db).getContact(readOnlyTxn, contact.getId());
+			will(returnValue(contact));
+			exactly(3).of(contactGroupFactory).createContactGroup(CLIENT_ID,
+					MAJOR_VERSION, contact);
+			will(returnValue(contactGroup));
+			oneOf(db).containsGroup(readOnlyTxn, contactGroup.getId());
+			will(returnValue(true));
+			oneOf(clientHelper).getMessageMetadataAsDictionary(readOnlyTxn,
+					contactGroup.getId());
+			will(returnValue(singletonMap(localUpdateId, localUpdateMeta)));
+			// Remove the contact
+			oneOf(db).removeGroup(txn, contactGroup);
+			// The contact group no longer exists
+			oneOf(db).containsGroup(readOnlyTxn, contactGroup.getId());
+			will(returnValue(false));
+		}});
+
+		ClientVersioningManagerImpl c = createInstance();
+		assertEquals(INVISIBLE, c.getClientVisibility(readOnlyTxn,
+				contact.getId(), clientId, 123));
+		c.removingContact(txn, contact);
+		assertEquals(-1, c.getClientMinorVersion(readOnlyTxn,
+				contact.getId(), clientId, 123));
+	}
+
 	private void expectGetContactGroup(boolean exists) throws Exception {
 		context.checking(new Expectations() {{
 			oneOf(db).getContact(txn, contact.getId());
@@ -33,6 +33,7 @@ import org.briarproject.nullsafety.NotNullByDefault;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
@@ -92,15 +93,22 @@ public class ContactsViewModel extends DbViewModel implements EventListener {
 	private List<ContactListItem> loadContacts(Transaction txn)
 			throws DbException {
 		long start = now();
-		List<ContactListItem> contacts = new ArrayList<>();
+		List<Contact> displayed = new ArrayList<>();
+		List<ContactId> ids = new ArrayList<>();
 		for (Contact c : contactManager.getContacts(txn)) {
 			ContactId id = c.getId();
 			if (!displayContact(id)) {
 				continue;
 			}
+			displayed.add(c);
+			ids.add(id);
+		}
+		Map<ContactId, MessageTracker.GroupCount> counts =
+				conversationManager.getGroupCounts(txn, ids);
+		List<ContactListItem> contacts = new ArrayList<>();
+		for (Contact c : displayed) {
 			AuthorInfo authorInfo = authorManager.getAuthorInfo(txn, c);
-			MessageTracker.GroupCount count =
-					conversationManager.getGroupCount(txn, id);
+			MessageTracker.GroupCount count = counts.get(c.getId());
 			boolean connected = connectionRegistry.isConnected(c.getId());
 			contacts.add(new ContactListItem(c, authorInfo, connected, count));
 		}
@@ -11,6 +11,7 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -143,6 +144,25 @@ public interface BlogManager {
 	List<BlogPostHeader> getPostHeaders(Transaction txn, GroupId g)
 			throws DbException;
 
+	/**
+	 * Returns the headers of the posts in the given blog that were received
+	 * at or after the given time.
+	 *
+	 * @see #getPostTimesReceived
+	 */
+	List<BlogPostHeader> getPostHeaders(Transaction txn, GroupId g,
+			long minTimeReceived) throws DbException;
+
+	/**
+	 * Returns the times at which the posts in the given blog were received,
+	 * for the posts received at or after the given time. Posts are received
+	 * in the order they're delivered to the blog client, whatever their
+	 * timestamps, so these times may be later than
+	 * {@link BlogPostHeader#getTimeReceived()}.
+	 */
+	Map<MessageId, Long> getPostTimesReceived(Transaction txn, GroupId g,
+			long minTimeReceived) throws DbException;
+
 	/**
 	 * Marks a blog post as read or unread.
 	 */
@@ -13,6 +13,7 @@ import org.briarproject.briar.api.messaging.MessagingManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 @NotNullByDefault
@@ -47,6 +48,24 @@ public interface ConversationManager {
 	Collection<ConversationMessageHeader> getMessageHeaders(Transaction txn, ContactId c)
 			throws DbException;
 
+	/**
+	 * Returns the headers of the messages in the given private conversation
+	 * that were received at or after the given time.
+	 *
+	 * @see #getMessageTimesReceived
+	 */
+	Collection<ConversationMessageHeader> getMessageHeaders(Transaction txn,
+			ContactId c, long minTimeReceived) throws DbException;
+
+	/**
+	 * Returns the times at which the messages in the given private
+	 * conversation were received, for the messages received at or after the
+	 * given time. Messages are received in the order they're delivered to
+	 * their clients, whatever their timestamps.
+	 */
+	Map<MessageId, Long> getMessageTimesReceived(Transaction txn, ContactId c,
+			long minTimeReceived) throws DbException;
+
 	/**
 	 * Returns the unified group count for all private conversation messages.
 	 */
@@ -57,6 +76,20 @@ public interface ConversationManager {
 	 */
 	GroupCount getGroupCount(Transaction txn, ContactId c) throws DbException;
 
+	/**
+	 * Returns the unified group counts for all private conversation messages
+	 * with each of the given contacts.
+	 */
+	Map<ContactId, GroupCount> getGroupCounts(Collection<ContactId> contacts)
+			throws DbException;
+
+	/**
+	 * Returns the unified group counts for all private conversation messages
+	 * with each of the given contacts.
+	 */
+	Map<ContactId, GroupCount> getGroupCounts(Transaction txn,
+			Collection<ContactId> contacts) throws DbException;
+
 	/**
 	 * Updates the group count for the given incoming private conversation message
 	 * and broadcasts a corresponding event.
@@ -78,6 +111,13 @@ public interface ConversationManager {
 	void trackMessage(Transaction txn, GroupId g, long timestamp, boolean read)
 			throws DbException;
 
+	/**
+	 * Resets the group count for the given private conversation group,
+	 * after messages have been deleted from it.
+	 */
+	void resetGroupCount(Transaction txn, GroupId g, int msgCount,
+			int unreadCount) throws DbException;
+
 	void setReadFlag(GroupId g, MessageId m, boolean read)
 			throws DbException;
 
@@ -122,6 +162,14 @@ public interface ConversationManager {
 		Collection<ConversationMessageHeader> getMessageHeaders(Transaction txn,
 				ContactId contactId) throws DbException;
 
+		/**
+		 * Returns the headers of the messages this client is responsible for
+		 * in the conversation with the given contact that were received at or
+		 * after the given time.
+		 */
+		Collection<ConversationMessageHeader> getMessageHeaders(Transaction txn,
+				ContactId contactId, long minTimeReceived) throws DbException;
+
 		/**
 		 * Returns all conversation {@link MessageId}s for the given contact
 		 * this client is responsible for.
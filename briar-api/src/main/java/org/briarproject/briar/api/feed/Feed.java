@@ -5,6 +5,7 @@ import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.briar.api.blog.Blog;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 @Immutable
@@ -15,15 +16,26 @@ public class Feed {
 	private final LocalAuthor localAuthor;
 	private final RssProperties properties;
 	private final long added, updated, lastEntryTime;
+	@Nullable
+	private final String eTag, lastModified;
 
 	public Feed(Blog blog, LocalAuthor localAuthor, RssProperties properties,
-			long added, long updated, long lastEntryTime) {
+			long added, long updated, long lastEntryTime,
+			@Nullable String eTag, @Nullable String lastModified) {
 		this.blog = blog;
 		this.localAuthor = localAuthor;
 		this.properties = properties;
 		this.added = added;
 		this.updated = updated;
 		this.lastEntryTime = lastEntryTime;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+	}
+
+	public Feed(Blog blog, LocalAuthor localAuthor, RssProperties properties,
+			long added, long updated, long lastEntryTime) {
+		this(blog, localAuthor, properties, added, updated, lastEntryTime,
+				null, null);
 	}
 
 	public GroupId getBlogId() {
@@ -58,6 +70,24 @@ public class Feed {
 		return lastEntryTime;
 	}
 
+	/**
+	 * Returns the HTTP entity tag of the feed when it was last fetched, or
+	 * null if the server didn't send one.
+	 */
+	@Nullable
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Returns the HTTP last modified date of the feed when it was last
+	 * fetched, or null if the server didn't send one.
+	 */
+	@Nullable
+	public String getLastModified() {
+		return lastModified;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
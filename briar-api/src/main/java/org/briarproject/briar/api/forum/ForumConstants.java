@@ -25,5 +25,9 @@ public interface ForumConstants {
 	String KEY_AUTHOR = "author";
 	String KEY_LOCAL = "local";
 	String KEY_READ = "read";
+	String KEY_THREAD_PATH = "threadPath";
+
+	// Group metadata keys
+	String GROUP_KEY_SORT_KEYS_STORED = "sortKeysStored";
 
 }
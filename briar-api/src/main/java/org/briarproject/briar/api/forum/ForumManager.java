@@ -2,6 +2,7 @@ package org.briarproject.briar.api.forum;
 
 import org.briarproject.bramble.api.crypto.CryptoExecutor;
 import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.identity.LocalAuthor;
 import org.briarproject.bramble.api.sync.ClientId;
@@ -112,6 +113,33 @@ public interface ForumManager {
 	List<ForumPostHeader> getPostHeaders(Transaction txn, GroupId g)
 			throws DbException;
 
+	/**
+	 * Returns the headers of up to the given number of posts in the given
+	 * forum, in thread order: each post is followed by its replies, sorted
+	 * by timestamp, and each reply is followed by its own replies.
+	 *
+	 * @param after the ID of the last post on the previous page, or null to
+	 * return the first page
+	 * @throws NoSuchMessageException if {@code after} is not a post in the
+	 * given forum
+	 */
+	List<ForumPostHeader> getPostHeadersInThreadOrder(GroupId g,
+			@Nullable MessageId after, int limit) throws DbException;
+
+	/**
+	 * Returns the headers of up to the given number of posts in the given
+	 * forum, in thread order: each post is followed by its replies, sorted
+	 * by timestamp, and each reply is followed by its own replies.
+	 *
+	 * @param after the ID of the last post on the previous page, or null to
+	 * return the first page
+	 * @throws NoSuchMessageException if {@code after} is not a post in the
+	 * given forum
+	 */
+	List<ForumPostHeader> getPostHeadersInThreadOrder(Transaction txn,
+			GroupId g, @Nullable MessageId after, int limit)
+			throws DbException;
+
 	/**
 	 * Registers a hook to be called whenever a forum is removed.
 	 */
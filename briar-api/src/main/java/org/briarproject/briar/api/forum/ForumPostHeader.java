@@ -13,10 +13,21 @@ import javax.annotation.concurrent.Immutable;
 @NotNullByDefault
 public class ForumPostHeader extends PostHeader {
 
+	private final int depth;
+
 	public ForumPostHeader(MessageId id, @Nullable MessageId parentId,
 			long timestamp, Author author, AuthorInfo authorInfo,
-			boolean read) {
+			boolean read, int depth) {
 		super(id, parentId, timestamp, author, authorInfo, read);
+		this.depth = depth;
+	}
+
+	/**
+	 * Returns the depth of the post in its thread, where posts without
+	 * parents have depth zero.
+	 */
+	public int getDepth() {
+		return depth;
 	}
 
 }
@@ -7,6 +7,9 @@ import org.briarproject.bramble.api.identity.AuthorId;
 import org.briarproject.bramble.api.identity.LocalAuthor;
 import org.briarproject.nullsafety.NotNullByDefault;
 
+import java.util.Collection;
+import java.util.Map;
+
 @NotNullByDefault
 public interface AuthorManager {
 
@@ -20,6 +23,14 @@ public interface AuthorManager {
 	 */
 	AuthorInfo getAuthorInfo(Transaction txn, AuthorId a) throws DbException;
 
+	/**
+	 * Returns the {@link AuthorInfo} for each of the given authors. This is
+	 * more efficient than calling {@link #getAuthorInfo(Transaction, AuthorId)}
+	 * for each author.
+	 */
+	Map<AuthorId, AuthorInfo> getAuthorInfos(Transaction txn,
+			Collection<AuthorId> authors) throws DbException;
+
 	/**
 	 * Returns the {@link AuthorInfo} for the given contact.
 	 */
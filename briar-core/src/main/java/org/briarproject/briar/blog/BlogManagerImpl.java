@@ -6,7 +6,6 @@ import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactManager.ContactHook;
 import org.briarproject.bramble.api.data.BdfDictionary;
-import org.briarproject.bramble.api.data.BdfEntry;
 import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.data.MetadataParser;
 import org.briarproject.bramble.api.db.DatabaseComponent;
@@ -513,48 +512,65 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 	@Override
 	public List<BlogPostHeader> getPostHeaders(Transaction txn, GroupId g)
 			throws DbException {
-		// Query for posts and comments only
-		BdfDictionary query1 = BdfDictionary.of(
-				new BdfEntry(KEY_TYPE, POST.getInt())
-		);
-		BdfDictionary query2 = BdfDictionary.of(
-				new BdfEntry(KEY_TYPE, COMMENT.getInt())
-		);
-
-		List<BlogPostHeader> headers = new ArrayList<>();
 		try {
-			Map<MessageId, BdfDictionary> metadata1 =
-					clientHelper.getMessageMetadataAsDictionary(txn, g, query1);
-			Map<MessageId, BdfDictionary> metadata2 =
-					clientHelper.getMessageMetadataAsDictionary(txn, g, query2);
+			// Load the metadata of every message in the group at once, so
+			// the wrapped messages that comments refer to can be resolved
+			// without querying for each one
 			Map<MessageId, BdfDictionary> metadata =
-					new HashMap<>(metadata1.size() + metadata2.size());
-			metadata.putAll(metadata1);
-			metadata.putAll(metadata2);
-			// get all authors we need to get the information for
-			Set<AuthorId> authors = new HashSet<>();
-			for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
-				BdfList authorList = entry.getValue().getList(KEY_AUTHOR);
-				Author a = clientHelper.parseAndValidateAuthor(authorList);
-				authors.add(a.getId());
-			}
-			// get information for all authors
-			Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
-			for (AuthorId authorId : authors) {
-				authorInfos.put(authorId,
-						authorManager.getAuthorInfo(txn, authorId));
-			}
-			// get post headers
-			for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
-				BdfDictionary meta = entry.getValue();
-				BlogPostHeader h = getPostHeaderFromMetadata(txn, g,
-						entry.getKey(), meta, authorInfos);
-				headers.add(h);
-			}
+					clientHelper.getMessageMetadataAsDictionary(txn, g);
+			return getPostHeaders(txn, g, metadata);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
-		return headers;
+	}
+
+	@Override
+	public List<BlogPostHeader> getPostHeaders(Transaction txn, GroupId g,
+			long minTimeReceived) throws DbException {
+		try {
+			// Wrapped messages outside the time range are looked up
+			// individually if any comments in the range refer to them
+			Map<MessageId, BdfDictionary> metadata =
+					clientHelper.getMessageMetadataAsDictionary(txn, g,
+							new BdfDictionary(), minTimeReceived);
+			return getPostHeaders(txn, g, metadata);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Map<MessageId, Long> getPostTimesReceived(Transaction txn,
+			GroupId g, long minTimeReceived) throws DbException {
+		return db.getMessageTimesReceived(txn, g, minTimeReceived);
+	}
+
+	private List<BlogPostHeader> getPostHeaders(Transaction txn, GroupId g,
+			Map<MessageId, BdfDictionary> metadata)
+			throws DbException, FormatException {
+		// get all authors we need to get the information for
+		Set<AuthorId> authors = new HashSet<>();
+		for (BdfDictionary meta : metadata.values()) {
+			if (meta.getBoolean(KEY_RSS_FEED, false)) continue;
+			BdfList authorList = meta.getList(KEY_AUTHOR);
+			Author a = clientHelper.parseAndValidateAuthor(authorList);
+			authors.add(a.getId());
+		}
+		// get information for all authors
+		Map<AuthorId, AuthorInfo> authorInfos =
+				authorManager.getAuthorInfos(txn, authors);
+		// get post headers for posts and comments only, reusing the
+		// headers of wrapped messages that are shared by comments
+		Map<MessageId, BlogPostHeader> headers = new HashMap<>();
+		List<BlogPostHeader> result = new ArrayList<>();
+		for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
+			BdfDictionary meta = entry.getValue();
+			MessageType type = getMessageType(meta);
+			if (type != POST && type != COMMENT) continue;
+			result.add(getPostHeaderFromMetadata(txn, g, entry.getKey(),
+					meta, authorInfos, metadata, headers));
+		}
+		return result;
 	}
 
 	@Override
@@ -592,12 +608,36 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 			GroupId groupId, MessageId id, BdfDictionary meta)
 			throws DbException, FormatException {
 		return getPostHeaderFromMetadata(txn, groupId, id, meta,
-				Collections.emptyMap());
+				Collections.emptyMap(), Collections.emptyMap(),
+				new HashMap<>());
 	}
 
+	/**
+	 * Returns the header of the given message, using the given author
+	 * information and metadata where available and querying the database
+	 * otherwise. Headers are added to the given map so that parents
+	 * shared by several comments are only created once.
+	 */
 	private BlogPostHeader getPostHeaderFromMetadata(Transaction txn,
 			GroupId groupId, MessageId id, BdfDictionary meta,
-			Map<AuthorId, AuthorInfo> authorInfos)
+			Map<AuthorId, AuthorInfo> authorInfos,
+			Map<MessageId, BdfDictionary> metadata,
+			Map<MessageId, BlogPostHeader> headers)
+			throws DbException, FormatException {
+
+		BlogPostHeader header = headers.get(id);
+		if (header != null) return header;
+		header = createPostHeader(txn, groupId, id, meta, authorInfos,
+				metadata, headers);
+		headers.put(id, header);
+		return header;
+	}
+
+	private BlogPostHeader createPostHeader(Transaction txn,
+			GroupId groupId, MessageId id, BdfDictionary meta,
+			Map<AuthorId, AuthorInfo> authorInfos,
+			Map<MessageId, BdfDictionary> metadata,
+			Map<MessageId, BlogPostHeader> headers)
 			throws DbException, FormatException {
 
 		MessageType type = getMessageType(meta);
@@ -622,8 +662,13 @@ class BlogManagerImpl extends BdfIncomingMessageHook implements BlogManager,
 		if (type == COMMENT || type == WRAPPED_COMMENT) {
 			String comment = meta.getOptionalString(KEY_COMMENT);
 			MessageId parentId = new MessageId(meta.getRaw(KEY_PARENT_MSG_ID));
-			BlogPostHeader parent =
-					getPostHeaderFromMetadata(txn, groupId, parentId);
+			BdfDictionary parentMeta = metadata.get(parentId);
+			if (parentMeta == null) {
+				parentMeta = clientHelper.getMessageMetadataAsDictionary(txn,
+						parentId);
+			}
+			BlogPostHeader parent = getPostHeaderFromMetadata(txn, groupId,
+					parentId, parentMeta, authorInfos, metadata, headers);
 			return new BlogCommentHeader(type, groupId, comment, parent, id,
 					timestamp, timeReceived, author, authorInfo, read);
 		} else {
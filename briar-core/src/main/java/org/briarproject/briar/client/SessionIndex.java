@@ -0,0 +1,107 @@
+package org.briarproject.briar.client;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.Pair;
+import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.NoSuchMessageException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.briar.api.client.SessionId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * An in-memory index from protocol sessions to the messages that store the
+ * sessions' metadata.
+ * <p>
+ * Looking up an indexed session loads the metadata of a single message,
+ * rather than querying the metadata of every message in the group. The
+ * metadata stored in the database is authoritative: if a session isn't
+ * indexed, or the indexed message no longer exists, the caller should fall
+ * back to a metadata query and add the result to the index.
+ */
+@ThreadSafe
+@NotNullByDefault
+public class SessionIndex {
+
+	private final ClientHelper clientHelper;
+	private final ConcurrentMap<GroupId, ConcurrentMap<SessionId, MessageId>>
+			storageIds = new ConcurrentHashMap<>();
+
+	public SessionIndex(ClientHelper clientHelper) {
+		this.clientHelper = clientHelper;
+	}
+
+	/**
+	 * Returns the storage ID and metadata of the given session, or null if
+	 * the session isn't indexed or the indexed message no longer exists.
+	 *
+	 * @param g The ID of the group containing the session's storage message
+	 */
+	@Nullable
+	public Pair<MessageId, BdfDictionary> getSession(Transaction txn,
+			GroupId g, SessionId s) throws DbException, FormatException {
+		ConcurrentMap<SessionId, MessageId> group = storageIds.get(g);
+		MessageId storageId = group == null ? null : group.get(s);
+		if (storageId == null) return null;
+		try {
+			BdfDictionary d =
+					clientHelper.getMessageMetadataAsDictionary(txn, storageId);
+			if (!d.isEmpty()) return new Pair<>(storageId, d);
+		} catch (NoSuchMessageException e) {
+			// The session has been deleted, or the transaction that
+			// created it was aborted
+		}
+		group.remove(s, storageId);
+		return null;
+	}
+
+	/**
+	 * Adds the given session to the index.
+	 *
+	 * @param g The ID of the group containing the session's storage message
+	 */
+	public void addSession(GroupId g, SessionId s, MessageId storageId) {
+		ConcurrentMap<SessionId, MessageId> group = storageIds.get(g);
+		if (group == null) {
+			group = new ConcurrentHashMap<>();
+			ConcurrentMap<SessionId, MessageId> existing =
+					storageIds.putIfAbsent(g, group);
+			if (existing != null) group = existing;
+		}
+		group.put(s, storageId);
+	}
+
+	/**
+	 * Removes the given session from the index.
+	 */
+	public void removeSession(GroupId g, SessionId s) {
+		ConcurrentMap<SessionId, MessageId> group = storageIds.get(g);
+		if (group != null) group.remove(s);
+	}
+
+	/**
+	 * Removes the session stored in the given message from the index.
+	 *
+	 * @param g The ID of the group containing the session's storage message
+	 */
+	public void removeStorageMessage(GroupId g, MessageId storageId) {
+		ConcurrentMap<SessionId, MessageId> group = storageIds.get(g);
+		if (group != null) group.values().remove(storageId);
+	}
+
+	/**
+	 * Removes all sessions stored in the given group from the index.
+	 */
+	public void removeGroup(GroupId g) {
+		storageIds.remove(g);
+	}
+}
@@ -0,0 +1,84 @@
+package org.briarproject.briar.client;
+
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.nullsafety.NotNullByDefault;
+
+import java.util.Comparator;
+
+import javax.annotation.Nullable;
+
+import static java.lang.System.arraycopy;
+import static org.briarproject.bramble.util.ByteUtils.INT_64_BYTES;
+
+/**
+ * Static methods for the materialised paths that place threaded posts in
+ * depth-first order.
+ * <p>
+ * The path of a post is the path of its parent, if any, followed by a
+ * segment containing the post's timestamp and the first bytes of its ID.
+ * Sorting posts by path puts each post after its parent and before its
+ * parent's later replies, with replies to the same parent sorted by
+ * timestamp. The path of a post never changes, so it can be stored when the
+ * post is added and a depth-first page of a thread can be read without
+ * building the thread's tree.
+ */
+@NotNullByDefault
+public class ThreadPath {
+
+	/**
+	 * The number of bytes of the message ID that are included in each
+	 * segment to break ties between posts with the same timestamp.
+	 */
+	private static final int ID_PREFIX_BYTES = 4;
+
+	/**
+	 * The length of each segment of a path in bytes.
+	 */
+	public static final int SEGMENT_LENGTH = INT_64_BYTES + ID_PREFIX_BYTES;
+
+	/**
+	 * Sorts paths into depth-first order.
+	 */
+	public static final Comparator<byte[]> DEPTH_FIRST_ORDER = (a, b) -> {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (diff != 0) return diff;
+		}
+		// A post's ancestors come before the post
+		return a.length - b.length;
+	};
+
+	private ThreadPath() {
+	}
+
+	/**
+	 * Returns the path of a post with the given timestamp and ID.
+	 *
+	 * @param parentPath the path of the post's parent, or null if the post
+	 * has no parent
+	 */
+	public static byte[] getPath(@Nullable byte[] parentPath, long timestamp,
+			MessageId id) {
+		int parentLength = parentPath == null ? 0 : parentPath.length;
+		byte[] path = new byte[parentLength + SEGMENT_LENGTH];
+		if (parentPath != null) arraycopy(parentPath, 0, path, 0, parentLength);
+		// Flip the sign bit so negative timestamps sort before positive ones
+		long key = timestamp ^ Long.MIN_VALUE;
+		for (int i = 0; i < INT_64_BYTES; i++)
+			path[parentLength + i] = (byte) (key >>> (56 - i * 8));
+		arraycopy(id.getBytes(), 0, path, parentLength + INT_64_BYTES,
+				ID_PREFIX_BYTES);
+		return path;
+	}
+
+	/**
+	 * Returns the depth of the post with the given path, where posts without
+	 * parents have depth zero.
+	 */
+	public static int getDepth(byte[] path) {
+		if (path.length == 0 || path.length % SEGMENT_LENGTH != 0)
+			throw new IllegalArgumentException();
+		return path.length / SEGMENT_LENGTH - 1;
+	}
+}
@@ -1,7 +1,9 @@
 package org.briarproject.briar.conversation;
 
 import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.contact.Contact;
 import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.contact.ContactManager.ContactHook;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
 import org.briarproject.bramble.api.db.Transaction;
@@ -20,10 +22,13 @@ import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
@@ -31,7 +36,7 @@ import static java.lang.Math.max;
 
 @ThreadSafe
 @NotNullByDefault
-class ConversationManagerImpl implements ConversationManager {
+class ConversationManagerImpl implements ConversationManager, ContactHook {
 
 	private final DatabaseComponent db;
 	private final MessageTracker messageTracker;
@@ -39,6 +44,28 @@ class ConversationManagerImpl implements ConversationManager {
 	private final ClientHelper clientHelper;
 	private final Set<ConversationClient> clients;
 
+	private final Object lock = new Object();
+
+	/**
+	 * The unified group count of each contact, summed over all clients.
+	 * Entries are updated incrementally when messages are tracked or marked
+	 * as read, and reloaded from the clients after any other change.
+	 */
+	@GuardedBy("lock")
+	private final Map<ContactId, GroupCount> groupCounts = new HashMap<>();
+
+	/**
+	 * Replaced for a contact whenever the contact's group count changes,
+	 * so that entries computed before the change are not cached afterwards.
+	 * Generations are never reused, so the entry for a contact can be
+	 * removed along with the contact.
+	 */
+	@GuardedBy("lock")
+	private final Map<ContactId, Long> generations = new HashMap<>();
+
+	@GuardedBy("lock")
+	private long nextGeneration = 0;
+
 	@Inject
 	ConversationManagerImpl(DatabaseComponent db, MessageTracker messageTracker,
 			Clock clock, ClientHelper clientHelper) {
@@ -72,6 +99,30 @@ class ConversationManagerImpl implements ConversationManager {
 		return messages;
 	}
 
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long minTimeReceived)
+			throws DbException {
+		List<ConversationMessageHeader> messages = new ArrayList<>();
+		for (ConversationClient client : clients) {
+			messages.addAll(
+					client.getMessageHeaders(txn, c, minTimeReceived));
+		}
+		return messages;
+	}
+
+	@Override
+	public Map<MessageId, Long> getMessageTimesReceived(Transaction txn,
+			ContactId c, long minTimeReceived) throws DbException {
+		Contact contact = db.getContact(txn, c);
+		Map<MessageId, Long> times = new HashMap<>();
+		for (ConversationClient client : clients) {
+			GroupId g = client.getContactGroup(contact).getId();
+			times.putAll(db.getMessageTimesReceived(txn, g, minTimeReceived));
+		}
+		return times;
+	}
+
 	@Override
 	public GroupCount getGroupCount(ContactId contactId) throws DbException {
 		return db.transactionWithResult(true,
@@ -81,6 +132,39 @@ class ConversationManagerImpl implements ConversationManager {
 	@Override
 	public GroupCount getGroupCount(Transaction txn, ContactId contactId)
 			throws DbException {
+		long generation;
+		synchronized (lock) {
+			GroupCount cached = groupCounts.get(contactId);
+			if (cached != null) return cached;
+			generation = getGeneration(contactId);
+		}
+		GroupCount count = loadGroupCount(txn, contactId);
+		if (txn.isReadOnly()) {
+			cacheGroupCount(contactId, generation, count);
+		} else {
+			// The count may include uncommitted changes
+			txn.attach(() -> cacheGroupCount(contactId, generation, count));
+		}
+		return count;
+	}
+
+	@Override
+	public Map<ContactId, GroupCount> getGroupCounts(
+			Collection<ContactId> contacts) throws DbException {
+		return db.transactionWithResult(true,
+				txn -> getGroupCounts(txn, contacts));
+	}
+
+	@Override
+	public Map<ContactId, GroupCount> getGroupCounts(Transaction txn,
+			Collection<ContactId> contacts) throws DbException {
+		Map<ContactId, GroupCount> counts = new HashMap<>();
+		for (ContactId c : contacts) counts.put(c, getGroupCount(txn, c));
+		return counts;
+	}
+
+	private GroupCount loadGroupCount(Transaction txn, ContactId contactId)
+			throws DbException {
 		int msgCount = 0, unreadCount = 0;
 		long latestTime = 0;
 		for (ConversationClient client : clients) {
@@ -93,13 +177,88 @@ class ConversationManagerImpl implements ConversationManager {
 		return new GroupCount(msgCount, unreadCount, latestTime);
 	}
 
+	@GuardedBy("lock")
+	private long getGeneration(ContactId c) {
+		Long generation = generations.get(c);
+		if (generation == null) {
+			generation = nextGeneration++;
+			generations.put(c, generation);
+		}
+		return generation;
+	}
+
+	/**
+	 * Removes the given contact's group count from the cache and returns
+	 * the contact's new generation.
+	 */
+	@GuardedBy("lock")
+	private long removeGroupCount(ContactId c) {
+		groupCounts.remove(c);
+		long generation = nextGeneration++;
+		generations.put(c, generation);
+		return generation;
+	}
+
+	private void cacheGroupCount(ContactId c, long generation,
+			GroupCount count) {
+		synchronized (lock) {
+			// Don't cache the count if the contact has been removed
+			Long current = generations.get(c);
+			if (current != null && current == generation)
+				groupCounts.put(c, count);
+		}
+	}
+
+	/**
+	 * Applies a change to the given contact's cached group count when the
+	 * transaction commits. If the contact's group count isn't cached, or
+	 * changes again before the transaction commits, it will be reloaded
+	 * from the clients when it's next needed.
+	 */
+	private void updateGroupCount(Transaction txn, ContactId c, int msgDelta,
+			int unreadDelta, long timestamp) {
+		GroupCount updated;
+		long generation;
+		synchronized (lock) {
+			GroupCount old = groupCounts.get(c);
+			generation = removeGroupCount(c);
+			if (old == null) return;
+			updated = new GroupCount(old.getMsgCount() + msgDelta,
+					old.getUnreadCount() + unreadDelta,
+					max(old.getLatestMsgTime(), timestamp));
+		}
+		txn.attach(() -> cacheGroupCount(c, generation, updated));
+	}
+
+	private void invalidateGroupCount(ContactId c) {
+		synchronized (lock) {
+			removeGroupCount(c);
+		}
+	}
+
+	@Override
+	public void addingContact(Transaction txn, Contact c) {
+		// Nothing to do until the clients have created the contact groups
+	}
+
+	@Override
+	public void removingContact(Transaction txn, Contact c) {
+		// Any pending updates will be discarded, as the contact no longer
+		// has a generation
+		synchronized (lock) {
+			groupCounts.remove(c.getId());
+			generations.remove(c.getId());
+		}
+	}
+
 	@Override
 	public void trackIncomingMessage(Transaction txn, Message m)
 			throws DbException {
 		messageTracker.trackIncomingMessage(txn, m);
+		ContactId c = clientHelper.getContactId(txn, m.getGroupId());
+		updateGroupCount(txn, c, 1, 1, m.getTimestamp());
 		Event e = new ConversationMessageTrackedEvent(
-				m.getTimestamp(), false,
-				clientHelper.getContactId(txn, m.getGroupId()));
+				m.getTimestamp(), false, c);
 		txn.attach(e);
 	}
 
@@ -107,9 +266,10 @@ class ConversationManagerImpl implements ConversationManager {
 	public void trackOutgoingMessage(Transaction txn, Message m)
 			throws DbException {
 		messageTracker.trackOutgoingMessage(txn, m);
+		ContactId c = clientHelper.getContactId(txn, m.getGroupId());
+		updateGroupCount(txn, c, 1, 0, m.getTimestamp());
 		Event e = new ConversationMessageTrackedEvent(
-				m.getTimestamp(), true,
-				clientHelper.getContactId(txn, m.getGroupId()));
+				m.getTimestamp(), true, c);
 		txn.attach(e);
 	}
 
@@ -118,11 +278,19 @@ class ConversationManagerImpl implements ConversationManager {
 			boolean read)
 			throws DbException {
 		messageTracker.trackMessage(txn, g, timestamp, read);
-		Event e = new ConversationMessageTrackedEvent(
-				timestamp, read, clientHelper.getContactId(txn, g));
+		ContactId c = clientHelper.getContactId(txn, g);
+		updateGroupCount(txn, c, 1, read ? 0 : 1, timestamp);
+		Event e = new ConversationMessageTrackedEvent(timestamp, read, c);
 		txn.attach(e);
 	}
 
+	@Override
+	public void resetGroupCount(Transaction txn, GroupId g, int msgCount,
+			int unreadCount) throws DbException {
+		messageTracker.resetGroupCount(txn, g, msgCount, unreadCount);
+		invalidateGroupCount(clientHelper.getContactId(txn, g));
+	}
+
 	@Override
 	public void setReadFlag(GroupId g, MessageId m, boolean read)
 			throws DbException {
@@ -133,6 +301,10 @@ class ConversationManagerImpl implements ConversationManager {
 	public void setReadFlag(Transaction txn, GroupId g, MessageId m, boolean read)
 			throws DbException {
 		boolean wasRead = messageTracker.setReadFlag(txn, g, m, read);
+		if (read != wasRead) {
+			ContactId c = clientHelper.getContactId(txn, g);
+			updateGroupCount(txn, c, 0, read ? -1 : 1, 0);
+		}
 		if (read && !wasRead) db.startCleanupTimer(txn, m);
 	}
 
@@ -157,6 +329,7 @@ class ConversationManagerImpl implements ConversationManager {
 		for (ConversationClient client : clients) {
 			result.addDeletionResult(client.deleteAllMessages(txn, c));
 		}
+		invalidateGroupCount(c);
 		return result;
 	}
 
@@ -176,6 +349,7 @@ class ConversationManagerImpl implements ConversationManager {
 			idSet.retainAll(toDelete);
 			result.addDeletionResult(client.deleteMessages(txn, c, idSet));
 		}
+		invalidateGroupCount(c);
 		return result;
 	}
 
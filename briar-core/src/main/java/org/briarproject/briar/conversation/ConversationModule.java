@@ -1,5 +1,6 @@
 package org.briarproject.briar.conversation;
 
+import org.briarproject.bramble.api.contact.ContactManager;
 import org.briarproject.briar.api.conversation.ConversationManager;
 
 import javax.inject.Inject;
@@ -19,7 +20,9 @@ public class ConversationModule {
 	@Provides
 	@Singleton
 	ConversationManager provideConversationManager(
+			ContactManager contactManager,
 			ConversationManagerImpl conversationManager) {
+		contactManager.registerContactHook(conversationManager);
 		return conversationManager;
 	}
 }
@@ -18,10 +18,18 @@ interface FeedFactory {
 
 	/**
 	 * Creates a new updated feed, based on the given existing feed,
-	 * new metadata from the given {@link SyndFeed}
-	 * and the time of the last feed entry.
+	 * new metadata from the given {@link SyndFeed},
+	 * the time of the last feed entry
+	 * and the HTTP validators of the response the feed was fetched from.
 	 */
-	Feed updateFeed(Feed feed, SyndFeed sf, long lastEntryTime);
+	Feed updateFeed(Feed feed, SyndFeed sf, long lastEntryTime,
+			@Nullable String eTag, @Nullable String lastModified);
+
+	/**
+	 * Creates a new updated feed, based on the given existing feed,
+	 * which has not changed since it was last fetched.
+	 */
+	Feed updateUnchangedFeed(Feed feed);
 
 	/**
 	 * De-serializes a {@link BdfDictionary} into a {@link Feed}.
@@ -26,7 +26,9 @@ import static org.briarproject.bramble.util.StringUtils.truncateUtf8;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_ADDED;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_AUTHOR;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_DESC;
+import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_ETAG;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_LAST_ENTRY;
+import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_LAST_MODIFIED;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_PRIVATE_KEY;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_RSS_AUTHOR;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEED_RSS_LINK;
@@ -67,14 +69,24 @@ class FeedFactoryImpl implements FeedFactory {
 	}
 
 	@Override
-	public Feed updateFeed(Feed feed, SyndFeed sf, long lastEntryTime) {
+	public Feed updateFeed(Feed feed, SyndFeed sf, long lastEntryTime,
+			@Nullable String eTag, @Nullable String lastModified) {
 		long updated = clock.currentTimeMillis();
 		String url = feed.getProperties().getUrl();
 		// Update the RSS properties
 		RssProperties properties = new RssProperties(url, sf.getTitle(),
 				sf.getDescription(), sf.getAuthor(), sf.getLink(), sf.getUri());
 		return new Feed(feed.getBlog(), feed.getLocalAuthor(), properties,
-				feed.getAdded(), updated, lastEntryTime);
+				feed.getAdded(), updated, lastEntryTime, eTag, lastModified);
+	}
+
+	@Override
+	public Feed updateUnchangedFeed(Feed feed) {
+		long updated = clock.currentTimeMillis();
+		return new Feed(feed.getBlog(), feed.getLocalAuthor(),
+				feed.getProperties(), feed.getAdded(), updated,
+				feed.getLastEntryTime(), feed.getETag(),
+				feed.getLastModified());
 	}
 
 	@Override
@@ -101,9 +113,11 @@ class FeedFactoryImpl implements FeedFactory {
 		long added = d.getLong(KEY_FEED_ADDED, 0L);
 		long updated = d.getLong(KEY_FEED_UPDATED, 0L);
 		long lastEntryTime = d.getLong(KEY_FEED_LAST_ENTRY, 0L);
+		String eTag = d.getOptionalString(KEY_FEED_ETAG);
+		String lastModified = d.getOptionalString(KEY_FEED_LAST_MODIFIED);
 
 		return new Feed(blog, localAuthor, properties, added, updated,
-				lastEntryTime);
+				lastEntryTime, eTag, lastModified);
 	}
 
 	@Override
@@ -130,6 +144,10 @@ class FeedFactoryImpl implements FeedFactory {
 			d.put(KEY_FEED_RSS_LINK, properties.getLink());
 		if (properties.getUri() != null)
 			d.put(KEY_FEED_RSS_URI, properties.getUri());
+		if (feed.getETag() != null)
+			d.put(KEY_FEED_ETAG, feed.getETag());
+		if (feed.getLastModified() != null)
+			d.put(KEY_FEED_LAST_MODIFIED, feed.getLastModified());
 		return d;
 	}
 
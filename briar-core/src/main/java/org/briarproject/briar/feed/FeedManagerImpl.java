@@ -52,6 +52,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
@@ -65,6 +68,7 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.sort;
 import static java.util.logging.Level.WARNING;
@@ -78,6 +82,7 @@ import static org.briarproject.briar.api.feed.FeedConstants.FETCH_DELAY_INITIAL;
 import static org.briarproject.briar.api.feed.FeedConstants.FETCH_INTERVAL;
 import static org.briarproject.briar.api.feed.FeedConstants.FETCH_UNIT;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEEDS;
+import static org.briarproject.briar.api.feed.FeedConstants.MAX_CONCURRENT_FETCHES;
 import static org.briarproject.briar.util.HtmlUtils.cleanAll;
 import static org.briarproject.briar.util.HtmlUtils.cleanArticle;
 
@@ -89,6 +94,12 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 	private static final Logger LOG =
 			getLogger(FeedManagerImpl.class.getName());
 
+	// HTTP headers for conditional requests
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
 	private final TaskScheduler scheduler;
 	private final Executor ioExecutor;
 	private final DatabaseComponent db;
@@ -172,18 +183,22 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 	@Override
 	public Feed addFeed(String url) throws DbException, IOException {
 		// fetch feed to get posts and metadata
-		SyndFeed sf = fetchAndCleanFeed(url);
-		return addFeed(url, sf);
+		Response response = getFeedResponse(url, null, null);
+		SyndFeed sf = fetchAndCleanFeed(getFeedInputStream(response));
+		return addFeed(url, sf, response.header(ETAG),
+				response.header(LAST_MODIFIED));
 	}
 
 	@Override
 	public Feed addFeed(InputStream in) throws DbException, IOException {
 		// fetch feed to get posts and metadata
 		SyndFeed sf = fetchAndCleanFeed(in);
-		return addFeed(null, sf);
+		return addFeed(null, sf, null, null);
 	}
 
-	private Feed addFeed(@Nullable String url, SyndFeed sf) throws DbException {
+	private Feed addFeed(@Nullable String url, SyndFeed sf,
+			@Nullable String eTag, @Nullable String lastModified)
+			throws DbException {
 		// extract properties from the feed
 		RssProperties properties = new RssProperties(url, sf.getTitle(),
 				sf.getDescription(), sf.getAuthor(), sf.getLink(), sf.getUri());
@@ -208,14 +223,8 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 			feed = matched;
 		}
 
-		// post entries
-		long lastEntryTime = postFeedEntries(feed, sf.getEntries());
-		Feed updatedFeed = feedFactory.updateFeed(feed, sf, lastEntryTime);
-
-		// store feed metadata again to also store last entry time
-		updateFeeds(singletonList(updatedFeed));
-
-		return updatedFeed;
+		// post entries and store the last entry time
+		return postFeedEntries(feed, sf, eTag, lastModified);
 	}
 
 	@Override
@@ -289,17 +298,20 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 	 * have been removed from the list.
 	 */
 	private void updateFeeds(List<Feed> updatedFeeds) throws DbException {
+		db.transaction(false, txn -> updateFeeds(txn, updatedFeeds));
+	}
+
+	private void updateFeeds(Transaction txn, List<Feed> updatedFeeds)
+			throws DbException {
 		Map<GroupId, Feed> updatedMap = new HashMap<>();
 		for (Feed feed : updatedFeeds) updatedMap.put(feed.getBlogId(), feed);
-		db.transaction(false, txn -> {
-			List<Feed> feeds = getFeeds(txn);
-			ListIterator<Feed> it = feeds.listIterator();
-			while (it.hasNext()) {
-				Feed updated = updatedMap.get(it.next().getBlogId());
-				if (updated != null) it.set(updated);
-			}
-			storeFeeds(txn, feeds);
-		});
+		List<Feed> feeds = getFeeds(txn);
+		ListIterator<Feed> it = feeds.listIterator();
+		while (it.hasNext()) {
+			Feed updated = updatedMap.get(it.next().getBlogId());
+			if (updated != null) it.set(updated);
+		}
+		storeFeeds(txn, feeds);
 	}
 
 	/**
@@ -330,34 +342,79 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 			return;
 		}
 
-		// Fetch and update all feeds
-		List<Feed> updatedFeeds = new ArrayList<>(feeds.size());
-		for (Feed feed : feeds) {
+		// Fetch and update all feeds, a few at a time. Each fetcher takes
+		// feeds from the queue until it's empty. Feeds with new content are
+		// stored by the fetchers, unchanged feeds are stored together below
+		Queue<Feed> queue = new ConcurrentLinkedQueue<>(feeds);
+		Queue<Feed> unchangedFeeds = new ConcurrentLinkedQueue<>();
+		int fetchers = Math.min(feeds.size(), MAX_CONCURRENT_FETCHES);
+		CountDownLatch latch = new CountDownLatch(fetchers);
+		Runnable fetcher = () -> {
 			try {
-				String url = feed.getProperties().getUrl();
-				if (url == null) continue;
-				// fetch and clean feed
-				SyndFeed sf = fetchAndCleanFeed(url);
-				// sort and add new entries
-				long lastEntryTime = postFeedEntries(feed, sf.getEntries());
-				updatedFeeds.add(
-						feedFactory.updateFeed(feed, sf, lastEntryTime));
-			} catch (IOException | DbException e) {
+				Feed feed;
+				while ((feed = queue.poll()) != null) {
+					Feed unchanged = fetchFeed(feed);
+					if (unchanged != null) unchangedFeeds.add(unchanged);
+				}
+			} finally {
+				latch.countDown();
+			}
+		};
+		// This thread is one of the fetchers
+		for (int i = 1; i < fetchers; i++) ioExecutor.execute(fetcher);
+		fetcher.run();
+		boolean interrupted = false;
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted while fetching RSS feeds");
+			interrupted = true;
+		}
+
+		// Store the unchanged feeds that have been fetched so far
+		List<Feed> unchanged = new ArrayList<>(unchangedFeeds);
+		if (!unchanged.isEmpty()) {
+			try {
+				updateFeeds(unchanged);
+			} catch (DbException e) {
 				logException(LOG, WARNING, e);
 			}
 		}
+		if (interrupted) Thread.currentThread().interrupt();
+		else LOG.info("Done updating RSS feeds");
+	}
 
-		// Store updated feeds
+	/**
+	 * Fetches the given feed. If the feed has changed, any new entries are
+	 * posted and the updated feed is stored, and null is returned.
+	 * <p>
+	 * If the feed has not changed since it was last fetched, it is not
+	 * downloaded or parsed again, and the feed is returned with its update
+	 * time changed so the caller can store it. Null is also returned if
+	 * the feed could not be fetched.
+	 */
+	@Nullable
+	private Feed fetchFeed(Feed feed) {
+		String url = feed.getProperties().getUrl();
+		if (url == null) return null;
 		try {
-			updateFeeds(updatedFeeds);
-		} catch (DbException e) {
+			Response response = getFeedResponse(url, feed.getETag(),
+					feed.getLastModified());
+			if (response.code() == HTTP_NOT_MODIFIED) {
+				response.close();
+				LOG.info("RSS feed has not changed");
+				return feedFactory.updateUnchangedFeed(feed);
+			}
+			// fetch and clean feed
+			SyndFeed sf = fetchAndCleanFeed(getFeedInputStream(response));
+			// sort and add new entries
+			postFeedEntries(feed, sf, response.header(ETAG),
+					response.header(LAST_MODIFIED));
+			return null;
+		} catch (IOException | DbException e) {
 			logException(LOG, WARNING, e);
+			return null;
 		}
-		LOG.info("Done updating RSS feeds");
-	}
-
-	private SyndFeed fetchAndCleanFeed(String url) throws IOException {
-		return fetchAndCleanFeed(getFeedInputStream(url));
 	}
 
 	private SyndFeed fetchAndCleanFeed(InputStream in) throws IOException {
@@ -390,15 +447,26 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 		return sf;
 	}
 
-	private InputStream getFeedInputStream(String url) throws IOException {
+	/**
+	 * Requests the given feed. If an entity tag or last modified date is
+	 * given, the request is conditional, and the server may respond with
+	 * 304 Not Modified if the feed has not changed.
+	 */
+	private Response getFeedResponse(String url, @Nullable String eTag,
+			@Nullable String lastModified) throws IOException {
 		// Build Request
-		Request request = new Request.Builder()
-				.url(url)
-				.build();
+		Request.Builder builder = new Request.Builder().url(url);
+		if (eTag != null) builder.header(IF_NONE_MATCH, eTag);
+		if (lastModified != null)
+			builder.header(IF_MODIFIED_SINCE, lastModified);
 
 		// Execute Request
 		OkHttpClient client = httpClientProvider.get();
-		Response response = client.newCall(request).execute();
+		return client.newCall(builder.build()).execute();
+	}
+
+	private InputStream getFeedInputStream(Response response)
+			throws IOException {
 		ResponseBody body = response.body();
 		if (body != null) return body.byteStream();
 		throw new IOException("Empty response body");
@@ -414,33 +482,47 @@ class FeedManagerImpl implements FeedManager, EventListener, OpenDatabaseHook,
 		}
 	}
 
-	private long postFeedEntries(Feed feed, List<SyndEntry> entries)
-			throws DbException {
-
+	/**
+	 * Posts any new entries of the given feed and returns the updated feed.
+	 * The updated feed, including its last entry time, is stored in the
+	 * same transaction as the new entries, so the entries won't be posted
+	 * again if the fetch is interrupted before the other feeds are stored.
+	 */
+	private Feed postFeedEntries(Feed feed, SyndFeed sf, @Nullable String eTag,
+			@Nullable String lastModified) throws DbException {
 		return db.transactionWithResult(false, txn -> {
-			long lastEntryTime = feed.getLastEntryTime();
-			//noinspection Java8ListSort
-			sort(entries, getEntryComparator());
-			for (SyndEntry entry : entries) {
-				long entryTime;
-				if (entry.getPublishedDate() != null) {
-					entryTime = entry.getPublishedDate().getTime();
-				} else if (entry.getUpdatedDate() != null) {
-					entryTime = entry.getUpdatedDate().getTime();
-				} else {
-					// no time information available, ignore this entry
-					LOG.warning("Entry has no date, ignored.");
-					continue;
-				}
-				if (entryTime > feed.getLastEntryTime()) {
-					postEntry(txn, feed, entry);
-					if (entryTime > lastEntryTime) lastEntryTime = entryTime;
-				}
-			}
-			return lastEntryTime;
+			long lastEntryTime = postFeedEntries(txn, feed, sf.getEntries());
+			Feed updated = feedFactory.updateFeed(feed, sf, lastEntryTime,
+					eTag, lastModified);
+			updateFeeds(txn, singletonList(updated));
+			return updated;
 		});
 	}
 
+	private long postFeedEntries(Transaction txn, Feed feed,
+			List<SyndEntry> entries) throws DbException {
+		long lastEntryTime = feed.getLastEntryTime();
+		//noinspection Java8ListSort
+		sort(entries, getEntryComparator());
+		for (SyndEntry entry : entries) {
+			long entryTime;
+			if (entry.getPublishedDate() != null) {
+				entryTime = entry.getPublishedDate().getTime();
+			} else if (entry.getUpdatedDate() != null) {
+				entryTime = entry.getUpdatedDate().getTime();
+			} else {
+				// no time information available, ignore this entry
+				LOG.warning("Entry has no date, ignored.");
+				continue;
+			}
+			if (entryTime > feed.getLastEntryTime()) {
+				postEntry(txn, feed, entry);
+				if (entryTime > lastEntryTime) lastEntryTime = entryTime;
+			}
+		}
+		return lastEntryTime;
+	}
+
 	private void postEntry(Transaction txn, Feed feed, SyndEntry entry) {
 		LOG.info("Adding new entry...");
 
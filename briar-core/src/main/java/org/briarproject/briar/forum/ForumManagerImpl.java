@@ -8,10 +8,12 @@ import org.briarproject.bramble.api.data.BdfList;
 import org.briarproject.bramble.api.data.MetadataParser;
 import org.briarproject.bramble.api.db.DatabaseComponent;
 import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.NoSuchMessageException;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.identity.Author;
 import org.briarproject.bramble.api.identity.AuthorId;
 import org.briarproject.bramble.api.identity.LocalAuthor;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager.OpenDatabaseHook;
 import org.briarproject.bramble.api.sync.Group;
 import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
@@ -46,15 +48,20 @@ import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_SHARE;
+import static org.briarproject.briar.api.forum.ForumConstants.GROUP_KEY_SORT_KEYS_STORED;
 import static org.briarproject.briar.api.forum.ForumConstants.KEY_AUTHOR;
 import static org.briarproject.briar.api.forum.ForumConstants.KEY_LOCAL;
 import static org.briarproject.briar.api.forum.ForumConstants.KEY_PARENT;
+import static org.briarproject.briar.api.forum.ForumConstants.KEY_THREAD_PATH;
 import static org.briarproject.briar.api.forum.ForumConstants.KEY_TIMESTAMP;
 import static org.briarproject.briar.client.MessageTrackerConstants.MSG_KEY_READ;
+import static org.briarproject.briar.client.ThreadPath.getDepth;
+import static org.briarproject.briar.client.ThreadPath.getPath;
 
 @ThreadSafe
 @NotNullByDefault
-class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
+class ForumManagerImpl extends BdfIncomingMessageHook
+		implements ForumManager, OpenDatabaseHook {
 
 	private final AuthorManager authorManager;
 	private final ForumFactory forumFactory;
@@ -75,6 +82,52 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 		removeHooks = new CopyOnWriteArrayList<>();
 	}
 
+	@Override
+	public void onDatabaseOpened(Transaction txn) throws DbException {
+		// Store the sort keys of any posts that were added before sort keys
+		// were stored
+		try {
+			for (Group g : db.getGroups(txn, CLIENT_ID, MAJOR_VERSION)) {
+				BdfDictionary groupMeta =
+						clientHelper.getGroupMetadataAsDictionary(txn,
+								g.getId());
+				if (groupMeta.getBoolean(GROUP_KEY_SORT_KEYS_STORED, false))
+					continue;
+				storeSortKeys(txn, g.getId());
+			}
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	/**
+	 * Stores the thread paths and sort keys of all posts in the given forum
+	 * and records that the sort keys have been stored.
+	 */
+	private void storeSortKeys(Transaction txn, GroupId g)
+			throws DbException, FormatException {
+		Map<MessageId, BdfDictionary> metadata =
+				clientHelper.getMessageMetadataAsDictionary(txn, g);
+		Map<MessageId, byte[]> paths = getThreadPaths(metadata);
+		for (Entry<MessageId, byte[]> e : paths.entrySet()) {
+			MessageId m = e.getKey();
+			if (!metadata.get(m).containsKey(KEY_THREAD_PATH)) {
+				BdfDictionary d = new BdfDictionary();
+				d.put(KEY_THREAD_PATH, e.getValue());
+				clientHelper.mergeMessageMetadata(txn, m, d);
+			}
+			db.setMessageSortKey(txn, m, e.getValue());
+		}
+		setSortKeysStored(txn, g);
+	}
+
+	private void setSortKeysStored(Transaction txn, GroupId g)
+			throws DbException, FormatException {
+		BdfDictionary d = new BdfDictionary();
+		d.put(GROUP_KEY_SORT_KEYS_STORED, true);
+		clientHelper.mergeGroupMetadata(txn, g, d);
+	}
+
 	@Override
 	protected DeliveryAction incomingMessage(Transaction txn, Message m,
 			BdfList body, BdfDictionary meta)
@@ -82,7 +135,9 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 
 		messageTracker.trackIncomingMessage(txn, m);
 
-		ForumPostHeader header = getForumPostHeader(txn, m.getId(), meta);
+		byte[] path = storeThreadPath(txn, m.getId(), meta);
+		ForumPostHeader header =
+				getForumPostHeader(txn, m.getId(), meta, path);
 		String text = getPostText(body);
 		ForumPostReceivedEvent event =
 				new ForumPostReceivedEvent(m.getGroupId(), header, text);
@@ -94,13 +149,20 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 	@Override
 	public Forum addForum(String name) throws DbException {
 		Forum f = forumFactory.createForum(name);
-		db.transaction(false, txn -> db.addGroup(txn, f.getGroup()));
+		db.transaction(false, txn -> addForum(txn, f));
 		return f;
 	}
 
 	@Override
 	public void addForum(Transaction txn, Forum f) throws DbException {
+		if (db.containsGroup(txn, f.getId())) return;
 		db.addGroup(txn, f.getGroup());
+		// The forum has no posts yet, so there are no sort keys to store
+		try {
+			setSortKeysStored(txn, f.getId());
+		} catch (FormatException e) {
+			throw new AssertionError(e);
+		}
 	}
 
 	@Override
@@ -144,13 +206,26 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 			meta.put(KEY_AUTHOR, clientHelper.toList(a));
 			meta.put(KEY_LOCAL, true);
 			meta.put(MSG_KEY_READ, true);
+			byte[] parentPath = null;
+			if (p.getParent() != null) {
+				try {
+					parentPath = getStoredThreadPath(txn, p.getParent());
+				} catch (NoSuchMessageException e) {
+					// The parent hasn't been added yet, so treat the post
+					// as the start of a thread
+				}
+			}
+			byte[] path = getPath(parentPath, p.getMessage().getTimestamp(),
+					p.getMessage().getId());
+			meta.put(KEY_THREAD_PATH, path);
 			clientHelper
 					.addLocalMessage(txn, p.getMessage(), meta, true, false);
+			db.setMessageSortKey(txn, p.getMessage().getId(), path);
 			messageTracker.trackOutgoingMessage(txn, p.getMessage());
 			AuthorInfo authorInfo = authorManager.getMyAuthorInfo(txn);
 			return new ForumPostHeader(p.getMessage().getId(), p.getParent(),
 					p.getMessage().getTimestamp(), p.getAuthor(), authorInfo,
-					true);
+					true, getDepth(path));
 		} catch (FormatException e) {
 			throw new AssertionError(e);
 		}
@@ -221,26 +296,59 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 	public List<ForumPostHeader> getPostHeaders(Transaction txn, GroupId g)
 			throws DbException {
 		try {
-			List<ForumPostHeader> headers = new ArrayList<>();
 			Map<MessageId, BdfDictionary> metadata =
 					clientHelper.getMessageMetadataAsDictionary(txn, g);
-			// get all authors we need to get the info for
-			Set<AuthorId> authors = new HashSet<>();
+			Map<MessageId, byte[]> paths = getThreadPaths(metadata);
+			Map<AuthorId, AuthorInfo> authorInfos =
+					getAuthorInfos(txn, metadata.values());
+			// Parse the metadata
+			List<ForumPostHeader> headers = new ArrayList<>(metadata.size());
 			for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
-				BdfList authorList = entry.getValue().getList(KEY_AUTHOR);
-				Author a = clientHelper.parseAndValidateAuthor(authorList);
-				authors.add(a.getId());
+				MessageId m = entry.getKey();
+				headers.add(getForumPostHeader(txn, m, entry.getValue(),
+						paths.get(m), authorInfos));
 			}
-			// get information for all authors
-			Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
-			for (AuthorId id : authors) {
-				authorInfos.put(id, authorManager.getAuthorInfo(txn, id));
+			return headers;
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public List<ForumPostHeader> getPostHeadersInThreadOrder(GroupId g,
+			@Nullable MessageId after, int limit) throws DbException {
+		return db.transactionWithResult(true, txn ->
+				getPostHeadersInThreadOrder(txn, g, after, limit));
+	}
+
+	@Override
+	public List<ForumPostHeader> getPostHeadersInThreadOrder(Transaction txn,
+			GroupId g, @Nullable MessageId after, int limit)
+			throws DbException {
+		// The thread paths are stored as sort keys, so the page can be read
+		// from the index without loading the rest of the forum
+		byte[] afterPath = null;
+		if (after != null) {
+			if (!db.getGroupId(txn, after).equals(g))
+				throw new NoSuchMessageException();
+			afterPath = db.getMessageSortKey(txn, after);
+			if (afterPath == null) throw new NoSuchMessageException();
+		}
+		List<MessageId> page =
+				db.getMessageIdsInSortOrder(txn, g, afterPath, limit);
+		try {
+			List<BdfDictionary> pageMetadata = new ArrayList<>(page.size());
+			for (MessageId m : page) {
+				pageMetadata.add(
+						clientHelper.getMessageMetadataAsDictionary(txn, m));
 			}
-			// Parse the metadata
-			for (Entry<MessageId, BdfDictionary> entry : metadata.entrySet()) {
-				BdfDictionary meta = entry.getValue();
-				headers.add(getForumPostHeader(txn, entry.getKey(), meta,
-						authorInfos));
+			Map<AuthorId, AuthorInfo> authorInfos =
+					getAuthorInfos(txn, pageMetadata);
+			List<ForumPostHeader> headers = new ArrayList<>(page.size());
+			for (int i = 0; i < page.size(); i++) {
+				BdfDictionary meta = pageMetadata.get(i);
+				headers.add(getForumPostHeader(txn, page.get(i), meta,
+						meta.getRaw(KEY_THREAD_PATH), authorInfos));
 			}
 			return headers;
 		} catch (FormatException e) {
@@ -248,6 +356,90 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 		}
 	}
 
+	private Map<AuthorId, AuthorInfo> getAuthorInfos(Transaction txn,
+			Collection<BdfDictionary> metadata)
+			throws DbException, FormatException {
+		// get all authors we need to get the info for
+		Set<AuthorId> authors = new HashSet<>();
+		for (BdfDictionary meta : metadata) {
+			BdfList authorList = meta.getList(KEY_AUTHOR);
+			Author a = clientHelper.parseAndValidateAuthor(authorList);
+			authors.add(a.getId());
+		}
+		// get information for all authors
+		return authorManager.getAuthorInfos(txn, authors);
+	}
+
+	/**
+	 * Returns the thread paths of the posts with the given metadata. Paths
+	 * are computed, but not stored, for any posts that were added before
+	 * paths were stored.
+	 */
+	private Map<MessageId, byte[]> getThreadPaths(
+			Map<MessageId, BdfDictionary> metadata) throws FormatException {
+		Map<MessageId, byte[]> paths = new HashMap<>(metadata.size());
+		for (MessageId m : metadata.keySet()) {
+			if (paths.containsKey(m)) continue;
+			// Walk up the thread until we reach a post with a known path
+			List<MessageId> missing = new ArrayList<>();
+			byte[] parentPath = null;
+			MessageId current = m;
+			while (current != null) {
+				parentPath = paths.get(current);
+				if (parentPath != null) break;
+				BdfDictionary meta = metadata.get(current);
+				if (meta == null) break; // Parent is not in the forum
+				parentPath = meta.getOptionalRaw(KEY_THREAD_PATH);
+				if (parentPath != null) {
+					paths.put(current, parentPath);
+					break;
+				}
+				missing.add(current);
+				byte[] parent = meta.getOptionalRaw(KEY_PARENT);
+				current = parent == null ? null : new MessageId(parent);
+			}
+			// Compute the missing paths from the top of the thread downwards
+			for (int i = missing.size() - 1; i >= 0; i--) {
+				MessageId id = missing.get(i);
+				long timestamp = metadata.get(id).getLong(KEY_TIMESTAMP);
+				parentPath = getPath(parentPath, timestamp, id);
+				paths.put(id, parentPath);
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Stores the thread path of the given post, which has just been
+	 * delivered, as the post's metadata and sort key, and returns it.
+	 */
+	private byte[] storeThreadPath(Transaction txn, MessageId m,
+			BdfDictionary meta) throws DbException, FormatException {
+		byte[] parentPath = null;
+		byte[] parent = meta.getOptionalRaw(KEY_PARENT);
+		if (parent != null)
+			parentPath = getStoredThreadPath(txn, new MessageId(parent));
+		byte[] path = getPath(parentPath, meta.getLong(KEY_TIMESTAMP), m);
+		BdfDictionary d = new BdfDictionary();
+		d.put(KEY_THREAD_PATH, path);
+		clientHelper.mergeMessageMetadata(txn, m, d);
+		db.setMessageSortKey(txn, m, path);
+		return path;
+	}
+
+	/**
+	 * Returns the stored thread path of the given post, first storing the
+	 * paths of the post and its ancestors if they were added before paths
+	 * were stored.
+	 */
+	private byte[] getStoredThreadPath(Transaction txn, MessageId m)
+			throws DbException, FormatException {
+		BdfDictionary meta = clientHelper.getMessageMetadataAsDictionary(txn, m);
+		byte[] path = meta.getOptionalRaw(KEY_THREAD_PATH);
+		if (path != null) return path;
+		return storeThreadPath(txn, m, meta);
+	}
+
 	@Override
 	public void registerRemoveForumHook(RemoveForumHook hook) {
 		removeHooks.add(hook);
@@ -285,12 +477,14 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 	}
 
 	private ForumPostHeader getForumPostHeader(Transaction txn, MessageId id,
-			BdfDictionary meta) throws DbException, FormatException {
-		return getForumPostHeader(txn, id, meta, Collections.emptyMap());
+			BdfDictionary meta, byte[] path)
+			throws DbException, FormatException {
+		return getForumPostHeader(txn, id, meta, path, Collections.emptyMap());
 	}
 
 	private ForumPostHeader getForumPostHeader(Transaction txn, MessageId id,
-			BdfDictionary meta, Map<AuthorId, AuthorInfo> authorInfos)
+			BdfDictionary meta, byte[] path,
+			Map<AuthorId, AuthorInfo> authorInfos)
 			throws DbException, FormatException {
 
 		long timestamp = meta.getLong(KEY_TIMESTAMP);
@@ -305,7 +499,7 @@ class ForumManagerImpl extends BdfIncomingMessageHook implements ForumManager {
 		boolean read = meta.getBoolean(MSG_KEY_READ);
 
 		return new ForumPostHeader(id, parentId, timestamp, author, authorInfo,
-				read);
+				read, getDepth(path));
 	}
 
 }
@@ -3,6 +3,7 @@ package org.briarproject.briar.forum;
 import org.briarproject.bramble.api.FeatureFlags;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.data.MetadataEncoder;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
 import org.briarproject.bramble.api.sync.validation.ValidationManager;
 import org.briarproject.bramble.api.system.Clock;
 import org.briarproject.briar.api.forum.ForumFactory;
@@ -31,8 +32,10 @@ public class ForumModule {
 	@Provides
 	@Singleton
 	ForumManager provideForumManager(ForumManagerImpl forumManager,
+			LifecycleManager lifecycleManager,
 			ValidationManager validationManager,
 			FeatureFlags featureFlags) {
+		lifecycleManager.registerOpenDatabaseHook(forumManager);
 		if (!featureFlags.shouldEnableForumsInCore()) {
 			return forumManager;
 		}
@@ -14,6 +14,8 @@ import org.briarproject.briar.api.identity.AuthorManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
@@ -56,6 +58,38 @@ class AuthorManagerImpl implements AuthorManager {
 		return getAuthorInfo(txn, c);
 	}
 
+	@Override
+	public Map<AuthorId, AuthorInfo> getAuthorInfos(Transaction txn,
+			Collection<AuthorId> authors) throws DbException {
+		Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
+		if (authors.isEmpty()) return authorInfos;
+		LocalAuthor localAuthor = identityManager.getLocalAuthor(txn);
+		// Load all contacts at once rather than querying for each author
+		Map<AuthorId, Contact> contacts = null;
+		for (AuthorId authorId : authors) {
+			if (authorInfos.containsKey(authorId)) continue;
+			if (localAuthor.getId().equals(authorId)) {
+				authorInfos.put(authorId, getMyAuthorInfo(txn));
+				continue;
+			}
+			if (contacts == null) contacts = getContactsByAuthorId(txn);
+			Contact c = contacts.get(authorId);
+			if (c == null) authorInfos.put(authorId, new AuthorInfo(UNKNOWN));
+			else authorInfos.put(authorId, getAuthorInfo(txn, c));
+		}
+		return authorInfos;
+	}
+
+	private Map<AuthorId, Contact> getContactsByAuthorId(Transaction txn)
+			throws DbException {
+		Map<AuthorId, Contact> contacts = new HashMap<>();
+		for (Contact c : db.getContacts(txn)) {
+			Contact old = contacts.put(c.getAuthor().getId(), c);
+			if (old != null) throw new AssertionError();
+		}
+		return contacts;
+	}
+
 	@Override
 	public AuthorInfo getAuthorInfo(Contact c) throws DbException {
 		return db.transactionWithResult(true, txn -> getAuthorInfo(txn, c));
@@ -1,6 +1,7 @@
 package org.briarproject.briar.introduction;
 
 import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.Pair;
 import org.briarproject.bramble.api.cleanup.CleanupHook;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.client.ContactGroupFactory;
@@ -31,6 +32,7 @@ import org.briarproject.bramble.api.versioning.ClientVersioningManager.ClientVer
 import org.briarproject.briar.api.autodelete.event.ConversationMessagesDeletedEvent;
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.briar.api.client.SessionId;
+import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.briar.api.conversation.ConversationMessageHeader;
 import org.briarproject.briar.api.conversation.DeletionResult;
 import org.briarproject.briar.api.identity.AuthorInfo;
@@ -40,6 +42,7 @@ import org.briarproject.briar.api.introduction.IntroductionRequest;
 import org.briarproject.briar.api.introduction.IntroductionResponse;
 import org.briarproject.briar.api.introduction.Role;
 import org.briarproject.briar.client.ConversationClientImpl;
+import org.briarproject.briar.client.SessionIndex;
 import org.briarproject.briar.introduction.IntroducerSession.Introducee;
 import org.briarproject.nullsafety.NotNullByDefault;
 
@@ -53,7 +56,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_DO_NOT_SHARE;
@@ -73,7 +76,7 @@ import static org.briarproject.briar.introduction.MessageType.AUTH;
 import static org.briarproject.briar.introduction.MessageType.DECLINE;
 import static org.briarproject.briar.introduction.MessageType.REQUEST;
 
-@Immutable
+@ThreadSafe
 @NotNullByDefault
 class IntroductionManagerImpl extends ConversationClientImpl
 		implements IntroductionManager, OpenDatabaseHook, ContactHook,
@@ -92,6 +95,8 @@ class IntroductionManagerImpl extends ConversationClientImpl
 	private final AuthorManager authorManager;
 
 	private final Group localGroup;
+	private final ConversationManager conversationManager;
+	private final SessionIndex sessionIndex;
 
 	@Inject
 	IntroductionManagerImpl(
@@ -100,6 +105,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 			ClientVersioningManager clientVersioningManager,
 			MetadataParser metadataParser,
 			MessageTracker messageTracker,
+			ConversationManager conversationManager,
 			ContactGroupFactory contactGroupFactory,
 			ContactManager contactManager,
 			MessageParser messageParser,
@@ -122,8 +128,10 @@ class IntroductionManagerImpl extends ConversationClientImpl
 		this.crypto = crypto;
 		this.identityManager = identityManager;
 		this.authorManager = authorManager;
+		this.conversationManager = conversationManager;
 		this.localGroup =
 				contactGroupFactory.createLocalGroup(CLIENT_ID, MAJOR_VERSION);
+		sessionIndex = new SessionIndex(clientHelper);
 	}
 
 	@Override
@@ -197,7 +205,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 		if (ss == null) {
 			if (meta.getMessageType() != REQUEST) throw new FormatException();
 			if (newIntroduceeSession == null) throw new AssertionError();
-			storageId = createStorageId(txn);
+			storageId = createStorageId(txn, sessionId);
 			session = handleMessage(txn, m, body, meta.getMessageType(),
 					newIntroduceeSession, introduceeEngine);
 		} else {
@@ -263,19 +271,28 @@ class IntroductionManagerImpl extends ConversationClientImpl
 	private StoredSession getSession(Transaction txn,
 			@Nullable SessionId sessionId) throws DbException, FormatException {
 		if (sessionId == null) return null;
+		// Use the index if possible, to avoid a metadata query
+		Pair<MessageId, BdfDictionary> indexed =
+				sessionIndex.getSession(txn, localGroup.getId(), sessionId);
+		if (indexed != null) {
+			return new StoredSession(indexed.getFirst(), indexed.getSecond());
+		}
 		BdfDictionary query = sessionParser.getSessionQuery(sessionId);
 		Map<MessageId, BdfDictionary> results = clientHelper
 				.getMessageMetadataAsDictionary(txn, localGroup.getId(), query);
 		if (results.size() > 1) throw new DbException();
 		if (results.isEmpty()) return null;
-		return new StoredSession(results.keySet().iterator().next(),
-				results.values().iterator().next());
+		MessageId storageId = results.keySet().iterator().next();
+		sessionIndex.addSession(localGroup.getId(), sessionId, storageId);
+		return new StoredSession(storageId, results.get(storageId));
 	}
 
-	private MessageId createStorageId(Transaction txn) throws DbException {
+	private MessageId createStorageId(Transaction txn, SessionId sessionId)
+			throws DbException {
 		Message m = clientHelper
 				.createMessageForStoringMetadata(localGroup.getId());
 		db.addLocalMessage(txn, m, new Metadata(), false, false);
+		sessionIndex.addSession(localGroup.getId(), sessionId, m.getId());
 		return m.getId();
 	}
 
@@ -354,7 +371,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 						alice ? groupId2 : groupId1,
 						alice ? c2.getAuthor() : c1.getAuthor()
 				);
-				storageId = createStorageId(txn);
+				storageId = createStorageId(txn, sessionId);
 			} else {
 				// An earlier request exists, so we already have a session
 				session = sessionParser.parseIntroducerSession(ss.bdfSession);
@@ -428,34 +445,57 @@ class IntroductionManagerImpl extends ConversationClientImpl
 			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
 			Map<MessageId, BdfDictionary> results = clientHelper
 					.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-			List<ConversationMessageHeader> messages =
-					new ArrayList<>(results.size());
-			Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
-			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
-				MessageId m = e.getKey();
-				MessageMetadata meta =
-						messageParser.parseMetadata(e.getValue());
-				MessageStatus status = db.getMessageStatus(txn, c, m);
-				StoredSession ss = getSession(txn, meta.getSessionId());
-				if (ss == null) throw new AssertionError();
-				MessageType type = meta.getMessageType();
-				if (type == REQUEST) {
-					messages.add(parseInvitationRequest(txn, contactGroupId, m,
-							meta, status, meta.getSessionId(), authorInfos));
-				} else if (type == ACCEPT) {
-					messages.add(parseInvitationResponse(txn, contactGroupId, m,
-							meta, status, ss.bdfSession, authorInfos, true));
-				} else if (type == DECLINE) {
-					messages.add(parseInvitationResponse(txn, contactGroupId, m,
-							meta, status, ss.bdfSession, authorInfos, false));
-				}
-			}
-			return messages;
+			return parseMessageHeaders(txn, c, contactGroupId, results);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long minTimeReceived)
+			throws DbException {
+		try {
+			Contact contact = db.getContact(txn, c);
+			GroupId contactGroupId = getContactGroup(contact).getId();
+			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
+			Map<MessageId, BdfDictionary> results = clientHelper
+					.getMessageMetadataAsDictionary(txn, contactGroupId, query,
+							minTimeReceived);
+			return parseMessageHeaders(txn, c, contactGroupId, results);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private List<ConversationMessageHeader> parseMessageHeaders(
+			Transaction txn, ContactId c, GroupId contactGroupId,
+			Map<MessageId, BdfDictionary> results)
+			throws DbException, FormatException {
+		List<ConversationMessageHeader> messages =
+				new ArrayList<>(results.size());
+		Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
+		for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+			MessageId m = e.getKey();
+			MessageMetadata meta = messageParser.parseMetadata(e.getValue());
+			MessageStatus status = db.getMessageStatus(txn, c, m);
+			StoredSession ss = getSession(txn, meta.getSessionId());
+			if (ss == null) throw new AssertionError();
+			MessageType type = meta.getMessageType();
+			if (type == REQUEST) {
+				messages.add(parseInvitationRequest(txn, contactGroupId, m,
+						meta, status, meta.getSessionId(), authorInfos));
+			} else if (type == ACCEPT) {
+				messages.add(parseInvitationResponse(txn, contactGroupId, m,
+						meta, status, ss.bdfSession, authorInfos, true));
+			} else if (type == DECLINE) {
+				messages.add(parseInvitationResponse(txn, contactGroupId, m,
+						meta, status, ss.bdfSession, authorInfos, false));
+			}
+		}
+		return messages;
+	}
+
 	private IntroductionRequest parseInvitationRequest(Transaction txn,
 			GroupId contactGroupId, MessageId m, MessageMetadata meta,
 			MessageStatus status, SessionId sessionId,
@@ -529,6 +569,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 		}
 		for (MessageId id : sessionIds) {
 			db.removeMessage(txn, id);
+			sessionIndex.removeStorageMessage(localGroup.getId(), id);
 		}
 	}
 
@@ -570,6 +611,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 			storeSession(txn, storageId, session);
 		} else {
 			db.removeMessage(txn, storageId);
+			sessionIndex.removeSession(localGroup.getId(), s.getSessionId());
 		}
 	}
 
@@ -822,7 +864,7 @@ class IntroductionManagerImpl extends ConversationClientImpl
 			msgCount++;
 			if (!meta.isRead()) unreadCount++;
 		}
-		messageTracker.resetGroupCount(txn, g, msgCount, unreadCount);
+		conversationManager.resetGroupCount(txn, g, msgCount, unreadCount);
 	}
 
 	private static class StoredSession {
@@ -57,6 +57,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import javax.inject.Inject;
 
@@ -417,33 +418,64 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 			MessageId id = s.getMessageId();
 			BdfDictionary meta = metadata.get(id);
 			if (meta == null) continue;
-			try {
-				// Message type is null for version 0.0 private messages
-				Integer messageType = meta.getOptionalInt(MSG_KEY_MSG_TYPE);
-				if (messageType != null && messageType != PRIVATE_MESSAGE)
-					continue;
-				long timestamp = meta.getLong(MSG_KEY_TIMESTAMP);
-				boolean local = meta.getBoolean(MSG_KEY_LOCAL);
-				boolean read = meta.getBoolean(MSG_KEY_READ);
-				if (messageType == null) {
-					headers.add(new PrivateMessageHeader(id, g, timestamp,
-							local, read, s.isSent(), s.isSeen(), true,
-							emptyList(), NO_AUTO_DELETE_TIMER));
-				} else {
-					boolean hasText = meta.getBoolean(MSG_KEY_HAS_TEXT);
-					long timer = meta.getLong(MSG_KEY_AUTO_DELETE_TIMER,
-							NO_AUTO_DELETE_TIMER);
-					headers.add(new PrivateMessageHeader(id, g, timestamp,
-							local, read, s.isSent(), s.isSeen(), hasText,
-							parseAttachmentHeaders(g, meta), timer));
-				}
-			} catch (FormatException e) {
-				throw new DbException(e);
-			}
+			ConversationMessageHeader h = parseMessageHeader(g, id, meta, s);
+			if (h != null) headers.add(h);
 		}
 		return headers;
 	}
 
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long minTimeReceived)
+			throws DbException {
+		Map<MessageId, BdfDictionary> metadata;
+		GroupId g;
+		try {
+			g = getContactGroup(db.getContact(txn, c)).getId();
+			metadata = clientHelper.getMessageMetadataAsDictionary(txn, g,
+					new BdfDictionary(), minTimeReceived);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+		Collection<ConversationMessageHeader> headers = new ArrayList<>();
+		for (Entry<MessageId, BdfDictionary> e : metadata.entrySet()) {
+			MessageId id = e.getKey();
+			MessageStatus s = db.getMessageStatus(txn, c, id);
+			ConversationMessageHeader h =
+					parseMessageHeader(g, id, e.getValue(), s);
+			if (h != null) headers.add(h);
+		}
+		return headers;
+	}
+
+	@Nullable
+	private ConversationMessageHeader parseMessageHeader(GroupId g,
+			MessageId id, BdfDictionary meta, MessageStatus s)
+			throws DbException {
+		try {
+			// Message type is null for version 0.0 private messages
+			Integer messageType = meta.getOptionalInt(MSG_KEY_MSG_TYPE);
+			if (messageType != null && messageType != PRIVATE_MESSAGE)
+				return null;
+			long timestamp = meta.getLong(MSG_KEY_TIMESTAMP);
+			boolean local = meta.getBoolean(MSG_KEY_LOCAL);
+			boolean read = meta.getBoolean(MSG_KEY_READ);
+			if (messageType == null) {
+				return new PrivateMessageHeader(id, g, timestamp, local, read,
+						s.isSent(), s.isSeen(), true, emptyList(),
+						NO_AUTO_DELETE_TIMER);
+			}
+			boolean hasText = meta.getBoolean(MSG_KEY_HAS_TEXT);
+			long timer = meta.getLong(MSG_KEY_AUTO_DELETE_TIMER,
+					NO_AUTO_DELETE_TIMER);
+			return new PrivateMessageHeader(id, g, timestamp, local, read,
+					s.isSent(), s.isSeen(), hasText,
+					parseAttachmentHeaders(g, meta), timer);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
 	@Override
 	public Set<MessageId> getMessageIds(Transaction txn, ContactId c)
 			throws DbException {
@@ -561,7 +593,7 @@ class MessagingManagerImpl implements MessagingManager, IncomingMessageHook,
 					if (!meta.getBoolean(MSG_KEY_READ)) unreadCount++;
 				}
 			}
-			messageTracker.resetGroupCount(txn, g, msgCount, unreadCount);
+			conversationManager.resetGroupCount(txn, g, msgCount, unreadCount);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
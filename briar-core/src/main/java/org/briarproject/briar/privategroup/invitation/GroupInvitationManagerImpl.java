@@ -1,6 +1,7 @@
 package org.briarproject.briar.privategroup.invitation;
 
 import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.Pair;
 import org.briarproject.bramble.api.cleanup.CleanupHook;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.client.ContactGroupFactory;
@@ -28,6 +29,7 @@ import org.briarproject.briar.api.autodelete.event.ConversationMessagesDeletedEv
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.briar.api.client.ProtocolStateException;
 import org.briarproject.briar.api.client.SessionId;
+import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.briar.api.conversation.ConversationMessageHeader;
 import org.briarproject.briar.api.conversation.DeletionResult;
 import org.briarproject.briar.api.privategroup.PrivateGroup;
@@ -40,6 +42,7 @@ import org.briarproject.briar.api.privategroup.invitation.GroupInvitationRequest
 import org.briarproject.briar.api.privategroup.invitation.GroupInvitationResponse;
 import org.briarproject.briar.api.sharing.SharingManager.SharingStatus;
 import org.briarproject.briar.client.ConversationClientImpl;
+import org.briarproject.briar.client.SessionIndex;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
@@ -52,7 +55,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Inject;
 
 import static org.briarproject.bramble.api.sync.Group.Visibility.SHARED;
@@ -71,7 +74,7 @@ import static org.briarproject.briar.privategroup.invitation.Role.CREATOR;
 import static org.briarproject.briar.privategroup.invitation.Role.INVITEE;
 import static org.briarproject.briar.privategroup.invitation.Role.PEER;
 
-@Immutable
+@ThreadSafe
 @NotNullByDefault
 class GroupInvitationManagerImpl extends ConversationClientImpl
 		implements GroupInvitationManager, OpenDatabaseHook, ContactHook,
@@ -87,12 +90,15 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 	private final ProtocolEngine<CreatorSession> creatorEngine;
 	private final ProtocolEngine<InviteeSession> inviteeEngine;
 	private final ProtocolEngine<PeerSession> peerEngine;
+	private final ConversationManager conversationManager;
+	private final SessionIndex sessionIndex;
 
 	@Inject
 	GroupInvitationManagerImpl(DatabaseComponent db,
 			ClientHelper clientHelper,
 			ClientVersioningManager clientVersioningManager,
 			MetadataParser metadataParser, MessageTracker messageTracker,
+			ConversationManager conversationManager,
 			ContactGroupFactory contactGroupFactory,
 			PrivateGroupFactory privateGroupFactory,
 			PrivateGroupManager privateGroupManager,
@@ -107,9 +113,11 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 		this.messageParser = messageParser;
 		this.sessionParser = sessionParser;
 		this.sessionEncoder = sessionEncoder;
+		this.conversationManager = conversationManager;
 		creatorEngine = engineFactory.createCreatorEngine();
 		inviteeEngine = engineFactory.createInviteeEngine();
 		peerEngine = engineFactory.createPeerEngine();
+		sessionIndex = new SessionIndex(clientHelper);
 	}
 
 	@Override
@@ -153,7 +161,8 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 				c.getAuthor().getId().equals(pg.getCreator().getId());
 		if (isOur || isTheirs) {
 			// we are creator or invitee, create a left session for each role
-			MessageId storageId = createStorageId(txn, contactGroupId);
+			MessageId storageId = createStorageId(txn, contactGroupId,
+					getSessionId(pg.getId()));
 			Session<?> session;
 			if (isOur) {
 				session = new CreatorSession(contactGroupId, pg.getId(), null,
@@ -188,7 +197,9 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 			}
 		}
 		// Remove the contact group (all messages will be removed with it)
-		db.removeGroup(txn, getContactGroup(c));
+		Group contactGroup = getContactGroup(c);
+		db.removeGroup(txn, contactGroup);
+		sessionIndex.removeGroup(contactGroup.getId());
 	}
 
 	@Override
@@ -216,7 +227,7 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 		MessageId storageId;
 		if (ss == null) {
 			session = handleFirstMessage(txn, m, body, meta);
-			storageId = createStorageId(txn, m.getGroupId());
+			storageId = createStorageId(txn, m.getGroupId(), sessionId);
 		} else {
 			session = handleMessage(txn, m, body, meta, ss.bdfSession);
 			storageId = ss.storageId;
@@ -233,13 +244,20 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 	@Nullable
 	private StoredSession getSession(Transaction txn, GroupId contactGroupId,
 			SessionId sessionId) throws DbException, FormatException {
+		// Use the index if possible, to avoid a metadata query
+		Pair<MessageId, BdfDictionary> indexed =
+				sessionIndex.getSession(txn, contactGroupId, sessionId);
+		if (indexed != null) {
+			return new StoredSession(indexed.getFirst(), indexed.getSecond());
+		}
 		BdfDictionary query = sessionParser.getSessionQuery(sessionId);
 		Map<MessageId, BdfDictionary> results = clientHelper
 				.getMessageMetadataAsDictionary(txn, contactGroupId, query);
 		if (results.size() > 1) throw new DbException();
 		if (results.isEmpty()) return null;
-		return new StoredSession(results.keySet().iterator().next(),
-				results.values().iterator().next());
+		MessageId storageId = results.keySet().iterator().next();
+		sessionIndex.addSession(contactGroupId, sessionId, storageId);
+		return new StoredSession(storageId, results.get(storageId));
 	}
 
 	private Session<?> handleFirstMessage(Transaction txn, Message m,
@@ -302,10 +320,11 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 		}
 	}
 
-	private MessageId createStorageId(Transaction txn, GroupId g)
-			throws DbException {
+	private MessageId createStorageId(Transaction txn, GroupId g,
+			SessionId sessionId) throws DbException {
 		Message m = clientHelper.createMessageForStoringMetadata(g);
 		db.addLocalMessage(txn, m, new Metadata(), false, false);
+		sessionIndex.addSession(g, sessionId, m.getId());
 		return m.getId();
 	}
 
@@ -340,7 +359,7 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 			if (ss == null) {
 				// This is the first invite - create a new session
 				session = new CreatorSession(contactGroupId, privateGroupId);
-				storageId = createStorageId(txn, contactGroupId);
+				storageId = createStorageId(txn, contactGroupId, sessionId);
 			} else {
 				// An earlier invite was declined, so we already have a session
 				session = sessionParser
@@ -457,31 +476,54 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
 			Map<MessageId, BdfDictionary> results = clientHelper
 					.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-			List<ConversationMessageHeader> messages =
-					new ArrayList<>(results.size());
-			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
-				MessageId m = e.getKey();
-				MessageMetadata meta =
-						messageParser.parseMetadata(e.getValue());
-				MessageStatus status = db.getMessageStatus(txn, c, m);
-				MessageType type = meta.getMessageType();
-				if (type == INVITE) {
-					messages.add(parseInvitationRequest(txn, contactGroupId, m,
-							meta, status));
-				} else if (type == JOIN) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, true));
-				} else if (type == LEAVE) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, false));
-				}
-			}
-			return messages;
+			return parseMessageHeaders(txn, c, contactGroupId, results);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long minTimeReceived)
+			throws DbException {
+		try {
+			Contact contact = db.getContact(txn, c);
+			GroupId contactGroupId = getContactGroup(contact).getId();
+			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
+			Map<MessageId, BdfDictionary> results = clientHelper
+					.getMessageMetadataAsDictionary(txn, contactGroupId, query,
+							minTimeReceived);
+			return parseMessageHeaders(txn, c, contactGroupId, results);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	private List<ConversationMessageHeader> parseMessageHeaders(
+			Transaction txn, ContactId c, GroupId contactGroupId,
+			Map<MessageId, BdfDictionary> results)
+			throws DbException, FormatException {
+		List<ConversationMessageHeader> messages =
+					new ArrayList<>(results.size());
+		for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+			MessageId m = e.getKey();
+			MessageMetadata meta = messageParser.parseMetadata(e.getValue());
+			MessageStatus status = db.getMessageStatus(txn, c, m);
+			MessageType type = meta.getMessageType();
+			if (type == INVITE) {
+				messages.add(parseInvitationRequest(txn, contactGroupId, m,
+						meta, status));
+			} else if (type == JOIN) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, true));
+			} else if (type == LEAVE) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, false));
+			}
+		}
+		return messages;
+	}
+
 	private GroupInvitationRequest parseInvitationRequest(Transaction txn,
 			GroupId contactGroupId, MessageId m, MessageMetadata meta,
 			MessageStatus status) throws DbException, FormatException {
@@ -610,7 +652,7 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 						new PeerSession(contactGroupId, privateGroupId);
 				// Handle the action
 				session = peerEngine.onMemberAddedAction(txn, peerSession);
-				storageId = createStorageId(txn, contactGroupId);
+				storageId = createStorageId(txn, contactGroupId, sessionId);
 			} else {
 				// Handle the action
 				session = handleAction(txn, LocalAction.MEMBER_ADDED,
@@ -945,7 +987,7 @@ class GroupInvitationManagerImpl extends ConversationClientImpl
 			msgCount++;
 			if (!meta.isRead()) unreadCount++;
 		}
-		messageTracker.resetGroupCount(txn, g, msgCount, unreadCount);
+		conversationManager.resetGroupCount(txn, g, msgCount, unreadCount);
 	}
 
 	private static class StoredSession {
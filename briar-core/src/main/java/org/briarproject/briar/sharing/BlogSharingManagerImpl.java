@@ -18,6 +18,7 @@ import org.briarproject.briar.api.blog.BlogManager;
 import org.briarproject.briar.api.blog.BlogManager.RemoveBlogHook;
 import org.briarproject.briar.api.blog.BlogSharingManager;
 import org.briarproject.briar.api.client.MessageTracker;
+import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import javax.annotation.concurrent.Immutable;
@@ -37,13 +38,15 @@ class BlogSharingManagerImpl extends SharingManagerImpl<Blog>
 			MetadataParser metadataParser, MessageParser<Blog> messageParser,
 			SessionEncoder sessionEncoder, SessionParser sessionParser,
 			MessageTracker messageTracker,
+			ConversationManager conversationManager,
 			ContactGroupFactory contactGroupFactory,
 			ProtocolEngine<Blog> engine,
 			InvitationFactory<Blog, BlogInvitationResponse> invitationFactory,
 			IdentityManager identityManager, BlogManager blogManager) {
 		super(db, clientHelper, clientVersioningManager, metadataParser,
 				messageParser, sessionEncoder, sessionParser, messageTracker,
-				contactGroupFactory, engine, invitationFactory);
+				conversationManager, contactGroupFactory, engine,
+				invitationFactory);
 		this.identityManager = identityManager;
 		this.blogManager = blogManager;
 	}
@@ -1,6 +1,7 @@
 package org.briarproject.briar.sharing;
 
 import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.Pair;
 import org.briarproject.bramble.api.cleanup.CleanupHook;
 import org.briarproject.bramble.api.client.ClientHelper;
 import org.briarproject.bramble.api.client.ContactGroupFactory;
@@ -28,6 +29,7 @@ import org.briarproject.briar.api.autodelete.event.ConversationMessagesDeletedEv
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.briar.api.client.ProtocolStateException;
 import org.briarproject.briar.api.client.SessionId;
+import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.briar.api.conversation.ConversationMessageHeader;
 import org.briarproject.briar.api.conversation.ConversationRequest;
 import org.briarproject.briar.api.conversation.DeletionResult;
@@ -36,6 +38,7 @@ import org.briarproject.briar.api.sharing.Shareable;
 import org.briarproject.briar.api.sharing.SharingInvitationItem;
 import org.briarproject.briar.api.sharing.SharingManager;
 import org.briarproject.briar.client.ConversationClientImpl;
+import org.briarproject.briar.client.SessionIndex;
 import org.briarproject.nullsafety.NotNullByDefault;
 
 import java.util.ArrayList;
@@ -78,12 +81,15 @@ abstract class SharingManagerImpl<S extends Shareable>
 	private final ContactGroupFactory contactGroupFactory;
 	private final ProtocolEngine<S> engine;
 	private final InvitationFactory<S, ?> invitationFactory;
+	private final ConversationManager conversationManager;
+	private final SessionIndex sessionIndex;
 
 	SharingManagerImpl(DatabaseComponent db, ClientHelper clientHelper,
 			ClientVersioningManager clientVersioningManager,
 			MetadataParser metadataParser, MessageParser<S> messageParser,
 			SessionEncoder sessionEncoder, SessionParser sessionParser,
 			MessageTracker messageTracker,
+			ConversationManager conversationManager,
 			ContactGroupFactory contactGroupFactory, ProtocolEngine<S> engine,
 			InvitationFactory<S, ?> invitationFactory) {
 		super(db, clientHelper, metadataParser, messageTracker);
@@ -94,6 +100,8 @@ abstract class SharingManagerImpl<S extends Shareable>
 		this.contactGroupFactory = contactGroupFactory;
 		this.engine = engine;
 		this.invitationFactory = invitationFactory;
+		this.conversationManager = conversationManager;
+		sessionIndex = new SessionIndex(clientHelper);
 	}
 
 	protected abstract ClientId getClientId();
@@ -130,7 +138,9 @@ abstract class SharingManagerImpl<S extends Shareable>
 	@Override
 	public void removingContact(Transaction txn, Contact c) throws DbException {
 		// Remove the contact group (all messages will be removed with it)
-		db.removeGroup(txn, getContactGroup(c));
+		Group g = getContactGroup(c);
+		db.removeGroup(txn, g);
+		sessionIndex.removeGroup(g.getId());
 	}
 
 	@Override
@@ -157,7 +167,7 @@ abstract class SharingManagerImpl<S extends Shareable>
 		MessageId storageId;
 		if (ss == null) {
 			session = handleFirstMessage(txn, m, body, meta);
-			storageId = createStorageId(txn, m.getGroupId());
+			storageId = createStorageId(txn, m.getGroupId(), sessionId);
 		} else {
 			session = handleMessage(txn, m, body, meta, ss.bdfSession);
 			storageId = ss.storageId;
@@ -176,8 +186,9 @@ abstract class SharingManagerImpl<S extends Shareable>
 			throws DbException, FormatException {
 		// Return if a session already exists with the contact
 		GroupId contactGroupId = getContactGroup(c).getId();
-		StoredSession existingSession = getSession(txn, contactGroupId,
-				getSessionId(g.getId()));
+		SessionId sessionId = getSessionId(g.getId());
+		StoredSession existingSession =
+				getSession(txn, contactGroupId, sessionId);
 		if (existingSession != null) return;
 
 		// Add the shareable's group
@@ -191,7 +202,7 @@ abstract class SharingManagerImpl<S extends Shareable>
 		// Initialize session in sharing state
 		Session session = new Session(SHARING, contactGroupId, g.getId(),
 				null, null, 0, 0);
-		MessageId storageId = createStorageId(txn, contactGroupId);
+		MessageId storageId = createStorageId(txn, contactGroupId, sessionId);
 		storeSession(txn, storageId, session);
 	}
 
@@ -202,13 +213,20 @@ abstract class SharingManagerImpl<S extends Shareable>
 	@Nullable
 	private StoredSession getSession(Transaction txn, GroupId contactGroupId,
 			SessionId sessionId) throws DbException, FormatException {
+		// Use the index if possible, to avoid a metadata query
+		Pair<MessageId, BdfDictionary> indexed =
+				sessionIndex.getSession(txn, contactGroupId, sessionId);
+		if (indexed != null) {
+			return new StoredSession(indexed.getFirst(), indexed.getSecond());
+		}
 		BdfDictionary query = sessionParser.getSessionQuery(sessionId);
 		Map<MessageId, BdfDictionary> results = clientHelper
 				.getMessageMetadataAsDictionary(txn, contactGroupId, query);
 		if (results.size() > 1) throw new DbException();
 		if (results.isEmpty()) return null;
-		return new StoredSession(results.keySet().iterator().next(),
-				results.values().iterator().next());
+		MessageId storageId = results.keySet().iterator().next();
+		sessionIndex.addSession(contactGroupId, sessionId, storageId);
+		return new StoredSession(storageId, results.get(storageId));
 	}
 
 	private Session handleFirstMessage(Transaction txn, Message m, BdfList body,
@@ -249,10 +267,11 @@ abstract class SharingManagerImpl<S extends Shareable>
 		}
 	}
 
-	private MessageId createStorageId(Transaction txn, GroupId g)
-			throws DbException {
+	private MessageId createStorageId(Transaction txn, GroupId g,
+			SessionId sessionId) throws DbException {
 		Message m = clientHelper.createMessageForStoringMetadata(g);
 		db.addLocalMessage(txn, m, new Metadata(), false, false);
+		sessionIndex.addSession(g, sessionId, m.getId());
 		return m.getId();
 	}
 
@@ -287,7 +306,7 @@ abstract class SharingManagerImpl<S extends Shareable>
 			if (ss == null) {
 				// This is the first invite - create a new session
 				session = new Session(contactGroupId, shareableId);
-				storageId = createStorageId(txn, contactGroupId);
+				storageId = createStorageId(txn, contactGroupId, sessionId);
 			} else {
 				// We already have a session
 				session = sessionParser
@@ -359,31 +378,53 @@ abstract class SharingManagerImpl<S extends Shareable>
 			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
 			Map<MessageId, BdfDictionary> results = clientHelper
 					.getMessageMetadataAsDictionary(txn, contactGroupId, query);
-			Collection<ConversationMessageHeader> messages =
-					new ArrayList<>(results.size());
-			for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
-				MessageId m = e.getKey();
-				MessageMetadata meta =
-						messageParser.parseMetadata(e.getValue());
-				MessageStatus status = db.getMessageStatus(txn, c, m);
-				MessageType type = meta.getMessageType();
-				if (type == INVITE) {
-					messages.add(parseInvitationRequest(txn, c, m,
-							meta, status));
-				} else if (type == ACCEPT) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, true));
-				} else if (type == DECLINE) {
-					messages.add(parseInvitationResponse(contactGroupId, m,
-							meta, status, false));
-				}
-			}
-			return messages;
+			return parseMessageHeaders(txn, c, contactGroupId, results);
 		} catch (FormatException e) {
 			throw new DbException(e);
 		}
 	}
 
+	@Override
+	public Collection<ConversationMessageHeader> getMessageHeaders(
+			Transaction txn, ContactId c, long minTimeReceived)
+			throws DbException {
+		try {
+			Contact contact = db.getContact(txn, c);
+			GroupId contactGroupId = getContactGroup(contact).getId();
+			BdfDictionary query = messageParser.getMessagesVisibleInUiQuery();
+			Map<MessageId, BdfDictionary> results = clientHelper
+					.getMessageMetadataAsDictionary(txn, contactGroupId, query,
+							minTimeReceived);
+			return parseMessageHeaders(txn, c, contactGroupId, results);
+		} catch (FormatException e) {
+			throw new DbException(e);
+		}
+	}
+
+	private Collection<ConversationMessageHeader> parseMessageHeaders(
+			Transaction txn, ContactId c, GroupId contactGroupId,
+			Map<MessageId, BdfDictionary> results)
+			throws DbException, FormatException {
+		Collection<ConversationMessageHeader> messages =
+				new ArrayList<>(results.size());
+		for (Entry<MessageId, BdfDictionary> e : results.entrySet()) {
+			MessageId m = e.getKey();
+			MessageMetadata meta = messageParser.parseMetadata(e.getValue());
+			MessageStatus status = db.getMessageStatus(txn, c, m);
+			MessageType type = meta.getMessageType();
+			if (type == INVITE) {
+				messages.add(parseInvitationRequest(txn, c, m, meta, status));
+			} else if (type == ACCEPT) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, true));
+			} else if (type == DECLINE) {
+				messages.add(parseInvitationResponse(contactGroupId, m,
+						meta, status, false));
+			}
+		}
+		return messages;
+	}
+
 	private ConversationRequest<S> parseInvitationRequest(Transaction txn,
 			ContactId c, MessageId m, MessageMetadata meta,
 			MessageStatus status) throws DbException, FormatException {
@@ -813,7 +854,7 @@ abstract class SharingManagerImpl<S extends Shareable>
 			msgCount++;
 			if (!meta.isRead()) unreadCount++;
 		}
-		messageTracker.resetGroupCount(txn, g, msgCount, unreadCount);
+		conversationManager.resetGroupCount(txn, g, msgCount, unreadCount);
 	}
 
 	private static class StoredSession {
@@ -14,9 +14,11 @@ import org.briarproject.bramble.api.db.EventAction;
 import org.briarproject.bramble.api.db.Transaction;
 import org.briarproject.bramble.api.event.Event;
 import org.briarproject.bramble.api.identity.Author;
+import org.briarproject.bramble.api.identity.AuthorId;
 import org.briarproject.bramble.api.identity.IdentityManager;
 import org.briarproject.bramble.api.identity.LocalAuthor;
 import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
 import org.briarproject.bramble.api.sync.Message;
 import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.test.BrambleMockTestCase;
@@ -27,12 +29,18 @@ import org.briarproject.briar.api.blog.BlogFactory;
 import org.briarproject.briar.api.blog.BlogPost;
 import org.briarproject.briar.api.blog.BlogPostFactory;
 import org.briarproject.briar.api.blog.BlogPostHeader;
+import org.briarproject.briar.api.blog.MessageType;
 import org.briarproject.briar.api.blog.event.BlogPostAddedEvent;
 import org.briarproject.briar.api.identity.AuthorInfo;
 import org.briarproject.briar.api.identity.AuthorManager;
 import org.jmock.Expectations;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
 import static org.briarproject.bramble.api.sync.validation.IncomingMessageHook.DeliveryAction.ACCEPT_SHARE;
 import static org.briarproject.bramble.test.TestUtils.getContact;
 import static org.briarproject.bramble.test.TestUtils.getGroup;
@@ -63,6 +71,7 @@ import static org.briarproject.briar.api.identity.AuthorInfo.Status.VERIFIED;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class BlogManagerImplTest extends BrambleMockTestCase {
@@ -846,6 +855,86 @@ public class BlogManagerImplTest extends BrambleMockTestCase {
 				((BlogCommentHeader) h1).getRootPost().getId());
 	}
 
+	@Test
+	public void testGetPostHeadersResolvesParentsInSameBatch()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		GroupId groupId = blog1.getId();
+		// Two posts by the same author
+		MessageId postId1 = new MessageId(getRandomId());
+		MessageId postId2 = new MessageId(getRandomId());
+		// A post by another author, wrapped when it was reblogged
+		MessageId wrappedPostId = new MessageId(getRandomId());
+		// Two reblogs of the wrapped post and a comment on the first post
+		MessageId reblogId1 = new MessageId(getRandomId());
+		MessageId reblogId2 = new MessageId(getRandomId());
+		MessageId commentId = new MessageId(getRandomId());
+
+		Map<MessageId, BdfDictionary> metadata = new HashMap<>();
+		metadata.put(postId1, createPostMeta(POST, authorList1));
+		metadata.put(postId2, createPostMeta(POST, authorList1));
+		metadata.put(wrappedPostId, createPostMeta(WRAPPED_POST, authorList2));
+		metadata.put(reblogId1, createCommentMeta(wrappedPostId));
+		metadata.put(reblogId2, createCommentMeta(wrappedPostId));
+		metadata.put(commentId, createCommentMeta(postId1));
+
+		Map<AuthorId, AuthorInfo> authorInfos = new HashMap<>();
+		authorInfos.put(localAuthor1.getId(), ourselvesInfo);
+		authorInfos.put(localAuthor2.getId(), verifiedInfo);
+
+		context.checking(new DbExpectations() {{
+			oneOf(db).transactionWithResult(with(true), withDbCallable(txn));
+			// The metadata of the whole group is loaded at once
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn, groupId);
+			will(returnValue(metadata));
+			// Each author is parsed once when collecting the authors and
+			// once when creating the header of each message, so a header
+			// created more than once would parse its author again
+			exactly(10).of(clientHelper).parseAndValidateAuthor(authorList1);
+			will(returnValue(localAuthor1));
+			exactly(2).of(clientHelper).parseAndValidateAuthor(authorList2);
+			will(returnValue(localAuthor2));
+			// The information for all authors is looked up at once
+			oneOf(authorManager).getAuthorInfos(txn, new HashSet<>(asList(
+					localAuthor1.getId(), localAuthor2.getId())));
+			will(returnValue(authorInfos));
+		}});
+
+		Map<MessageId, BlogPostHeader> headers = new HashMap<>();
+		for (BlogPostHeader h : blogManager.getPostHeaders(groupId)) {
+			headers.put(h.getId(), h);
+		}
+		// The wrapped post is only returned as the parent of the reblogs
+		assertEquals(5, headers.size());
+		assertFalse(headers.containsKey(wrappedPostId));
+
+		BlogPostHeader post1 = headers.get(postId1);
+		assertEquals(POST, post1.getType());
+		assertEquals(localAuthor1, post1.getAuthor());
+		assertEquals(OURSELVES, post1.getAuthorStatus());
+		BlogPostHeader post2 = headers.get(postId2);
+		assertEquals(POST, post2.getType());
+		assertEquals(localAuthor1, post2.getAuthor());
+		assertEquals(OURSELVES, post2.getAuthorStatus());
+
+		// The reblogs share the header of the wrapped post
+		BlogCommentHeader reblog1 = (BlogCommentHeader) headers.get(reblogId1);
+		BlogCommentHeader reblog2 = (BlogCommentHeader) headers.get(reblogId2);
+		BlogPostHeader wrappedPost = reblog1.getParent();
+		assertSame(wrappedPost, reblog2.getParent());
+		assertEquals(wrappedPostId, wrappedPost.getId());
+		assertEquals(WRAPPED_POST, wrappedPost.getType());
+		assertEquals(localAuthor2, wrappedPost.getAuthor());
+		assertEquals(VERIFIED, wrappedPost.getAuthorStatus());
+
+		// The comment reuses the header of the post in the same batch
+		BlogCommentHeader commentHeader =
+				(BlogCommentHeader) headers.get(commentId);
+		assertSame(post1, commentHeader.getParent());
+		assertEquals(COMMENT, commentHeader.getType());
+		assertEquals(OURSELVES, commentHeader.getAuthorStatus());
+	}
+
 	@Test
 	public void testBlogCanBeRemoved() throws Exception {
 		// check that own personal blogs can not be removed
@@ -880,6 +969,27 @@ public class BlogManagerImplTest extends BrambleMockTestCase {
 		return new Blog(group, localAuthor, rssFeed);
 	}
 
+	private BdfDictionary createPostMeta(MessageType type, BdfList author) {
+		return BdfDictionary.of(
+				new BdfEntry(KEY_TYPE, type.getInt()),
+				new BdfEntry(KEY_RSS_FEED, false),
+				new BdfEntry(KEY_AUTHOR, author),
+				new BdfEntry(KEY_TIMESTAMP, timestamp),
+				new BdfEntry(KEY_TIME_RECEIVED, timeReceived)
+		);
+	}
+
+	private BdfDictionary createCommentMeta(MessageId parentId) {
+		return BdfDictionary.of(
+				new BdfEntry(KEY_TYPE, COMMENT.getInt()),
+				new BdfEntry(KEY_COMMENT, comment),
+				new BdfEntry(KEY_PARENT_MSG_ID, parentId),
+				new BdfEntry(KEY_AUTHOR, authorList1),
+				new BdfEntry(KEY_TIMESTAMP, timestamp),
+				new BdfEntry(KEY_TIME_RECEIVED, timeReceived)
+		);
+	}
+
 	private BdfList authorToBdfList(Author a) {
 		return BdfList.of(a.getFormatVersion(), a.getName(), a.getPublicKey());
 	}
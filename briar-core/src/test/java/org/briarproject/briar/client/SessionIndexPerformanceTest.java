@@ -0,0 +1,214 @@
+package org.briarproject.briar.client;
+
+import org.briarproject.bramble.api.FormatException;
+import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfEntry;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.DbException;
+import org.briarproject.bramble.api.db.Metadata;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.identity.IdentityManager;
+import org.briarproject.bramble.api.lifecycle.LifecycleManager;
+import org.briarproject.bramble.api.sync.ClientId;
+import org.briarproject.bramble.api.sync.Group;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.briarproject.bramble.test.TestDatabaseConfigModule;
+import org.briarproject.briar.api.client.SessionId;
+import org.briarproject.briar.test.BriarIntegrationTestComponent;
+import org.briarproject.briar.test.DaggerBriarIntegrationTestComponent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.OFF;
+import static org.briarproject.bramble.test.TestUtils.deleteTestDirectory;
+import static org.briarproject.bramble.test.TestUtils.getGroup;
+import static org.briarproject.bramble.test.TestUtils.getMean;
+import static org.briarproject.bramble.test.TestUtils.getMedian;
+import static org.briarproject.bramble.test.TestUtils.getRandomBytes;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.bramble.test.TestUtils.getSecretKey;
+import static org.briarproject.bramble.test.TestUtils.getTestDirectory;
+import static org.briarproject.bramble.util.StringUtils.getRandomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the two ways protocol engines can find a session's storage
+ * message: a metadata query over the contact group, as used on a
+ * {@link SessionIndex} miss, and a lookup in the session index.
+ */
+@Ignore
+public class SessionIndexPerformanceTest extends BrambleTestCase {
+
+	private static final int GROUPS = 1000;
+	private static final int SESSIONS_PER_GROUP = 5;
+	private static final int MESSAGES_PER_GROUP = 20;
+	private static final int METADATA_KEYS_PER_MESSAGE = 5;
+	private static final int METADATA_KEY_LENGTH = 10;
+	private static final int METADATA_VALUE_LENGTH = 100;
+	private static final int LOOKUPS = 10_000;
+
+	private static final String SESSION_ID = "sessionId";
+	private static final String MESSAGE_TYPE = "messageType";
+
+	private final File testDir = getTestDirectory();
+	private final Random random = new Random();
+	private final List<GroupId> sessionGroups = new ArrayList<>();
+	private final List<SessionId> sessionIds = new ArrayList<>();
+
+	private LifecycleManager lifecycleManager;
+	private DatabaseComponent db;
+	private ClientHelper clientHelper;
+	private SessionIndex sessionIndex;
+
+	public SessionIndexPerformanceTest() {
+		// Disable logging
+		Logger.getLogger("").setLevel(OFF);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		assertTrue(testDir.mkdirs());
+		BriarIntegrationTestComponent component =
+				DaggerBriarIntegrationTestComponent.builder()
+						.testDatabaseConfigModule(
+								new TestDatabaseConfigModule(testDir))
+						.build();
+		BriarIntegrationTestComponent.Helper
+				.injectEagerSingletons(component);
+		IdentityManager identityManager = component.getIdentityManager();
+		identityManager.registerIdentity(
+				identityManager.createIdentity(getRandomString(10)));
+		lifecycleManager = component.getLifecycleManager();
+		lifecycleManager.startServices(getSecretKey());
+		lifecycleManager.waitForStartup();
+		db = component.getDatabaseComponent();
+		clientHelper = component.getClientHelper();
+		sessionIndex = new SessionIndex(clientHelper);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		lifecycleManager.stopServices();
+		lifecycleManager.waitForShutdown();
+		deleteTestDirectory(testDir);
+	}
+
+	@Test
+	public void testSessionLookups() throws Exception {
+		populateDatabase();
+		// Warm up both lookups before measuring
+		measureQueryLookups();
+		measureIndexedLookups();
+		List<Long> query = measureQueryLookups();
+		List<Long> indexed = measureIndexedLookups();
+		printResult("Metadata query", query);
+		printResult("Session index", indexed);
+	}
+
+	private void populateDatabase() throws DbException, FormatException {
+		ClientId clientId = new ClientId(getRandomString(50));
+		Transaction txn = db.startTransaction(false);
+		try {
+			for (int i = 0; i < GROUPS; i++) {
+				Group g = getGroup(clientId, 123);
+				db.addGroup(txn, g);
+				for (int j = 0; j < MESSAGES_PER_GROUP; j++) {
+					BdfDictionary meta = getMetadata();
+					meta.put(MESSAGE_TYPE, 0);
+					addMessage(txn, g.getId(), meta);
+				}
+				for (int j = 0; j < SESSIONS_PER_GROUP; j++) {
+					SessionId s = new SessionId(getRandomId());
+					BdfDictionary meta = getMetadata();
+					meta.put(SESSION_ID, s);
+					MessageId storageId = addMessage(txn, g.getId(), meta);
+					sessionIndex.addSession(g.getId(), s, storageId);
+					sessionGroups.add(g.getId());
+					sessionIds.add(s);
+				}
+			}
+			db.commitTransaction(txn);
+		} finally {
+			db.endTransaction(txn);
+		}
+	}
+
+	private MessageId addMessage(Transaction txn, GroupId g,
+			BdfDictionary meta) throws DbException, FormatException {
+		Message m = clientHelper.createMessageForStoringMetadata(g);
+		db.addLocalMessage(txn, m, new Metadata(), false, false);
+		clientHelper.mergeMessageMetadata(txn, m.getId(), meta);
+		return m.getId();
+	}
+
+	private BdfDictionary getMetadata() {
+		BdfDictionary meta = new BdfDictionary();
+		for (int i = 0; i < METADATA_KEYS_PER_MESSAGE; i++) {
+			String key = getRandomString(METADATA_KEY_LENGTH);
+			meta.put(key, getRandomBytes(METADATA_VALUE_LENGTH));
+		}
+		return meta;
+	}
+
+	private List<Long> measureQueryLookups()
+			throws DbException, FormatException {
+		List<Long> durations = new ArrayList<>(LOOKUPS);
+		for (int i = 0; i < LOOKUPS; i++) {
+			int session = random.nextInt(sessionIds.size());
+			BdfDictionary query = BdfDictionary.of(
+					new BdfEntry(SESSION_ID, sessionIds.get(session)));
+			long start = System.nanoTime();
+			Transaction txn = db.startTransaction(true);
+			try {
+				Map<MessageId, BdfDictionary> results =
+						clientHelper.getMessageMetadataAsDictionary(txn,
+								sessionGroups.get(session), query);
+				db.commitTransaction(txn);
+				assertEquals(1, results.size());
+			} finally {
+				db.endTransaction(txn);
+			}
+			durations.add(System.nanoTime() - start);
+		}
+		return durations;
+	}
+
+	private List<Long> measureIndexedLookups()
+			throws DbException, FormatException {
+		List<Long> durations = new ArrayList<>(LOOKUPS);
+		for (int i = 0; i < LOOKUPS; i++) {
+			int session = random.nextInt(sessionIds.size());
+			long start = System.nanoTime();
+			Transaction txn = db.startTransaction(true);
+			try {
+				assertNotNull(sessionIndex.getSession(txn,
+						sessionGroups.get(session), sessionIds.get(session)));
+				db.commitTransaction(txn);
+			} finally {
+				db.endTransaction(txn);
+			}
+			durations.add(System.nanoTime() - start);
+		}
+		return durations;
+	}
+
+	private void printResult(String name, List<Long> durations) {
+		System.out.println(String.format("%s\t%,d\t%,d", name,
+				(long) getMean(durations), (long) getMedian(durations)));
+	}
+}
@@ -0,0 +1,114 @@
+package org.briarproject.briar.client;
+
+import org.briarproject.bramble.api.Pair;
+import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.data.BdfDictionary;
+import org.briarproject.bramble.api.data.BdfEntry;
+import org.briarproject.bramble.api.db.NoSuchMessageException;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.briar.api.client.SessionId;
+import org.jmock.Expectations;
+import org.junit.Test;
+
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SessionIndexTest extends BrambleMockTestCase {
+
+	private final ClientHelper clientHelper = context.mock(ClientHelper.class);
+
+	private final Transaction txn = new Transaction(null, true);
+	private final GroupId groupId = new GroupId(getRandomId());
+	private final SessionId sessionId = new SessionId(getRandomId());
+	private final MessageId storageId = new MessageId(getRandomId());
+	private final BdfDictionary session =
+			BdfDictionary.of(new BdfEntry("foo", "bar"));
+
+	private final SessionIndex sessionIndex = new SessionIndex(clientHelper);
+
+	@Test
+	public void testReturnsNullIfSessionIsNotIndexed() throws Exception {
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+	}
+
+	@Test
+	public void testReturnsIndexedSession() throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn, storageId);
+			will(returnValue(session));
+		}});
+
+		sessionIndex.addSession(groupId, sessionId, storageId);
+		Pair<MessageId, BdfDictionary> indexed =
+				sessionIndex.getSession(txn, groupId, sessionId);
+		assertNotNull(indexed);
+		assertEquals(storageId, indexed.getFirst());
+		assertEquals(session, indexed.getSecond());
+	}
+
+	@Test
+	public void testRemovesSessionIfStorageMessageHasBeenDeleted()
+			throws Exception {
+		context.checking(new Expectations() {{
+			// The storage message only needs to be checked once
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn, storageId);
+			will(throwException(new NoSuchMessageException()));
+		}});
+
+		sessionIndex.addSession(groupId, sessionId, storageId);
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+	}
+
+	@Test
+	public void testRemovesSessionIfMetadataHasBeenDeleted()
+			throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(clientHelper).getMessageMetadataAsDictionary(txn, storageId);
+			will(returnValue(new BdfDictionary()));
+		}});
+
+		sessionIndex.addSession(groupId, sessionId, storageId);
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+	}
+
+	@Test
+	public void testRemovesSession() throws Exception {
+		sessionIndex.addSession(groupId, sessionId, storageId);
+		sessionIndex.removeSession(groupId, sessionId);
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+	}
+
+	@Test
+	public void testRemovesStorageMessage() throws Exception {
+		sessionIndex.addSession(groupId, sessionId, storageId);
+		sessionIndex.removeStorageMessage(groupId, storageId);
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+	}
+
+	@Test
+	public void testRemovesGroup() throws Exception {
+		SessionId sessionId1 = new SessionId(getRandomId());
+		MessageId storageId1 = new MessageId(getRandomId());
+
+		sessionIndex.addSession(groupId, sessionId, storageId);
+		sessionIndex.addSession(groupId, sessionId1, storageId1);
+		sessionIndex.removeGroup(groupId);
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId));
+		assertNull(sessionIndex.getSession(txn, groupId, sessionId1));
+	}
+
+	@Test
+	public void testSessionsAreIndexedPerGroup() throws Exception {
+		GroupId groupId1 = new GroupId(getRandomId());
+
+		sessionIndex.addSession(groupId, sessionId, storageId);
+		assertNull(sessionIndex.getSession(txn, groupId1, sessionId));
+	}
+}
@@ -0,0 +1,78 @@
+package org.briarproject.briar.client;
+
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.test.BrambleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.shuffle;
+import static java.util.Collections.sort;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.briarproject.briar.client.ThreadPath.DEPTH_FIRST_ORDER;
+import static org.briarproject.briar.client.ThreadPath.SEGMENT_LENGTH;
+import static org.briarproject.briar.client.ThreadPath.getDepth;
+import static org.briarproject.briar.client.ThreadPath.getPath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadPathTest extends BrambleTestCase {
+
+	@Test
+	public void testPathsExtendParentPaths() {
+		byte[] root = getPath(null, 123, new MessageId(getRandomId()));
+		assertEquals(SEGMENT_LENGTH, root.length);
+		assertEquals(0, getDepth(root));
+		byte[] child = getPath(root, 456, new MessageId(getRandomId()));
+		assertEquals(2 * SEGMENT_LENGTH, child.length);
+		assertEquals(1, getDepth(child));
+		for (int i = 0; i < root.length; i++) assertEquals(root[i], child[i]);
+	}
+
+	@Test
+	public void testPathsAreSortedInDepthFirstOrder() {
+		// a
+		// - a1
+		//   - a1x
+		// - a2
+		// b
+		byte[] a = getPath(null, 1000, new MessageId(getRandomId()));
+		byte[] b = getPath(null, 2000, new MessageId(getRandomId()));
+		byte[] a1 = getPath(a, 3000, new MessageId(getRandomId()));
+		byte[] a2 = getPath(a, 4000, new MessageId(getRandomId()));
+		byte[] a1x = getPath(a1, 5000, new MessageId(getRandomId()));
+		List<byte[]> expected = asList(a, a1, a1x, a2, b);
+		List<byte[]> paths = new ArrayList<>(expected);
+		shuffle(paths);
+		sort(paths, DEPTH_FIRST_ORDER);
+		assertEquals(expected, paths);
+	}
+
+	@Test
+	public void testTimestampsAreComparedAsSignedNumbers() {
+		byte[] negative = getPath(null, -1, new MessageId(getRandomId()));
+		byte[] zero = getPath(null, 0, new MessageId(getRandomId()));
+		byte[] large = getPath(null, 1L << 40, new MessageId(getRandomId()));
+		assertTrue(DEPTH_FIRST_ORDER.compare(negative, zero) < 0);
+		assertTrue(DEPTH_FIRST_ORDER.compare(zero, large) < 0);
+	}
+
+	@Test
+	public void testPostsWithSameTimestampAreOrderedById() {
+		byte[] id1 = getRandomId(), id2 = getRandomId();
+		id1[0] = 0x01;
+		id2[0] = (byte) 0xFF;
+		byte[] a = getPath(null, 1000, new MessageId(id1));
+		byte[] b = getPath(null, 1000, new MessageId(id2));
+		assertTrue(DEPTH_FIRST_ORDER.compare(a, b) < 0);
+		assertTrue(DEPTH_FIRST_ORDER.compare(b, a) > 0);
+		assertEquals(0, DEPTH_FIRST_ORDER.compare(a, a.clone()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDepthOfInvalidPathIsRejected() {
+		getDepth(new byte[SEGMENT_LENGTH + 1]);
+	}
+}
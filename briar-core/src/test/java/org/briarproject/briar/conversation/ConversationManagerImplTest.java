@@ -0,0 +1,251 @@
+package org.briarproject.briar.conversation;
+
+import org.briarproject.bramble.api.client.ClientHelper;
+import org.briarproject.bramble.api.contact.Contact;
+import org.briarproject.bramble.api.contact.ContactId;
+import org.briarproject.bramble.api.db.CommitAction;
+import org.briarproject.bramble.api.db.DatabaseComponent;
+import org.briarproject.bramble.api.db.TaskAction;
+import org.briarproject.bramble.api.db.Transaction;
+import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.Message;
+import org.briarproject.bramble.api.sync.MessageId;
+import org.briarproject.bramble.api.system.Clock;
+import org.briarproject.bramble.test.BrambleMockTestCase;
+import org.briarproject.briar.api.client.MessageTracker;
+import org.briarproject.briar.api.client.MessageTracker.GroupCount;
+import org.briarproject.briar.api.conversation.ConversationManager.ConversationClient;
+import org.jmock.Expectations;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.briarproject.bramble.test.TestUtils.getContact;
+import static org.briarproject.bramble.test.TestUtils.getMessage;
+import static org.briarproject.bramble.test.TestUtils.getRandomId;
+import static org.junit.Assert.assertEquals;
+
+public class ConversationManagerImplTest extends BrambleMockTestCase {
+
+	private final DatabaseComponent db = context.mock(DatabaseComponent.class);
+	private final MessageTracker messageTracker =
+			context.mock(MessageTracker.class);
+	private final Clock clock = context.mock(Clock.class);
+	private final ClientHelper clientHelper = context.mock(ClientHelper.class);
+	private final ConversationClient client1 =
+			context.mock(ConversationClient.class, "client1");
+	private final ConversationClient client2 =
+			context.mock(ConversationClient.class, "client2");
+
+	private final Contact contact = getContact();
+	private final ContactId contactId = contact.getId();
+	private final GroupId groupId = new GroupId(getRandomId());
+	private final Message message = getMessage(groupId);
+	private final GroupCount count1 = new GroupCount(2, 1, 100);
+	private final GroupCount count2 = new GroupCount(3, 2, 200);
+
+	private ConversationManagerImpl conversationManager;
+
+	@Before
+	public void setUp() {
+		conversationManager = new ConversationManagerImpl(db, messageTracker,
+				clock, clientHelper);
+		conversationManager.registerConversationClient(client1);
+		conversationManager.registerConversationClient(client2);
+	}
+
+	@Test
+	public void testCachesGroupCountInReadOnlyTransaction() throws Exception {
+		Transaction txn = new Transaction(null, true);
+
+		expectLoadGroupCount(txn);
+
+		GroupCount count = conversationManager.getGroupCount(txn, contactId);
+		assertGroupCount(5, 3, 200, count);
+		// The second call should be served from the cache
+		count = conversationManager.getGroupCount(txn, contactId);
+		assertGroupCount(5, 3, 200, count);
+	}
+
+	@Test
+	public void testCachesGroupCountFromWriteTransactionOnCommit()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, true);
+
+		expectLoadGroupCount(txn);
+
+		conversationManager.getGroupCount(txn, contactId);
+		// The count should be cached when the transaction commits
+		assertEquals(1, txn.getActions().size());
+		runCommitActions(txn);
+		GroupCount count = conversationManager.getGroupCount(txn1, contactId);
+		assertGroupCount(5, 3, 200, count);
+	}
+
+	@Test
+	public void testUpdatesCachedGroupCountWhenTrackingMessage()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+
+		expectLoadGroupCount(txn);
+		context.checking(new Expectations() {{
+			oneOf(messageTracker).trackIncomingMessage(txn1, message);
+			oneOf(clientHelper).getContactId(txn1, groupId);
+			will(returnValue(contactId));
+		}});
+
+		conversationManager.getGroupCount(txn, contactId);
+		conversationManager.trackIncomingMessage(txn1, message);
+		runCommitActions(txn1);
+		// The updated count should be served from the cache
+		GroupCount count = conversationManager.getGroupCount(txn2, contactId);
+		assertGroupCount(6, 4, Math.max(200, message.getTimestamp()), count);
+	}
+
+	@Test
+	public void testDoesNotUpdateCachedGroupCountIfTransactionIsAborted()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+
+		expectLoadGroupCount(txn);
+		context.checking(new Expectations() {{
+			oneOf(messageTracker).trackOutgoingMessage(txn1, message);
+			oneOf(clientHelper).getContactId(txn1, groupId);
+			will(returnValue(contactId));
+		}});
+		// The count should be reloaded after the aborted transaction
+		expectLoadGroupCount(txn2);
+
+		conversationManager.getGroupCount(txn, contactId);
+		conversationManager.trackOutgoingMessage(txn1, message);
+		// Don't run the commit actions
+		GroupCount count = conversationManager.getGroupCount(txn2, contactId);
+		assertGroupCount(5, 3, 200, count);
+	}
+
+	@Test
+	public void testUpdatesCachedGroupCountWhenSettingReadFlag()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+		MessageId messageId = message.getId();
+
+		expectLoadGroupCount(txn);
+		context.checking(new Expectations() {{
+			oneOf(messageTracker).setReadFlag(txn1, groupId, messageId, true);
+			will(returnValue(false));
+			oneOf(clientHelper).getContactId(txn1, groupId);
+			will(returnValue(contactId));
+			oneOf(db).startCleanupTimer(txn1, messageId);
+		}});
+
+		conversationManager.getGroupCount(txn, contactId);
+		conversationManager.setReadFlag(txn1, groupId, messageId, true);
+		runCommitActions(txn1);
+		GroupCount count = conversationManager.getGroupCount(txn2, contactId);
+		assertGroupCount(5, 2, 200, count);
+	}
+
+	@Test
+	public void testReloadsGroupCountAfterReset() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+
+		expectLoadGroupCount(txn);
+		context.checking(new Expectations() {{
+			oneOf(messageTracker).resetGroupCount(txn1, groupId, 0, 0);
+			oneOf(clientHelper).getContactId(txn1, groupId);
+			will(returnValue(contactId));
+		}});
+		expectLoadGroupCount(txn2);
+
+		conversationManager.getGroupCount(txn, contactId);
+		conversationManager.resetGroupCount(txn1, groupId, 0, 0);
+		runCommitActions(txn1);
+		conversationManager.getGroupCount(txn2, contactId);
+	}
+
+	@Test
+	public void testRemovesCachedGroupCountWhenRemovingContact()
+			throws Exception {
+		Transaction txn = new Transaction(null, true);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+
+		expectLoadGroupCount(txn);
+		expectLoadGroupCount(txn2);
+
+		conversationManager.getGroupCount(txn, contactId);
+		conversationManager.removingContact(txn1, contact);
+		conversationManager.getGroupCount(txn2, contactId);
+	}
+
+	@Test
+	public void testDoesNotCacheGroupCountAfterRemovingContact()
+			throws Exception {
+		Transaction txn = new Transaction(null, false);
+		Transaction txn1 = new Transaction(null, false);
+		Transaction txn2 = new Transaction(null, true);
+
+		expectLoadGroupCount(txn);
+		expectLoadGroupCount(txn2);
+
+		conversationManager.getGroupCount(txn, contactId);
+		conversationManager.removingContact(txn1, contact);
+		// The count loaded before the contact was removed is discarded
+		runCommitActions(txn);
+		conversationManager.getGroupCount(txn2, contactId);
+	}
+
+	@Test
+	public void testGetsGroupCountsForMultipleContacts() throws Exception {
+		Transaction txn = new Transaction(null, true);
+		ContactId contactId1 = new ContactId(contactId.getInt() + 1);
+
+		expectLoadGroupCount(txn);
+		context.checking(new Expectations() {{
+			oneOf(client1).getGroupCount(txn, contactId1);
+			will(returnValue(new GroupCount(0, 0, 0)));
+			oneOf(client2).getGroupCount(txn, contactId1);
+			will(returnValue(new GroupCount(1, 1, 300)));
+		}});
+
+		Map<ContactId, GroupCount> counts = conversationManager
+				.getGroupCounts(txn, asList(contactId, contactId1));
+		assertEquals(2, counts.size());
+		assertGroupCount(5, 3, 200, counts.get(contactId));
+		assertGroupCount(1, 1, 300, counts.get(contactId1));
+	}
+
+	private void expectLoadGroupCount(Transaction txn) throws Exception {
+		context.checking(new Expectations() {{
+			oneOf(client1).getGroupCount(txn, contactId);
+			will(returnValue(count1));
+			oneOf(client2).getGroupCount(txn, contactId);
+			will(returnValue(count2));
+		}});
+	}
+
+	private void runCommitActions(Transaction txn) {
+		for (CommitAction action : txn.getActions()) {
+			if (action instanceof TaskAction)
+				((TaskAction) action).getTask().run();
+		}
+	}
+
+	private void assertGroupCount(int msgCount, int unreadCount,
+			long latestMsgTime, GroupCount count) {
+		assertEquals(msgCount, count.getMsgCount());
+		assertEquals(unreadCount, count.getUnreadCount());
+		assertEquals(latestMsgTime, count.getLatestMsgTime());
+	}
+}
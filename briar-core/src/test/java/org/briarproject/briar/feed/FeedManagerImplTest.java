@@ -26,6 +26,8 @@ import org.briarproject.briar.api.blog.BlogPostFactory;
 import org.briarproject.briar.api.feed.Feed;
 import org.briarproject.briar.api.feed.RssProperties;
 import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
@@ -34,10 +36,12 @@ import java.util.Date;
 import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import okhttp3.OkHttpClient;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 
 import static java.util.Collections.singletonList;
 import static okhttp3.mockwebserver.SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY;
@@ -45,10 +49,14 @@ import static org.briarproject.bramble.test.TestUtils.getGroup;
 import static org.briarproject.bramble.test.TestUtils.getLocalAuthor;
 import static org.briarproject.bramble.test.TestUtils.getMessage;
 import static org.briarproject.bramble.util.StringUtils.UTF_8;
+import static org.briarproject.bramble.util.StringUtils.getRandomString;
 import static org.briarproject.briar.api.feed.FeedConstants.KEY_FEEDS;
 import static org.briarproject.briar.api.feed.FeedManager.CLIENT_ID;
 import static org.briarproject.briar.api.feed.FeedManager.MAJOR_VERSION;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class FeedManagerImplTest extends BrambleMockTestCase {
 
@@ -90,6 +98,8 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 	private final SimpleDateFormat sdf =
 			new SimpleDateFormat("EEE, dd MMM yy HH:mm:ss Z");
 	private final String pubDateString = sdf.format(new Date(pubDate));
+	private final String eTag = "\"" + getRandomString(10) + "\"";
+	private final String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
 
 	private final FeedManagerImpl feedManager =
 			new FeedManagerImpl(scheduler, ioExecutor, db, contactGroupFactory,
@@ -123,7 +133,6 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 		Feed feed = createFeed(url, blog);
 
 		expectGetFeeds(feed);
-		expectGetAndStoreFeeds(feed);
 
 		feedManager.setTorActive(true);
 		feedManager.fetchFeeds();
@@ -139,7 +148,6 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 		Feed feed = createFeed(url, blog);
 
 		expectGetFeeds(feed);
-		expectGetAndStoreFeeds(feed);
 
 		feedManager.setTorActive(true);
 		feedManager.fetchFeeds();
@@ -157,8 +165,7 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 		Feed feed = createFeed(url, blog);
 
 		expectGetFeeds(feed);
-		expectUpdateFeedNoEntries(feed);
-		expectGetAndStoreFeeds(feed);
+		expectUpdateFeedNoEntries(feed, feed);
 
 		feedManager.setTorActive(true);
 		feedManager.fetchFeeds();
@@ -178,11 +185,145 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 		Feed feed = createFeed(url, blog);
 
 		expectGetFeeds(feed);
-		expectUpdateFeedOneEntry(feed);
+		expectUpdateFeedOneEntry(feed, feed);
+
+		feedManager.setTorActive(true);
+		feedManager.fetchFeeds();
+	}
+
+	@Test
+	public void testFetchFeedsStoresValidators() throws Exception {
+		// The server sends validators for conditional requests
+		String feedXml = createRssFeedXml();
+
+		MockWebServer server = new MockWebServer();
+		String url = server.url("/").toString();
+		server.enqueue(new MockResponse().setBody(feedXml)
+				.setHeader("ETag", eTag)
+				.setHeader("Last-Modified", lastModified));
+
+		Feed feed = createFeed(url, blog);
+		Feed updated = createFeed(url, blog, eTag, lastModified);
+
+		expectGetFeeds(feed);
+		context.checking(new DbExpectations() {{
+			// The validators are stored with the posted entries
+			Transaction txn = new Transaction(null, false);
+			oneOf(db).transactionWithResult(with(false), withDbCallable(txn));
+			oneOf(feedFactory).updateFeed(with(feed), with(any(SyndFeed.class)),
+					with(0L), with(eTag), with(lastModified));
+			will(returnValue(updated));
+			expectGetFeeds(txn, feed);
+			expectStoreFeeds(txn, updated);
+		}});
+
+		feedManager.setTorActive(true);
+		feedManager.fetchFeeds();
+
+		// The first request should not be conditional
+		RecordedRequest request = server.takeRequest();
+		assertNull(request.getHeader("If-None-Match"));
+		assertNull(request.getHeader("If-Modified-Since"));
+	}
+
+	@Test
+	public void testFetchFeedsSkipsUnchangedFeed() throws Exception {
+		// The feed has not changed since it was last fetched
+		MockWebServer server = new MockWebServer();
+		String url = server.url("/").toString();
+		server.enqueue(new MockResponse().setResponseCode(304));
+
+		Feed feed = createFeed(url, blog, eTag, lastModified);
+
+		expectGetFeeds(feed);
+		context.checking(new Expectations() {{
+			// The feed should not be parsed or posted
+			oneOf(feedFactory).updateUnchangedFeed(feed);
+			will(returnValue(feed));
+		}});
 		expectGetAndStoreFeeds(feed);
 
 		feedManager.setTorActive(true);
 		feedManager.fetchFeeds();
+
+		// The request should be conditional
+		RecordedRequest request = server.takeRequest();
+		assertEquals(eTag, request.getHeader("If-None-Match"));
+		assertEquals(lastModified, request.getHeader("If-Modified-Since"));
+	}
+
+	@Test
+	public void testFetchFeedsStoresFetchedFeedsIfInterrupted()
+			throws Exception {
+		// The first feed has a new entry
+		String entryXml =
+				"<item><pubDate>" + pubDateString + "</pubDate></item>";
+		MockWebServer server1 = new MockWebServer();
+		String url1 = server1.url("/").toString();
+		server1.enqueue(new MockResponse().setBody(createRssFeedXml(entryXml)));
+		// The second feed has not changed
+		MockWebServer server2 = new MockWebServer();
+		String url2 = server2.url("/").toString();
+		server2.enqueue(new MockResponse().setResponseCode(304));
+
+		Group otherBlogGroup = getGroup(BlogManager.CLIENT_ID,
+				BlogManager.MAJOR_VERSION);
+		Blog otherBlog = new Blog(otherBlogGroup, localAuthor, true);
+		Feed feed1 = createFeed(url1, blog);
+		Feed feed2 = createFeed(url2, otherBlog, eTag, lastModified);
+
+		expectGetFeeds(feed1, feed2);
+		// The new entry is posted and the first feed is stored at once
+		expectUpdateFeedOneEntry(feed1, feed1, feed2);
+		context.checking(new Expectations() {{
+			// The thread is interrupted after fetching the second feed
+			oneOf(feedFactory).updateUnchangedFeed(feed2);
+			will(new CustomAction("interrupt") {
+				@Override
+				public Object invoke(Invocation invocation) {
+					Thread.currentThread().interrupt();
+					return feed2;
+				}
+			});
+		}});
+		// The unchanged feed is still stored
+		expectGetAndStoreFeeds(feed1, feed2);
+
+		feedManager.setTorActive(true);
+		feedManager.fetchFeeds();
+
+		// The interrupt should be passed on
+		assertTrue(Thread.interrupted());
+	}
+
+	@Test
+	public void testFetchFeedsUpdatesOtherFeedsIfOneFails() throws Exception {
+		// Fetching the first feed will fail
+		MockWebServer server1 = new MockWebServer();
+		String url1 = server1.url("/").toString();
+		server1.enqueue(new MockResponse()
+				.setBody("  ")
+				.setSocketPolicy(DISCONNECT_DURING_RESPONSE_BODY));
+		// The second feed has not changed
+		MockWebServer server2 = new MockWebServer();
+		String url2 = server2.url("/").toString();
+		server2.enqueue(new MockResponse().setResponseCode(304));
+
+		Group otherBlogGroup = getGroup(BlogManager.CLIENT_ID,
+				BlogManager.MAJOR_VERSION);
+		Blog otherBlog = new Blog(otherBlogGroup, localAuthor, true);
+		Feed feed1 = createFeed(url1, blog);
+		Feed feed2 = createFeed(url2, otherBlog, eTag, lastModified);
+
+		expectGetFeeds(feed1, feed2);
+		context.checking(new Expectations() {{
+			oneOf(feedFactory).updateUnchangedFeed(feed2);
+			will(returnValue(feed2));
+		}});
+		expectGetAndStoreFeeds(feed1, feed2);
+
+		feedManager.setTorActive(true);
+		feedManager.fetchFeeds();
 	}
 
 	@Test
@@ -219,8 +360,7 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 			expectStoreFeeds(txn, existingFeed, newFeed);
 		}});
 
-		expectUpdateFeedNoEntries(newFeed);
-		expectGetAndStoreFeeds(existingFeed, newFeed);
+		expectUpdateFeedNoEntries(newFeed, existingFeed, newFeed);
 
 		feedManager.addFeed(url);
 	}
@@ -245,8 +385,7 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(newFeed));
 		}});
 
-		expectUpdateFeedNoEntries(newFeed);
-		expectGetAndStoreFeeds(newFeed);
+		expectUpdateFeedNoEntries(newFeed, newFeed);
 
 		feedManager.addFeed(url);
 	}
@@ -281,8 +420,7 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 			expectStoreFeeds(txn, existingFeed, newFeed);
 		}});
 
-		expectUpdateFeedNoEntries(newFeed);
-		expectGetAndStoreFeeds(existingFeed, newFeed);
+		expectUpdateFeedNoEntries(newFeed, existingFeed, newFeed);
 
 		feedManager.addFeed(new ByteArrayInputStream(feedXml.getBytes(UTF_8)));
 	}
@@ -302,16 +440,21 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(newFeed));
 		}});
 
-		expectUpdateFeedNoEntries(newFeed);
-		expectGetAndStoreFeeds(newFeed);
+		expectUpdateFeedNoEntries(newFeed, newFeed);
 
 		feedManager.addFeed(new ByteArrayInputStream(feedXml.getBytes(UTF_8)));
 	}
 
 	private Feed createFeed(String url, Blog blog) {
+		return createFeed(url, blog, null, null);
+	}
+
+	private Feed createFeed(String url, Blog blog, @Nullable String eTag,
+			@Nullable String lastModified) {
 		RssProperties properties = new RssProperties(url,
 				null, null, null, null, null);
-		return new Feed(blog, localAuthor, properties, 0, 0, 0);
+		return new Feed(blog, localAuthor, properties, 0, 0, 0, eTag,
+				lastModified);
 	}
 
 	private String createRssFeedXml(String... entries) {
@@ -386,18 +529,27 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 		}});
 	}
 
-	private void expectUpdateFeedNoEntries(Feed feed) throws Exception {
+	/**
+	 * Expects the given feed to be updated and stored, along with the other
+	 * stored feeds, in the transaction that posts its entries.
+	 */
+	private void expectUpdateFeedNoEntries(Feed feed, Feed... storedFeeds)
+			throws Exception {
 		Transaction txn = new Transaction(null, false);
 
 		context.checking(new DbExpectations() {{
 			oneOf(db).transactionWithResult(with(false), withDbCallable(txn));
 			oneOf(feedFactory).updateFeed(with(feed), with(any(SyndFeed.class)),
-					with(0L));
+					with(0L), with(nullValue(String.class)),
+					with(nullValue(String.class)));
 			will(returnValue(feed));
+			expectGetFeeds(txn, storedFeeds);
+			expectStoreFeeds(txn, storedFeeds);
 		}});
 	}
 
-	private void expectUpdateFeedOneEntry(Feed feed) throws Exception {
+	private void expectUpdateFeedOneEntry(Feed feed, Feed... storedFeeds)
+			throws Exception {
 		Transaction txn = new Transaction(null, false);
 		String body = "<p>(" + new Date(pubDate) + ")</p>";
 
@@ -410,8 +562,11 @@ public class FeedManagerImplTest extends BrambleMockTestCase {
 			will(returnValue(blogPost));
 			oneOf(blogManager).addLocalPost(txn, blogPost);
 			oneOf(feedFactory).updateFeed(with(feed), with(any(SyndFeed.class)),
-					with(pubDate));
+					with(pubDate), with(nullValue(String.class)),
+					with(nullValue(String.class)));
 			will(returnValue(feed));
+			expectGetFeeds(txn, storedFeeds);
+			expectStoreFeeds(txn, storedFeeds);
 		}});
 	}
 }
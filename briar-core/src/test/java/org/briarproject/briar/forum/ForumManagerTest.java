@@ -1,6 +1,7 @@
 package org.briarproject.briar.forum;
 
 import org.briarproject.bramble.api.sync.GroupId;
+import org.briarproject.bramble.api.sync.MessageId;
 import org.briarproject.bramble.test.TestDatabaseConfigModule;
 import org.briarproject.briar.api.forum.Forum;
 import org.briarproject.briar.api.forum.ForumManager;
@@ -13,10 +14,13 @@ import org.briarproject.briar.test.DaggerBriarIntegrationTestComponent;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import javax.annotation.Nullable;
 
+import static java.util.Arrays.asList;
 import static org.briarproject.briar.test.BriarTestUtils.assertGroupCount;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -227,4 +231,46 @@ public class ForumManagerTest
 		assertEquals(1, forumManager1.getPostHeaders(g1).size());
 	}
 
+	@Test
+	public void testPostHeadersInThreadOrder() throws Exception {
+		long time = c0.getClock().currentTimeMillis();
+		ForumPost a = createForumPost(groupId0, null, "a", time);
+		ForumPost b = createForumPost(groupId0, null, "b", time + 1);
+		ForumPost a1 = createForumPost(groupId0, a, "a1", time + 2);
+		ForumPost a2 = createForumPost(groupId0, a, "a2", time + 3);
+		ForumPost a1x = createForumPost(groupId0, a1, "a1x", time + 4);
+		// Add the posts out of thread order
+		for (ForumPost p : asList(a, b, a1, a2, a1x))
+			forumManager0.addLocalPost(p);
+		List<ForumPost> expected = asList(a, a1, a1x, a2, b);
+		int[] depths = {0, 1, 2, 1, 0};
+
+		// Fetch the posts from 0 in pages of two
+		assertThreadOrder(forumManager0, expected, depths);
+
+		// Send the posts to 1, which should store the same thread order
+		sync0To1(5, true);
+		assertThreadOrder(forumManager1, expected, depths);
+	}
+
+	private void assertThreadOrder(ForumManager forumManager,
+			List<ForumPost> expected, int[] depths) throws Exception {
+		List<ForumPostHeader> headers = new ArrayList<>();
+		MessageId after = null;
+		while (true) {
+			List<ForumPostHeader> page = forumManager
+					.getPostHeadersInThreadOrder(groupId0, after, 2);
+			if (page.isEmpty()) break;
+			assertTrue(page.size() <= 2);
+			headers.addAll(page);
+			after = page.get(page.size() - 1).getId();
+		}
+		assertEquals(expected.size(), headers.size());
+		for (int i = 0; i < expected.size(); i++) {
+			ForumPostHeader h = headers.get(i);
+			assertEquals(expected.get(i).getMessage().getId(), h.getId());
+			assertEquals(depths[i], h.getDepth());
+		}
+	}
+
 }
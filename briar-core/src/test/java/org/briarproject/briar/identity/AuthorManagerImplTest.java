@@ -19,7 +19,9 @@ import org.jmock.Expectations;
 import org.junit.Test;
 
 import java.util.Collection;
+import java.util.Map;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.briarproject.bramble.test.TestUtils.getAuthor;
@@ -123,6 +125,51 @@ public class AuthorManagerImplTest extends BrambleMockTestCase {
 		assertEquals(avatarHeader, authorInfo.getAvatarHeader());
 	}
 
+	@Test
+	public void testGetAuthorInfos() throws DbException {
+		Transaction txn = new Transaction(null, true);
+		Author unknown = getAuthor();
+		Contact verified = getContact(getAuthor(), local, true);
+		Collection<AuthorId> authors = asList(remote.getId(),
+				unknown.getId(), verified.getAuthor().getId(), local,
+				remote.getId());
+
+		context.checking(new Expectations() {{
+			oneOf(identityManager).getLocalAuthor(txn);
+			will(returnValue(localAuthor));
+			oneOf(avatarManager).getMyAvatarHeader(txn);
+			will(returnValue(null));
+			// The contacts should be loaded once, not once per author
+			oneOf(db).getContacts(txn);
+			will(returnValue(asList(contact, verified)));
+			never(db).getContactsByAuthorId(with(txn),
+					with(any(AuthorId.class)));
+			oneOf(avatarManager).getAvatarHeader(txn, contact);
+			will(returnValue(avatarHeader));
+			oneOf(avatarManager).getAvatarHeader(txn, verified);
+			will(returnValue(null));
+		}});
+
+		Map<AuthorId, AuthorInfo> authorInfos =
+				authorManager.getAuthorInfos(txn, authors);
+		assertEquals(4, authorInfos.size());
+		AuthorInfo remoteInfo = authorInfos.get(remote.getId());
+		assertEquals(UNVERIFIED, remoteInfo.getStatus());
+		assertEquals(contact.getAlias(), remoteInfo.getAlias());
+		assertEquals(avatarHeader, remoteInfo.getAvatarHeader());
+		assertEquals(UNKNOWN, authorInfos.get(unknown.getId()).getStatus());
+		assertEquals(VERIFIED,
+				authorInfos.get(verified.getAuthor().getId()).getStatus());
+		assertEquals(OURSELVES, authorInfos.get(local).getStatus());
+	}
+
+	@Test
+	public void testGetAuthorInfosWithNoAuthors() throws DbException {
+		Transaction txn = new Transaction(null, true);
+
+		assertEquals(0, authorManager.getAuthorInfos(txn, emptyList()).size());
+	}
+
 	@Test
 	public void testGetMyAuthorInfo() throws DbException {
 		Transaction txn = new Transaction(null, true);
@@ -26,6 +26,7 @@ import org.briarproject.bramble.test.TestUtils;
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.briar.api.client.SessionId;
 import org.briarproject.briar.api.client.ProtocolStateException;
+import org.briarproject.briar.api.conversation.ConversationManager;
 import org.briarproject.briar.api.conversation.ConversationMessageHeader;
 import org.briarproject.briar.api.privategroup.PrivateGroup;
 import org.briarproject.briar.api.privategroup.PrivateGroupFactory;
@@ -151,11 +152,13 @@ public class GroupInvitationManagerImplTest extends BrambleMockTestCase {
 		}});
 		MetadataParser metadataParser = context.mock(MetadataParser.class);
 		MessageTracker messageTracker = context.mock(MessageTracker.class);
+		ConversationManager conversationManager =
+				context.mock(ConversationManager.class);
 		groupInvitationManager = new GroupInvitationManagerImpl(db,
 				clientHelper, clientVersioningManager, metadataParser,
-				messageTracker, contactGroupFactory, privateGroupFactory,
-				privateGroupManager, messageParser, sessionParser,
-				sessionEncoder, engineFactory);
+				messageTracker, conversationManager, contactGroupFactory,
+				privateGroupFactory, privateGroupManager, messageParser,
+				sessionParser, sessionEncoder, engineFactory);
 	}
 
 	@Test
@@ -23,6 +23,7 @@ import org.briarproject.briar.api.blog.BlogInvitationResponse;
 import org.briarproject.briar.api.blog.BlogManager;
 import org.briarproject.briar.api.client.MessageTracker;
 import org.briarproject.briar.api.client.SessionId;
+import org.briarproject.briar.api.conversation.ConversationManager;
 import org.jmock.Expectations;
 import org.junit.Test;
 
@@ -82,12 +83,14 @@ public class BlogSharingManagerImplTest extends BrambleMockTestCase {
 		MetadataParser metadataParser = context.mock(MetadataParser.class);
 		MessageParser<Blog> messageParser = context.mock(MessageParser.class);
 		MessageTracker messageTracker = context.mock(MessageTracker.class);
+		ConversationManager conversationManager =
+				context.mock(ConversationManager.class);
 		InvitationFactory<Blog, BlogInvitationResponse> invitationFactory =
 				context.mock(InvitationFactory.class);
 		blogSharingManager = new BlogSharingManagerImpl(db, clientHelper,
 				clientVersioningManager, metadataParser, messageParser,
 				sessionEncoder, sessionParser, messageTracker,
-				contactGroupFactory, engine, invitationFactory, identityManager,
+				conversationManager, contactGroupFactory, engine, invitationFactory, identityManager,
 				blogManager);
 	}
 
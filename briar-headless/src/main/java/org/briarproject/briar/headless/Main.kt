@@ -9,6 +9,7 @@ import com.github.ajalt.clikt.parameters.types.int
 import org.bouncycastle.util.encoders.Base64.toBase64String
 import org.briarproject.bramble.BrambleCoreEagerSingletons
 import org.briarproject.bramble.BrambleJavaEagerSingletons
+import org.briarproject.bramble.lifecycle.VirtualThreads
 import org.briarproject.bramble.util.OsUtils.isLinux
 import org.briarproject.bramble.util.OsUtils.isMac
 import org.briarproject.briar.BriarCoreEagerSingletons
@@ -57,6 +58,10 @@ private class Main : CliktCommand(
         metavar = "PATH",
         envvar = "BRIAR_DATA_DIR"
     ).default(DEFAULT_DATA_DIR)
+    private val virtualThreads by option(
+        "--virtual-threads",
+        help = "Run connections on virtual threads (requires Java 21 or later)"
+    ).flag(default = false)
 
     override fun run() {
         // logging
@@ -73,6 +78,8 @@ private class Main : CliktCommand(
         setProperty(DEFAULT_LOG_LEVEL_KEY, levelSlf4j)
         LogManager.getLogManager().getLogger("").level = level
 
+        if (virtualThreads) setProperty(VirtualThreads.ENABLE_PROPERTY, "true")
+
         val dataDir = getDataDir()
         val app =
             DaggerBriarHeadlessApp.builder().headlessModule(HeadlessModule(dataDir)).build()
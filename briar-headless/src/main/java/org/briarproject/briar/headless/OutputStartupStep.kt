@@ -0,0 +1,20 @@
+package org.briarproject.briar.headless
+
+import org.briarproject.bramble.api.lifecycle.StartupStep
+import org.briarproject.bramble.api.lifecycle.StartupStep.Type.OPEN_DATABASE
+import org.briarproject.bramble.api.lifecycle.StartupStep.Type.OPEN_DATABASE_HOOK
+import org.briarproject.bramble.api.lifecycle.StartupStep.Type.SERVICE
+import org.briarproject.briar.headless.json.JsonDict
+
+internal fun StartupStep.output() = JsonDict(
+    "type" to type.output(),
+    "name" to name,
+    "start" to start,
+    "duration" to duration
+)
+
+internal fun StartupStep.Type.output() = when (this) {
+    OPEN_DATABASE -> "open_database"
+    OPEN_DATABASE_HOOK -> "open_database_hook"
+    SERVICE -> "service"
+}
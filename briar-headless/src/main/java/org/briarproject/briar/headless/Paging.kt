@@ -0,0 +1,145 @@
+package org.briarproject.briar.headless
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS
+import io.javalin.http.BadRequestResponse
+import io.javalin.http.Context
+import org.bouncycastle.util.encoders.Base64
+import org.bouncycastle.util.encoders.DecoderException
+import org.briarproject.bramble.api.UniqueId
+import org.briarproject.bramble.api.sync.MessageId
+import org.briarproject.bramble.util.StringUtils.toHexString
+import java.security.MessageDigest
+import javax.annotation.concurrent.Immutable
+
+private const val ETAG = "ETag"
+private const val IF_NONE_MATCH = "If-None-Match"
+private const val NOT_MODIFIED = 304
+
+/**
+ * Paging parameters of a list request.
+ *
+ * @param limit the maximum number of items to return
+ * @param before only return items with a timestamp less than this
+ * @param since only return items received at or after this time
+ * @param sinceId if given with [since], only return items received after the item with this ID,
+ * which was received at [since]
+ */
+@Immutable
+internal data class Paging(
+    val limit: Int?,
+    val before: Long?,
+    val since: Long?,
+    val sinceId: MessageId?
+) {
+
+    /**
+     * Returns the items on this page.
+     *
+     * Without [since], the items are sorted by their timestamps and the newest items are
+     * returned if there are more than the [limit], so clients can page backwards through the
+     * history with [before].
+     *
+     * With [since], the items are sorted by the times they were received and then by their IDs,
+     * and the oldest items are returned if there are more than the [limit]. The times items were
+     * received don't depend on their timestamps, so clients can poll for new items by passing
+     * the time received and the ID of the last item they have seen, without missing items that
+     * arrive late. The ID lets the next poll continue after the last item, even if the [limit]
+     * splits the items that were received at the same time.
+     */
+    fun <T> page(
+        items: Collection<T>,
+        id: (T) -> MessageId,
+        timestamp: (T) -> Long,
+        timeReceived: (T) -> Long
+    ): List<T> {
+        val filtered = items.asSequence().filter { before == null || timestamp(it) < before }
+        if (since == null) {
+            val sorted = filtered.sortedBy(timestamp).toList()
+            return if (limit == null) sorted else sorted.takeLast(limit)
+        }
+        val sorted = filtered
+            .filter { isAfterCursor(since, timeReceived(it), id(it)) }
+            .sortedWith(compareBy<T>(timeReceived).thenBy(id))
+            .toList()
+        return if (limit == null) sorted else sorted.take(limit)
+    }
+
+    private fun isAfterCursor(since: Long, timeReceived: Long, id: MessageId): Boolean {
+        // Without an ID, the items received at the cursor's time are returned again
+        if (sinceId == null) return timeReceived >= since
+        return timeReceived > since || (timeReceived == since && id > sinceId)
+    }
+
+}
+
+/**
+ * Returns the [Paging] parameters from the "limit", "before", "since" and "sinceId" query
+ * parameters.
+ *
+ * @throws BadRequestResponse when a parameter is not a number or not a valid ID,
+ * the limit is not positive, or "sinceId" is given without "since".
+ */
+internal fun Context.getPaging(): Paging {
+    val limit = getLongQueryParam("limit")
+    if (limit != null && (limit < 1 || limit > Int.MAX_VALUE))
+        throw BadRequestResponse("'limit' must be positive")
+    val since = getLongQueryParam("since")
+    val sinceId = getMessageIdQueryParam("sinceId")
+    if (sinceId != null && since == null)
+        throw BadRequestResponse("'sinceId' requires 'since'")
+    return Paging(limit?.toInt(), getLongQueryParam("before"), since, sinceId)
+}
+
+/**
+ * Returns a [MessageId] from the given Base64-encoded query parameter, or null if it is not given.
+ *
+ * @throws BadRequestResponse when the parameter is not a valid ID.
+ */
+internal fun Context.getMessageIdQueryParam(name: String): MessageId? {
+    val bytes = getIdQueryParam(name) ?: return null
+    return MessageId(bytes)
+}
+
+/**
+ * Returns the bytes of the given Base64-encoded ID query parameter, or null if it is not given.
+ *
+ * @throws BadRequestResponse when the parameter is not a valid ID.
+ */
+internal fun Context.getIdQueryParam(name: String): ByteArray? {
+    val value = queryParam(name) ?: return null
+    val bytes = try {
+        Base64.decode(value)
+    } catch (e: DecoderException) {
+        throw BadRequestResponse("'$name' must be a valid ID")
+    }
+    if (bytes.size != UniqueId.LENGTH) throw BadRequestResponse("'$name' must be a valid ID")
+    return bytes
+}
+
+/**
+ * Returns the given query parameter as a number, or null if it is not given.
+ *
+ * @throws BadRequestResponse when the parameter is not a number.
+ */
+internal fun Context.getLongQueryParam(name: String): Long? {
+    val value = queryParam(name) ?: return null
+    return value.toLongOrNull() ?: throw BadRequestResponse("'$name' must be a number")
+}
+
+/**
+ * Sets an ETag header derived from the given state, which must be serialisable to JSON.
+ *
+ * If the ETag matches the request's If-None-Match header, the response status is set to
+ * 304 Not Modified and true is returned. The caller should then not send a body.
+ */
+internal fun Context.isNotModified(objectMapper: ObjectMapper, state: Any): Boolean {
+    val json = objectMapper.writer().with(ORDER_MAP_ENTRIES_BY_KEYS).writeValueAsBytes(state)
+    val hash = MessageDigest.getInstance("SHA-256").digest(json)
+    val etag = "\"${toHexString(hash)}\""
+    header(ETAG, etag)
+    val ifNoneMatch = header(IF_NONE_MATCH) ?: return false
+    val matches = ifNoneMatch.split(',').map { it.trim() }.any { it == etag || it == "*" }
+    if (matches) status(NOT_MODIFIED)
+    return matches
+}
@@ -14,6 +14,7 @@ import io.javalin.http.BadRequestResponse
 import io.javalin.http.Context
 import io.javalin.http.NotFoundResponse
 import org.briarproject.bramble.api.contact.ContactId
+import org.briarproject.bramble.api.lifecycle.LifecycleManager
 import org.briarproject.briar.headless.blogs.BlogController
 import org.briarproject.briar.headless.contact.ContactController
 import org.briarproject.briar.headless.event.WebSocketController
@@ -37,6 +38,7 @@ internal class Router
 @Inject
 constructor(
     private val briarService: BriarService,
+    private val lifecycleManager: LifecycleManager,
     private val webSocketController: WebSocketController,
     private val contactController: ContactController,
     private val messagingController: MessagingController,
@@ -102,6 +104,15 @@ constructor(
                 path("/forums") {
                     get { ctx -> forumController.list(ctx) }
                     post { ctx -> forumController.create(ctx) }
+                    path("/posts") {
+                        get { ctx -> forumController.listPosts(ctx) }
+                    }
+                }
+                path("/startup") {
+                    get { ctx -> ctx.json(lifecycleManager.startupTimeline.map { it.output() }) }
+                }
+                path("/ws/status") {
+                    get { ctx -> ctx.json(webSocketController.getStatus()) }
                 }
                 path("/blogs") {
                     path("/posts") {
@@ -6,6 +6,7 @@ import io.javalin.http.Context
 import org.briarproject.bramble.api.db.DbException
 import org.briarproject.bramble.api.db.TransactionManager
 import org.briarproject.bramble.api.identity.IdentityManager
+import org.briarproject.bramble.api.sync.MessageId
 import org.briarproject.bramble.api.system.Clock
 import org.briarproject.bramble.util.StringUtils.utf8IsTooLong
 import org.briarproject.briar.api.blog.BlogConstants.MAX_BLOG_POST_TEXT_LENGTH
@@ -13,6 +14,8 @@ import org.briarproject.briar.api.blog.BlogManager
 import org.briarproject.briar.api.blog.BlogPostFactory
 import org.briarproject.briar.api.blog.BlogPostHeader
 import org.briarproject.briar.headless.getFromJson
+import org.briarproject.briar.headless.getPaging
+import org.briarproject.briar.headless.isNotModified
 import javax.annotation.concurrent.Immutable
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -31,12 +34,26 @@ constructor(
 ) : BlogController {
 
     override fun listPosts(ctx: Context): Context {
-        val posts = blogManager.blogs
-            .flatMap { blog -> blogManager.getPostHeaders(blog.id) }
-            .asSequence()
-            .sortedBy { it.timeReceived }
-            .map { header -> header.output(blogManager.getPostText(header.id)) }
-            .toList()
+        val paging = ctx.getPaging()
+        val since = paging.since
+        val all = ArrayList<BlogPostHeader>()
+        val received = HashMap<MessageId, Long>()
+        db.transaction<DbException>(true) { txn ->
+            for (blog in blogManager.getBlogs(txn)) {
+                // Only load the headers that can be on the page when polling for new posts
+                if (since == null) all.addAll(blogManager.getPostHeaders(txn, blog.id))
+                else all.addAll(blogManager.getPostHeaders(txn, blog.id, since))
+                received.putAll(blogManager.getPostTimesReceived(txn, blog.id, since ?: 0))
+            }
+        }
+        val headers =
+            paging.page(all, { it.id }, { it.timestamp }, { received.getValue(it.id) })
+        // The text of a post can't change, so it doesn't need to be loaded for the ETag
+        val state = headers.map { header -> header.output("", received.getValue(header.id)) }
+        if (ctx.isNotModified(objectMapper, state)) return ctx
+        val posts = headers.map { header ->
+            header.output(blogManager.getPostText(header.id), received.getValue(header.id))
+        }
         return ctx.json(posts)
     }
 
@@ -6,7 +6,7 @@ import org.briarproject.briar.api.blog.MessageType
 import org.briarproject.briar.headless.json.JsonDict
 import java.util.Locale
 
-internal fun BlogPostHeader.output(text: String) = JsonDict(
+internal fun BlogPostHeader.output(text: String, timeReceived: Long = this.timeReceived) = JsonDict(
     "text" to text,
     "author" to author.output(),
     "authorStatus" to authorInfo.status.output(),
@@ -11,8 +11,16 @@ interface WebSocketController {
     val sessions: MutableSet<WsContext>
 
     /**
-     * Sends an event to all open sessions using the [IoExecutor].
+     * Queues an event for all open sessions without blocking
+     * and sends it using the [IoExecutor].
      */
     fun sendEvent(name: String, obj: JsonDict)
 
+    /**
+     * Returns the number of events queued for each open session, the largest
+     * number of events that have been queued for any session, and the number
+     * of sessions that have been closed because they couldn't keep up.
+     */
+    fun getStatus(): JsonDict
+
 }
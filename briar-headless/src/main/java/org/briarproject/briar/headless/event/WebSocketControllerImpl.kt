@@ -8,14 +8,38 @@ import org.briarproject.briar.headless.json.JsonDict
 import org.eclipse.jetty.websocket.api.WebSocketException
 import java.io.IOException
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.logging.Level.INFO
 import java.util.logging.Level.WARNING
 import java.util.logging.Logger.getLogger
-import javax.annotation.concurrent.Immutable
+import javax.annotation.concurrent.ThreadSafe
 import javax.inject.Inject
 import javax.inject.Singleton
 
-@Immutable
+/**
+ * The maximum number of events that may be queued for a session before the
+ * session is closed.
+ */
+internal const val MAX_QUEUED_EVENTS = 1000
+
+/**
+ * How long to wait for an event to be written to a session before the
+ * session is closed.
+ */
+internal const val SEND_TIMEOUT_MS = 30_000L
+
+/**
+ * The status code used when closing a session that can't keep up.
+ */
+internal const val CLOSE_TRY_AGAIN_LATER = 1013
+
+@ThreadSafe
 @Singleton
 internal class WebSocketControllerImpl
 @Inject
@@ -25,19 +49,107 @@ constructor(@IoExecutor private val ioExecutor: Executor) : WebSocketController
 
     override val sessions: MutableSet<WsContext> = ConcurrentHashMap.newKeySet<WsContext>()
 
+    private val queues = ConcurrentHashMap<WsContext, SessionQueue>()
+    private val maxQueueDepth = AtomicInteger(0)
+    private val closedSessions = AtomicInteger(0)
+
+    /**
+     * Queues an event for all open sessions without blocking. Each session
+     * has its own bounded queue, which is written by at most one task on
+     * the [IoExecutor] at a time. Sessions that fall too far behind are
+     * closed, so they can't hold up the event bus or other sessions.
+     */
     override fun sendEvent(name: String, obj: JsonDict) {
         val event = toJson(OutputEvent(name, obj))
+        // Forget the queues of sessions that have been removed
+        queues.keys.retainAll(sessions)
         sessions.forEach { session ->
-            ioExecutor.execute {
-                try {
-                    session.send(event)
-                } catch (e: WebSocketException) {
-                    logException(logger, WARNING, e)
-                } catch (e: IOException) {
-                    logException(logger, WARNING, e)
+            val queue = queues.computeIfAbsent(session) { SessionQueue(it) }
+            if (queue.events.offer(event)) {
+                updateMaxQueueDepth(queue.events.size)
+                if (queue.writing.compareAndSet(false, true)) {
+                    ioExecutor.execute { writeEvents(queue) }
                 }
+            } else {
+                close(queue, "Too many queued events")
             }
         }
     }
 
+    override fun getStatus() = JsonDict(
+        "sessions" to sessions.map { session ->
+            JsonDict(
+                "remoteAddress" to session.session.remoteAddress.toString(),
+                "queueDepth" to (queues[session]?.events?.size ?: 0)
+            )
+        },
+        "maxQueueDepth" to maxQueueDepth.get(),
+        "closedSessions" to closedSessions.get()
+    )
+
+    private fun updateMaxQueueDepth(depth: Int) {
+        while (true) {
+            val max = maxQueueDepth.get()
+            if (depth <= max || maxQueueDepth.compareAndSet(max, depth)) return
+        }
+    }
+
+    private fun writeEvents(queue: SessionQueue) {
+        while (true) {
+            while (true) {
+                val event = queue.events.poll() ?: break
+                if (!writeEvent(queue, event)) return
+            }
+            queue.writing.set(false)
+            // An event may have been queued after the queue was found empty
+            if (queue.events.isEmpty() || !queue.writing.compareAndSet(false, true)) return
+        }
+    }
+
+    /**
+     * Returns false if the session has been closed.
+     */
+    private fun writeEvent(queue: SessionQueue, event: String): Boolean {
+        try {
+            queue.session.send(event).get(SEND_TIMEOUT_MS, MILLISECONDS)
+        } catch (e: TimeoutException) {
+            close(queue, "Timed out sending event")
+            return false
+        } catch (e: ExecutionException) {
+            logException(logger, WARNING, e)
+        } catch (e: WebSocketException) {
+            logException(logger, WARNING, e)
+        } catch (e: IOException) {
+            logException(logger, WARNING, e)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            close(queue, "Interrupted while sending event")
+            return false
+        }
+        return true
+    }
+
+    private fun close(queue: SessionQueue, reason: String) {
+        sessions.remove(queue.session)
+        queues.remove(queue.session)
+        queue.events.clear()
+        val closed = closedSessions.incrementAndGet()
+        if (logger.isLoggable(INFO)) {
+            logger.info(
+                "Closing websocket connection with ${queue.session.session.remoteAddress}: " +
+                    "$reason. Closed $closed sessions, max queue depth ${maxQueueDepth.get()}"
+            )
+        }
+        try {
+            queue.session.session.close(CLOSE_TRY_AGAIN_LATER, reason)
+        } catch (e: WebSocketException) {
+            logException(logger, WARNING, e)
+        }
+    }
+
+    private class SessionQueue(val session: WsContext) {
+        val events = LinkedBlockingQueue<String>(MAX_QUEUED_EVENTS)
+        val writing = AtomicBoolean(false)
+    }
+
 }
@@ -8,4 +8,6 @@ interface ForumController {
 
     fun create(ctx: Context): Context
 
+    fun listPosts(ctx: Context): Context
+
 }
@@ -3,20 +3,42 @@ package org.briarproject.briar.headless.forums
 import com.fasterxml.jackson.databind.ObjectMapper
 import io.javalin.http.BadRequestResponse
 import io.javalin.http.Context
+import io.javalin.http.NotFoundResponse
+import org.briarproject.bramble.api.db.DbException
+import org.briarproject.bramble.api.db.NoSuchMessageException
+import org.briarproject.bramble.api.db.TransactionManager
+import org.briarproject.bramble.api.sync.GroupId
 import org.briarproject.bramble.util.StringUtils.utf8IsTooLong
 import org.briarproject.briar.api.forum.ForumConstants.MAX_FORUM_NAME_LENGTH
 import org.briarproject.briar.api.forum.ForumManager
 import org.briarproject.briar.headless.getFromJson
+import org.briarproject.briar.headless.getIdQueryParam
+import org.briarproject.briar.headless.getLongQueryParam
+import org.briarproject.briar.headless.getMessageIdQueryParam
+import org.briarproject.briar.headless.json.JsonDict
 import javax.annotation.concurrent.Immutable
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * The number of forum posts returned if the request doesn't give a limit.
+ */
+internal const val DEFAULT_POST_LIMIT = 50
+
+/**
+ * The maximum number of forum posts that can be requested at once.
+ */
+internal const val MAX_POST_LIMIT = 1000
+
 @Immutable
 @Singleton
 internal class ForumControllerImpl
 @Inject
-constructor(private val forumManager: ForumManager, private val objectMapper: ObjectMapper) :
-    ForumController {
+constructor(
+    private val forumManager: ForumManager,
+    private val db: TransactionManager,
+    private val objectMapper: ObjectMapper
+) : ForumController {
 
     override fun list(ctx: Context): Context {
         return ctx.json(forumManager.forums.output())
@@ -29,4 +51,26 @@ constructor(private val forumManager: ForumManager, private val objectMapper: Ob
         return ctx.json(forumManager.addForum(name).output())
     }
 
+    override fun listPosts(ctx: Context): Context {
+        val forumBytes = ctx.getIdQueryParam("forumId")
+            ?: throw BadRequestResponse("'forumId' missing")
+        val forumId = GroupId(forumBytes)
+        val limit = ctx.getLongQueryParam("limit") ?: DEFAULT_POST_LIMIT.toLong()
+        if (limit < 1 || limit > MAX_POST_LIMIT)
+            throw BadRequestResponse("'limit' must be between 1 and $MAX_POST_LIMIT")
+        val after = ctx.getMessageIdQueryParam("after")
+        // Only the posts on the page are loaded, in the order they are shown in the forum
+        val posts = try {
+            db.transactionWithResult<List<JsonDict>, DbException>(true) { txn ->
+                if (forumManager.getForums(txn).none { it.id == forumId })
+                    throw NotFoundResponse()
+                forumManager.getPostHeadersInThreadOrder(txn, forumId, after, limit.toInt())
+                    .map { header -> header.output(forumManager.getPostText(txn, header.id)) }
+            }
+        } catch (e: NoSuchMessageException) {
+            throw BadRequestResponse("'after' must be a post in the forum")
+        }
+        return ctx.json(posts)
+    }
+
 }
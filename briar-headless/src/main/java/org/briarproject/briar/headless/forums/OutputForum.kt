@@ -1,6 +1,8 @@
 package org.briarproject.briar.headless.forums
 
+import org.briarproject.bramble.identity.output
 import org.briarproject.briar.api.forum.Forum
+import org.briarproject.briar.api.forum.ForumPostHeader
 import org.briarproject.briar.headless.json.JsonDict
 
 internal fun Forum.output() = JsonDict(
@@ -9,3 +11,14 @@ internal fun Forum.output() = JsonDict(
 )
 
 internal fun Collection<Forum>.output() = map { it.output() }
+
+internal fun ForumPostHeader.output(text: String) = JsonDict(
+    "text" to text,
+    "author" to author.output(),
+    "authorStatus" to authorInfo.status.output(),
+    "id" to id.bytes,
+    "parentId" to parentId?.bytes,
+    "depth" to depth,
+    "read" to isRead,
+    "timestamp" to timestamp
+)
@@ -10,7 +10,9 @@ import org.briarproject.bramble.api.contact.Contact
 import org.briarproject.bramble.api.contact.ContactId
 import org.briarproject.bramble.api.contact.ContactManager
 import org.briarproject.bramble.api.db.DatabaseExecutor
+import org.briarproject.bramble.api.db.DbException
 import org.briarproject.bramble.api.db.NoSuchContactException
+import org.briarproject.bramble.api.db.TransactionManager
 import org.briarproject.bramble.api.event.Event
 import org.briarproject.bramble.api.event.EventListener
 import org.briarproject.bramble.api.sync.MessageId
@@ -21,6 +23,7 @@ import org.briarproject.bramble.util.StringUtils.utf8IsTooLong
 import org.briarproject.briar.api.blog.BlogInvitationRequest
 import org.briarproject.briar.api.blog.BlogInvitationResponse
 import org.briarproject.briar.api.conversation.ConversationManager
+import org.briarproject.briar.api.conversation.ConversationMessageHeader
 import org.briarproject.briar.api.conversation.ConversationMessageVisitor
 import org.briarproject.briar.api.conversation.event.ConversationMessageReceivedEvent
 import org.briarproject.briar.api.forum.ForumInvitationRequest
@@ -37,6 +40,8 @@ import org.briarproject.briar.headless.event.WebSocketController
 import org.briarproject.briar.headless.event.output
 import org.briarproject.briar.headless.getContactIdFromPathParam
 import org.briarproject.briar.headless.getFromJson
+import org.briarproject.briar.headless.getPaging
+import org.briarproject.briar.headless.isNotModified
 import org.briarproject.briar.headless.json.JsonDict
 import java.util.concurrent.Executor
 import javax.annotation.concurrent.Immutable
@@ -56,6 +61,7 @@ constructor(
     private val conversationManager: ConversationManager,
     private val privateMessageFactory: PrivateMessageFactory,
     private val contactManager: ContactManager,
+    private val db: TransactionManager,
     private val webSocketController: WebSocketController,
     @DatabaseExecutor private val dbExecutor: Executor,
     private val objectMapper: ObjectMapper,
@@ -64,10 +70,29 @@ constructor(
 
     override fun list(ctx: Context): Context {
         val contact = getContact(ctx)
-        val jsonVisitor = JsonVisitor(contact.id, messagingManager)
-        val messages = conversationManager.getMessageHeaders(contact.id)
-            .sortedBy { it.timestamp }
-            .map { header -> header.accept(jsonVisitor) }
+        val paging = ctx.getPaging()
+        val since = paging.since
+        val (all, received) = db.transactionWithResult<
+                Pair<Collection<ConversationMessageHeader>, Map<MessageId, Long>>,
+                DbException>(true) { txn ->
+            // Only load the headers that can be on the page when polling for new messages
+            val all = if (since == null) conversationManager.getMessageHeaders(txn, contact.id)
+            else conversationManager.getMessageHeaders(txn, contact.id, since)
+            val received = conversationManager.getMessageTimesReceived(txn, contact.id, since ?: 0)
+            Pair(all, received)
+        }
+        val headers =
+            paging.page(all, { it.id }, { it.timestamp }, { received.getValue(it.id) })
+        // The text of a message can't change, so it doesn't need to be loaded for the ETag
+        val stateVisitor = JsonVisitor(contact.id) { null }
+        val state = headers.map { header ->
+            header.accept(stateVisitor).withTimeReceived(received.getValue(header.id))
+        }
+        if (ctx.isNotModified(objectMapper, state)) return ctx
+        val jsonVisitor = JsonVisitor(contact.id, messagingManager::getMessageText)
+        val messages = headers.map { header ->
+            header.accept(jsonVisitor).withTimeReceived(received.getValue(header.id))
+        }
         return ctx.json(messages)
     }
 
@@ -148,11 +173,11 @@ constructor(
 
 private class JsonVisitor(
     private val contactId: ContactId,
-    private val messagingManager: MessagingManager
+    private val getMessageText: (MessageId) -> String?
 ) : ConversationMessageVisitor<JsonDict> {
 
     override fun visitPrivateMessageHeader(h: PrivateMessageHeader) =
-        h.output(contactId, messagingManager.getMessageText(h.id))
+        h.output(contactId, getMessageText(h.id))
 
     override fun visitBlogInvitationRequest(r: BlogInvitationRequest) = r.output(contactId)
 
@@ -27,6 +27,13 @@ internal fun ConversationMessageHeader.output(contactId: ContactId, text: String
     return dict
 }
 
+/**
+ * Adds the time the message was received, which clients can use to poll for new messages.
+ */
+internal fun JsonDict.withTimeReceived(timeReceived: Long) = apply {
+    put("timestampReceived", timeReceived)
+}
+
 internal fun PrivateMessageHeader.output(contactId: ContactId, text: String?) =
     (this as ConversationMessageHeader).output(contactId, text).apply {
         put("type", "PrivateMessage")
@@ -3,7 +3,9 @@ package org.briarproject.briar.headless
 import com.fasterxml.jackson.databind.ObjectMapper
 import io.javalin.http.Context
 import io.javalin.http.util.ContextUtil
+import io.mockk.every
 import io.mockk.mockk
+import org.bouncycastle.util.encoders.Base64.toBase64String
 import org.briarproject.bramble.api.connection.ConnectionRegistry
 import org.briarproject.bramble.api.contact.Contact
 import org.briarproject.bramble.api.contact.ContactManager
@@ -13,6 +15,7 @@ import org.briarproject.bramble.api.identity.IdentityManager
 import org.briarproject.bramble.api.identity.LocalAuthor
 import org.briarproject.bramble.api.sync.Group
 import org.briarproject.bramble.api.sync.Message
+import org.briarproject.bramble.api.sync.MessageId
 import org.briarproject.bramble.api.system.Clock
 import org.briarproject.bramble.test.TestUtils.getAuthor
 import org.briarproject.bramble.test.TestUtils.getClientId
@@ -55,6 +58,21 @@ abstract class ControllerTest {
     protected val timestamp = 42L
     protected val unreadCount = 42
 
+    protected fun expectListRequest(
+        limit: Int? = null,
+        before: Long? = null,
+        since: Long? = null,
+        sinceId: MessageId? = null,
+        ifNoneMatch: String? = null
+    ) {
+        every { ctx.queryParam("limit") } returns limit?.toString()
+        every { ctx.queryParam("before") } returns before?.toString()
+        every { ctx.queryParam("since") } returns since?.toString()
+        every { ctx.queryParam("sinceId") } returns sinceId?.let { toBase64String(it.bytes) }
+        every { ctx.header("If-None-Match") } returns ifNoneMatch
+        every { ctx.header("ETag", any()) } returns ctx
+    }
+
     protected fun assertJsonEquals(json: String, obj: Any) {
         assertEquals(json, outputCtx.json(obj).resultString(), STRICT)
     }
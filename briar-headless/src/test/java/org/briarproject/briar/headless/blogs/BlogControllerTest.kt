@@ -7,11 +7,14 @@ import io.mockk.every
 import io.mockk.just
 import io.mockk.mockk
 import io.mockk.slot
+import io.mockk.verify
 import org.briarproject.bramble.api.db.DbCallable
 import org.briarproject.bramble.api.db.DbException
+import org.briarproject.bramble.api.db.DbRunnable
 import org.briarproject.bramble.api.db.Transaction
 import org.briarproject.bramble.api.sync.MessageId
 import org.briarproject.bramble.identity.output
+import org.briarproject.bramble.test.TestUtils.getRandomId
 import org.briarproject.bramble.util.StringUtils.getRandomString
 import org.briarproject.briar.api.blog.Blog
 import org.briarproject.briar.api.blog.BlogConstants.MAX_BLOG_POST_TEXT_LENGTH
@@ -105,23 +108,92 @@ internal class BlogControllerTest : ControllerTest() {
 
     @Test
     fun testList() {
-        every { blogManager.blogs } returns listOf(blog)
-        every { blogManager.getPostHeaders(group.id) } returns listOf(header)
+        expectListRequest()
+        expectPostHeaders(listOf(header), mapOf(message.id to timestamp + 1))
         every { blogManager.getPostText(message.id) } returns text
-        every { ctx.json(listOf(header.output(text))) } returns ctx
+        every { ctx.json(listOf(header.output(text, timestamp + 1))) } returns ctx
 
         controller.listPosts(ctx)
     }
 
     @Test
     fun testEmptyList() {
-        every { blogManager.blogs } returns listOf(blog)
-        every { blogManager.getPostHeaders(group.id) } returns emptyList()
+        expectListRequest()
+        expectPostHeaders(emptyList(), emptyMap())
         every { ctx.json(emptyList<Any>()) } returns ctx
 
         controller.listPosts(ctx)
     }
 
+    @Test
+    fun testListSince() {
+        val headers = listOf(getHeader(3), getHeader(1), getHeader(2), getHeader(4))
+
+        expectListRequest(limit = 2, since = 1, sinceId = headers[1].id)
+        expectPostHeaders(headers, headers.associate { it.id to it.timeReceived }, since = 1)
+        every { blogManager.getPostText(any()) } returns text
+        every {
+            ctx.json(listOf(headers[2], headers[0]).map { it.output(text, it.timeReceived) })
+        } returns ctx
+
+        controller.listPosts(ctx)
+    }
+
+    @Test
+    fun testListSinceReturnsPostWithOldTimestampThatArrivesLate() {
+        val first = getHeader(10)
+        // This post has an earlier timestamp and was received later
+        val late = getHeader(5)
+
+        expectListRequest(since = 10, sinceId = first.id)
+        expectPostHeaders(listOf(first, late), mapOf(first.id to 10L, late.id to 20L), 10)
+        every { blogManager.getPostText(late.id) } returns text
+        every { ctx.json(listOf(late.output(text, 20))) } returns ctx
+
+        controller.listPosts(ctx)
+    }
+
+    @Test
+    fun testListNotModified() {
+        expectListRequest(ifNoneMatch = "*")
+        expectPostHeaders(listOf(header), mapOf(message.id to timestamp))
+        every { ctx.status(304) } returns ctx
+
+        controller.listPosts(ctx)
+
+        verify(exactly = 0) { blogManager.getPostText(any()) }
+    }
+
+    private fun expectPostHeaders(
+        headers: List<BlogPostHeader>,
+        received: Map<MessageId, Long>,
+        since: Long? = null
+    ) {
+        val txn = Transaction(Object(), true)
+        val dbSlot = slot<DbRunnable<DbException>>()
+        every { db.transaction(true, capture(dbSlot)) } answers { dbSlot.captured.run(txn) }
+        every { blogManager.getBlogs(txn) } returns listOf(blog)
+        if (since == null) {
+            every { blogManager.getPostHeaders(txn, group.id) } returns headers
+        } else {
+            every { blogManager.getPostHeaders(txn, group.id, since) } returns headers
+        }
+        every { blogManager.getPostTimesReceived(txn, group.id, since ?: 0) } returns received
+    }
+
+    private fun getHeader(timestamp: Long) = BlogPostHeader(
+        POST,
+        group.id,
+        MessageId(getRandomId()),
+        parentId,
+        timestamp,
+        timestamp,
+        author,
+        AuthorInfo(OURSELVES),
+        rssFeed,
+        read
+    )
+
     @Test
     fun testOutputBlogPost() {
         val json = """
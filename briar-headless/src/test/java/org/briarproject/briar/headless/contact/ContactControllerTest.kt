@@ -30,6 +30,7 @@ import org.briarproject.bramble.identity.output
 import org.briarproject.bramble.test.TestUtils.getPendingContact
 import org.briarproject.bramble.test.TestUtils.getRandomBytes
 import org.briarproject.bramble.util.StringUtils.getRandomString
+import org.briarproject.briar.api.client.MessageTracker.GroupCount
 import org.briarproject.briar.headless.ControllerTest
 import org.briarproject.briar.headless.getFromJson
 import org.briarproject.briar.headless.json.JsonDict
@@ -62,9 +63,10 @@ internal class ContactControllerTest : ControllerTest() {
     fun testList() {
         val connected = Random.nextBoolean()
         every { contactManager.contacts } returns listOf(contact)
-        every { conversationManager.getGroupCount(contact.id).latestMsgTime } returns timestamp
+        every {
+            conversationManager.getGroupCounts(listOf(contact.id))
+        } returns mapOf(contact.id to GroupCount(1, unreadCount, timestamp))
         every { connectionRegistry.isConnected(contact.id) } returns connected
-        every { conversationManager.getGroupCount(contact.id).unreadCount } returns unreadCount
         every { ctx.json(listOf(contact.output(timestamp, connected, unreadCount))) } returns ctx
         controller.list(ctx)
     }
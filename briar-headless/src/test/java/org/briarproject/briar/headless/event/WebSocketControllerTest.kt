@@ -17,8 +17,11 @@ import org.briarproject.briar.api.introduction.event.IntroductionRequestReceived
 import org.briarproject.briar.api.messaging.PrivateMessageHeader
 import org.briarproject.briar.api.messaging.event.PrivateMessageReceivedEvent
 import org.briarproject.briar.headless.ControllerTest
+import org.briarproject.briar.headless.json.JsonDict
 import org.briarproject.briar.headless.messaging.EVENT_CONVERSATION_MESSAGE
+import org.briarproject.briar.headless.messaging.EVENT_MESSAGES_SENT
 import org.briarproject.briar.headless.messaging.output
+import org.eclipse.jetty.websocket.api.Session
 import org.eclipse.jetty.websocket.api.WebSocketException
 import org.eclipse.jetty.websocket.common.io.FutureWriteCallback
 import org.junit.jupiter.api.Assertions.assertEquals
@@ -52,7 +55,7 @@ internal class WebSocketControllerTest : ControllerTest() {
     fun testSendEvent() {
         val slot = CapturingSlot<String>()
 
-        every { session1.send(capture(slot)) } returns FutureWriteCallback()
+        every { session1.send(capture(slot)) } returns written()
 
         controller.sessions.add(session1)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
@@ -74,7 +77,7 @@ internal class WebSocketControllerTest : ControllerTest() {
         val slot = CapturingSlot<String>()
 
         every { session1.send(capture(slot)) } throws throwable
-        every { session2.send(capture(slot)) } returns FutureWriteCallback()
+        every { session2.send(capture(slot)) } returns written()
 
         controller.sessions.add(session1)
         controller.sessions.add(session2)
@@ -83,6 +86,57 @@ internal class WebSocketControllerTest : ControllerTest() {
         verify { session2.send(slot.captured) }
     }
 
+    @Test
+    fun testSendEventsInOrder() {
+        val tasks = ArrayList<Runnable>()
+        val controller = WebSocketControllerImpl { tasks.add(it) }
+        val events = ArrayList<String>()
+
+        every { session1.session } returns mockk(relaxed = true)
+        every { session1.send(capture(events)) } returns written()
+
+        controller.sessions.add(session1)
+        controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
+        controller.sendEvent(EVENT_MESSAGES_SENT, JsonDict())
+
+        // One writer task writes both events
+        assertEquals(1, tasks.size)
+        assertEquals(2, controller.getQueueDepth())
+        tasks[0].run()
+        assertEquals(0, controller.getQueueDepth())
+        assertEquals(2, events.size)
+        assertJsonEquals(events[0], outputEvent)
+        assertJsonEquals(events[1], OutputEvent(EVENT_MESSAGES_SENT, JsonDict()))
+    }
+
+    @Test
+    fun testSlowSessionIsClosed() {
+        val tasks = ArrayList<Runnable>()
+        val controller = WebSocketControllerImpl { tasks.add(it) }
+        val jettySession = mockk<Session>(relaxed = true)
+
+        every { session1.session } returns jettySession
+
+        controller.sessions.add(session1)
+        // The writer task never runs, so the session's queue fills up
+        repeat(MAX_QUEUED_EVENTS) {
+            controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
+        }
+        assertEquals(1, tasks.size)
+        assertEquals(MAX_QUEUED_EVENTS, controller.getQueueDepth())
+        controller.sendEvent(EVENT_CONVERSATION_MESSAGE, event.output(text))
+
+        verify { jettySession.close(CLOSE_TRY_AGAIN_LATER, any()) }
+        assertEquals(emptySet<WsContext>(), controller.sessions)
+        assertEquals(0, controller.getQueueDepth())
+        val status = controller.getStatus()
+        assertEquals(MAX_QUEUED_EVENTS, status["maxQueueDepth"])
+        assertEquals(1, status["closedSessions"])
+    }
+
+    private fun WebSocketControllerImpl.getQueueDepth() =
+        (getStatus()["sessions"] as List<*>).sumOf { (it as JsonDict)["queueDepth"] as Int }
+
     @Test
     fun testIntroductionRequestEvent() {
         val introductionRequest = IntroductionRequest(
@@ -106,7 +160,7 @@ internal class WebSocketControllerTest : ControllerTest() {
             OutputEvent(EVENT_CONVERSATION_MESSAGE, introductionRequestEvent.output())
         val slot = CapturingSlot<String>()
 
-        every { session1.send(capture(slot)) } returns FutureWriteCallback()
+        every { session1.send(capture(slot)) } returns written()
 
         controller.sessions.add(session1)
         controller.sendEvent(EVENT_CONVERSATION_MESSAGE, introductionRequestEvent.output())
@@ -114,6 +168,8 @@ internal class WebSocketControllerTest : ControllerTest() {
         assertEquals("IntroductionRequest", introductionRequestEvent.output()["type"])
     }
 
+    private fun written() = FutureWriteCallback().apply { writeSuccess() }
+
     @Test
     fun testOutputConversationMessageReceivedEvent() {
         val json = """
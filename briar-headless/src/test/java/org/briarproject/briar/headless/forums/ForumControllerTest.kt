@@ -1,14 +1,29 @@
 package org.briarproject.briar.headless.forums
 
 import io.javalin.http.BadRequestResponse
+import io.javalin.http.NotFoundResponse
+import io.javalin.plugin.json.JavalinJson.toJson
 import io.mockk.every
 import io.mockk.mockk
+import io.mockk.slot
+import org.bouncycastle.util.encoders.Base64.toBase64String
+import org.briarproject.bramble.api.db.DbCallable
+import org.briarproject.bramble.api.db.DbException
+import org.briarproject.bramble.api.db.NoSuchMessageException
+import org.briarproject.bramble.api.db.Transaction
+import org.briarproject.bramble.api.sync.MessageId
+import org.briarproject.bramble.identity.output
 import org.briarproject.bramble.test.TestUtils.getRandomBytes
+import org.briarproject.bramble.test.TestUtils.getRandomId
 import org.briarproject.bramble.util.StringUtils.getRandomString
 import org.briarproject.briar.api.forum.Forum
 import org.briarproject.briar.api.forum.ForumConstants.MAX_FORUM_NAME_LENGTH
 import org.briarproject.briar.api.forum.ForumManager
+import org.briarproject.briar.api.forum.ForumPostHeader
+import org.briarproject.briar.api.identity.AuthorInfo
+import org.briarproject.briar.api.identity.AuthorInfo.Status.UNVERIFIED
 import org.briarproject.briar.headless.ControllerTest
+import org.briarproject.briar.headless.json.JsonDict
 import org.junit.jupiter.api.Assertions.assertThrows
 import org.junit.jupiter.api.Test
 
@@ -16,9 +31,19 @@ internal class ForumControllerTest : ControllerTest() {
 
     private val forumManager = mockk<ForumManager>()
 
-    private val controller = ForumControllerImpl(forumManager, objectMapper)
+    private val controller = ForumControllerImpl(forumManager, db, objectMapper)
 
     private val forum = Forum(group, getRandomString(5), getRandomBytes(5))
+    private val txn = Transaction(Object(), true)
+    private val header = ForumPostHeader(
+        message.id,
+        null,
+        message.timestamp,
+        author,
+        AuthorInfo(UNVERIFIED),
+        false,
+        0
+    )
 
     @Test
     fun list() {
@@ -72,4 +97,106 @@ internal class ForumControllerTest : ControllerTest() {
         assertThrows(BadRequestResponse::class.java) { controller.create(ctx) }
     }
 
+    @Test
+    fun listPosts() {
+        expectListPostsRequest(forum.id.bytes, after = null, limit = null)
+        expectTransaction()
+        every { forumManager.getForums(txn) } returns listOf(forum)
+        every {
+            forumManager.getPostHeadersInThreadOrder(txn, forum.id, null, DEFAULT_POST_LIMIT)
+        } returns listOf(header)
+        every { forumManager.getPostText(txn, message.id) } returns text
+        every { ctx.json(listOf(header.output(text))) } returns ctx
+
+        controller.listPosts(ctx)
+    }
+
+    @Test
+    fun listPostsAfter() {
+        val after = MessageId(getRandomId())
+        expectListPostsRequest(forum.id.bytes, after, 10)
+        expectTransaction()
+        every { forumManager.getForums(txn) } returns listOf(forum)
+        every {
+            forumManager.getPostHeadersInThreadOrder(txn, forum.id, after, 10)
+        } returns listOf(header)
+        every { forumManager.getPostText(txn, message.id) } returns text
+        every { ctx.json(listOf(header.output(text))) } returns ctx
+
+        controller.listPosts(ctx)
+    }
+
+    @Test
+    fun listPostsAfterUnknownPost() {
+        val after = MessageId(getRandomId())
+        expectListPostsRequest(forum.id.bytes, after, null)
+        expectTransaction()
+        every { forumManager.getForums(txn) } returns listOf(forum)
+        every {
+            forumManager.getPostHeadersInThreadOrder(txn, forum.id, after, DEFAULT_POST_LIMIT)
+        } throws NoSuchMessageException()
+
+        assertThrows(BadRequestResponse::class.java) { controller.listPosts(ctx) }
+    }
+
+    @Test
+    fun listPostsUnknownForum() {
+        expectListPostsRequest(getRandomId(), null, null)
+        expectTransaction()
+        every { forumManager.getForums(txn) } returns listOf(forum)
+
+        assertThrows(NotFoundResponse::class.java) { controller.listPosts(ctx) }
+    }
+
+    @Test
+    fun listPostsNoForumId() {
+        expectListPostsRequest(null, null, null)
+
+        assertThrows(BadRequestResponse::class.java) { controller.listPosts(ctx) }
+    }
+
+    @Test
+    fun listPostsInvalidForumId() {
+        every { ctx.queryParam("forumId") } returns "foo"
+
+        assertThrows(BadRequestResponse::class.java) { controller.listPosts(ctx) }
+    }
+
+    @Test
+    fun listPostsInvalidLimit() {
+        expectListPostsRequest(forum.id.bytes, null, MAX_POST_LIMIT + 1)
+
+        assertThrows(BadRequestResponse::class.java) { controller.listPosts(ctx) }
+    }
+
+    @Test
+    fun outputForumPost() {
+        val json = """
+            {
+                "text": "$text",
+                "author": ${toJson(author.output())},
+                "authorStatus": "unverified",
+                "id": ${toJson(header.id.bytes)},
+                "parentId": null,
+                "depth": 0,
+                "read": false,
+                "timestamp": ${message.timestamp}
+            }
+        """
+        assertJsonEquals(json, header.output(text))
+    }
+
+    private fun expectListPostsRequest(forumId: ByteArray?, after: MessageId?, limit: Int?) {
+        every { ctx.queryParam("forumId") } returns forumId?.let { toBase64String(it) }
+        every { ctx.queryParam("after") } returns after?.let { toBase64String(it.bytes) }
+        every { ctx.queryParam("limit") } returns limit?.toString()
+    }
+
+    private fun expectTransaction() {
+        val dbSlot = slot<DbCallable<List<JsonDict>, DbException>>()
+        every { db.transactionWithResult(true, capture(dbSlot)) } answers {
+            dbSlot.captured.call(txn)
+        }
+    }
+
 }
@@ -11,9 +11,14 @@ import io.mockk.just
 import io.mockk.mockk
 import io.mockk.mockkStatic
 import io.mockk.runs
+import io.mockk.slot
+import io.mockk.verify
 import org.bouncycastle.util.encoders.Base64
 import org.briarproject.bramble.api.contact.ContactId
+import org.briarproject.bramble.api.db.DbCallable
+import org.briarproject.bramble.api.db.DbException
 import org.briarproject.bramble.api.db.NoSuchContactException
+import org.briarproject.bramble.api.db.Transaction
 import org.briarproject.bramble.api.sync.MessageId
 import org.briarproject.bramble.api.sync.event.MessagesAckedEvent
 import org.briarproject.bramble.api.sync.event.MessagesSentEvent
@@ -22,6 +27,7 @@ import org.briarproject.bramble.test.TestUtils.getRandomId
 import org.briarproject.bramble.util.StringUtils.getRandomString
 import org.briarproject.briar.api.autodelete.AutoDeleteConstants.NO_AUTO_DELETE_TIMER
 import org.briarproject.briar.api.client.SessionId
+import org.briarproject.briar.api.conversation.ConversationMessageHeader
 import org.briarproject.briar.api.conversation.DeletionResult
 import org.briarproject.briar.api.identity.AuthorInfo
 import org.briarproject.briar.api.identity.AuthorInfo.Status.UNVERIFIED
@@ -53,6 +59,7 @@ internal class MessagingControllerImplTest : ControllerTest() {
         conversationManager,
         privateMessageFactory,
         contactManager,
+        db,
         webSocketController,
         dbExecutor,
         objectMapper,
@@ -73,14 +80,18 @@ internal class MessagingControllerImplTest : ControllerTest() {
             NO_AUTO_DELETE_TIMER
         )
     private val sessionId = SessionId(getRandomId())
+    private val txn = Transaction(Object(), true)
     private val privateMessage = PrivateMessage(message)
 
     @Test
     fun list() {
         expectGetContact()
-        every { conversationManager.getMessageHeaders(contact.id) } returns listOf(header)
+        expectListRequest()
+        expectMessageHeaders(listOf(header), mapOf(message.id to timestamp + 1))
         every { messagingManager.getMessageText(message.id) } returns text
-        every { ctx.json(listOf(header.output(contact.id, text))) } returns ctx
+        every {
+            ctx.json(listOf(header.output(contact.id, text).withTimeReceived(timestamp + 1)))
+        } returns ctx
 
         controller.list(ctx)
     }
@@ -93,8 +104,11 @@ internal class MessagingControllerImplTest : ControllerTest() {
         )
 
         expectGetContact()
-        every { conversationManager.getMessageHeaders(contact.id) } returns listOf(request)
-        every { ctx.json(listOf(request.output(contact.id))) } returns ctx
+        expectListRequest()
+        expectMessageHeaders(listOf(request), mapOf(message.id to timestamp))
+        every {
+            ctx.json(listOf(request.output(contact.id).withTimeReceived(timestamp)))
+        } returns ctx
 
         controller.list(ctx)
     }
@@ -103,12 +117,176 @@ internal class MessagingControllerImplTest : ControllerTest() {
     fun testEmptyList() {
         every { ctx.pathParam("contactId") } returns contact.id.int.toString()
         every { contactManager.getContact(contact.id) } returns contact
-        every { conversationManager.getMessageHeaders(contact.id) } returns emptyList()
+        expectListRequest()
+        expectMessageHeaders(emptyList(), emptyMap())
         every { ctx.json(emptyList<Any>()) } returns ctx
 
         controller.list(ctx)
     }
 
+    @Test
+    fun listWithLimit() {
+        val headers = listOf(getHeader(3), getHeader(1), getHeader(2))
+
+        expectGetContact()
+        expectListRequest(limit = 2)
+        expectMessageHeaders(headers, headers.associate { it.id to it.timestamp })
+        every { messagingManager.getMessageText(any()) } returns text
+        every {
+            ctx.json(listOf(headers[2], headers[0]).map { it.output(it.timestamp) })
+        } returns ctx
+
+        controller.list(ctx)
+    }
+
+    @Test
+    fun listSince() {
+        val headers = listOf(getHeader(3), getHeader(1), getHeader(2), getHeader(4))
+
+        expectGetContact()
+        expectListRequest(limit = 2, since = 1, sinceId = headers[1].id)
+        expectMessageHeaders(headers, headers.associate { it.id to it.timestamp }, since = 1)
+        every { messagingManager.getMessageText(any()) } returns text
+        every {
+            ctx.json(listOf(headers[2], headers[0]).map { it.output(it.timestamp) })
+        } returns ctx
+
+        controller.list(ctx)
+    }
+
+    @Test
+    fun listSinceWithoutIdIncludesMessagesReceivedAtSince() {
+        val headers = listOf(getHeader(3), getHeader(1), getHeader(2), getHeader(4))
+
+        expectGetContact()
+        expectListRequest(limit = 2, since = 1)
+        expectMessageHeaders(headers, headers.associate { it.id to it.timestamp }, since = 1)
+        every { messagingManager.getMessageText(any()) } returns text
+        every {
+            ctx.json(listOf(headers[1], headers[2]).map { it.output(it.timestamp) })
+        } returns ctx
+
+        controller.list(ctx)
+    }
+
+    @Test
+    fun listSinceReturnsMessageWithOldTimestampThatArrivesAfterPoll() {
+        val first = getHeader(10)
+        val late = getHeader(5)
+
+        // The first poll returns the first message, received at 10
+        expectGetContact()
+        expectListRequest()
+        expectMessageHeaders(listOf(first), mapOf(first.id to 10L))
+        every { messagingManager.getMessageText(any()) } returns text
+        every { ctx.json(listOf(first.output(10))) } returns ctx
+
+        controller.list(ctx)
+
+        // A message with an earlier timestamp arrives at 20 and is returned by the next poll
+        expectListRequest(since = 10, sinceId = first.id)
+        expectMessageHeaders(listOf(first, late), mapOf(first.id to 10L, late.id to 20L), 10)
+        every { ctx.json(listOf(late.output(20))) } returns ctx
+
+        controller.list(ctx)
+
+        verify(exactly = 1) { ctx.json(listOf(late.output(20))) }
+    }
+
+    @Test
+    fun listSinceDoesNotSkipMessagesReceivedAtTheSameTime() {
+        val headers = listOf(getHeader(1), getHeader(2), getHeader(3)).sortedBy { it.id }
+        val received = headers.associate { it.id to 7L }
+
+        // The limit splits the messages that were received at the same time
+        expectGetContact()
+        expectListRequest(limit = 2, since = 7)
+        expectMessageHeaders(headers, received, since = 7)
+        every { messagingManager.getMessageText(any()) } returns text
+        every { ctx.json(headers.take(2).map { it.output(7) }) } returns ctx
+
+        controller.list(ctx)
+
+        // The next poll returns the rest of them
+        expectListRequest(limit = 2, since = 7, sinceId = headers[1].id)
+        every { ctx.json(listOf(headers[2].output(7))) } returns ctx
+
+        controller.list(ctx)
+
+        verify(exactly = 1) { ctx.json(listOf(headers[2].output(7))) }
+    }
+
+    @Test
+    fun listBefore() {
+        val headers = listOf(getHeader(3), getHeader(1), getHeader(2), getHeader(4))
+
+        expectGetContact()
+        expectListRequest(limit = 2, before = 4)
+        expectMessageHeaders(headers, headers.associate { it.id to it.timestamp })
+        every { messagingManager.getMessageText(any()) } returns text
+        every {
+            ctx.json(listOf(headers[2], headers[0]).map { it.output(it.timestamp) })
+        } returns ctx
+
+        controller.list(ctx)
+    }
+
+    @Test
+    fun listNotModified() {
+        val etag = slot<String>()
+
+        expectGetContact()
+        expectListRequest()
+        every { ctx.header("ETag", capture(etag)) } returns ctx
+        every { ctx.header("If-None-Match") } answers {
+            if (etag.isCaptured) etag.captured else null
+        }
+        expectMessageHeaders(listOf(header), mapOf(message.id to timestamp))
+        every { messagingManager.getMessageText(message.id) } returns text
+        every { ctx.json(listOf(header.output(timestamp))) } returns ctx
+        every { ctx.status(304) } returns ctx
+
+        controller.list(ctx)
+        controller.list(ctx)
+
+        verify(exactly = 1) { messagingManager.getMessageText(message.id) }
+        verify(exactly = 1) { ctx.status(304) }
+    }
+
+    @Test
+    fun listInvalidLimit() {
+        expectGetContact()
+        every { ctx.queryParam("limit") } returns "0"
+
+        assertThrows(BadRequestResponse::class.java) { controller.list(ctx) }
+    }
+
+    @Test
+    fun listInvalidSince() {
+        expectGetContact()
+        expectListRequest()
+        every { ctx.queryParam("since") } returns "foo"
+
+        assertThrows(BadRequestResponse::class.java) { controller.list(ctx) }
+    }
+
+    @Test
+    fun listInvalidSinceId() {
+        expectGetContact()
+        expectListRequest(since = 1)
+        every { ctx.queryParam("sinceId") } returns "foo"
+
+        assertThrows(BadRequestResponse::class.java) { controller.list(ctx) }
+    }
+
+    @Test
+    fun listSinceIdWithoutSince() {
+        expectGetContact()
+        expectListRequest(sinceId = message.id)
+
+        assertThrows(BadRequestResponse::class.java) { controller.list(ctx) }
+    }
+
     @Test
     fun listInvalidContactId() {
         testInvalidContactId { controller.list(ctx) }
@@ -398,6 +576,44 @@ internal class MessagingControllerImplTest : ControllerTest() {
         assertJsonEquals(json, result.output())
     }
 
+    private fun getHeader(timestamp: Long) = PrivateMessageHeader(
+        MessageId(getRandomId()),
+        group.id,
+        timestamp,
+        true,
+        true,
+        true,
+        true,
+        true,
+        emptyList(),
+        NO_AUTO_DELETE_TIMER
+    )
+
+    private fun PrivateMessageHeader.output(timeReceived: Long) =
+        output(contact.id, text).withTimeReceived(timeReceived)
+
+    private fun expectMessageHeaders(
+        headers: List<ConversationMessageHeader>,
+        received: Map<MessageId, Long>,
+        since: Long? = null
+    ) {
+        val dbSlot = slot<DbCallable<Pair<Collection<ConversationMessageHeader>,
+                Map<MessageId, Long>>, DbException>>()
+        every { db.transactionWithResult(true, capture(dbSlot)) } answers {
+            dbSlot.captured.call(txn)
+        }
+        if (since == null) {
+            every { conversationManager.getMessageHeaders(txn, contact.id) } returns headers
+        } else {
+            every {
+                conversationManager.getMessageHeaders(txn, contact.id, since)
+            } returns headers
+        }
+        every {
+            conversationManager.getMessageTimesReceived(txn, contact.id, since ?: 0)
+        } returns received
+    }
+
     private fun expectGetContact() {
         every { ctx.pathParam("contactId") } returns contact.id.int.toString()
         every { contactManager.getContact(contact.id) } returns contact